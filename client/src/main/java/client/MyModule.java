@@ -15,6 +15,7 @@
  */
 package client;
 
+import client.controllers.CollaborationCtrl;
 import client.controllers.MarkdownCtrl;
 import client.controllers.NotificationsCtrl;
 import client.scenes.DashboardCtrl;
@@ -34,5 +35,6 @@ public class MyModule implements Module {
         binder.bind(MarkdownCtrl.class).in(Scopes.SINGLETON);
         binder.bind(EditCollectionsCtrl.class).in(Scopes.SINGLETON);
         binder.bind(NotificationsCtrl.class).in(Scopes.SINGLETON);
+        binder.bind(CollaborationCtrl.class).in(Scopes.SINGLETON);
     }
 }
\ No newline at end of file
@@ -0,0 +1,213 @@
+package client.controllers;
+
+import client.utils.ServerUtils;
+import com.google.inject.Inject;
+import commons.Note;
+import commons.TextEdit;
+import commons.ot.DocumentSnapshot;
+import commons.ot.OperationMessage;
+import commons.ot.OtClient;
+import commons.ot.TextOperation;
+import jakarta.ws.rs.ProcessingException;
+import jakarta.ws.rs.WebApplicationException;
+import javafx.application.Platform;
+import javafx.scene.control.TextArea;
+
+import java.util.UUID;
+
+/**
+ * Lets several clients type in the same note at the same time.
+ * Every change to the text of the open note is sent to the server as an operation. The server puts
+ * the operations of all clients in one order, and operations of others are transformed against the
+ * local edits the server has not seen yet, so they can be applied without reloading the text.
+ */
+public class CollaborationCtrl {
+
+    private final ServerUtils server;
+    private TextArea noteBody;
+
+    private Session session;
+    // Set while the text area is changed by this controller rather than by the user
+    private boolean applyingRemote = false;
+
+    @Inject
+    public CollaborationCtrl(ServerUtils server) {
+        this.server = server;
+    }
+
+    public void setReferences(TextArea noteBody) {
+        this.noteBody = noteBody;
+        noteBody.textProperty().addListener((observable, oldText, newText) -> {
+            if (!applyingRemote) {
+                captureLocalEdit();
+            }
+        });
+    }
+
+    /**
+     * Starts editing a note together with the other clients that have it open.
+     * If the note was changed on the server since it was loaded, its text is replaced with the current one.
+     * Must be called on the JavaFX thread, after the note is shown.
+     * @param note The note shown in the text area
+     */
+    public void open(Note note) {
+        close();
+        if (note == null || note.id == null || noteBody == null) {
+            return;
+        }
+        Session opened = new Session(note);
+        session = opened;
+        server.registerForTopic(note.collection.serverURL, "/topic/notes/" + note.id + "/ops",
+                OperationMessage.class, "noteOps", message -> Platform.runLater(() -> {
+                    if (session == opened) {
+                        receive(message);
+                    }
+                }));
+        load();
+    }
+
+    /**
+     * Stops sending the changes to the text area, e.g. before it is cleared for another note
+     */
+    public void close() {
+        session = null;
+    }
+
+    /**
+     * Loads the text of the open note from the server again, dropping the local edits the server has not seen
+     * if the note has a newer version there.
+     * Used when the note was changed outside of the collaborative editing, e.g. by a client saving the whole note.
+     */
+    public void reload() {
+        if (session != null) {
+            load();
+        }
+    }
+
+    /**
+     * @return true if the given note is the one being edited together
+     */
+    public boolean isEditing(UUID noteId) {
+        return session != null && session.note.id.equals(noteId);
+    }
+
+    private void load() {
+        DocumentSnapshot snapshot;
+        try {
+            snapshot = server.getDocument(session.note);
+        } catch (WebApplicationException | ProcessingException e) { // e.g. the note was deleted
+            snapshot = null;
+        }
+        if (snapshot == null) {
+            close();
+            return;
+        }
+        // edits made to the same version the server has can be sent, edits to an older version are dropped
+        boolean upToDate = session.note.version == snapshot.revision();
+        session.reset(snapshot.revision());
+        session.origin = UUID.randomUUID();
+        session.text = snapshot.text();
+        session.note.version = snapshot.revision();
+        if (upToDate) {
+            captureLocalEdit();
+        } else if (!snapshot.text().equals(noteBody.getText())) {
+            session.note.setBody(snapshot.text());
+            int caret = Math.min(noteBody.getCaretPosition(), snapshot.text().length());
+            applyingRemote = true;
+            try {
+                noteBody.setText(snapshot.text());
+                noteBody.positionCaret(caret);
+            } finally {
+                applyingRemote = false;
+            }
+        }
+    }
+
+    private void receive(OperationMessage message) {
+        if (message.revision() <= session.getRevision()) {
+            return; // already part of the loaded text
+        }
+        if (message.revision() > session.getRevision() + 1) {
+            load(); // an operation got lost
+            return;
+        }
+        captureLocalEdit();
+        if (session.origin.equals(message.origin()) && !session.isSynchronized()) {
+            session.serverAck();
+        } else {
+            session.applyServer(message.operation());
+        }
+        session.note.version = session.getRevision();
+    }
+
+    /**
+     * Sends the difference between the text area and the text last sent or received
+     */
+    private void captureLocalEdit() {
+        if (session == null) {
+            return;
+        }
+        String text = noteBody.getText() == null ? "" : noteBody.getText();
+        TextEdit edit = TextEdit.between(session.text, text);
+        if (edit == null) {
+            return;
+        }
+        TextOperation operation = TextOperation.fromEdit(edit, session.text.length());
+        session.text = text;
+        session.note.setBody(text);
+        session.applyClient(operation);
+    }
+
+    /**
+     * Applies an operation to the text area piece by piece, so the rest of the text and the scroll position stay put
+     */
+    private void applyToTextArea(TextOperation operation) {
+        int caret = operation.transformIndex(noteBody.getCaretPosition());
+        int anchor = operation.transformIndex(noteBody.getAnchor());
+        applyingRemote = true;
+        try {
+            int index = 0;
+            for (Object component : operation.getComponents()) {
+                if (component instanceof String inserted) {
+                    noteBody.insertText(index, inserted);
+                    index += inserted.length();
+                } else if ((Integer) component > 0) {
+                    index += (Integer) component;
+                } else {
+                    noteBody.deleteText(index, index - (Integer) component);
+                }
+            }
+            noteBody.selectRange(anchor, caret);
+        } finally {
+            applyingRemote = false;
+        }
+    }
+
+    private class Session extends OtClient {
+        // Identifies the operations of this client in the broadcasts of the server, changed on every load
+        // so operations sent before it do not look like acknowledgements of later ones
+        private UUID origin = UUID.randomUUID();
+        private final Note note;
+        // The text as far as the server has been told about it
+        private String text;
+
+        private Session(Note note) {
+            super(note.version);
+            this.note = note;
+            this.text = note.getBody() == null ? "" : note.getBody();
+        }
+
+        @Override
+        protected void sendOperation(long revision, TextOperation operation) {
+            server.send("/app/notes/" + note.id + "/ops", new OperationMessage(note.id, origin, revision, operation),
+                    note.collection.serverURL);
+        }
+
+        @Override
+        protected void applyOperation(TextOperation operation) {
+            text = operation.apply(text);
+            note.setBody(text);
+            applyToTextArea(operation);
+        }
+    }
+}
@@ -378,10 +378,8 @@ public class CollectionCtrl {
                 // Establish WebSocket connection for the server
                 server.getWebSocketURL(serverURL);
 
-                // Register for updates on this server
-                dashboardCtrl.noteAdditionSync(serverURL);
-                dashboardCtrl.noteTitleSync(serverURL);
-                dashboardCtrl.noteDeletionSync(serverURL);
+                // Register for updates of this collection
+                dashboardCtrl.subscribeToCollection(collection);
 
             } else {
                 // Handle unavailable servers
@@ -524,6 +522,12 @@ public class CollectionCtrl {
             return null;
         }
         List<EmbeddedFile> embeddedFiles = server.getFilesByNote(currentNote);
+        // the files are uploaded again after the move, so their content is needed before the note is deleted
+        for (EmbeddedFile embeddedFile : embeddedFiles) {
+            if (embeddedFile.getFileContent() == null) {
+                embeddedFile.setFileContent(server.getFileContent(currentNote, embeddedFile));
+            }
+        }
 
         // Make a copy of the note and add it to the new collection
 
@@ -635,8 +639,10 @@ public class CollectionCtrl {
             List<Note> previouslySelectedNotes = new ArrayList<>(selectedItems);
             //Collection currentCollection = previouslySelectedNotes.get(0).collection;
 
-            for (Note note : notesToMove) {
-                moveNoteFromCollection(note, destinationCollection);
+            if (!moveOnServer(notesToMove, destinationCollection)) {
+                for (Note note : notesToMove) {
+                    moveNoteFromCollection(note, destinationCollection);
+                }
             }
 
             //dashboardCtrl.refreshTreeView();
@@ -657,6 +663,55 @@ public class CollectionCtrl {
 
     }
 
+    /**
+     * Moves notes that are on the server of the destination collection with one request, keeping their ids and files
+     * @return false if the notes have to be moved one by one, e.g. because they are on another server
+     * or a title is already used in the destination
+     */
+    private boolean moveOnServer(List<Note> notes, Collection destinationCollection) {
+        if (destinationCollection == null || destinationCollection.id == null) {
+            return false;
+        }
+        for (Note note : notes) {
+            Note noteInDestination = new Note(note.title, "", destinationCollection);
+            if (note.id == null || !note.collection.serverURL.equals(destinationCollection.serverURL)
+                    || noteCtrl.isTitleDuplicate(dashboardCtrl.getAllNotes(), noteInDestination, note.title, false)) {
+                return false;
+            }
+        }
+        if (!server.isServerAvailable(destinationCollection.serverURL)) {
+            return false;
+        }
+        List<Note> moved;
+        try {
+            moved = server.batchMoveNotes(destinationCollection, notes);
+        } catch (ClientErrorException e) {
+            return false;
+        }
+        if (moved == null) {
+            return false;
+        }
+        Map<UUID, Long> versions = new HashMap<>();
+        moved.forEach(note -> versions.put(note.id, note.version));
+        for (Note note : notes) {
+            note.collection = destinationCollection;
+            note.version = versions.getOrDefault(note.id, note.version);
+        }
+
+        RadioMenuItem selectedRadioMenuItem = collectionSelect.getToggles().stream()
+                .filter(toggle -> toggle instanceof RadioMenuItem item && item.getText().equals(destinationCollection.title))
+                .map(toggle -> (RadioMenuItem) toggle)
+                .findFirst().orElse(null);
+        if (selectedRadioMenuItem != null) {
+            if (dashboardCtrl.getCurrentCollection() != null) {
+                selectedRadioMenuItem.fire();
+            }
+            collectionSelect.selectToggle(selectedRadioMenuItem);
+        }
+        moveNotesButton.hide();
+        return true;
+    }
+
     /**
      * moving multiple notes in the all notes view
      *
@@ -11,6 +11,8 @@ import commons.EmbeddedFile;
 import commons.Note;
 import jakarta.inject.Inject;
 import javafx.scene.control.*;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.Region;
 import javafx.stage.FileChooser;
@@ -20,12 +22,15 @@ import lombok.Setter;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.text.DecimalFormat;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 
 
 public class FilesCtrl {
+    private static final double THUMBNAIL_SIZE = 128;
+
     private final ServerUtils serverUtils;
     // for testing purposes
     @Setter private FileChooser fileChooser;
@@ -85,7 +90,6 @@ public class FilesCtrl {
 
         try {
             EmbeddedFile embeddedFile = serverUtils.addFile(currentNote, file);
-            serverUtils.send("/app/notes/" + currentNote.getId() + "/files", embeddedFile.getId(),currentNote.collection.serverURL);
 
             return embeddedFile;
         } catch (Exception exception) {
@@ -159,6 +163,20 @@ public class FilesCtrl {
         updateView(currentNote);
     }
 
+    /**
+     * Shows the thumbnail of an image in its tooltip. It is only loaded the first time the tooltip is shown,
+     * in the background, so listing the files of a note does not download any images.
+     */
+    private void showThumbnail(Tooltip tooltip, Note currentNote, EmbeddedFile file) {
+        if (tooltip.getGraphic() != null) {
+            return;
+        }
+        String url = currentNote.collection.serverURL + "api/notes/" + currentNote.getId()
+                + "/files/" + file.getId() + "/content?size=thumb";
+        ImageView thumbnail = new ImageView(new Image(url, THUMBNAIL_SIZE, THUMBNAIL_SIZE, true, true, true));
+        tooltip.setGraphic(thumbnail);
+    }
+
     public HBox createFileEntry(Note currentNote, EmbeddedFile file) {
         HBox entry = new HBox();
         entry.getStyleClass().add("file-view-entry");
@@ -171,10 +189,13 @@ public class FilesCtrl {
                 bundle.getString("fileSize.text") + ": " + calculateFileSize(file) + "\n" +
                 bundle.getString("uploadedAt.text") + ": " + file.getUploadedAt().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm")));
         infoTooltip.setShowDelay(Duration.seconds(0.2));
+        if (file.getFileType() != null && file.getFileType().startsWith("image/")) {
+            infoTooltip.setOnShowing(event -> showThumbnail(infoTooltip, currentNote, file));
+        }
         fileName.setTooltip(infoTooltip);
 
         fileName.setOnMouseReleased(event -> {
-            downloadFile(file);
+            downloadFile(currentNote, file);
         });
 
         Button editButton = new Button();
@@ -206,7 +227,7 @@ public class FilesCtrl {
 
     public String calculateFileSize(EmbeddedFile file) {
         DecimalFormat df = new DecimalFormat("#.##");
-        double bytes = file.getFileContent().length;
+        double bytes = file.getFileSize();
         if (bytes < 1000 /*1kB*/) {
             return df.format(bytes) + " bytes";
         }
@@ -241,11 +262,12 @@ public class FilesCtrl {
                     .findFirst().orElse(null);
 
             if (efToRemove != null) {
+                // keep the content around, so the deletion can be undone
+                loadContent(currentNote, file);
                 serverUtils.deleteFile(
                         currentNote,
                         efToRemove
                 );
-                serverUtils.send("/app/notes/" + currentNote.getId() + "/files/deleteFile", efToRemove.getId(),currentNote.collection.serverURL);
                 updateViewAfterDelete(currentNote, efToRemove.getId());
             }
         }
@@ -290,9 +312,7 @@ public class FilesCtrl {
         }
     }
     public void renameFileInputted(EmbeddedFile file, String fileName, Note currentNote) {
-        EmbeddedFile e = serverUtils.renameFile(currentNote, file, fileName);
-        Object[] renameRequest = {e.getId(), fileName};
-        serverUtils.send("/app/notes/" + currentNote.getId() + "/files/renameFile", renameRequest,currentNote.collection.serverURL);
+        serverUtils.renameFile(currentNote, file, fileName);
         persistFileName(currentNote, file.getFileName(), fileName);
     }
     public void renameFileByName(String oldName, String fileName, Note currentNote) {
@@ -316,7 +336,7 @@ public class FilesCtrl {
         }
     }
 
-    public void downloadFile(EmbeddedFile embeddedFile) {
+    public void downloadFile(Note currentNote, EmbeddedFile embeddedFile) {
         fileChooser.setTitle(bundle.getString("saveFile.text"));
         fileChooser.setInitialFileName(embeddedFile.getFileName());
         fileChooser.getExtensionFilters().add(
@@ -327,7 +347,7 @@ public class FilesCtrl {
 
         if (fileToSave != null) {
             try (FileOutputStream fos = new FileOutputStream(fileToSave)) {
-                fos.write(embeddedFile.getFileContent());
+                fos.write(loadContent(currentNote, embeddedFile));
             }
             catch (IOException e) {
                 e.printStackTrace();
@@ -342,6 +362,19 @@ public class FilesCtrl {
         }
     }
 
+    /**
+     * Makes sure the content of the file is available locally, downloading it if needed
+     * @param currentNote The note the file is embedded in
+     * @param embeddedFile The file
+     * @return The content of the file
+     */
+    public byte[] loadContent(Note currentNote, EmbeddedFile embeddedFile) {
+        if (embeddedFile.getFileContent() == null) {
+            embeddedFile.setFileContent(serverUtils.getFileContent(currentNote, embeddedFile));
+        }
+        return embeddedFile.getFileContent();
+    }
+
     private void showErrorUploadingFileAlert() {
         Alert alert = dialogStyler.createStyledAlert(
                 Alert.AlertType.INFORMATION,
@@ -375,7 +408,7 @@ public class FilesCtrl {
             return false;
         }
 
-        if (uploadedFile.length() > 10 * 1024 * 1024 /*10MB*/) {
+        if (uploadedFile.length() > 50 * 1024 * 1024 /*50MB*/) {
             Alert alert = dialogStyler.createStyledAlert(
                     Alert.AlertType.INFORMATION,
                     bundle.getString("uploadError.text"),
@@ -401,14 +434,17 @@ public class FilesCtrl {
     public EmbeddedFile addDeletedFile(Note currentNote, EmbeddedFile ef) {
         try {
             File file = ef.getFile();
+            if (file == null) {
+                // the content of deleted files is only kept in memory, so write it out again for the upload
+                file = File.createTempFile("netnote-", "-" + ef.getFileName());
+                file.deleteOnExit();
+                Files.write(file.toPath(), ef.getFileContent());
+            }
             String newFileName = ef.getFileName();
 
             EmbeddedFile embeddedFile = serverUtils.addFile(currentNote, file);
-            serverUtils.send("/app/notes/" + currentNote.getId() + "/files", embeddedFile.getId(),currentNote.collection.serverURL);
 
             EmbeddedFile e = serverUtils.renameFile(currentNote, embeddedFile, newFileName);
-            Object[] renameRequest = {embeddedFile.getId(), newFileName};
-            serverUtils.send("/app/notes/" + currentNote.getId() + "/files/renameFile", renameRequest,currentNote.collection.serverURL);
             persistFileName(currentNote, e.getFileName(), newFileName);
 
             return embeddedFile;
@@ -247,7 +247,9 @@ public class MarkdownCtrl {
             }
             String encodedFileName = uri.toASCIIString();
 
-            String fileURL = currentNote.collection.serverURL + "api/notes/" + currentNote.getId() + "/files/" + encodedFileName;
+            // the preview rendition is small enough for the view; the server sends the original until it is made
+            String fileURL = currentNote.collection.serverURL + "api/notes/" + currentNote.getId() + "/files/" + encodedFileName
+                    + "?size=preview";
 
             result.append(String.format("![%s](%s)", altText, fileURL));
 
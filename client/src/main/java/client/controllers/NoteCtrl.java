@@ -4,11 +4,15 @@ import client.LanguageManager;
 import client.scenes.DashboardCtrl;
 import client.ui.DialogStyler;
 import client.utils.Config;
+import client.utils.NoteConflictException;
 import client.utils.ServerUtils;
 import com.google.inject.Inject;
+import commons.BatchUpdateResult;
 import commons.Collection;
 import commons.EmbeddedFile;
 import commons.Note;
+import commons.NotePatch;
+import commons.TextEdit;
 import javafx.application.Platform;
 import javafx.collections.ObservableList;
 import javafx.scene.control.*;
@@ -22,6 +26,7 @@ public class NoteCtrl {
 
     // Utilities
     private final ServerUtils server;
+    @Getter private final CollaborationCtrl collaborationCtrl;
     private DialogStyler dialogStyler = new DialogStyler();
 
     // Dashboard reference
@@ -47,6 +52,10 @@ public class NoteCtrl {
 
     @Getter @Setter private List<EmbeddedFile> embeddedFilesCache = new ArrayList<>();
     private List<Note> deletedNoteCache = new ArrayList<>();
+    // The last state of each edited note known to match the server, to compute patches against
+    private final Map<UUID, Note> syncedNotes = new HashMap<>();
+    // Identifies the patches sent by this client in the broadcasts of the server
+    @Getter private final UUID clientId = UUID.randomUUID();
 
     private Config config;
     private LanguageManager languageManager;
@@ -54,8 +63,10 @@ public class NoteCtrl {
 
 
     @Inject
-    public NoteCtrl(ServerUtils server, Config config, NotificationsCtrl notificationsCtrl) {
+    public NoteCtrl(ServerUtils server, Config config, NotificationsCtrl notificationsCtrl,
+                    CollaborationCtrl collaborationCtrl) {
         this.server = server;
+        this.collaborationCtrl = collaborationCtrl;
         createPendingNotes = new ArrayList<>();
         updatePendingNotes = new ArrayList<>();
         this.notificationsCtrl = notificationsCtrl;
@@ -87,6 +98,7 @@ public class NoteCtrl {
         this.searchField = searchField;
         this.filesViewBlocker = filesViewBlocker;
         this.moveNotesButton = moveNotesButton;
+        collaborationCtrl.setReferences(noteBody);
     }
 
     public Note addNote(Collection currentCollection,
@@ -125,6 +137,7 @@ public class NoteCtrl {
         noteTitle.setText(newTitle);
         noteTitleMd.setText(newTitle);
 
+        collaborationCtrl.close();
         noteBody.setText("");
 
         notificationsCtrl.pushNotification(bundle.getString("creationSuccess"), false);
@@ -172,6 +185,15 @@ public class NoteCtrl {
                 dashboardCtrl.refreshTreeView();
             });
         });
+
+        server.registerForTopic(serverURL, "/topic/notes/" + currentNote.getId() + "/patch", NotePatch.class, "notePatch", patch -> {
+            Platform.runLater(() -> dashboardCtrl.onNotePatch(patch));
+        });
+
+        // The note is open since before it was stored, now the others can join in
+        if (currentNote == dashboardCtrl.getCurrentNote()) {
+            Platform.runLater(() -> collaborationCtrl.open(currentNote));
+        }
     }
 
     public void showCurrentNote(Note selectedNote) {
@@ -190,7 +212,9 @@ public class NoteCtrl {
             // Again, here, when the trash icons are removed, we can remove the subtract, or make it like 5px
             noteTitleMd.maxWidthProperty().bind(markdownView.widthProperty().subtract(40));
 
+            collaborationCtrl.close();
             noteBody.setText(selectedNote.body);
+            collaborationCtrl.open(selectedNote);
             contentBlocker.setVisible(false);
             filesViewBlocker.setVisible(false);
             Platform.runLater(() -> {
@@ -239,11 +263,10 @@ public class NoteCtrl {
     public void deleteNote(Note currentNote,
                            ObservableList<Note> collectionNotes,
                            ObservableList<Note> allNotes) {
+        collaborationCtrl.close();
         updatePendingNotes.remove(currentNote);
-        for (EmbeddedFile file : currentNote.getEmbeddedFiles().stream().toList()) {
-            server.deleteFile(currentNote, file);
-            currentNote.getEmbeddedFiles().remove(file);
-        }
+        // the server deletes the files together with the note
+        currentNote.getEmbeddedFiles().clear();
         server.send("/app/deleteNote", currentNote,currentNote.collection.serverURL);
 
         removeNoteFromClient(currentNote, collectionNotes, allNotes);
@@ -251,6 +274,30 @@ public class NoteCtrl {
         Platform.runLater(() -> {if(dashboardCtrl != null) dashboardCtrl.filter();});
     }
 
+    /**
+     * Deletes several notes, with one request per server they are on
+     */
+    public void deleteNotes(List<Note> notes,
+                            ObservableList<Note> collectionNotes,
+                            ObservableList<Note> allNotes) {
+        collaborationCtrl.close();
+        Map<String, List<Note>> notesByServer = new LinkedHashMap<>();
+        notes.forEach(note -> notesByServer.computeIfAbsent(note.collection.serverURL, url -> new ArrayList<>()).add(note));
+        notesByServer.forEach((serverURL, serverNotes) -> {
+            if (!server.isServerAvailable(serverURL)) {
+                return;
+            }
+            server.batchDeleteNotes(serverURL, serverNotes.stream().map(n -> n.id).filter(Objects::nonNull).toList());
+            for (Note note : serverNotes) {
+                updatePendingNotes.remove(note);
+                note.getEmbeddedFiles().clear();
+                removeNoteFromClient(note, collectionNotes, allNotes);
+            }
+        });
+
+        Platform.runLater(() -> {if(dashboardCtrl != null) dashboardCtrl.filter();});
+    }
+
     public void removeNoteFromClient(Note currentNote, ObservableList<Note> collectionNotes, ObservableList<Note> allNotes) {
         allNotes.remove(currentNote);
         if (collectionView != null) {
@@ -263,6 +310,7 @@ public class NoteCtrl {
                                   ObservableList<Note> allNotes,
                                   ObservableList<Note> collectionNotes) {
         updatePendingNotes.remove(currentNote);
+        syncedNotes.remove(currentNote.id);
 
         allNotes.remove(currentNote);
         collectionNotes.remove(currentNote);
@@ -271,6 +319,8 @@ public class NoteCtrl {
 
     public void saveAllPendingNotes(DashboardCtrl dashboardCtrl) {
         try {
+            // notes that have to be sent whole are saved with one request per server
+            Map<String, List<Note>> fullSaves = new LinkedHashMap<>();
             for (Note note : updatePendingNotes) {
                 if (!server.isServerAvailable(note.collection.serverURL)) {
                     String alertText = bundle.getString("noteUpdateError") + "\n" + note.title;
@@ -281,13 +331,14 @@ public class NoteCtrl {
                             alertText
                     ).showAndWait();
                 }
+                else if (note.id != null && needsFullSave(note)) {
+                    fullSaves.computeIfAbsent(note.collection.serverURL, url -> new ArrayList<>()).add(note);
+                }
                 else {
-                    server.updateNote(note);
-                    Note newNote = new Note(note.getTitle(), note.getBody(), note.collection);
-                    newNote.id = note.id;
-                    server.send("/app/notes/" + note.id +"/body", newNote, note.collection.serverURL);
+                    saveNoteOrReportConflict(note, dashboardCtrl);
                 }
             }
+            fullSaves.forEach((serverURL, notes) -> saveNotes(serverURL, notes, dashboardCtrl));
 
             updatePendingNotes.clear();
         } catch (Exception e) {
@@ -298,6 +349,97 @@ public class NoteCtrl {
         saveAllPendingNotes(dashboardCtrl);
     }
 
+    private void saveNoteOrReportConflict(Note note, DashboardCtrl dashboardCtrl) {
+        try {
+            saveNote(note);
+        } catch (NoteConflictException e) {
+            Platform.runLater(() -> dashboardCtrl.onNoteConflict(note, e.getServerCopy()));
+        }
+    }
+
+    /**
+     * Saves several whole notes of one server with a single request.
+     * The server broadcasts the saved notes, notes changed there in the meantime are shown as conflicts.
+     * @param serverURL The server the notes are on
+     * @param notes The notes to save
+     */
+    private void saveNotes(String serverURL, List<Note> notes, DashboardCtrl dashboardCtrl) {
+        if (notes.size() == 1) {
+            saveNoteOrReportConflict(notes.getFirst(), dashboardCtrl);
+            return;
+        }
+        BatchUpdateResult result = server.batchUpdateNotes(serverURL, notes);
+        if (result == null) {
+            return;
+        }
+        Map<UUID, Note> notesById = new HashMap<>();
+        notes.forEach(note -> notesById.put(note.id, note));
+        for (Note saved : result.updated()) {
+            Note note = notesById.get(saved.id);
+            note.version = saved.version;
+            rememberSynced(note);
+        }
+        for (Note serverCopy : result.conflicts()) {
+            Note note = notesById.get(serverCopy.id);
+            Platform.runLater(() -> dashboardCtrl.onNoteConflict(note, serverCopy));
+        }
+    }
+
+    /**
+     * @return true if the whole note has to be sent to save it, false if a patch or nothing is enough
+     */
+    private boolean needsFullSave(Note note) {
+        Note synced = syncedNotes.get(note.id);
+        if (collaborationCtrl.isEditing(note.id) && synced != null && synced.title.equals(note.title)) {
+            return false;
+        }
+        return synced == null || synced.version != note.version || !synced.title.equals(note.title);
+    }
+
+    /**
+     * Saves a note. If only the body changed since the last save, just the changed range is sent
+     * and the server broadcasts it as a patch; otherwise the whole note is sent.
+     * The body of a note that is edited together is already on the server, so then only a new title is saved.
+     * @param note The note to save
+     */
+    private void saveNote(Note note) {
+        Note synced = syncedNotes.get(note.id);
+        if (collaborationCtrl.isEditing(note.id) && synced != null && synced.title.equals(note.title)) {
+            rememberSynced(note);
+            return;
+        }
+        if (synced != null && synced.version == note.version && synced.title.equals(note.title)) {
+            TextEdit edit = TextEdit.between(synced.body, note.body);
+            if (edit != null) {
+                NotePatch applied = server.patchNote(note,
+                        new NotePatch(note.id, clientId, note.version, 0, List.of(edit)));
+                if (applied == null) {
+                    return;
+                }
+                note.version = applied.version();
+            }
+        } else {
+            Note savedNote = server.updateNote(note);
+            if (savedNote == null) {
+                return;
+            }
+            note.version = savedNote.version;
+        }
+        rememberSynced(note);
+    }
+
+    /**
+     * Remembers the current state of a note as the state the server has,
+     * so the next save only has to send what changed after it
+     * @param note The note, as it is on the server
+     */
+    public void rememberSynced(Note note) {
+        Note copy = new Note(note.getTitle(), note.getBody(), note.collection);
+        copy.id = note.id;
+        copy.version = note.version;
+        syncedNotes.put(note.id, copy);
+    }
+
     public void onBodyChanged(Note currentNote) {
         if (currentNote != null) {
             if (!server.isServerAvailable(currentNote.collection.serverURL)) {
@@ -308,9 +450,14 @@ public class NoteCtrl {
                         bundle.getString("serverCouldNotBeReached.text"),
                         alertText
                 ).showAndWait();
+                collaborationCtrl.close();
                 noteBody.clear();
                 return;
             }
+            // A note that is not pending yet still matches the server
+            if (!updatePendingNotes.contains(currentNote)) {
+                rememberSynced(currentNote);
+            }
             String rawText = noteBody.getText();
             currentNote.setBody(rawText);
 
@@ -338,12 +485,6 @@ public class NoteCtrl {
         return uniqueTitle;
     }
 
-    public void updateTitleWebsocket(Note note){
-        Note newNote = new Note(note.getTitle(),"", dashboardCtrl.getCurrentCollection());
-        newNote.id = note.id;
-        server.send("/app/notes/title", newNote,note.collection.serverURL);
-    }
-
     /**
      * Checks if the given title is already used in the collection, excluding the current note.
      */
@@ -370,10 +511,8 @@ public class NoteCtrl {
             Optional<ButtonType> buttonType = alert.showAndWait();
             List<Note> notesToDelete = new ArrayList<>(selectedItems);
             if (buttonType.isPresent() && buttonType.get().equals(ButtonType.OK)) {
-                for (Note note : notesToDelete) {
-                    deleteNote(note, collectionNotes, allNotes);
-                    noteBody.clear();
-                }
+                deleteNotes(notesToDelete, collectionNotes, allNotes);
+                noteBody.clear();
                 collectionView.getSelectionModel().clearSelection();
             }
         }
@@ -397,10 +536,8 @@ public class NoteCtrl {
             Optional<ButtonType> buttonType = alert.showAndWait();
             List<TreeItem<Note>> notesToDelete = new ArrayList<>(selectedItems);
             if (buttonType.isPresent() && buttonType.get().equals(ButtonType.OK)) {
-                for (TreeItem<Note> treeItem:  notesToDelete) {
-                    deleteNote(treeItem.getValue(), collectionNotes, allNotes);
-                    noteBody.clear();
-                }
+                deleteNotes(notesToDelete.stream().map(TreeItem::getValue).toList(), collectionNotes, allNotes);
+                noteBody.clear();
                 dashboardCtrl.allNotesView.getSelectionModel().clearSelection();
 
             }
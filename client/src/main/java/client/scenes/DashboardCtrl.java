@@ -16,9 +16,13 @@ import client.ui.NoteListItem;
 import client.utils.Config;
 import client.utils.ServerUtils;
 import com.google.inject.Inject;
+import commons.Change;
+import commons.ChangeFeed;
 import commons.Collection;
 import commons.EmbeddedFile;
 import commons.Note;
+import commons.NotePatch;
+import commons.TextEdit;
 import javafx.application.Platform;
 import javafx.beans.binding.Bindings;
 import javafx.beans.binding.BooleanBinding;
@@ -46,6 +50,7 @@ import lombok.SneakyThrows;
 
 import java.net.URL;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -58,6 +63,8 @@ public class DashboardCtrl implements Initializable {
     // Utilities
     //TODO: This is just a temporary solution, to be changed with something smarter
     private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+    // Position in the change feed of each server, keyed by server URL
+    private final Map<String, Long> changeCursors = new ConcurrentHashMap<>();
     @Getter private final ServerUtils server;
     @Getter private final MainCtrl mainCtrl;
     @Getter private final NotificationsCtrl notificationsCtrl;
@@ -191,6 +198,7 @@ public class DashboardCtrl implements Initializable {
         // ---------
 
 
+        startFollowingChanges();
         allNotes = FXCollections.observableArrayList(server.getAllNotes());
         collectionNotes = allNotes;
         markdownCtrl.setReferences(collectionView, allNotesView, markdownView, markdownViewBlocker, noteBody);
@@ -273,6 +281,12 @@ public class DashboardCtrl implements Initializable {
         // Temporary solution
         scheduler.scheduleAtFixedRate(() -> noteCtrl.saveAllPendingNotes(),
                 10,10, TimeUnit.SECONDS);
+        scheduler.scheduleWithFixedDelay(() -> {
+            List<Change> changes = pullChanges();
+            if (changes != null && !changes.isEmpty()) {
+                Platform.runLater(() -> applyChanges(changes));
+            }
+        }, 30, 30, TimeUnit.SECONDS);
     }
 
     private void setupLanguageButton() {
@@ -366,17 +380,43 @@ public class DashboardCtrl implements Initializable {
         }
     }
 
-    public void noteAdditionSync(String url) {
-        server.registerForMessages("/topic/notes", Note.class, note -> {
+    /**
+     * Subscribes to the notes that are created, renamed and deleted in a collection.
+     * Every collection has its own topics, so a client only hears about the collections in its config.
+     * Subscribing again replaces the earlier subscriptions of the collection.
+     * @param collection A collection from the config
+     */
+    public void subscribeToCollection(Collection collection) {
+        noteAdditionSync(collection);
+        noteTitleSync(collection);
+        noteDeletionSync(collection);
+    }
+
+    /**
+     * Stops the subscriptions made by {@link #subscribeToCollection(Collection)}
+     */
+    public void unsubscribeFromCollection(Collection collection) {
+        server.unregisterFromTopic(collection.serverURL, "noteAdd:" + collection.id);
+        server.unregisterFromTopic(collection.serverURL, "noteTitle:" + collection.id);
+        server.unregisterFromTopic(collection.serverURL, "noteDelete:" + collection.id);
+    }
+
+    private static String collectionTopic(Collection collection) {
+        return "/topic/collections/" + collection.id + "/notes";
+    }
+
+    public void noteAdditionSync(Collection collection) {
+        server.registerForTopic(collection.serverURL, collectionTopic(collection), Note.class,
+                "noteAdd:" + collection.id, note -> {
             Platform.runLater(() -> {
                 noteCtrl.updateViewAfterAdd(currentCollection, allNotes, collectionNotes, note);
             });
-        }, url);
+        });
     }
 
-    public void noteTitleSync(String url) {
-        String topic = "/topic/notes/title";
-        server.registerForTopic(url, topic, Note.class, "noteTitle", note -> {
+    public void noteTitleSync(Collection collection) {
+        String topic = collectionTopic(collection) + "/title";
+        server.registerForTopic(collection.serverURL, topic, Note.class, "noteTitle:" + collection.id, note -> {
             Platform.runLater(() -> {
                 Note toUpdate = allNotes.stream()
                         .filter(n -> n.id.equals(note.id))
@@ -395,12 +435,28 @@ public class DashboardCtrl implements Initializable {
         });
     }
 
-    public void noteDeletionSync(String url) {
-        server.registerForMessages("/topic/notes/delete", Note.class, note -> {
+    public void noteDeletionSync(Collection collection) {
+        String topic = collectionTopic(collection) + "/delete";
+        server.registerForTopic(collection.serverURL, topic, Note.class, "noteDelete:" + collection.id, note -> {
             Platform.runLater(() -> {
                 noteCtrl.updateAfterDelete(note, allNotes, collectionNotes);
             });
-        }, url);
+        });
+    }
+
+    /**
+     * Removes the notes of a collection that was deleted on its server, by this or another client
+     * @param deleted The deleted collection
+     */
+    public void onCollectionDeleted(Collection deleted) {
+        List<Note> notes = allNotes.stream()
+                .filter(n -> n.collection != null && deleted.id.equals(n.collection.id))
+                .toList();
+        if (notes.isEmpty()) {
+            return;
+        }
+        notes.forEach(note -> noteCtrl.updateAfterDelete(note, allNotes, collectionNotes));
+        filter();
     }
 
     /**
@@ -452,6 +508,10 @@ public class DashboardCtrl implements Initializable {
                     });
                 });
 
+                server.registerForTopic(serverURL, "/topic/notes/" + currentNote.getId() + "/patch", NotePatch.class, "notePatch", patch -> {
+                    Platform.runLater(() -> onNotePatch(patch));
+                });
+
             } else {
                 showBlockers();
             }
@@ -487,19 +547,15 @@ public class DashboardCtrl implements Initializable {
 
                         // Establish WebSocket connection and register for updates
                         server.getWebSocketURL(url);
-                        noteAdditionSync(url);
-
-                        server.registerForTopic(url, "/topic/notes/title", Note.class, "noteTitle", note -> {
-                            Platform.runLater(() -> noteTitleSync(url));
-                        });
+                        subscribeToCollection(collection);
 
-                        server.registerForTopic(url, "/topic/notes/delete", Note.class, "noteDelete", note -> {
-                            Platform.runLater(() -> noteDeletionSync(url));
-                        });
+                        server.registerForTopic(url, "/topic/collections/delete", Collection.class, "collectionDelete",
+                                deleted -> Platform.runLater(() -> onCollectionDeleted(deleted)));
                     }
                 } else if (change.wasRemoved()) {
                     for (Collection collection : change.getRemoved()) {
                         String url = collection.serverURL;
+                        unsubscribeFromCollection(collection);
 
                         if (collections.stream().noneMatch(c -> c.serverURL.equals(url))) {
                             // Disconnect and unregister all subscriptions
@@ -548,6 +604,10 @@ public class DashboardCtrl implements Initializable {
                             refreshTreeView();
                         });
                     });
+
+                    server.registerForTopic(serverURL, "/topic/notes/" + currentNote.getId() + "/patch", NotePatch.class, "notePatch", patch -> {
+                        Platform.runLater(() -> onNotePatch(patch));
+                    });
                 } else {
                     showBlockers();
                 }
@@ -563,6 +623,18 @@ public class DashboardCtrl implements Initializable {
     }
 
     public void onNoteUpdate(Note newContent) {
+        Note local = allNotes.stream().filter(n -> newContent.id.equals(n.id)).findFirst().orElse(null);
+        if (local != null && newContent.collection != null && !newContent.collection.id.equals(local.collection.id)) {
+            // moved to another collection of the same server
+            local.collection = collections.stream()
+                    .filter(c -> newContent.collection.id.equals(c.id))
+                    .findFirst().orElse(newContent.collection);
+            filter();
+        }
+        if (noteCtrl.getCollaborationCtrl().isEditing(newContent.id)) {
+            noteCtrl.getCollaborationCtrl().reload();
+            return;
+        }
         if (currentNote != null && currentNote.id.equals(newContent.id)) {
             if (!currentNote.getBody().equals(newContent.getBody())) {
                 notificationsCtrl.pushNotification(bundle.getString("newContent"), false);
@@ -571,11 +643,76 @@ public class DashboardCtrl implements Initializable {
             noteBody.setText(newContent.getBody());
             noteBody.positionCaret(caretPosition);
             currentNote.setBody(newContent.getBody());
+            currentNote.version = Math.max(currentNote.version, newContent.version);
+        }
+    }
+
+    /**
+     * Applies a patch broadcast by the server to the open note, keeping the caret where it was in the text.
+     * If this client missed a version, the whole note is loaded instead.
+     * @param patch The applied patch
+     */
+    public void onNotePatch(NotePatch patch) {
+        if (currentNote == null || !currentNote.id.equals(patch.noteId())
+                || noteCtrl.getClientId().equals(patch.origin()) || patch.version() <= currentNote.version) {
+            return;
         }
+        if (noteCtrl.getCollaborationCtrl().isEditing(patch.noteId())) {
+            noteCtrl.getCollaborationCtrl().reload();
+            return;
+        }
+        if (noteCtrl.getUpdatePendingNotes().contains(currentNote)) {
+            return; // saving the local edits will run into the newer version and load it
+        }
+        if (patch.baseVersion() != currentNote.version) {
+            Note latest = server.getNote(currentNote);
+            if (latest != null) {
+                onNoteUpdate(latest);
+                noteCtrl.rememberSynced(currentNote);
+            }
+            return;
+        }
+
+        int caretPosition = noteBody.getCaretPosition();
+        String body = currentNote.getBody();
+        for (TextEdit edit : patch.edits()) {
+            if (edit.start() < caretPosition) {
+                caretPosition = Math.max(edit.start(), caretPosition - (edit.end() - edit.start()))
+                        + (edit.end() <= caretPosition ? edit.text().length() : 0);
+            }
+            body = edit.applyTo(body);
+        }
+        noteBody.setText(body);
+        noteBody.positionCaret(Math.min(caretPosition, body.length()));
+        currentNote.setBody(body);
+        currentNote.version = patch.version();
+        noteCtrl.rememberSynced(currentNote);
+    }
+
+    /**
+     * Replaces a note that could not be saved, because it was changed elsewhere, with the server copy
+     * @param local The note as edited on this client
+     * @param serverCopy The current version of the note on the server
+     */
+    public void onNoteConflict(Note local, Note serverCopy) {
+        local.setTitle(serverCopy.getTitle());
+        if (local.equals(currentNote)) {
+            noteTitle.setText(serverCopy.getTitle());
+        }
+        onNoteUpdate(serverCopy);
+        if (!noteCtrl.getCollaborationCtrl().isEditing(local.id)) {
+            local.setBody(serverCopy.getBody());
+            local.version = serverCopy.version;
+        }
+        noteCtrl.rememberSynced(local);
+        notificationsCtrl.pushNotification(bundle.getString("noteConflict"), true);
+        collectionView.refresh();
+        refreshTreeView();
     }
 
     public void showBlockers() {
         currentNote = null;
+        noteCtrl.getCollaborationCtrl().close();
         allNotesView.getSelectionModel().setSelectionMode(SelectionMode.SINGLE);
         // Show content blockers when no item is selected
         contentBlocker.setVisible(true);
@@ -741,9 +878,7 @@ public class DashboardCtrl implements Initializable {
 
             // Ensure WebSocket connection is established for the target collection
             server.getWebSocketURL(targetCollection.serverURL);
-            noteAdditionSync(targetCollection.serverURL);
-            noteTitleSync(targetCollection.serverURL);
-            noteDeletionSync(targetCollection.serverURL);
+            subscribeToCollection(targetCollection);
 
             ServerUtils.getUnavailableCollections().remove(targetCollection);
         } else {
@@ -795,11 +930,9 @@ public class DashboardCtrl implements Initializable {
         collectionNotes = collectionCtrl.viewNotes();
         updateTagList();
 
-        if (defaultCollection != null && server.isServerAvailable(defaultCollection.serverURL)) {
-            server.getWebSocketURL(defaultCollection.serverURL);
-            noteAdditionSync(defaultCollection.serverURL);
-            noteTitleSync(defaultCollection.serverURL);
-            noteDeletionSync(defaultCollection.serverURL);
+        // all notes are shown, so all collections of the config are listened to
+        if (collections != null) {
+            collections.forEach(this::subscribeToCollection);
         }
     }
 
@@ -908,14 +1041,139 @@ public class DashboardCtrl implements Initializable {
 
     public void refresh() {
         noteCtrl.saveAllPendingNotes();
-        ObservableList<Note> allNotesRefreshed = FXCollections.observableArrayList(server.getAllNotes());
-        allNotes.clear();
-        allNotes.addAll(allNotesRefreshed);
+        List<Change> changes = pullChanges();
+        if (changes != null) {
+            applyChanges(changes);
+        } else {
+            startFollowingChanges();
+            ObservableList<Note> allNotesRefreshed = FXCollections.observableArrayList(server.getAllNotes());
+            allNotes.clear();
+            allNotes.addAll(allNotesRefreshed);
+        }
 
         clearSearch();
         viewAllNotes();
     }
 
+    /**
+     * Remembers where the change feed of every server is now,
+     * so the next refresh only has to download what changed after this point.
+     * Call this right before loading all notes.
+     */
+    private void startFollowingChanges() {
+        changeCursors.clear();
+        for (String serverURL : configuredServers()) {
+            try {
+                if (server.isServerAvailable(serverURL)) {
+                    changeCursors.put(serverURL, server.getLatestChange(serverURL));
+                }
+            } catch (Exception e) {
+                // this server will be fully reloaded on the next refresh
+            }
+        }
+    }
+
+    /**
+     * Downloads the changes made on every server since the last sync.
+     * Servers that cannot be reached are skipped and caught up with later.
+     * @return The changes, or null if a server was never synced and all notes have to be reloaded
+     */
+    private synchronized List<Change> pullChanges() {
+        List<String> serverURLs = configuredServers();
+        if (!changeCursors.keySet().containsAll(serverURLs)) {
+            return null;
+        }
+        List<Change> changes = new ArrayList<>();
+        for (String serverURL : serverURLs) {
+            try {
+                if (!server.isServerAvailable(serverURL)) {
+                    continue;
+                }
+                List<Change> serverChanges = new ArrayList<>();
+                long since = changeCursors.get(serverURL);
+                ChangeFeed feed;
+                do {
+                    feed = server.getChanges(serverURL, since);
+                    serverChanges.addAll(feed.changes());
+                    since = feed.latestSeq();
+                } while (feed.hasMore());
+                changes.addAll(serverChanges);
+                changeCursors.put(serverURL, since);
+            } catch (Exception e) {
+                // keep the old position, the changes are downloaded again next time
+            }
+        }
+        return changes;
+    }
+
+    private List<String> configuredServers() {
+        List<Collection> configured = config.readFromFile();
+        if (configured == null) {
+            return List.of();
+        }
+        return configured.stream().map(c -> c.serverURL).distinct().toList();
+    }
+
+    private void applyChanges(List<Change> changes) {
+        for (Change change : changes) {
+            switch (change.kind()) {
+                case NOTE -> applyNoteChange(change);
+                case FILE -> applyFileChange(change);
+                case COLLECTION -> {
+                    // the collections a client shows are managed through its config
+                }
+            }
+        }
+        collectionView.refresh();
+        refreshTreeView();
+    }
+
+    private void applyNoteChange(Change change) {
+        Note local = findNoteById(change.id());
+        if (change.deleted()) {
+            if (local != null) {
+                noteCtrl.updateAfterDelete(local, allNotes, collectionNotes);
+            }
+            return;
+        }
+        Note note = change.note();
+        if (collections.stream().noneMatch(c -> c.id.equals(note.collection.id))) {
+            return;
+        }
+        if (local == null) {
+            noteCtrl.updateViewAfterAdd(currentCollection, allNotes, collectionNotes, note);
+        } else if (!noteCtrl.getUpdatePendingNotes().contains(local)) {
+            local.setTitle(note.getTitle());
+            if (local.equals(currentNote)) {
+                noteTitle.setText(note.getTitle());
+            }
+            onNoteUpdate(note);
+            local.setBody(note.getBody());
+            local.version = note.version;
+        }
+    }
+
+    private void applyFileChange(Change change) {
+        Note note = findNoteById(change.parentId());
+        if (note == null || note.getEmbeddedFiles() == null) {
+            return;
+        }
+        note.getEmbeddedFiles().removeIf(file -> file.getId().equals(change.id()));
+        if (!change.deleted()) {
+            note.getEmbeddedFiles().add(change.file());
+        }
+        if (note.equals(currentNote)) {
+            filesCtrl.updateView(note);
+        }
+    }
+
+    private Note findNoteById(UUID id) {
+        return allNotes.stream()
+                .filter(n -> n.id.equals(id))
+                .findFirst()
+                .orElse(null);
+    }
+
     @FXML
     public void deleteCollection() {
         if (collectionCtrl.showDeleteConfirmation()) {
@@ -1419,8 +1677,6 @@ public class DashboardCtrl implements Initializable {
         noteTitleMD.setText(uniqueTitle);
 
         notificationsCtrl.pushNotification(bundle.getString("validRename"), false);
-
-        noteCtrl.updateTitleWebsocket(note);
     }
 
     private void handleReferenceTitleChange(Note item, String oldTitle, String uniqueTitle) {
@@ -195,10 +195,9 @@ public class EditCollectionsCtrl implements Initializable {
             if (serverUtils.isServerAvailable(newServerURL)) {
                 serverUtils.getWebSocketURL(newServerURL);
 
-                // Register for updates on this server
-                dashboardCtrl.noteAdditionSync(newServerURL);
-                dashboardCtrl.noteTitleSync(newServerURL);
-                dashboardCtrl.noteDeletionSync(newServerURL);
+                // Register for updates of the collection on its new server
+                dashboardCtrl.unsubscribeFromCollection(collection);
+                dashboardCtrl.subscribeToCollection(collectionCopy);
             }
 
             // Fetch all notes from the old server
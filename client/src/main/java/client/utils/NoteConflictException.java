@@ -0,0 +1,23 @@
+package client.utils;
+
+import commons.Note;
+
+/**
+ * Thrown when a note could not be saved because it was changed on the server
+ * since this client loaded it
+ */
+public class NoteConflictException extends RuntimeException {
+    private final Note serverCopy;
+
+    public NoteConflictException(Note serverCopy) {
+        super("Note " + serverCopy.id + " was changed on the server");
+        this.serverCopy = serverCopy;
+    }
+
+    /**
+     * @return The current version of the note on the server
+     */
+    public Note getServerCopy() {
+        return serverCopy;
+    }
+}
@@ -20,22 +20,39 @@ import client.ui.DialogStyler;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.google.inject.Inject;
+import commons.BatchMove;
+import commons.BatchUpdateResult;
+import commons.ChangeFeed;
 import commons.Collection;
 import commons.EmbeddedFile;
 import commons.Note;
+import commons.NotePatch;
+import commons.ot.DocumentSnapshot;
+import jakarta.ws.rs.ClientErrorException;
 import jakarta.ws.rs.ProcessingException;
 import jakarta.ws.rs.client.ClientBuilder;
 import jakarta.ws.rs.client.Entity;
 import jakarta.ws.rs.core.GenericType;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.Response;
 import javafx.scene.control.Alert;
 import lombok.Getter;
 import lombok.Setter;
 import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.client.ClientProperties;
+import org.glassfish.jersey.client.RequestEntityProcessing;
+import org.glassfish.jersey.client.filter.EncodingFilter;
+import org.glassfish.jersey.message.DeflateEncoder;
+import org.glassfish.jersey.message.GZipEncoder;
 import org.glassfish.jersey.media.multipart.FormDataMultiPart;
 import org.glassfish.jersey.media.multipart.file.FileDataBodyPart;
+import org.springframework.messaging.converter.CompositeMessageConverter;
 import org.springframework.messaging.converter.MappingJackson2MessageConverter;
 import org.springframework.messaging.simp.stomp.*;
 import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.util.MimeType;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketHttpHeaders;
 import org.springframework.web.socket.messaging.WebSocketStompClient;
 
 import java.io.File;
@@ -46,10 +63,16 @@ import java.util.concurrent.ExecutionException;
 import java.util.function.Consumer;
 
 import static jakarta.ws.rs.core.MediaType.APPLICATION_JSON;
+import static jakarta.ws.rs.core.MediaType.APPLICATION_OCTET_STREAM;
 import static jakarta.ws.rs.core.MediaType.MULTIPART_FORM_DATA_TYPE;
 
 public class ServerUtils {
 
+	/**
+	 * Responses are read as CBOR, which is smaller and faster to parse, or as JSON from servers that do not offer it
+	 */
+	static final String ACCEPT_CBOR_OR_JSON = CborProvider.APPLICATION_CBOR + ", " + APPLICATION_JSON + ";q=0.9";
+
 	private final Config config;
 	private List<Collection> collections;
 	private DialogStyler dialogStyler;
@@ -127,10 +150,28 @@ public class ServerUtils {
 		MappingJackson2MessageConverter messageConverter = new MappingJackson2MessageConverter();
 		messageConverter.setObjectMapper(objectMapper);
 
-		stompClient.setMessageConverter(messageConverter);
+		// frames the server broadcasts in CBOR are read by their content-type, everything sent stays JSON
+		MappingJackson2MessageConverter cborConverter =
+				new MappingJackson2MessageConverter(MimeType.valueOf(CborProvider.APPLICATION_CBOR));
+		cborConverter.setObjectMapper(CborProvider.cborMapper());
+		cborConverter.setStrictContentTypeMatch(true);
+
+		stompClient.setMessageConverter(new CompositeMessageConverter(List.of(messageConverter, cborConverter)));
 		return stompClient;
 	}
 
+	/**
+	 * @return The configuration for a REST client that can read CBOR responses
+	 * and asks for them to be compressed with gzip or deflate
+	 */
+	private static ClientConfig clientConfig() {
+		return new ClientConfig()
+				.register(CborProvider.class)
+				.register(GZipEncoder.class)
+				.register(DeflateEncoder.class)
+				.register(EncodingFilter.class);
+	}
+
 	/**
 	 * Establish a WebSocket connection to the specified URL.
 	 *
@@ -140,7 +181,10 @@ public class ServerUtils {
 	public StompSession connect(String url) {
 		try {
 			WebSocketStompClient stompClient = getWebSocketStompClient(new StandardWebSocketClient());
-			return stompClient.connectAsync(url, new StompSessionHandlerAdapter() {}).get();
+			// ask for compressed frames, note bodies are text that deflate shrinks several times
+			WebSocketHttpHeaders headers = new WebSocketHttpHeaders();
+			headers.setSecWebSocketExtensions(List.of(new WebSocketExtension("permessage-deflate")));
+			return stompClient.connectAsync(url, headers, new StompSessionHandlerAdapter() {}).get();
 		} catch (InterruptedException e) {
 			Thread.currentThread().interrupt();
 			throw new IllegalStateException("Thread interrupted while connecting to WebSocket: " + url, e);
@@ -232,11 +276,22 @@ public class ServerUtils {
 		addSubscription(serverURL, subscriptionType, subscription);
 	}
 
+	/**
+	 * Stops a subscription made with {@link #registerForTopic}
+	 * @param serverURL The server of the subscription
+	 * @param subscriptionType The type it was registered with
+	 */
+	public void unregisterFromTopic(String serverURL, String subscriptionType) {
+		removeSubscription(serverURL, subscriptionType);
+	}
+
 	public void unregisterNoteSubscriptions(String serverURL) {
 		removeSubscription(serverURL, "embeddedFiles");
 		removeSubscription(serverURL, "embeddedFilesDelete");
 		removeSubscription(serverURL, "embeddedFilesRename");
 		removeSubscription(serverURL, "noteBody");
+		removeSubscription(serverURL, "notePatch");
+		removeSubscription(serverURL, "noteOps");
 	}
 
 	public <T> void registerForMessages(String dest, Class<T> type, Consumer<T> consumer, String url) {
@@ -271,9 +326,9 @@ public class ServerUtils {
 
 	public Note addNote(Note note) {
 		if (!isServerAvailableWithAlert(note.collection.serverURL)) return null;
-		return ClientBuilder.newClient(new ClientConfig())
+		return ClientBuilder.newClient(clientConfig())
 				.target(note.collection.serverURL).path("api/notes")
-				.request(APPLICATION_JSON)
+				.request(ACCEPT_CBOR_OR_JSON)
 				.post(Entity.entity(note, APPLICATION_JSON), Note.class);
 	}
 
@@ -308,74 +363,203 @@ public class ServerUtils {
 		return allNotes;
 	}
 
+	/**
+	 * Saves a note, unless it was changed on the server since this client's copy was loaded
+	 * @param note The note to save
+	 * @return The saved note, with its new version
+	 * @throws NoteConflictException if the server has a newer version of the note
+	 */
 	public Note updateNote(Note note) {
 		if (!isServerAvailableWithAlert(note.collection.serverURL)) return null;
-		return ClientBuilder.newClient(new ClientConfig())
+		try {
+			return ClientBuilder.newClient(clientConfig())
+					.target(note.collection.serverURL).path("api/notes/" + note.id)
+					.request(ACCEPT_CBOR_OR_JSON)
+					.header(HttpHeaders.IF_MATCH, "\"" + note.version + "\"")
+					.put(Entity.entity(note, APPLICATION_JSON), Note.class);
+		} catch (ClientErrorException e) {
+			throw conflictOrRethrow(e);
+		}
+	}
+
+	/**
+	 * Sends only the changed part of a note body
+	 * @param note The note the patch belongs to
+	 * @param patch The edits, made against the version of the note this client has
+	 * @return The applied patch, with the new version of the note
+	 * @throws NoteConflictException if the server has a newer version of the note
+	 */
+	public NotePatch patchNote(Note note, NotePatch patch) {
+		if (!isServerAvailableWithAlert(note.collection.serverURL)) return null;
+		try {
+			return ClientBuilder.newClient(clientConfig())
+					.target(note.collection.serverURL).path("api/notes/" + note.id + "/patches")
+					.request(ACCEPT_CBOR_OR_JSON)
+					.post(Entity.entity(patch, APPLICATION_JSON), NotePatch.class);
+		} catch (ClientErrorException e) {
+			throw conflictOrRethrow(e);
+		}
+	}
+
+	private RuntimeException conflictOrRethrow(ClientErrorException e) {
+		Response response = e.getResponse();
+		// a version conflict carries the server copy and its ETag, a duplicate title does not
+		if (response.getStatus() == Response.Status.CONFLICT.getStatusCode()
+				&& response.getHeaderString(HttpHeaders.ETAG) != null) {
+			return new NoteConflictException(response.readEntity(Note.class));
+		}
+		return e;
+	}
+
+	public Note getNote(Note note) {
+		if (!isServerAvailableWithAlert(note.collection.serverURL)) return null;
+		return ClientBuilder.newClient(clientConfig())
 				.target(note.collection.serverURL).path("api/notes/" + note.id)
-				.request(APPLICATION_JSON)
-				.put(Entity.entity(note, APPLICATION_JSON), Note.class);
+				.request(ACCEPT_CBOR_OR_JSON)
+				.get(Note.class);
+	}
+
+	/**
+	 * Gets the text of a note as it is being edited together, with the revision to send operations against
+	 * @param note The note
+	 * @return The current text and revision, or null if the server can not be reached
+	 */
+	public DocumentSnapshot getDocument(Note note) {
+		if (!isServerAvailable(note.collection.serverURL)) return null;
+		return ClientBuilder.newClient(clientConfig())
+				.target(note.collection.serverURL).path("api/notes/" + note.id + "/document")
+				.request(ACCEPT_CBOR_OR_JSON)
+				.get(DocumentSnapshot.class);
 	}
 
+	/**
+	 * Deletes a note; the server deletes its files with it
+	 * @param note The note to delete
+	 */
 	public void deleteNote(Note note) {
 		if(!isServerAvailableWithAlert(note.collection.serverURL)) return;
 
-		List<EmbeddedFile> embeddedFiles = getFilesByNote(note);
-		for (EmbeddedFile e : embeddedFiles) {
-			deleteFile(note, e);
-		}
-		ClientBuilder.newClient(new ClientConfig())
+		ClientBuilder.newClient(clientConfig())
 				.target(note.collection.serverURL).path("api/notes/" + note.id)
-				.request(APPLICATION_JSON)
+				.request(ACCEPT_CBOR_OR_JSON)
 				.delete();
 	}
 
+	/**
+	 * Saves several notes of one server with a single request.
+	 * Notes that were changed on the server since they were loaded are not saved but returned as conflicts.
+	 * @param serverURL The server the notes are on
+	 * @param notes The notes to save, each with the version it was edited at
+	 * @return The saved notes, the conflicts and the notes that no longer exist, or null if the server can not be reached
+	 */
+	public BatchUpdateResult batchUpdateNotes(String serverURL, List<Note> notes) {
+		if (!isServerAvailableWithAlert(serverURL)) return null;
+		return ClientBuilder.newClient(clientConfig())
+				.target(serverURL).path("api/notes:batchUpdate")
+				.request(ACCEPT_CBOR_OR_JSON)
+				.post(Entity.entity(notes, APPLICATION_JSON), BatchUpdateResult.class);
+	}
+
+	/**
+	 * Deletes several notes of one server, with their files, in a single request
+	 * @param serverURL The server the notes are on
+	 * @param noteIds The ids of the notes to delete
+	 */
+	public void batchDeleteNotes(String serverURL, List<UUID> noteIds) {
+		if (!isServerAvailableWithAlert(serverURL)) return;
+		ClientBuilder.newClient(clientConfig())
+				.target(serverURL).path("api/notes:batchDelete")
+				.request(ACCEPT_CBOR_OR_JSON)
+				.post(Entity.entity(noteIds, APPLICATION_JSON));
+	}
+
+	/**
+	 * Moves several notes to another collection on the same server in a single request
+	 * @param destination The collection to move the notes to
+	 * @param notes The notes to move, all on the server of the destination
+	 * @return The moved notes, with their new versions
+	 */
+	public List<Note> batchMoveNotes(Collection destination, List<Note> notes) {
+		if (!isServerAvailableWithAlert(destination.serverURL)) return null;
+		BatchMove move = new BatchMove(notes.stream().map(n -> n.id).toList(), destination.id);
+		return ClientBuilder.newClient(clientConfig())
+				.target(destination.serverURL).path("api/notes:batchMove")
+				.request(ACCEPT_CBOR_OR_JSON)
+				.post(Entity.entity(move, APPLICATION_JSON), new GenericType<List<Note>>() {});
+	}
+
 	public List<Note> getNotesByCollection(Collection collection) {
 		if (!isServerAvailableWithAlert(collection.serverURL)) return null;
-		return ClientBuilder.newClient(new ClientConfig())
+		return ClientBuilder.newClient(clientConfig())
 				.target(collection.serverURL)
 				.path("/api/collection/{title}")
 				.resolveTemplate("title", collection.title)
-				.request(APPLICATION_JSON)
+				.request(ACCEPT_CBOR_OR_JSON)
 				.get(new GenericType<List<Note>>() {});
 	}
 
+	/**
+	 * Gets the changes made on a server since the given point of its change feed
+	 * @param serverURL The server to ask
+	 * @param since The latestSeq of the previous call
+	 * @return One page of changes
+	 */
+	public ChangeFeed getChanges(String serverURL, long since) {
+		return ClientBuilder.newClient(clientConfig())
+				.target(serverURL)
+				.path("api/changes")
+				.queryParam("since", since)
+				.request(ACCEPT_CBOR_OR_JSON)
+				.get(ChangeFeed.class);
+	}
+
+	/**
+	 * @param serverURL The server to ask
+	 * @return The sequence number of the latest change on the server
+	 */
+	public long getLatestChange(String serverURL) {
+		return ClientBuilder.newClient(clientConfig())
+				.target(serverURL)
+				.path("api/changes/latest")
+				.request(ACCEPT_CBOR_OR_JSON)
+				.get(Long.class);
+	}
+
 	public List<Collection> getCollectionsOnServer(String serverURL) {
 		if (!isServerAvailableWithAlert(serverURL)) return null;
-		return ClientBuilder.newClient(new ClientConfig())
+		return ClientBuilder.newClient(clientConfig())
 				.target(serverURL).path("/api/collection/")
-				.request(APPLICATION_JSON)
+				.request(ACCEPT_CBOR_OR_JSON)
 				.get(new GenericType<List<Collection>>() {});
 	}
 
 	public Collection addCollection(Collection collection) {
 		if(!isServerAvailableWithAlert(collection.serverURL)) return null;
 		if (!collection.serverURL.endsWith("/")) collection.serverURL = collection.serverURL + "/";
-		return ClientBuilder.newClient(new ClientConfig())
+		return ClientBuilder.newClient(clientConfig())
 				.target(collection.serverURL).path("/api/collection")
-				.request(APPLICATION_JSON)
+				.request(ACCEPT_CBOR_OR_JSON)
 				.post(Entity.entity(collection, APPLICATION_JSON), Collection.class);
 	}
 
 
 	public Collection updateCollection(Collection collection) {
 		if (!isServerAvailableWithAlert(collection.serverURL)) return null;
-		return ClientBuilder.newClient(new ClientConfig())
+		return ClientBuilder.newClient(clientConfig())
 				.target(collection.serverURL).path("/api/collection/" + collection.id)
-				.request(APPLICATION_JSON)
+				.request(ACCEPT_CBOR_OR_JSON)
 				.put(Entity.entity(collection, APPLICATION_JSON), Collection.class);
 	}
 
+	/**
+	 * Deletes a collection; the server deletes its notes and their files with it
+	 * @param collection The collection to delete
+	 */
 	public void deleteCollection(Collection collection) {
 		if (!isServerAvailableWithAlert(collection.serverURL)) return;
-
-		List<Note> notesInCollection = getNotesByCollection(collection);
-		for (Note note : notesInCollection) {
-			deleteNote(note);
-		}
-
-		ClientBuilder.newClient(new ClientConfig())
+		ClientBuilder.newClient(clientConfig())
 				.target(collection.serverURL).path("/api/collection/" + collection.id)
-				.request(APPLICATION_JSON)
+				.request(ACCEPT_CBOR_OR_JSON)
 				.delete();
 	}
 
@@ -385,42 +569,59 @@ public class ServerUtils {
 		FormDataMultiPart multiPart = new FormDataMultiPart();
 		multiPart.bodyPart(new FileDataBodyPart("file", file));
 
-		return ClientBuilder.newClient(new ClientConfig())
+		// Send the file in chunks instead of buffering the whole request to compute its length
+		ClientConfig clientConfig = clientConfig()
+				.property(ClientProperties.REQUEST_ENTITY_PROCESSING, RequestEntityProcessing.CHUNKED);
+		return ClientBuilder.newClient(clientConfig)
 				.target(note.collection.serverURL).path("/api/notes/" + note.id + "/files")
-				.request(APPLICATION_JSON)
+				.request(ACCEPT_CBOR_OR_JSON)
 				.post(Entity.entity(multiPart, MULTIPART_FORM_DATA_TYPE), EmbeddedFile.class);
 	}
 
 	public void deleteFile(Note note, EmbeddedFile file) {
 		if (!isServerAvailableWithAlert(note.collection.serverURL)) return;
-		ClientBuilder.newClient(new ClientConfig())
+		ClientBuilder.newClient(clientConfig())
 				.target(note.collection.serverURL).path("api/notes/" + note.id + "/files/" + file.getId())
-				.request(APPLICATION_JSON)
+				.request(ACCEPT_CBOR_OR_JSON)
 				.delete();
 	}
 
 	public EmbeddedFile renameFile(Note note, EmbeddedFile file, String newFileName) {
 		if (!isServerAvailableWithAlert(note.collection.serverURL)) return null;
-		return ClientBuilder.newClient(new ClientConfig())
+		return ClientBuilder.newClient(clientConfig())
 				.target(note.collection.serverURL).path("api/notes/" + note.id + "/files/" + file.getId() + "/rename")
 				.queryParam("newFileName", newFileName)
-				.request(APPLICATION_JSON)
+				.request(ACCEPT_CBOR_OR_JSON)
 				.put(Entity.entity(file, APPLICATION_JSON), EmbeddedFile.class);
 	}
 
 	public EmbeddedFile getFileById(Note note, UUID fileId) {
 		if (!isServerAvailableWithAlert(note.collection.serverURL)) return null;
-		return ClientBuilder.newClient(new ClientConfig())
+		return ClientBuilder.newClient(clientConfig())
 				.target(note.collection.serverURL).path("api/notes/" + note.id + "/files/" + fileId + "/getFile")
-				.request(APPLICATION_JSON)
+				.request(ACCEPT_CBOR_OR_JSON)
 				.get(new GenericType<EmbeddedFile>() {});
 	}
 
+	/**
+	 * File listings only contain metadata, so the content is downloaded separately when needed
+	 * @param note The note the file is embedded in
+	 * @param file The file to download
+	 * @return The content of the file
+	 */
+	public byte[] getFileContent(Note note, EmbeddedFile file) {
+		if (!isServerAvailableWithAlert(note.collection.serverURL)) return null;
+		return ClientBuilder.newClient(clientConfig())
+				.target(note.collection.serverURL).path("api/notes/" + note.id + "/files/" + file.getId() + "/content")
+				.request(APPLICATION_OCTET_STREAM)
+				.get(byte[].class);
+	}
+
 	public List<EmbeddedFile> getFilesByNote(Note note) {
 		if (!isServerAvailableWithAlert(note.collection.serverURL)) return null;
-		List<EmbeddedFile> result = ClientBuilder.newClient(new ClientConfig())
+		List<EmbeddedFile> result = ClientBuilder.newClient(clientConfig())
 				.target(note.collection.serverURL).path("/api/notes/" + note.id + "/files")
-				.request(APPLICATION_JSON)
+				.request(ACCEPT_CBOR_OR_JSON)
 				.get(new GenericType<List<EmbeddedFile>>() {});
 		if (result == null)
 			result = new ArrayList<>();
@@ -429,9 +630,9 @@ public class ServerUtils {
 
 	public UUID getCollectionID(Collection collection) {
 		if (!isServerAvailableWithAlert(collection.serverURL)) return null;
-		Collection fetchedCollection = ClientBuilder.newClient(new ClientConfig())
+		Collection fetchedCollection = ClientBuilder.newClient(clientConfig())
 				.target(collection.serverURL).path("/api/collection/title/" + collection.title)
-				.request(APPLICATION_JSON)
+				.request(ACCEPT_CBOR_OR_JSON)
 				.get(Collection.class);
 		return fetchedCollection.id;
 	}
@@ -454,9 +655,9 @@ public class ServerUtils {
 		if (!isValidUrl(serverUrl)) return false;
 		try {
 			if (serverUrl == null);
-			ClientBuilder.newClient(new ClientConfig()) //
+			ClientBuilder.newClient(clientConfig()) //
 					.target(serverUrl) //
-					.request(APPLICATION_JSON) //
+					.request(ACCEPT_CBOR_OR_JSON) //
 					.get();
 			return true;
 		} catch (ProcessingException e) {
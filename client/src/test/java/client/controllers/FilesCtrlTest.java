@@ -85,16 +85,16 @@ public class FilesCtrlTest {
 
         EmbeddedFile embeddedFile = new EmbeddedFile(sampleNote, "valid.txt", "text/plain", new byte[]{});
         embeddedFile.setId(UUID.randomUUID());
-        when(serverUtils.addFile(eq(sampleNote), eq(mockFile))).thenReturn(embeddedFile);
+        // the server announces the upload, which adds the file to the note
+        doAnswer(invocationOnMock -> {
+            sampleNote.getEmbeddedFiles().add(embeddedFile);
+            return embeddedFile;
+        }).when(serverUtils).addFile(eq(sampleNote), eq(mockFile));
 
         filesCtrl.setFileChooser(mockFileChooser);
 
         FilesCtrl filesCtrlSpy = spy(filesCtrl);
         doNothing().when(filesCtrlSpy).updateView(any());
-        doAnswer(invocationOnMock -> {
-            sampleNote.getEmbeddedFiles().add(embeddedFile);
-            return null;
-        }).when(serverUtils).send(any(), any(), any());
 
         EmbeddedFile result = filesCtrlSpy.addFile(sampleNote);
 
@@ -219,7 +219,6 @@ public class FilesCtrlTest {
 
         // Mock serverUtils methods
         doNothing().when(serverUtils).deleteFile(eq(sampleNote), eq(sampleFile2));
-        doNothing().when(serverUtils).send(any(), any(), any());
 
         // Spy on the FilesCtrl to ensure updates work properly
         FilesCtrl filesCtrlSpy = spy(filesCtrl);
@@ -235,7 +234,7 @@ public class FilesCtrlTest {
 
         // Verify interactions with serverUtils
         verify(serverUtils, times(1)).deleteFile(eq(sampleNote), eq(sampleFile2));
-        verify(serverUtils, times(1)).send(eq("/app/notes/" + sampleNote.getId() + "/files/deleteFile"), eq(sampleFile2.getId()), eq(sampleNote.collection.serverURL));
+        verify(serverUtils, never()).send(any(), any(), any());
     }
 
     @Test
@@ -262,15 +261,15 @@ public class FilesCtrlTest {
         when(dialogStyler.createStyledTextInputDialog(any(), any(), any())).thenReturn(mockDialog);
 
         EmbeddedFile renamedFile = new EmbeddedFile(sampleNote, "newfile.txt", "text/plain", new byte[]{});
-        when(serverUtils.renameFile(eq(sampleNote), eq(sampleFile), eq("newfile.txt"))).thenReturn(renamedFile);
 
         FilesCtrl filesCtrlSpy = spy(filesCtrl);
         doNothing().when(filesCtrlSpy).persistFileName(any(), any(), any());
         doNothing().when(filesCtrlSpy).updateView(any());
+        // the server announces the rename, which renames the file of the note
         doAnswer(invocationOnMock -> {
             filesCtrlSpy.updateViewAfterRename(sampleNote, new Object[]{sampleFile.getId(), "newfile.txt"});
-            return null;
-        }).when(serverUtils).send(any(), any(), any());
+            return renamedFile;
+        }).when(serverUtils).renameFile(eq(sampleNote), eq(sampleFile), eq("newfile.txt"));
 
         filesCtrlSpy.renameFile(sampleNote, sampleFile);
 
@@ -1,9 +1,11 @@
 package client.utils;
 
 import client.ui.DialogStyler;
+import commons.BatchUpdateResult;
 import commons.Collection;
 import commons.EmbeddedFile;
 import commons.Note;
+import commons.ot.DocumentSnapshot;
 import jakarta.ws.rs.ProcessingException;
 import jakarta.ws.rs.client.Client;
 import jakarta.ws.rs.client.ClientBuilder;
@@ -15,6 +17,7 @@ import javafx.scene.control.Alert;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockedStatic;
 import org.mockito.Mockito;
@@ -22,6 +25,7 @@ import org.mockito.MockitoAnnotations;
 import org.springframework.messaging.simp.stomp.StompFrameHandler;
 import org.springframework.messaging.simp.stomp.StompSession;
 import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.web.socket.WebSocketHttpHeaders;
 import org.springframework.web.socket.client.standard.StandardWebSocketClient;
 import org.springframework.web.socket.messaging.WebSocketStompClient;
 
@@ -31,7 +35,6 @@ import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 
-import static jakarta.ws.rs.core.MediaType.APPLICATION_JSON;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
@@ -79,6 +82,7 @@ class ServerUtilsTest {
         when(targetMock.path(anyString())).thenReturn(targetMock);
         when(targetMock.queryParam(anyString(), any())).thenReturn(targetMock);
         when(targetMock.request(anyString())).thenReturn(builderMock);
+        when(builderMock.header(anyString(), any())).thenReturn(builderMock);
         when(targetMock.resolveTemplate(anyString(), any())).thenReturn(targetMock);
     }
 
@@ -124,7 +128,7 @@ class ServerUtilsTest {
         when(clientMock.target("http://mock-server-1.com")).thenReturn(targetMock1);
         when(targetMock1.path("/api/collection/{title}")).thenReturn(pathMock1);
         when(pathMock1.resolveTemplate("title", "Collection Title 1")).thenReturn(resolvedMock1);
-        when(resolvedMock1.request(APPLICATION_JSON)).thenReturn(builderMock1);
+        when(resolvedMock1.request(ServerUtils.ACCEPT_CBOR_OR_JSON)).thenReturn(builderMock1);
         when(builderMock1.get(any(GenericType.class))).thenReturn(notes1);
 
         // mock second server chain
@@ -136,7 +140,7 @@ class ServerUtilsTest {
         when(clientMock.target("http://mock-server-2.com")).thenReturn(targetMock2);
         when(targetMock2.path("/api/collection/{title}")).thenReturn(pathMock2);
         when(pathMock2.resolveTemplate("title", "Collection Title 2")).thenReturn(resolvedMock2);
-        when(resolvedMock2.request(APPLICATION_JSON)).thenReturn(builderMock2);
+        when(resolvedMock2.request(ServerUtils.ACCEPT_CBOR_OR_JSON)).thenReturn(builderMock2);
         when(builderMock2.get(any(GenericType.class))).thenReturn(notes2);
 
         // is server available to return true
@@ -182,6 +186,8 @@ class ServerUtilsTest {
         serverUtils.deleteNote(note);
 
         verify(builderMock).delete();
+        // the server deletes the files with the note
+        verify(targetMock, never()).path(contains("/files"));
     }
 
     @Test
@@ -197,7 +203,7 @@ class ServerUtilsTest {
         when(clientMock.target("http://mock-server.com")).thenReturn(targetMock);
         when(targetMock.path("/api/collection/{title}")).thenReturn(pathMock);
         when(pathMock.resolveTemplate("title", "Collection Title")).thenReturn(resolvedMock);
-        when(resolvedMock.request(APPLICATION_JSON)).thenReturn(builderMock);
+        when(resolvedMock.request(ServerUtils.ACCEPT_CBOR_OR_JSON)).thenReturn(builderMock);
         when(builderMock.get(any(GenericType.class))).thenReturn(notes);
 
         ServerUtils spyServerUtils = spy(serverUtils);
@@ -261,15 +267,29 @@ class ServerUtilsTest {
         ServerUtils spyServerUtils = spy(serverUtils);
         doReturn(true).when(spyServerUtils).isServerAvailableWithAlert(anyString());
 
-        List<Note> mockNotes = new ArrayList<>();
-        Note mockNote = new Note("note", "", collection);
-        mockNote.id = UUID.randomUUID();
-        mockNotes.add(mockNote);
-        doReturn(mockNotes).when(spyServerUtils).getNotesByCollection(collection);
-
         spyServerUtils.deleteCollection(collection);
 
-        verify(builderMock, times(2)).delete();
+        verify(builderMock).delete();
+        verify(spyServerUtils, never()).getNotesByCollection(any());
+    }
+
+    @Test
+    void batchUpdateNotes() {
+        Collection collection = new Collection("Collection Title", "http://mock-server.com");
+        Note note = new Note("Note", "Body", collection);
+        note.id = UUID.randomUUID();
+        BatchUpdateResult expected = new BatchUpdateResult(List.of(note), List.of(), List.of());
+
+        when(targetMock.path("api/notes:batchUpdate")).thenReturn(targetMock);
+        when(builderMock.post(any(), eq(BatchUpdateResult.class))).thenReturn(expected);
+
+        ServerUtils spyServerUtils = spy(serverUtils);
+        doReturn(true).when(spyServerUtils).isServerAvailableWithAlert(anyString());
+
+        BatchUpdateResult result = spyServerUtils.batchUpdateNotes("http://mock-server.com", List.of(note));
+
+        assertEquals(expected, result);
+        verify(targetMock).path("api/notes:batchUpdate");
     }
 
     @Test
@@ -319,6 +339,23 @@ class ServerUtilsTest {
         assertEquals(file, e);
     }
 
+    @Test
+    void getDocument() {
+        Collection collection = new Collection("Collection Title", "http://mock-server.com");
+        Note note = new Note("Note", "Body", collection);
+        note.id = UUID.randomUUID();
+        DocumentSnapshot snapshot = new DocumentSnapshot(note.id, 3, "Body");
+
+        when(clientMock.target("http://mock-server.com")).thenReturn(targetMock);
+        when(targetMock.path("api/notes/" + note.id + "/document")).thenReturn(targetMock);
+        when(builderMock.get(DocumentSnapshot.class)).thenReturn(snapshot);
+
+        ServerUtils spyServerUtils = spy(serverUtils);
+        doReturn(true).when(spyServerUtils).isServerAvailable(anyString());
+
+        assertEquals(snapshot, spyServerUtils.getDocument(note));
+    }
+
     @Test
     void deleteFile() {
         Collection collection = new Collection("Collection Title", "http://mock-server.com");
@@ -391,7 +428,7 @@ class ServerUtilsTest {
     @Test
     void isServerAvailable_Success() {
         when(clientMock.target("http://test.com")).thenReturn(targetMock);
-        when(targetMock.request(APPLICATION_JSON)).thenReturn(builderMock);
+        when(targetMock.request(ServerUtils.ACCEPT_CBOR_OR_JSON)).thenReturn(builderMock);
         when(builderMock.get()).thenReturn(responseMock);
 
         assertTrue(serverUtils.isServerAvailable("http://test.com"));
@@ -400,7 +437,7 @@ class ServerUtilsTest {
     @Test
     void isServerAvailable_ConnectionFails() {
         when(clientMock.target("http://test.com")).thenReturn(targetMock);
-        when(targetMock.request(APPLICATION_JSON)).thenReturn(builderMock);
+        when(targetMock.request(ServerUtils.ACCEPT_CBOR_OR_JSON)).thenReturn(builderMock);
         when(builderMock.get()).thenThrow(new ProcessingException(new ConnectException()));
 
         assertFalse(serverUtils.isServerAvailable("http://test.com"));
@@ -569,7 +606,8 @@ class ServerUtilsTest {
         // Mock the asynchronous connection behavior
         String websocketUrl = "ws://mock-server.com/websocket";
         CompletableFuture<StompSession> futureSession = CompletableFuture.completedFuture(stompSessionMock);
-        when(stompClientMock.connectAsync(eq(websocketUrl), any(StompSessionHandlerAdapter.class))).thenReturn(futureSession);
+        when(stompClientMock.connectAsync(eq(websocketUrl), any(WebSocketHttpHeaders.class), any(StompSessionHandlerAdapter.class)))
+                .thenReturn(futureSession);
 
         // Invoke the connect method
         StompSession result = spyServerUtils.connect(websocketUrl);
@@ -579,7 +617,10 @@ class ServerUtilsTest {
         assertEquals(stompSessionMock, result, "The returned session should match the mock session");
 
         // Verify interactions with the mocked WebSocketStompClient
-        verify(stompClientMock).connectAsync(eq(websocketUrl), any(StompSessionHandlerAdapter.class));
+        ArgumentCaptor<WebSocketHttpHeaders> headers = ArgumentCaptor.forClass(WebSocketHttpHeaders.class);
+        verify(stompClientMock).connectAsync(eq(websocketUrl), headers.capture(), any(StompSessionHandlerAdapter.class));
+        assertEquals("permessage-deflate", headers.getValue().getSecWebSocketExtensions().getFirst().getName(),
+                "Compressed frames should be requested");
     }
 
 
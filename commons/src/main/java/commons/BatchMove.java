@@ -0,0 +1,18 @@
+package commons;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Moves several notes of one server to another collection on that server
+ * @param noteIds The notes to move; null and null elements are kept so the server can reject the request
+ * @param collectionId The collection to move them to
+ */
+public record BatchMove(List<UUID> noteIds, UUID collectionId) {
+
+    public BatchMove {
+        noteIds = noteIds == null ? null : Collections.unmodifiableList(new ArrayList<>(noteIds));
+    }
+}
@@ -0,0 +1,20 @@
+package commons;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The outcome of saving several notes with one request.
+ * Every note is saved only if it is still at the version the client sent, like a single update with If-Match.
+ * @param updated The saved notes, with their new versions
+ * @param conflicts The current server copies of the notes that were changed by somebody else
+ * @param missing The ids of the notes that do not exist anymore
+ */
+public record BatchUpdateResult(List<Note> updated, List<Note> conflicts, List<UUID> missing) {
+
+    public BatchUpdateResult {
+        updated = updated == null ? List.of() : List.copyOf(updated);
+        conflicts = conflicts == null ? List.of() : List.copyOf(conflicts);
+        missing = missing == null ? List.of() : List.copyOf(missing);
+    }
+}
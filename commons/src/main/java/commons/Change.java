@@ -0,0 +1,25 @@
+package commons;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.UUID;
+
+/**
+ * One entry of the server's change feed.
+ * Exactly one of note, collection and file is filled in for an update,
+ * and none of them for a deletion.
+ * @param seq The position of the change in the feed
+ * @param kind What kind of entity changed
+ * @param id The id of the entity that changed
+ * @param parentId The collection of a note, or the note of a file
+ * @param deleted true if the entity was deleted
+ * @param note The current state of the note
+ * @param collection The current state of the collection
+ * @param file The current metadata of the file
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record Change(long seq, Kind kind, UUID id, UUID parentId, boolean deleted,
+                     Note note, Collection collection, EmbeddedFile file) {
+
+    public enum Kind { NOTE, COLLECTION, FILE }
+}
@@ -0,0 +1,12 @@
+package commons;
+
+import java.util.List;
+
+/**
+ * A page of the server's change feed
+ * @param changes The changes, oldest first
+ * @param latestSeq The sequence number to ask for the next page with
+ * @param hasMore true if there are more changes after this page
+ */
+public record ChangeFeed(List<Change> changes, long latestSeq, boolean hasMore) {
+}
@@ -1,11 +1,12 @@
 package commons;
 
 import com.fasterxml.jackson.annotation.JsonIdentityInfo;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.ObjectIdGenerators;
 import jakarta.persistence.*;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
-import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ReflectionToStringBuilder;
 
 import java.util.HashSet;
 import java.util.Set;
@@ -31,8 +32,11 @@ public class Collection {
     @Column(nullable = false)
     public String serverURL;
 
-//    @OneToMany(mappedBy = "collection",cascade = CascadeType.ALL, orphanRemoval = true, fetch = FetchType.EAGER)
-    @OneToMany(mappedBy = "collection", fetch = FetchType.EAGER)
+    /**
+     * Loaded lazily and never serialized: notes are fetched per collection through the note endpoints.
+     */
+    @OneToMany(mappedBy = "collection", fetch = FetchType.LAZY)
+    @JsonIgnore
     public Set<Note> notes;
 
     @SuppressWarnings("unused")
@@ -47,17 +51,17 @@ public class Collection {
 
     @Override
     public boolean equals(Object obj) {
-        return EqualsBuilder.reflectionEquals(this, obj);
+        return EqualsBuilder.reflectionEquals(this, obj, "notes");
     }
 
     @Override
     public int hashCode() {
-        return HashCodeBuilder.reflectionHashCode(this);
+        return HashCodeBuilder.reflectionHashCode(this, "notes");
     }
 
     @Override
     public String toString() {
-        return ToStringBuilder.reflectionToString(this, MULTI_LINE_STYLE);
+        return new ReflectionToStringBuilder(this, MULTI_LINE_STYLE).setExcludeFieldNames("notes").toString();
     }
 
 }
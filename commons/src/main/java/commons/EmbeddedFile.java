@@ -1,6 +1,7 @@
 package commons;
 
 import com.fasterxml.jackson.annotation.JsonBackReference;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import jakarta.persistence.*;
 
 import java.io.File;
@@ -9,6 +10,10 @@ import java.util.Objects;
 import java.util.UUID;
 
 @Entity
+@Table(indexes = {
+        @Index(name = "idx_embedded_file_note", columnList = "note_id"),
+        @Index(name = "idx_embedded_file_hash", columnList = "content_hash")
+})
 public class EmbeddedFile {
 
     @Id
@@ -26,14 +31,29 @@ public class EmbeddedFile {
     @Column(nullable = false)
     private String fileType;
 
-    @Lob
-    @Column(nullable = false)
+    // the default lets the column be added to tables that already hold files
+    @Column(nullable = false, columnDefinition = "bigint default 0")
+    private long fileSize;
+
+    /**
+     * SHA-256 of the content, used as the key into the server's blob store.
+     */
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
+    /**
+     * The bytes themselves live in the blob store, not in the database.
+     * This is only filled in when the content is sent along with the metadata.
+     */
+    @Transient
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     private byte[] fileContent;
 
     @Column(nullable = false)
     private LocalDateTime uploadedAt;
 
-    @Lob
+    @Transient
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     private File file;
 
     public EmbeddedFile() {}
@@ -43,17 +63,47 @@ public class EmbeddedFile {
         this.fileName = fileName;
         this.fileType = fileType;
         this.fileContent = fileContent;
+        this.fileSize = fileContent == null ? 0 : fileContent.length;
         this.uploadedAt = LocalDateTime.now();
         this.file = file;
     }
 
     public EmbeddedFile(Note note, String fileName, String fileType, byte[] fileContent) {
+        this(note, fileName, fileType, fileContent, null);
+    }
+
+    /**
+     * Creates the metadata of a file whose content is kept in a blob store
+     * @param note The note the file is embedded in
+     * @param fileName Name of the file
+     * @param fileType Content type of the file
+     * @param fileSize Size of the content in bytes
+     * @param contentHash SHA-256 hex digest of the content
+     */
+    public EmbeddedFile(Note note, String fileName, String fileType, long fileSize, String contentHash) {
         this.note = note;
         this.fileName = fileName;
         this.fileType = fileType;
-        this.fileContent = fileContent;
+        this.fileSize = fileSize;
+        this.contentHash = contentHash;
         this.uploadedAt = LocalDateTime.now();
-        this.file = null;
+    }
+
+    /**
+     * Copies the metadata of a file, and its content if it is carried along
+     * @param other The file to copy
+     * @param note The note the copy is embedded in
+     */
+    public EmbeddedFile(EmbeddedFile other, Note note) {
+        this.id = other.id;
+        this.note = note;
+        this.fileName = other.fileName;
+        this.fileType = other.fileType;
+        this.fileSize = other.fileSize;
+        this.contentHash = other.contentHash;
+        this.fileContent = other.fileContent;
+        this.uploadedAt = other.uploadedAt;
+        this.file = other.file;
     }
 
     // Getters and Setters
@@ -87,6 +137,17 @@ public class EmbeddedFile {
 
     public void setFileContent(byte[] fileContent) {
         this.fileContent = fileContent;
+        if (fileContent != null) {
+            this.fileSize = fileContent.length;
+        }
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    public String getContentHash() {
+        return contentHash;
     }
 
     public LocalDateTime getUploadedAt() {
@@ -6,7 +6,7 @@ import com.fasterxml.jackson.annotation.ObjectIdGenerators;
 import jakarta.persistence.*;
 
 import org.apache.commons.lang3.builder.HashCodeBuilder;
-import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ReflectionToStringBuilder;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -16,6 +16,10 @@ import static org.apache.commons.lang3.builder.ToStringStyle.MULTI_LINE_STYLE;
 
 
 @Entity
+@Table(
+        uniqueConstraints = @UniqueConstraint(name = "uk_note_collection_title", columnNames = {"collection_id", "title"}),
+        indexes = @Index(name = "idx_note_collection", columnList = "collection_id")
+)
 @JsonIdentityInfo(
         generator = ObjectIdGenerators.PropertyGenerator.class,
         property = "id",
@@ -39,7 +43,14 @@ public class Note {
     @JoinColumn(name = "collection_id", nullable = false)
     public commons.Collection collection;
 
-    @OneToMany(mappedBy = "note"/*, cascade = CascadeType.ALL, orphanRemoval = true*/, fetch = FetchType.EAGER)
+    /**
+     * Incremented on every update, so a client can tell whether its copy is still the latest
+     */
+    @Version
+    @Column(nullable = false, columnDefinition = "bigint default 0")
+    public long version;
+
+    @OneToMany(mappedBy = "note", fetch = FetchType.LAZY)
     @JsonManagedReference  // required to prevent infinite recursion
     public List<EmbeddedFile> embeddedFiles;
 
@@ -92,6 +103,22 @@ public class Note {
         this.body = body;
     }
 
+    /**
+     * Returns the version of this Note
+     * @return Value of version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Sets the version of this Note
+     * @param version New value of version
+     */
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     /**
      * @return The list of embedded files for this note
      */
@@ -129,7 +156,7 @@ public class Note {
      */
     @Override
     public int hashCode() {
-        return HashCodeBuilder.reflectionHashCode(this);
+        return HashCodeBuilder.reflectionHashCode(this, "embeddedFiles");
     }
 
     /**
@@ -138,6 +165,6 @@ public class Note {
      */
     @Override
     public String toString() {
-        return ToStringBuilder.reflectionToString(this, MULTI_LINE_STYLE);
+        return new ReflectionToStringBuilder(this, MULTI_LINE_STYLE).setExcludeFieldNames("embeddedFiles").toString();
     }
 }
@@ -0,0 +1,40 @@
+package commons;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A change to the body of a note, sent instead of the whole body
+ * @param noteId The note to change
+ * @param origin The client that made the change, so it can recognise its own broadcasts
+ * @param baseVersion The version of the note the edits were made against
+ * @param version The version of the note after the edits; filled in by the server
+ * @param edits The edits, applied in order, each against the result of the previous one
+ */
+public record NotePatch(UUID noteId, UUID origin, long baseVersion, long version, List<TextEdit> edits) {
+
+    public NotePatch {
+        edits = edits == null ? List.of() : List.copyOf(edits);
+    }
+
+    /**
+     * @param body The body at the base version
+     * @return The body after the edits
+     * @throws IllegalArgumentException if an edit does not fit the body
+     */
+    public String applyTo(String body) {
+        String result = body == null ? "" : body;
+        for (TextEdit edit : edits) {
+            result = edit.applyTo(result);
+        }
+        return result;
+    }
+
+    /**
+     * @param version The version the note got when this patch was applied
+     * @return A copy of this patch with the resulting version filled in
+     */
+    public NotePatch withVersion(long version) {
+        return new NotePatch(noteId, origin, baseVersion, version, edits);
+    }
+}
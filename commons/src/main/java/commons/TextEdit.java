@@ -0,0 +1,58 @@
+package commons;
+
+/**
+ * Replaces a range of a note body with new text
+ * @param start The index of the first replaced character
+ * @param end The index after the last replaced character; equal to start for an insertion
+ * @param text The text to put in place of the range; empty for a deletion
+ */
+public record TextEdit(int start, int end, String text) {
+
+    public TextEdit {
+        if (text == null) {
+            text = "";
+        }
+    }
+
+    /**
+     * Finds the smallest single edit that turns one text into another,
+     * by skipping the prefix and suffix the two have in common
+     * @param before The old text
+     * @param after The new text
+     * @return The edit, or null if the texts are equal
+     */
+    public static TextEdit between(String before, String after) {
+        if (before.equals(after)) {
+            return null;
+        }
+        int start = 0;
+        int max = Math.min(before.length(), after.length());
+        while (start < max && before.charAt(start) == after.charAt(start)) {
+            start++;
+        }
+        int endBefore = before.length();
+        int endAfter = after.length();
+        while (endBefore > start && endAfter > start && before.charAt(endBefore - 1) == after.charAt(endAfter - 1)) {
+            endBefore--;
+            endAfter--;
+        }
+        return new TextEdit(start, endBefore, after.substring(start, endAfter));
+    }
+
+    /**
+     * @param body The text to edit
+     * @return The text with this edit applied
+     * @throws IllegalArgumentException if the range is not inside the text
+     */
+    public String applyTo(String body) {
+        if (start < 0 || end < start || end > body.length()) {
+            throw new IllegalArgumentException("Edit [" + start + ", " + end + ") is outside a text of length "
+                    + body.length());
+        }
+        return new StringBuilder(body.length() - (end - start) + text.length())
+                .append(body, 0, start)
+                .append(text)
+                .append(body, end, body.length())
+                .toString();
+    }
+}
@@ -0,0 +1,12 @@
+package commons.ot;
+
+import java.util.UUID;
+
+/**
+ * The text of a note body at a revision, to start collaborating from
+ * @param noteId The note
+ * @param revision The revision of the text
+ * @param text The text
+ */
+public record DocumentSnapshot(UUID noteId, long revision, String text) {
+}
@@ -0,0 +1,14 @@
+package commons.ot;
+
+import java.util.UUID;
+
+/**
+ * An operation on the body of a note, as sent over the websocket
+ * @param noteId The note
+ * @param origin The client that made the operation
+ * @param revision From a client: the revision the operation was made against.
+ *                 From the server: the revision the document got by applying it
+ * @param operation The operation
+ */
+public record OperationMessage(UUID noteId, UUID origin, long revision, TextOperation operation) {
+}
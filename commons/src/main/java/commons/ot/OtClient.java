@@ -0,0 +1,108 @@
+package commons.ot;
+
+/**
+ * The client side of server-sequenced operational transformation.
+ * A client has at most one operation in flight. Edits made while it waits for the server
+ * to acknowledge that operation are composed into a buffer, and operations of other
+ * clients are transformed against both, so the local text never has to be reloaded.
+ */
+public abstract class OtClient {
+
+    private long revision;
+    private TextOperation outstanding;
+    private TextOperation buffer;
+
+    /**
+     * @param revision The revision of the document the client starts from
+     */
+    protected OtClient(long revision) {
+        this.revision = revision;
+    }
+
+    /**
+     * Sends an operation to the server
+     * @param revision The revision the operation was made against
+     * @param operation The operation
+     */
+    protected abstract void sendOperation(long revision, TextOperation operation);
+
+    /**
+     * Applies an operation of another client to the local text
+     * @param operation The operation, already transformed against the local edits
+     */
+    protected abstract void applyOperation(TextOperation operation);
+
+    /**
+     * Handles an edit made locally
+     * @param operation The edit, already applied to the local text
+     */
+    public synchronized void applyClient(TextOperation operation) {
+        if (outstanding == null) {
+            outstanding = operation;
+            sendOperation(revision, operation);
+        } else if (buffer == null) {
+            buffer = operation;
+        } else {
+            buffer = buffer.compose(operation);
+        }
+    }
+
+    /**
+     * Handles an operation of another client, as broadcast by the server
+     * @param operation The operation
+     */
+    public synchronized void applyServer(TextOperation operation) {
+        revision++;
+        TextOperation incoming = operation;
+        if (outstanding != null) {
+            TextOperation.Pair pair = TextOperation.transform(outstanding, incoming);
+            outstanding = pair.first();
+            incoming = pair.second();
+            if (buffer != null) {
+                pair = TextOperation.transform(buffer, incoming);
+                buffer = pair.first();
+                incoming = pair.second();
+            }
+        }
+        applyOperation(incoming);
+    }
+
+    /**
+     * Handles the server's acknowledgement of the operation in flight
+     */
+    public synchronized void serverAck() {
+        if (outstanding == null) {
+            throw new IllegalStateException("No operation is waiting for an acknowledgement");
+        }
+        revision++;
+        outstanding = buffer;
+        buffer = null;
+        if (outstanding != null) {
+            sendOperation(revision, outstanding);
+        }
+    }
+
+    /**
+     * Starts over from a state loaded from the server, dropping the local edits that were not acknowledged
+     * @param revision The revision of the loaded state
+     */
+    public synchronized void reset(long revision) {
+        this.revision = revision;
+        outstanding = null;
+        buffer = null;
+    }
+
+    /**
+     * @return The latest revision of the server this client has seen
+     */
+    public synchronized long getRevision() {
+        return revision;
+    }
+
+    /**
+     * @return true if every local edit has been acknowledged by the server
+     */
+    public synchronized boolean isSynchronized() {
+        return outstanding == null;
+    }
+}
@@ -0,0 +1,67 @@
+package commons.ot;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+
+/**
+ * The server side of server-sequenced operational transformation: the authoritative text of a
+ * document and the order of the operations applied to it. An operation made against an older
+ * revision is transformed against every operation applied since, and then applied.
+ */
+public class OtDocument {
+
+    private final int maxHistory;
+    private final Deque<TextOperation> history = new ArrayDeque<>();
+    private String text;
+    private long revision;
+
+    /**
+     * @param text The text at the given revision
+     * @param revision The revision to start from
+     * @param maxHistory How many operations to keep for transforming late operations
+     */
+    public OtDocument(String text, long revision, int maxHistory) {
+        this.text = text == null ? "" : text;
+        this.revision = revision;
+        this.maxHistory = maxHistory;
+    }
+
+    /**
+     * Applies an operation of a client
+     * @param clientRevision The revision the client made the operation against
+     * @param operation The operation
+     * @return The operation as applied, which is what the other clients have to apply
+     * @throws IllegalArgumentException if the revision is unknown, or too old to transform against
+     */
+    public synchronized TextOperation receive(long clientRevision, TextOperation operation) {
+        long oldest = revision - history.size();
+        if (clientRevision > revision || clientRevision < oldest) {
+            throw new IllegalArgumentException("Cannot apply an operation made against revision " + clientRevision
+                    + ", the document is at " + revision + " and remembers back to " + oldest);
+        }
+        TextOperation transformed = operation;
+        Iterator<TextOperation> concurrent = history.iterator();
+        for (long r = oldest; r < revision; r++) {
+            TextOperation applied = concurrent.next();
+            if (r >= clientRevision) {
+                transformed = TextOperation.transform(transformed, applied).first();
+            }
+        }
+        text = transformed.apply(text);
+        revision++;
+        history.addLast(transformed);
+        if (history.size() > maxHistory) {
+            history.removeFirst();
+        }
+        return transformed;
+    }
+
+    public synchronized String getText() {
+        return text;
+    }
+
+    public synchronized long getRevision() {
+        return revision;
+    }
+}
@@ -0,0 +1,384 @@
+package commons.ot;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+import commons.TextEdit;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * An edit of a whole text, as a sequence of components that walk over it from start to end:
+ * a positive number retains that many characters, a negative number deletes that many,
+ * and a string is inserted.
+ * Operations can be composed and transformed against each other, which is what lets
+ * concurrent edits from several clients be merged (operational transformation).
+ * In JSON an operation is written as its list of components, for example {@code [5, "abc", -2, 10]}.
+ */
+public final class TextOperation {
+
+    private final List<Object> ops = new ArrayList<>();
+    private int baseLength;
+    private int targetLength;
+
+    public TextOperation() {}
+
+    /**
+     * @param edit A range replace
+     * @param length The length of the text the edit is made in
+     * @return The operation that makes the edit
+     */
+    public static TextOperation fromEdit(TextEdit edit, int length) {
+        return new TextOperation()
+                .retain(edit.start())
+                .delete(edit.end() - edit.start())
+                .insert(edit.text())
+                .retain(length - edit.end());
+    }
+
+    @JsonCreator
+    public static TextOperation fromComponents(List<Object> components) {
+        TextOperation operation = new TextOperation();
+        for (Object component : components) {
+            if (component instanceof String text) {
+                operation.insert(text);
+            } else if (component instanceof Number number && number.intValue() > 0) {
+                operation.retain(number.intValue());
+            } else if (component instanceof Number number && number.intValue() < 0) {
+                operation.delete(-number.intValue());
+            } else {
+                throw new IllegalArgumentException("Invalid operation component: " + component);
+            }
+        }
+        return operation;
+    }
+
+    /**
+     * @return The components of this operation
+     */
+    @JsonValue
+    public List<Object> getComponents() {
+        return Collections.unmodifiableList(ops);
+    }
+
+    /**
+     * @return The length of the text this operation applies to
+     */
+    public int getBaseLength() {
+        return baseLength;
+    }
+
+    /**
+     * @return The length of the text after this operation
+     */
+    public int getTargetLength() {
+        return targetLength;
+    }
+
+    public TextOperation retain(int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("Cannot retain a negative number of characters");
+        }
+        if (n == 0) {
+            return this;
+        }
+        baseLength += n;
+        targetLength += n;
+        if (!ops.isEmpty() && isRetain(ops.getLast())) {
+            ops.set(ops.size() - 1, (Integer) ops.getLast() + n);
+        } else {
+            ops.add(n);
+        }
+        return this;
+    }
+
+    public TextOperation insert(String text) {
+        if (text.isEmpty()) {
+            return this;
+        }
+        targetLength += text.length();
+        int last = ops.size() - 1;
+        if (last >= 0 && ops.get(last) instanceof String previous) {
+            ops.set(last, previous + text);
+        } else if (last >= 0 && isDelete(ops.get(last))) {
+            // keep inserts before deletes, so equal operations have equal components
+            if (last >= 1 && ops.get(last - 1) instanceof String previous) {
+                ops.set(last - 1, previous + text);
+            } else {
+                ops.add(last, text);
+            }
+        } else {
+            ops.add(text);
+        }
+        return this;
+    }
+
+    public TextOperation delete(int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("Cannot delete a negative number of characters");
+        }
+        if (n == 0) {
+            return this;
+        }
+        baseLength += n;
+        if (!ops.isEmpty() && isDelete(ops.getLast())) {
+            ops.set(ops.size() - 1, (Integer) ops.getLast() - n);
+        } else {
+            ops.add(-n);
+        }
+        return this;
+    }
+
+    /**
+     * @return true if this operation leaves every text unchanged
+     */
+    public boolean isNoop() {
+        return ops.isEmpty() || (ops.size() == 1 && isRetain(ops.getFirst()));
+    }
+
+    /**
+     * @param text The text to edit
+     * @return The edited text
+     * @throws IllegalArgumentException if the text does not have the base length of this operation
+     */
+    public String apply(String text) {
+        if (text.length() != baseLength) {
+            throw new IllegalArgumentException("Operation expects a text of length " + baseLength
+                    + " but got " + text.length());
+        }
+        StringBuilder result = new StringBuilder(targetLength);
+        int index = 0;
+        for (Object op : ops) {
+            if (op instanceof String insert) {
+                result.append(insert);
+            } else if (isRetain(op)) {
+                int n = (Integer) op;
+                result.append(text, index, index + n);
+                index += n;
+            } else {
+                index -= (Integer) op;
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * Moves a position in the text along with this operation, for example to keep a caret in place
+     * @param index A position in the text before this operation
+     * @return The matching position in the text after it
+     */
+    public int transformIndex(int index) {
+        int newIndex = index;
+        int position = 0;
+        for (Object op : ops) {
+            if (position > index) {
+                break;
+            }
+            if (op instanceof String insert) {
+                if (position < index) {
+                    newIndex += insert.length();
+                }
+            } else if (isRetain(op)) {
+                position += (Integer) op;
+            } else {
+                int n = -(Integer) op;
+                newIndex -= Math.min(n, index - position);
+                position += n;
+            }
+        }
+        return newIndex;
+    }
+
+    /**
+     * Combines this operation with one that follows it
+     * @param next An operation on the result of this one
+     * @return One operation with the effect of applying this one and then next
+     */
+    public TextOperation compose(TextOperation next) {
+        if (targetLength != next.baseLength) {
+            throw new IllegalArgumentException("The base length of the next operation must be the target length"
+                    + " of this one");
+        }
+        TextOperation result = new TextOperation();
+        Cursor a = new Cursor(ops);
+        Cursor b = new Cursor(next.ops);
+        while (a.hasNext() || b.hasNext()) {
+            if (a.hasNext() && isDelete(a.peek())) {
+                result.delete(-(Integer) a.take());
+                continue;
+            }
+            if (b.hasNext() && b.peek() instanceof String insert) {
+                result.insert(insert);
+                b.take();
+                continue;
+            }
+            if (!a.hasNext() || !b.hasNext()) {
+                throw new IllegalArgumentException("Operations cannot be composed");
+            }
+            Object opA = a.peek();
+            Object opB = b.peek();
+            if (isRetain(opA) && isRetain(opB)) {
+                int n = Math.min((Integer) opA, (Integer) opB);
+                result.retain(n);
+                a.consume(n);
+                b.consume(n);
+            } else if (opA instanceof String insert && isDelete(opB)) {
+                int n = Math.min(insert.length(), -(Integer) opB);
+                a.consume(n);
+                b.consume(n);
+            } else if (opA instanceof String insert && isRetain(opB)) {
+                int n = Math.min(insert.length(), (Integer) opB);
+                result.insert(insert.substring(0, n));
+                a.consume(n);
+                b.consume(n);
+            } else {
+                // a retains, b deletes
+                int n = Math.min((Integer) opA, -(Integer) opB);
+                result.delete(n);
+                a.consume(n);
+                b.consume(n);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Transforms two operations made concurrently on the same text, so that each can be applied
+     * after the other and both orders give the same result. When both insert at the same
+     * position, the insert of the first operation ends up first.
+     * @param first An operation
+     * @param second An operation on the same text
+     * @return first rebased onto second, and second rebased onto first
+     */
+    public static Pair transform(TextOperation first, TextOperation second) {
+        if (first.baseLength != second.baseLength) {
+            throw new IllegalArgumentException("Both operations must apply to the same text");
+        }
+        TextOperation firstPrime = new TextOperation();
+        TextOperation secondPrime = new TextOperation();
+        Cursor a = new Cursor(first.ops);
+        Cursor b = new Cursor(second.ops);
+        while (a.hasNext() || b.hasNext()) {
+            if (a.hasNext() && a.peek() instanceof String insert) {
+                firstPrime.insert(insert);
+                secondPrime.retain(insert.length());
+                a.take();
+                continue;
+            }
+            if (b.hasNext() && b.peek() instanceof String insert) {
+                firstPrime.retain(insert.length());
+                secondPrime.insert(insert);
+                b.take();
+                continue;
+            }
+            if (!a.hasNext() || !b.hasNext()) {
+                throw new IllegalArgumentException("Operations cannot be transformed");
+            }
+            int opA = (Integer) a.peek();
+            int opB = (Integer) b.peek();
+            if (opA > 0 && opB > 0) {
+                int n = Math.min(opA, opB);
+                firstPrime.retain(n);
+                secondPrime.retain(n);
+                a.consume(n);
+                b.consume(n);
+            } else if (opA < 0 && opB < 0) {
+                // both deleted the same characters
+                int n = Math.min(-opA, -opB);
+                a.consume(n);
+                b.consume(n);
+            } else if (opA < 0) {
+                int n = Math.min(-opA, opB);
+                firstPrime.delete(n);
+                a.consume(n);
+                b.consume(n);
+            } else {
+                int n = Math.min(opA, -opB);
+                secondPrime.delete(n);
+                a.consume(n);
+                b.consume(n);
+            }
+        }
+        return new Pair(firstPrime, secondPrime);
+    }
+
+    /**
+     * The result of {@link #transform}
+     * @param first The first operation, to apply after the second
+     * @param second The second operation, to apply after the first
+     */
+    public record Pair(TextOperation first, TextOperation second) {}
+
+    private static boolean isRetain(Object op) {
+        return op instanceof Integer n && n > 0;
+    }
+
+    private static boolean isDelete(Object op) {
+        return op instanceof Integer n && n < 0;
+    }
+
+    /**
+     * Walks over the components of an operation, splitting them where needed
+     */
+    private static final class Cursor {
+        private final List<Object> ops;
+        private int index;
+        private Object current;
+
+        Cursor(List<Object> ops) {
+            this.ops = ops;
+            this.current = ops.isEmpty() ? null : ops.getFirst();
+        }
+
+        boolean hasNext() {
+            return current != null;
+        }
+
+        Object peek() {
+            return current;
+        }
+
+        Object take() {
+            Object taken = current;
+            index++;
+            current = index < ops.size() ? ops.get(index) : null;
+            return taken;
+        }
+
+        /**
+         * Consumes n characters of the current component
+         */
+        void consume(int n) {
+            if (current instanceof String insert) {
+                current = insert.length() == n ? null : insert.substring(n);
+            } else {
+                int value = (Integer) current;
+                int remaining = value > 0 ? value - n : value + n;
+                current = remaining == 0 ? null : remaining;
+            }
+            if (current == null) {
+                index++;
+                current = index < ops.size() ? ops.get(index) : null;
+            }
+        }
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (obj == null || getClass() != obj.getClass()) return false;
+        return ops.equals(((TextOperation) obj).ops);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(ops);
+    }
+
+    @Override
+    public String toString() {
+        return ops.toString();
+    }
+}
@@ -0,0 +1,58 @@
+package commons;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NotePatchTest {
+
+    @Test
+    void testBetweenFindsSmallestEdit() {
+        TextEdit edit = TextEdit.between("hello world", "hello brave world");
+        assertEquals(new TextEdit(6, 6, "brave "), edit);
+    }
+
+    @Test
+    void testBetweenEqualTexts() {
+        assertNull(TextEdit.between("same", "same"));
+    }
+
+    @Test
+    void testBetweenDeletion() {
+        TextEdit edit = TextEdit.between("abcdef", "abef");
+        assertEquals(new TextEdit(2, 4, ""), edit);
+        assertEquals("abef", edit.applyTo("abcdef"));
+    }
+
+    @Test
+    void testBetweenRoundTrips() {
+        String before = "a".repeat(1000) + "x" + "b".repeat(1000);
+        String after = "a".repeat(1000) + "yz" + "b".repeat(1000);
+        TextEdit edit = TextEdit.between(before, after);
+        assertEquals("yz", edit.text());
+        assertEquals(after, edit.applyTo(before));
+    }
+
+    @Test
+    void testApplyOutsideText() {
+        assertThrows(IllegalArgumentException.class, () -> new TextEdit(2, 10, "x").applyTo("short"));
+        assertThrows(IllegalArgumentException.class, () -> new TextEdit(3, 2, "x").applyTo("short"));
+    }
+
+    @Test
+    void testPatchAppliesEditsInOrder() {
+        NotePatch patch = new NotePatch(UUID.randomUUID(), null, 0, 0,
+                List.of(new TextEdit(0, 0, "> "), new TextEdit(7, 7, "!")));
+        assertEquals("> hello!", patch.applyTo("hello"));
+    }
+
+    @Test
+    void testWithVersion() {
+        NotePatch patch = new NotePatch(UUID.randomUUID(), null, 3, 0, List.of());
+        assertEquals(4, patch.withVersion(4).version());
+        assertEquals(3, patch.withVersion(4).baseVersion());
+    }
+}
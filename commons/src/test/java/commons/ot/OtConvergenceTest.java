@@ -0,0 +1,144 @@
+package commons.ot;
+
+import commons.TextEdit;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Simulates several clients editing one document through a server, with messages delivered
+ * in random interleavings, and checks that everybody ends up with the same text.
+ */
+public class OtConvergenceTest {
+
+    private static final int CLIENTS = 5;
+    private static final int STEPS = 5_000;
+
+    private final Random random = new Random(7);
+    private final OtDocument server = new OtDocument("shared note", 0, 10_000);
+    private final List<SimulatedClient> clients = new ArrayList<>();
+
+    @Test
+    void testClientsConverge() {
+        for (int i = 0; i < CLIENTS; i++) {
+            clients.add(new SimulatedClient(server.getText(), server.getRevision()));
+        }
+
+        for (int step = 0; step < STEPS; step++) {
+            SimulatedClient client = clients.get(random.nextInt(CLIENTS));
+            switch (random.nextInt(3)) {
+                case 0 -> client.edit();
+                case 1 -> deliverToServer(client);
+                default -> client.receive();
+            }
+        }
+        drain();
+
+        for (SimulatedClient client : clients) {
+            assertEquals(server.getText(), client.text);
+            assertEquals(server.getRevision(), client.getRevision());
+            assertTrue(client.isSynchronized());
+        }
+    }
+
+    @Test
+    void testLateOperationIsTransformed() {
+        OtDocument document = new OtDocument("abc", 0, 10);
+        document.receive(0, new TextOperation().insert("X").retain(3));
+
+        TextOperation applied = document.receive(0, new TextOperation().retain(3).insert("Y"));
+
+        assertEquals("XabcY", document.getText());
+        assertEquals(new TextOperation().retain(4).insert("Y"), applied);
+        assertEquals(2, document.getRevision());
+    }
+
+    @Test
+    void testTooOldRevisionIsRejected() {
+        OtDocument document = new OtDocument("", 0, 2);
+        for (int i = 0; i < 3; i++) {
+            document.receive(i, new TextOperation().retain(i).insert("x"));
+        }
+        assertThrows(IllegalArgumentException.class, () -> document.receive(0, new TextOperation().insert("y")));
+        assertThrows(IllegalArgumentException.class, () -> document.receive(4, new TextOperation().retain(3)));
+    }
+
+    private void deliverToServer(SimulatedClient client) {
+        OperationMessage message = client.upstream.poll();
+        if (message == null) {
+            return;
+        }
+        TextOperation applied = server.receive(message.revision(), message.operation());
+        OperationMessage broadcast = new OperationMessage(null, message.origin(), server.getRevision(), applied);
+        for (SimulatedClient c : clients) {
+            c.downstream.add(broadcast);
+        }
+    }
+
+    private void drain() {
+        boolean busy = true;
+        while (busy) {
+            busy = false;
+            for (SimulatedClient client : clients) {
+                if (!client.upstream.isEmpty()) {
+                    deliverToServer(client);
+                    busy = true;
+                }
+                if (!client.downstream.isEmpty()) {
+                    client.receive();
+                    busy = true;
+                }
+            }
+        }
+    }
+
+    private class SimulatedClient extends OtClient {
+        private final UUID id = UUID.randomUUID();
+        private final Deque<OperationMessage> upstream = new ArrayDeque<>();
+        private final Deque<OperationMessage> downstream = new ArrayDeque<>();
+        private String text;
+
+        SimulatedClient(String text, long revision) {
+            super(revision);
+            this.text = text;
+        }
+
+        void edit() {
+            int start = random.nextInt(text.length() + 1);
+            int end = Math.min(text.length(), start + random.nextInt(3));
+            String insert = random.nextInt(4) == 0 ? "" : String.valueOf((char) ('a' + random.nextInt(26)));
+            TextOperation operation = TextOperation.fromEdit(new TextEdit(start, end, insert), text.length());
+            text = operation.apply(text);
+            applyClient(operation);
+        }
+
+        void receive() {
+            OperationMessage message = downstream.poll();
+            if (message == null) {
+                return;
+            }
+            if (message.origin().equals(id)) {
+                serverAck();
+            } else {
+                applyServer(message.operation());
+            }
+        }
+
+        @Override
+        protected void sendOperation(long revision, TextOperation operation) {
+            upstream.add(new OperationMessage(null, id, revision, operation));
+        }
+
+        @Override
+        protected void applyOperation(TextOperation operation) {
+            text = operation.apply(text);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package commons.ot;
+
+import commons.TextEdit;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TextOperationTest {
+
+    private final Random random = new Random(42);
+
+    @Test
+    void testApply() {
+        TextOperation op = new TextOperation().retain(6).insert("brave ").retain(5);
+        assertEquals("hello brave world", op.apply("hello world"));
+        assertEquals(11, op.getBaseLength());
+        assertEquals(17, op.getTargetLength());
+    }
+
+    @Test
+    void testApplyWrongLength() {
+        TextOperation op = new TextOperation().retain(3);
+        assertThrows(IllegalArgumentException.class, () -> op.apply("too long"));
+    }
+
+    @Test
+    void testFromEdit() {
+        TextOperation op = TextOperation.fromEdit(new TextEdit(2, 4, "XY"), 6);
+        assertEquals("abXYef", op.apply("abcdef"));
+    }
+
+    @Test
+    void testComponentsAreMerged() {
+        TextOperation op = new TextOperation().retain(1).retain(2).delete(1).insert("a").insert("b");
+        assertEquals(List.of(3, "ab", -1), op.getComponents());
+    }
+
+    @Test
+    void testFromComponentsRoundTrips() {
+        TextOperation op = new TextOperation().retain(3).insert("x").delete(2).retain(1);
+        assertEquals(op, TextOperation.fromComponents(op.getComponents()));
+    }
+
+    @Test
+    void testNoop() {
+        assertTrue(new TextOperation().isNoop());
+        assertTrue(new TextOperation().retain(5).isNoop());
+        assertFalse(new TextOperation().retain(5).insert("a").isNoop());
+    }
+
+    @Test
+    void testTransformIndex() {
+        TextOperation op = new TextOperation().retain(2).insert("abc").retain(2).delete(3).retain(1);
+        assertEquals(1, op.transformIndex(1));
+        assertEquals(6, op.transformIndex(3));
+        assertEquals(7, op.transformIndex(5));
+        assertEquals(7, op.transformIndex(6));
+        assertEquals(8, op.transformIndex(8));
+    }
+
+    @Test
+    void testComposeEqualsSequentialApply() {
+        for (int i = 0; i < 500; i++) {
+            String text = randomText(random.nextInt(20));
+            TextOperation a = randomOperation(text);
+            String afterA = a.apply(text);
+            TextOperation b = randomOperation(afterA);
+            assertEquals(b.apply(afterA), a.compose(b).apply(text));
+        }
+    }
+
+    @Test
+    void testTransformConverges() {
+        for (int i = 0; i < 500; i++) {
+            String text = randomText(random.nextInt(20));
+            TextOperation a = randomOperation(text);
+            TextOperation b = randomOperation(text);
+            TextOperation.Pair pair = TextOperation.transform(a, b);
+            assertEquals(pair.second().apply(a.apply(text)), pair.first().apply(b.apply(text)));
+        }
+    }
+
+    @Test
+    void testConcurrentInsertsAtSamePositionPutFirstOperationFirst() {
+        TextOperation a = new TextOperation().retain(1).insert("A").retain(1);
+        TextOperation b = new TextOperation().retain(1).insert("B").retain(1);
+        TextOperation.Pair pair = TextOperation.transform(a, b);
+        assertEquals("xABy", pair.first().apply(b.apply("xy")));
+    }
+
+    private String randomText(int length) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            text.append((char) ('a' + random.nextInt(26)));
+        }
+        return text.toString();
+    }
+
+    private TextOperation randomOperation(String text) {
+        TextOperation op = new TextOperation();
+        int position = 0;
+        while (position < text.length()) {
+            int n = 1 + random.nextInt(text.length() - position);
+            switch (random.nextInt(3)) {
+                case 0 -> op.retain(n);
+                case 1 -> op.delete(n);
+                default -> {
+                    op.insert(randomText(1 + random.nextInt(4)));
+                    continue;
+                }
+            }
+            position += n;
+        }
+        if (random.nextBoolean()) {
+            op.insert(randomText(1 + random.nextInt(4)));
+        }
+        return op;
+    }
+}
@@ -0,0 +1,62 @@
+package server;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.CachingConfigurer;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.cache.support.NoOpCacheManager;
+import org.springframework.cache.transaction.TransactionAwareCacheManagerProxy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+import server.cache.Caches;
+import server.cache.EntityWeigher;
+import server.cache.GuardedCaffeineCache;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Caches the lookups clients repeat most in memory, see {@link Caches}. The services evict entries on
+ * their save and delete paths. Evictions wait until the transaction commits, and a value loaded while
+ * something was evicted is not kept, see {@link GuardedCaffeineCache}, so a reader can not put the old state
+ * back. The caches hold copies of the entities rather than the entities of a persistence context.
+ * Each cache holds at most the configured number of bytes, estimated by {@link EntityWeigher}.
+ * Caffeine decides what to evict by how often and how recently entries were used.
+ */
+@Configuration
+@EnableCaching
+public class CacheConfig implements CachingConfigurer {
+
+    @Value("${netnote.cache.enabled:true}")
+    private boolean enabled;
+    @Value("${netnote.cache.max-size-per-cache:32MB}")
+    private DataSize maxSizePerCache;
+    @Value("${netnote.cache.expire-after-write:60s}")
+    private Duration expireAfterWrite;
+
+    @Bean
+    @Override
+    public CacheManager cacheManager() {
+        if (!enabled) {
+            return new NoOpCacheManager();
+        }
+        CaffeineCacheManager caffeine = new CaffeineCacheManager() {
+            @Override
+            protected Cache adaptCaffeineCache(String name, com.github.benmanes.caffeine.cache.Cache<Object, Object> cache) {
+                return new GuardedCaffeineCache(name, cache, isAllowNullValues());
+            }
+        };
+        caffeine.setCaffeine(Caffeine.newBuilder()
+                .maximumWeight(maxSizePerCache.toBytes())
+                .weigher(new EntityWeigher())
+                // a safety net for changes made to the database without going through the services
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats());
+        caffeine.setCacheNames(List.of(Caches.ALL));
+        return new TransactionAwareCacheManagerProxy(caffeine);
+    }
+}
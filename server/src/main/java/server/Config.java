@@ -17,12 +17,17 @@ package server;
 
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.util.MimeType;
 
 @Configuration
 public class Config {
+    public static final MimeType APPLICATION_CBOR = new MimeType("application", "cbor");
+
     /**
      * Jackson does not include support for Java 8 date/time classes. Therefore, jackson-datatype-jsr310 must be used.
      */
@@ -32,4 +37,23 @@ public class Config {
         mapper.registerModule(new JavaTimeModule());
         return mapper;
     }
-}
\ No newline at end of file
+
+    /**
+     * Lets REST clients ask for CBOR with {@code Accept: application/cbor}. Spring Boot places this converter
+     * after the JSON one, so JSON stays the answer for everybody else.
+     */
+    @Bean
+    public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter() {
+        return new MappingJackson2CborHttpMessageConverter(cborMapper());
+    }
+
+    /**
+     * @return A mapper writing CBOR, a binary encoding of the same data model as JSON.
+     * Not a bean, so injecting an ObjectMapper still gets the JSON one.
+     */
+    public static CBORMapper cborMapper() {
+        CBORMapper mapper = new CBORMapper();
+        mapper.registerModule(new JavaTimeModule());
+        return mapper;
+    }
+}
@@ -0,0 +1,55 @@
+package server;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import server.storage.ImageRenditions;
+import server.websocket.OutboundQueueStats;
+import server.websocket.StompSessionStats;
+
+/**
+ * Publishes the server's own numbers next to the ones Spring Boot records by itself
+ * (request latencies, repository calls, Hibernate statistics, connection pool, caches and channel executors).
+ * Everything is scraped in Prometheus format from /actuator/prometheus on the management port.
+ */
+@Configuration
+public class MetricsConfig {
+
+    /**
+     * The STOMP sessions and subscriptions, the outbound frame queues and the image rendition queue
+     */
+    @Bean
+    public MeterBinder serverMeters(StompSessionStats stompSessionStats, OutboundQueueStats outboundQueueStats,
+                                    ImageRenditions imageRenditions) {
+        return registry -> {
+            Gauge.builder("netnote.stomp.sessions", stompSessionStats, StompSessionStats::getSessions)
+                    .description("Connected STOMP sessions")
+                    .register(registry);
+            Gauge.builder("netnote.stomp.subscriptions", stompSessionStats, StompSessionStats::getSubscriptions)
+                    .description("Subscriptions of all connected STOMP sessions")
+                    .register(registry);
+            Gauge.builder("netnote.websocket.outbound.queued", outboundQueueStats, s -> s.snapshot().queuedFrames())
+                    .description("Frames waiting in the outbound queues of all sessions")
+                    .baseUnit("frames")
+                    .register(registry);
+            Gauge.builder("netnote.websocket.outbound.max.depth", outboundQueueStats, s -> s.snapshot().maxQueueDepth())
+                    .description("Frames waiting in the fullest outbound queue")
+                    .baseUnit("frames")
+                    .register(registry);
+            FunctionCounter.builder("netnote.websocket.outbound.dropped", outboundQueueStats,
+                            s -> s.snapshot().droppedFrames())
+                    .description("Frames dropped because the queue of a session was full")
+                    .baseUnit("frames")
+                    .register(registry);
+            FunctionCounter.builder("netnote.websocket.sessions.closed.slow", outboundQueueStats,
+                            s -> s.snapshot().closedSessions())
+                    .description("Sessions closed for reading too slowly")
+                    .register(registry);
+            Gauge.builder("netnote.renditions.pending", imageRenditions, ImageRenditions::getPending)
+                    .description("Images whose thumbnails and previews are queued or being made")
+                    .register(registry);
+        };
+    }
+}
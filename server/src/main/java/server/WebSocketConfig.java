@@ -1,20 +1,173 @@
 package server;
 
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+import server.websocket.BoundedSendHandlerDecorator;
+import server.websocket.DeflateHandshakeHandler;
+import server.websocket.OutboundQueueStats;
+import server.websocket.OverflowPolicy;
+import server.websocket.WireFormat;
+
+import java.util.List;
+import java.util.concurrent.ThreadPoolExecutor;
 
 @Configuration
 @EnableWebSocketMessageBroker
-public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
+public class WebSocketConfig implements WebSocketMessageBrokerConfigurer, DisposableBean {
+
+    private final OutboundQueueStats outboundQueueStats;
+    private TaskExecutor sendExecutor;
+
+    @Value("${netnote.websocket.inbound.core-pool-size:4}")
+    private int inboundCorePoolSize;
+    @Value("${netnote.websocket.inbound.max-pool-size:16}")
+    private int inboundMaxPoolSize;
+    @Value("${netnote.websocket.inbound.queue-capacity:1000}")
+    private int inboundQueueCapacity;
+    @Value("${netnote.websocket.outbound.core-pool-size:4}")
+    private int outboundCorePoolSize;
+    @Value("${netnote.websocket.outbound.max-pool-size:16}")
+    private int outboundMaxPoolSize;
+    @Value("${netnote.websocket.outbound.queue-capacity:10000}")
+    private int outboundQueueCapacity;
+    @Value("${netnote.websocket.send-pool-size:16}")
+    private int sendPoolSize;
+    @Value("${netnote.websocket.send-time-limit-ms:10000}")
+    private int sendTimeLimit;
+    @Value("${netnote.websocket.send-buffer-size-limit:524288}")
+    private int sendBufferSizeLimit;
+    @Value("${netnote.websocket.max-queued-messages:1000}")
+    private int maxQueuedMessages;
+    @Value("${netnote.websocket.overflow-policy:DROP_OLDEST}")
+    private OverflowPolicy overflowPolicy;
+    @Value("${netnote.websocket.broadcast-format:JSON}")
+    private WireFormat broadcastFormat;
+    @Value("${netnote.websocket.per-message-deflate:true}")
+    private boolean perMessageDeflate;
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    public WebSocketConfig(OutboundQueueStats outboundQueueStats) {
+        this.outboundQueueStats = outboundQueueStats;
+    }
+
     public void registerStompEndpoints(StompEndpointRegistry registry) {
-        registry.addEndpoint("/websocket");
+        registry.addEndpoint("/websocket")
+                .setHandshakeHandler(new DeflateHandshakeHandler(perMessageDeflate));
     }
 
     public void configureMessageBroker(MessageBrokerRegistry config) {
         config.enableSimpleBroker("/topic");
         config.setApplicationDestinationPrefixes("/app");
+        // collaborative edits are broadcast in revision order and must reach every client in that order
+        config.setPreservePublishOrder(true);
+    }
+
+    /**
+     * Adds CBOR next to Spring's JSON converter. Frames are read by their content-type either way;
+     * frames without one, i.e. everything the server sends, are written in the broadcast format.
+     */
+    @Override
+    public boolean configureMessageConverters(List<MessageConverter> messageConverters) {
+        MappingJackson2MessageConverter cbor = new MappingJackson2MessageConverter(Config.APPLICATION_CBOR);
+        cbor.setObjectMapper(Config.cborMapper());
+        cbor.setStrictContentTypeMatch(broadcastFormat != WireFormat.CBOR);
+        messageConverters.add(cbor);
+        return true; // Spring's converters, including JSON, come after this one
+    }
+
+    /**
+     * Frames from clients are handled by a bounded pool. When its queue is full, the websocket thread
+     * of the client handles the frame itself, which slows down reading from that client instead of failing.
+     * In virtual thread mode every frame gets a virtual thread instead, and the max pool size limits
+     * how many are handled at once; the websocket thread waits while the limit is reached.
+     */
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        if (virtualThreads) {
+            registration.executor(virtualThreadExecutor("websocket-inbound-", inboundMaxPoolSize));
+            return;
+        }
+        registration.taskExecutor(callerRunsExecutor())
+                .corePoolSize(inboundCorePoolSize)
+                .maxPoolSize(inboundMaxPoolSize)
+                .queueCapacity(inboundQueueCapacity);
+    }
+
+    /**
+     * Frames for clients only have to be put in the queue of their session, see {@link BoundedSendHandlerDecorator}
+     */
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        if (virtualThreads) {
+            registration.executor(virtualThreadExecutor("websocket-outbound-", outboundMaxPoolSize));
+            return;
+        }
+        registration.taskExecutor(callerRunsExecutor())
+                .corePoolSize(outboundCorePoolSize)
+                .maxPoolSize(outboundMaxPoolSize)
+                .queueCapacity(outboundQueueCapacity);
+    }
+
+    /**
+     * Every session gets its own bounded outbound queue, written by the send pool.
+     * The limits also apply to the buffer Spring keeps per session.
+     */
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        if (virtualThreads) {
+            sendExecutor = virtualThreadExecutor("websocket-send-", sendPoolSize);
+        } else {
+            ThreadPoolTaskExecutor pool = new ThreadPoolTaskExecutor();
+            pool.setThreadNamePrefix("websocket-send-");
+            pool.setCorePoolSize(sendPoolSize);
+            pool.setMaxPoolSize(sendPoolSize);
+            pool.setAllowCoreThreadTimeOut(true);
+            pool.initialize();
+            sendExecutor = pool;
+        }
+
+        registration.setSendTimeLimit(sendTimeLimit)
+                .setSendBufferSizeLimit(sendBufferSizeLimit)
+                .addDecoratorFactory(handler -> new BoundedSendHandlerDecorator(handler, sendExecutor,
+                        maxQueuedMessages, sendBufferSizeLimit, sendTimeLimit, overflowPolicy, outboundQueueStats));
+    }
+
+    private static ThreadPoolTaskExecutor callerRunsExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        return executor;
+    }
+
+    /**
+     * @return An executor that starts a virtual thread per task, and makes the caller wait while
+     * the given number of tasks is running
+     */
+    private static SimpleAsyncTaskExecutor virtualThreadExecutor(String threadNamePrefix, int concurrencyLimit) {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(threadNamePrefix);
+        executor.setVirtualThreads(true);
+        executor.setConcurrencyLimit(concurrencyLimit);
+        return executor;
+    }
+
+    @Override
+    public void destroy() {
+        if (sendExecutor instanceof ThreadPoolTaskExecutor pool) {
+            pool.shutdown();
+        } else if (sendExecutor instanceof SimpleAsyncTaskExecutor executor) {
+            executor.close();
+        }
     }
 }
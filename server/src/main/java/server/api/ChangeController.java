@@ -0,0 +1,45 @@
+package server.api;
+
+import commons.ChangeFeed;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import server.changes.ChangeLog;
+
+@RestController
+@RequestMapping("/api/changes")
+public class ChangeController {
+
+    private final ChangeLog changeLog;
+
+    public ChangeController(ChangeLog changeLog) {
+        this.changeLog = changeLog;
+    }
+
+    /**
+     * Gets the creates, updates and deletions since the given point.
+     * Keep asking with the returned latestSeq while hasMore is true.
+     * @param since The latestSeq of the previous call, or 0 to get everything
+     * @param limit The maximum number of changes to return
+     * @return The changes, oldest first
+     */
+    @GetMapping(path = {"", "/"})
+    public ResponseEntity<ChangeFeed> getChanges(@RequestParam long since,
+                                                 @RequestParam(defaultValue = "200") int limit) {
+        if (since < 0) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(changeLog.changesSince(since, limit));
+    }
+
+    /**
+     * Gets the current end of the change feed, to start following it from after a full load
+     * @return The sequence number of the latest change
+     */
+    @GetMapping("/latest")
+    public ResponseEntity<Long> getLatestSeq() {
+        return ResponseEntity.ok(changeLog.latestSeq());
+    }
+}
@@ -8,6 +8,8 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.SendTo;
 import org.springframework.web.bind.annotation.*;
+import server.collab.CollaborationService;
+import server.dto.KeysetPage;
 import server.service.CollectionService;
 import server.service.NoteService;
 
@@ -21,10 +23,13 @@ public class CollectionController {
 
     private final NoteService noteService;
     private final CollectionService collectionService;
+    private final CollaborationService collaborationService;
 
-    public CollectionController(NoteService noteService, CollectionService collectionService) {
+    public CollectionController(NoteService noteService, CollectionService collectionService,
+                                CollaborationService collaborationService) {
         this.noteService = noteService;
         this.collectionService = collectionService;
+        this.collaborationService = collaborationService;
     }
 
     @MessageMapping("/collections")
@@ -75,6 +80,33 @@ public class CollectionController {
         List<Note> notes = noteService.getNotesByCollection(collectionTitle);
         return ResponseEntity.ok(notes);
     }
+
+    /**
+     * Paged versions of the note listings above, used when a limit is given.
+     * Pages are ordered by note id; pass the nextCursor of a page as after to get the next one.
+     * Passing e.g. fields=id,title leaves out bodies and files.
+     */
+    @GetMapping(path = "/all-notes", params = "limit")
+    public ResponseEntity<KeysetPage<?>> getAllNotesPage(@RequestParam(required = false) UUID after,
+                                                         @RequestParam int limit,
+                                                         @RequestParam(required = false) String fields) {
+        return ResponseEntity.ok(notesPage(null, after, limit, fields));
+    }
+
+    @GetMapping(path = "/{collectionTitle}", params = "limit")
+    public ResponseEntity<KeysetPage<?>> getNotesInCollectionPage(@PathVariable String collectionTitle,
+                                                                  @RequestParam(required = false) UUID after,
+                                                                  @RequestParam int limit,
+                                                                  @RequestParam(required = false) String fields) {
+        return ResponseEntity.ok(notesPage(collectionTitle, after, limit, fields));
+    }
+
+    private KeysetPage<?> notesPage(String collectionTitle, UUID after, int limit, String fields) {
+        if (NoteService.isSummaryProjection(fields)) {
+            return noteService.getNoteSummariesPage(collectionTitle, after, limit);
+        }
+        return noteService.getNotesPage(collectionTitle, after, limit);
+    }
     @GetMapping("/title/{title}")
     public ResponseEntity<Collection> getCollectionByTitle(@PathVariable String title) {
         Collection collection = collectionService.getCollectionByTitle(title);
@@ -93,12 +125,14 @@ public class CollectionController {
     }
 
     /**
-     * endpoint for deleting the collection
+     * endpoint for deleting the collection, together with its notes and their files.
+     * Clients are told once on /topic/collections/delete instead of once per note.
      */
     @DeleteMapping("/{id}")
     public ResponseEntity<Void> deleteCollection(@PathVariable UUID id) {
-        if (collectionService.findById(id).isPresent()) {
-            collectionService.deleteById(id);
+        if (collectionService.existsById(id)) {
+            List<UUID> noteIds = collectionService.deleteById(id);
+            noteIds.forEach(collaborationService::close);
             return ResponseEntity.noContent().build();
         }
         return ResponseEntity.notFound().build();
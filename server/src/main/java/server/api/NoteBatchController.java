@@ -0,0 +1,116 @@
+package server.api;
+
+import commons.BatchMove;
+import commons.BatchUpdateResult;
+import commons.Collection;
+import commons.Note;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import server.collab.CollaborationService;
+import server.service.CollectionService;
+import server.service.NoteBatchService;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Endpoints that change many notes with one request, e.g. when a client saves all its pending notes
+ * or deletes a selection. Each request runs in one transaction.
+ * The paths follow the {@code collection:verb} style for custom methods.
+ */
+@RestController
+@RequestMapping("/api")
+public class NoteBatchController {
+    private final NoteBatchService noteBatchService;
+    private final CollectionService collectionService;
+    private final CollaborationService collaborationService;
+
+    public NoteBatchController(NoteBatchService noteBatchService, CollectionService collectionService,
+                               CollaborationService collaborationService) {
+        this.noteBatchService = noteBatchService;
+        this.collectionService = collectionService;
+        this.collaborationService = collaborationService;
+    }
+
+    /**
+     * Saves several notes. Each note carries the version it was edited at; notes changed by somebody
+     * else since are not saved but returned as conflicts. Saved notes are announced on their /body topic.
+     */
+    @PostMapping("/notes:batchUpdate")
+    public ResponseEntity<?> batchUpdate(@RequestBody List<Note> notes) {
+        if (notes == null || notes.size() > NoteBatchService.MAX_BATCH_SIZE) {
+            return ResponseEntity.badRequest().body("Invalid request");
+        }
+        for (Note note : notes) {
+            if (note == null || note.id == null || note.collection == null
+                    || note.title == null || note.title.isBlank()) {
+                return ResponseEntity.badRequest().body("Invalid note in batch");
+            }
+            if (!collectionService.existsById(note.collection.id)) {
+                return ResponseEntity.badRequest().body("Unknown collection in batch");
+            }
+        }
+
+        List<UUID> ids = notes.stream().map(n -> n.id).toList();
+        BatchUpdateResult result;
+        ids.forEach(collaborationService::close);
+        try {
+            result = noteBatchService.updateAll(notes);
+        } catch (DataIntegrityViolationException e) { // a title that is taken, nothing was saved
+            return ResponseEntity.status(HttpStatus.CONFLICT).body("Duplicated note title");
+        } catch (OptimisticLockingFailureException e) { // changed while the batch was saved, nothing was saved
+            return ResponseEntity.status(HttpStatus.CONFLICT).body("Notes changed concurrently, try again");
+        } finally {
+            ids.forEach(collaborationService::close);
+        }
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * Deletes several notes with their files. Ids of notes that do not exist are ignored.
+     * Every deleted note is announced on the delete topic of its collection.
+     */
+    @PostMapping("/notes:batchDelete")
+    public ResponseEntity<?> batchDelete(@RequestBody List<UUID> ids) {
+        if (ids == null || ids.size() > NoteBatchService.MAX_BATCH_SIZE
+                || ids.stream().anyMatch(Objects::isNull)) {
+            return ResponseEntity.badRequest().body("Invalid request");
+        }
+        ids.forEach(collaborationService::close);
+        noteBatchService.deleteAll(ids);
+        return ResponseEntity.noContent().build();
+    }
+
+    /**
+     * Moves several notes to another collection of this server in one go. If a title is already taken
+     * in that collection, no note is moved. Moved notes are announced on their /body topic with their new collection.
+     */
+    @PostMapping("/notes:batchMove")
+    public ResponseEntity<?> batchMove(@RequestBody BatchMove move) {
+        if (move == null || move.collectionId() == null || move.noteIds() == null
+                || move.noteIds().size() > NoteBatchService.MAX_BATCH_SIZE
+                || move.noteIds().stream().anyMatch(Objects::isNull)) {
+            return ResponseEntity.badRequest().body("Invalid request");
+        }
+        Optional<Collection> collection = collectionService.findById(move.collectionId());
+        if (collection.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        move.noteIds().forEach(collaborationService::close);
+        List<Note> moved;
+        try {
+            moved = noteBatchService.moveAll(move.noteIds(), collection.get());
+        } catch (DataIntegrityViolationException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body("Duplicated note title");
+        }
+        return ResponseEntity.ok(moved);
+    }
+}
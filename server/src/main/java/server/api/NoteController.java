@@ -2,20 +2,35 @@ package server.api;
 
 import commons.EmbeddedFile;
 import commons.Note;
+import commons.NotePatch;
+import commons.ot.DocumentSnapshot;
+import commons.ot.OperationMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.Resource;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ETag;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.messaging.handler.annotation.DestinationVariable;
 import org.springframework.messaging.handler.annotation.MessageMapping;
-import org.springframework.messaging.handler.annotation.SendTo;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import server.collab.CollaborationService;
 import server.database.NoteRepository;
+import server.dto.EmbeddedFileSummary;
+import server.dto.KeysetPage;
 import server.service.CollectionService;
 import server.service.EmbeddedFileService;
 import server.service.NoteService;
+import server.storage.ImageRenditions;
+import server.storage.Rendition;
 
 import java.io.IOException;
+import java.time.Duration;
 import java.util.*;
 
 import static org.springframework.http.MediaType.MULTIPART_FORM_DATA_VALUE;
@@ -23,68 +38,57 @@ import static org.springframework.http.MediaType.MULTIPART_FORM_DATA_VALUE;
 @RestController
 @RequestMapping("/api/notes")
 public class NoteController {
+    private static final Logger logger = LoggerFactory.getLogger(NoteController.class);
+
     private final NoteService noteService;
     private final CollectionService collectionService;
     private final EmbeddedFileService embeddedFileService;
     private final NoteRepository noteRepository;
+    private final CollaborationService collaborationService;
 
-    public NoteController(NoteService noteService, CollectionService collectionService, EmbeddedFileService embeddedFileService, NoteRepository noteRepository) {
+    public NoteController(NoteService noteService, CollectionService collectionService, EmbeddedFileService embeddedFileService,
+                          NoteRepository noteRepository, CollaborationService collaborationService) {
         this.noteService = noteService;
         this.collectionService = collectionService;
         this.embeddedFileService = embeddedFileService;
         this.noteRepository = noteRepository;
+        this.collaborationService = collaborationService;
     }
 
+    /**
+     * Creates a note sent over the websocket. Like every change, the new note is announced
+     * to the clients by the service once it is stored.
+     */
     @MessageMapping("/notes")
-    @SendTo("/topic/notes")
-    public Note addMessage(Note note) {
-        ResponseEntity<Note> response = createNote(note);
-        if (response.getStatusCode().is2xxSuccessful()) {
-            Note addedNote = response.getBody();
-            return addedNote;
+    public void addMessage(Note note) {
+        if (!createNote(note).getStatusCode().is2xxSuccessful()) {
+            throw new RuntimeException("Failed to create note on server");
         }
-        throw new RuntimeException("Failed to create note on server");
     }
 
-    @MessageMapping("/notes/{noteId}/body")
-    @SendTo("/topic/notes/{noteId}/body")
-    public Note updateBody(Note note) {
-        return note;
+    /**
+     * Applies a patch sent over the websocket. Applied patches are broadcast like those of {@link #patchBody};
+     * a patch that does not apply is dropped, so clients that need an answer use the REST endpoint.
+     */
+    @MessageMapping("/notes/{noteId}/patch")
+    public void patchBodyMessage(@DestinationVariable UUID noteId, NotePatch patch) {
+        patchBody(noteId, patch);
     }
 
-    @MessageMapping("/notes/title")
-    @SendTo("/topic/notes/title")
-    public Note updateTitle(Note note) {
-        return note;
+    /**
+     * Receives an operation of a client editing the body together with others.
+     * The operation is ordered, transformed and broadcast on /topic/notes/{noteId}/ops by the {@link CollaborationService}.
+     */
+    @MessageMapping("/notes/{noteId}/ops")
+    public void receiveOperation(@DestinationVariable UUID noteId, OperationMessage message) {
+        collaborationService.receive(noteId, message);
     }
 
     @MessageMapping("/deleteNote")
-    @SendTo("/topic/notes/delete")
-    public Note deleteNoteHandler(Note note) {
-        ResponseEntity<Void> response = deleteNote(note.id);
-        if (response.getStatusCode().is2xxSuccessful()) {
-            return note;
+    public void deleteNoteHandler(Note note) {
+        if (!deleteNote(note.id).getStatusCode().is2xxSuccessful()) {
+            throw new RuntimeException("Failed to delete note on server");
         }
-        throw new RuntimeException("Failed to delete note on server");
-    }
-
-    @MessageMapping("/notes/{noteId}/files")
-    @SendTo("/topic/notes/{noteId}/files")
-    public UUID sendEmbeddedFileUpdate(@DestinationVariable UUID noteId, UUID embeddedFileId) {
-        return embeddedFileId;
-    }
-
-    @MessageMapping("/notes/{noteId}/files/deleteFile")
-    @SendTo("/topic/notes/{noteId}/files/deleteFile")
-    public UUID sendMessageAfterDelete(@DestinationVariable UUID noteId, UUID embeddedFileId) {
-        return embeddedFileId;
-    }
-
-    @MessageMapping("/notes/{noteId}/files/renameFile")
-    @SendTo("/topic/notes/{noteId}/files/renameFile")
-    public Object[] sendMessageAfterRename(@DestinationVariable UUID noteId,
-                                                                        Object[] newFileName) {
-        return newFileName;
     }
 
     @PostMapping(path = {"/", ""})
@@ -92,36 +96,124 @@ public class NoteController {
         if (note == null || note.collection == null || note.title.isBlank()) {
             return ResponseEntity.badRequest().build();
         }
-        if (!collectionService.getAllCollections().contains(note.collection)) {
+        if (!collectionService.existsById(note.collection.id)) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (noteService.existsByCollectionIdAndTitle(note.collection.id, note.title)) {
             return ResponseEntity.badRequest().build();
         }
-        boolean isDuplicateTitle = noteService
-                .getAllNotes()
-                .stream()
-                .anyMatch(existingNote -> existingNote.title.equals(note.title) && existingNote.collection.equals(note.collection));
 
-        if (isDuplicateTitle) {
+        try {
+            Note createdNote = noteService.save(note);
+            return ResponseEntity.ok(createdNote);
+        } catch (DataIntegrityViolationException e) { // same title created concurrently
             return ResponseEntity.badRequest().build();
         }
+    }
 
-        Note createdNote = noteService.save(note);
-        return ResponseEntity.ok(createdNote);
+    public ResponseEntity<?> updateNote(UUID id, Note note) {
+        return updateNote(id, note, null);
     }
 
+    /**
+     * Updates a note. The ETag of a note is its version. If an If-Match header is sent,
+     * the note is only updated if it is still at that version; otherwise nobody else's
+     * changes are overwritten and the current server copy is returned with a 409.
+     * Without If-Match, or with {@code *}, the update is made against the version the note has when the
+     * request arrives, so it overwrites earlier changes; a write that is stored between that read and the
+     * update still makes it fail with a 409 and the server copy.
+     */
     @PutMapping("/{id}")
-    public ResponseEntity<?> updateNote(@PathVariable UUID id, @RequestBody Note note) {
+    public ResponseEntity<?> updateNote(@PathVariable UUID id, @RequestBody Note note,
+                                        @RequestHeader(value = HttpHeaders.IF_MATCH, required = false)
+                                        String ifMatch) {
         if (note == null || note.collection == null) {
             return ResponseEntity.badRequest().body("Invalid request");
         } else if (note.title.isBlank()) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Note title cannot be blank");
         }
-        Optional<Note> existingNote = noteService.findById(id);
-        if (existingNote.isPresent()) {
-            note.id = id; // Ensure the note's ID is set
-            Note updatedNote = noteService.save(note);
-            return ResponseEntity.ok(updatedNote);
+        boolean unconditional = ifMatch == null || ifMatch.trim().equals("*");
+        Long expectedVersion = unconditional ? null : parseVersion(ifMatch);
+        if (!unconditional && expectedVersion == null) {
+            return ResponseEntity.badRequest().body("Invalid If-Match header");
+        }
+        if (noteService.findById(id).isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+
+        note.id = id; // Ensure the note's ID is set
+        // storing the live document may raise the version, so it is only read after that
+        collaborationService.close(id);
+        if (unconditional) {
+            Optional<Note> current = noteService.findById(id);
+            if (current.isEmpty()) {
+                return ResponseEntity.notFound().build();
+            }
+            expectedVersion = current.get().version;
+        }
+        try {
+            Optional<Note> updatedNote = noteService.update(id, note, expectedVersion);
+            if (updatedNote.isPresent()) {
+                return ResponseEntity.ok().eTag(eTagOf(updatedNote.get())).body(updatedNote.get());
+            }
+        } catch (DataIntegrityViolationException e) { // Exception where note has duplicated title
+            return ResponseEntity.status(HttpStatus.CONFLICT).body("Duplicated note title");
+        } finally {
+            collaborationService.close(id);
+        }
+        return conflict(id);
+    }
+
+    /**
+     * Applies a patch to the body of a note. The service broadcasts it on /topic/notes/{id}/patch.
+     * The patch must be made against the current version of the note, otherwise
+     * the current server copy is returned with a 409, like for {@link #updateNote}.
+     */
+    @PostMapping("/{id}/patches")
+    public ResponseEntity<?> patchBody(@PathVariable UUID id, @RequestBody NotePatch patch) {
+        if (patch == null) {
+            return ResponseEntity.badRequest().body("Invalid request");
+        }
+        if (noteService.findById(id).isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        NotePatch request = new NotePatch(id, patch.origin(), patch.baseVersion(), 0, patch.edits());
+        collaborationService.close(id);
+        try {
+            Optional<NotePatch> applied = noteService.applyPatch(request);
+            if (applied.isPresent()) {
+                return ResponseEntity.ok().eTag("\"" + applied.get().version() + "\"").body(applied.get());
+            }
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } finally {
+            collaborationService.close(id);
+        }
+        return conflict(id);
+    }
+
+    private ResponseEntity<?> conflict(UUID id) {
+        return noteService.findById(id)
+                .<ResponseEntity<?>>map(current -> ResponseEntity.status(HttpStatus.CONFLICT)
+                        .eTag(eTagOf(current))
+                        .body(current))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    private static String eTagOf(Note note) {
+        return "\"" + note.version + "\"";
+    }
+
+    private static Long parseVersion(String eTag) {
+        String value = eTag.trim();
+        if (value.startsWith("W/")) {
+            value = value.substring(2);
+        }
+        try {
+            return Long.parseLong(value.replace("\"", ""));
+        } catch (NumberFormatException e) {
+            return null;
         }
-        return ResponseEntity.notFound().build();
     }
 
     @DeleteMapping("/{id}")
@@ -129,11 +221,12 @@ public class NoteController {
         Optional<Note> note = noteService.findById(id);
         if (note.isPresent()) {
             try {
+                collaborationService.close(id);
                 embeddedFileService.deleteFilesByNoteId(id);
                 noteService.deleteById(id);
                 return ResponseEntity.noContent().build();
             } catch (Exception e) {
-                e.printStackTrace();
+                logger.error("Deleting note {} failed", id, e);
                 return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
             }
         }
@@ -146,12 +239,39 @@ public class NoteController {
         return note.map(ResponseEntity::ok).orElseGet(() -> ResponseEntity.notFound().build());
     }
 
+    /**
+     * Returns the text of a note as it is being edited together, with the revision
+     * that the operations of a client joining the editing are made against.
+     */
+    @GetMapping("/{id}/document")
+    public ResponseEntity<DocumentSnapshot> getDocument(@PathVariable UUID id) {
+        return collaborationService.snapshot(id)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
     @GetMapping(path={"","/"})
     public ResponseEntity<List<Note>> getAllNotes() {
         List<Note> notes = noteService.getAllNotes();
         return ResponseEntity.ok(notes);
     }
 
+    /**
+     * Lists notes one page at a time. Used instead of {@link #getAllNotes()} when a limit is given.
+     * @param after The id of the last note of the previous page
+     * @param limit The page size, capped at {@link NoteService#MAX_PAGE_SIZE}
+     * @param fields Pass e.g. {@code id,title} to leave out bodies and files
+     */
+    @GetMapping(path = {"", "/"}, params = "limit")
+    public ResponseEntity<KeysetPage<?>> getNotesPage(@RequestParam(required = false) UUID after,
+                                                      @RequestParam int limit,
+                                                      @RequestParam(required = false) String fields) {
+        if (NoteService.isSummaryProjection(fields)) {
+            return ResponseEntity.ok(noteService.getNoteSummariesPage(null, after, limit));
+        }
+        return ResponseEntity.ok(noteService.getNotesPage(null, after, limit));
+    }
+
     @PostMapping(path = "/{id}/files", consumes = MULTIPART_FORM_DATA_VALUE)
     public ResponseEntity<?> uploadFile(@PathVariable UUID id, @RequestParam("file") MultipartFile file) {
         Optional<Note> noteOpt = noteService.findById(id);
@@ -163,59 +283,168 @@ public class NoteController {
             EmbeddedFile savedFile = embeddedFileService.saveFile(noteOpt.get(), file);
             return ResponseEntity.ok(savedFile);
         } catch (IOException e) {
-            e.printStackTrace();
+            logger.error("Storing a file for note {} failed", id, e);
 
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body("Error uploading file: " + e.getMessage());
         }
     }
 
+    /**
+     * Streams the content of a file from the blob store.
+     * The content hash doubles as a strong ETag. Since the body is a {@link Resource},
+     * Spring fills in Content-Length and answers range requests with partial content.
+     * With {@code size=thumb} or {@code size=preview} a scaled down image is sent instead, once it has been made;
+     * until then, and for files that are no images, the original is sent.
+     */
     @GetMapping("/{noteId}/files/{fileName}")
-    public ResponseEntity<byte[]> getFileByName(@PathVariable UUID noteId, @PathVariable String fileName) {
-        List<EmbeddedFile> files = embeddedFileService.getFilesByNoteId(noteId);
-        files = files.stream().filter(e -> Objects.equals(e.getFileName(), fileName)).toList();
-        if (files.isEmpty()) {
+    public ResponseEntity<Resource> getFileByName(@PathVariable UUID noteId, @PathVariable String fileName,
+                                                  @RequestParam(required = false) String size,
+                                                  @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false)
+                                                  String ifNoneMatch) {
+        Optional<Rendition> rendition = Rendition.fromParam(size);
+        if (size != null && rendition.isEmpty()) {
+            return ResponseEntity.badRequest().build();
+        }
+        Optional<EmbeddedFile> file = embeddedFileService.findByNoteIdAndFileName(noteId, fileName);
+        if (file.isEmpty()) {
             return ResponseEntity.noContent().build();
         }
+        EmbeddedFile embeddedFile = file.get();
+        if (embeddedFile.getContentHash() == null) {
+            return notMigrated();
+        }
+        Optional<ImageRenditions.Rendered> rendered = rendition.flatMap(r -> embeddedFileService.getRendition(embeddedFile, r));
+        String eTag = eTagOf(embeddedFile, rendered.isPresent() ? size : null);
+        if (matchesAny(eTag, ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+        }
+        if (rendered.isPresent()) {
+            return ResponseEntity.ok()
+                    .contentType(rendered.get().mediaType())
+                    .eTag(eTag)
+                    .cacheControl(CacheControl.noCache())
+                    .body(embeddedFileService.getContent(rendered.get(), rendition.get()));
+        }
         return ResponseEntity.ok()
-                .contentType(MediaType.parseMediaType(files.getFirst().getFileType()))
-                .body(files.getFirst().getFileContent());
+                .contentType(MediaType.parseMediaType(embeddedFile.getFileType()))
+                .eTag(eTag)
+                .cacheControl(CacheControl.noCache())
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .body(embeddedFileService.getContent(embeddedFile));
     }
 
     @GetMapping("/{noteId}/files/{fileId}/getFile")
     public ResponseEntity<EmbeddedFile> getFileById(@PathVariable UUID noteId, @PathVariable UUID fileId) {
-        Optional<EmbeddedFile> file = embeddedFileService.findById(fileId);
+        Optional<EmbeddedFile> file = findFileOfNote(noteId, fileId);
         if (file.isEmpty()) {
             return ResponseEntity.notFound().build();
         }
         return ResponseEntity.ok(file.get());
     }
 
+    /**
+     * Streams the content of a file by its id. A file never gets other content under the same id,
+     * so the renditions asked for with {@code size} may be cached by clients for good.
+     */
+    @GetMapping("/{noteId}/files/{fileId}/content")
+    public ResponseEntity<Resource> getFileContent(@PathVariable UUID noteId, @PathVariable UUID fileId,
+                                                   @RequestParam(required = false) String size) {
+        Optional<Rendition> rendition = Rendition.fromParam(size);
+        if (size != null && rendition.isEmpty()) {
+            return ResponseEntity.badRequest().build();
+        }
+        Optional<EmbeddedFile> file = findFileOfNote(noteId, fileId);
+        if (file.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        if (file.get().getContentHash() == null) {
+            return notMigrated();
+        }
+        Optional<ImageRenditions.Rendered> rendered = rendition.flatMap(r -> embeddedFileService.getRendition(file.get(), r));
+        if (rendered.isPresent()) {
+            return ResponseEntity.ok()
+                    .contentType(rendered.get().mediaType())
+                    .eTag(eTagOf(file.get(), size))
+                    .cacheControl(CacheControl.maxAge(Duration.ofDays(365)).cachePublic().immutable())
+                    .body(embeddedFileService.getContent(rendered.get(), rendition.get()));
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .eTag(eTagOf(file.get(), null))
+                .body(embeddedFileService.getContent(file.get()));
+    }
+
     @GetMapping("/{id}/files")
-    public ResponseEntity<List<EmbeddedFile>> getFiles(@PathVariable UUID id) {
-        List<EmbeddedFile> files = embeddedFileService.getFilesByNoteId(id);
+    public ResponseEntity<List<EmbeddedFileSummary>> getFiles(@PathVariable UUID id) {
+        List<EmbeddedFileSummary> files = embeddedFileService.getFileSummariesByNoteId(id);
         return ResponseEntity.ok(files);
     }
 
     @DeleteMapping("/{noteId}/files/{fileId}")
     public ResponseEntity<Void> deleteFile(@PathVariable UUID noteId, @PathVariable UUID fileId) {
+        Optional<EmbeddedFile> file = embeddedFileService.findById(fileId);
+        if (file.isPresent() && !belongsTo(file.get(), noteId)) {
+            return ResponseEntity.notFound().build();
+        }
         embeddedFileService.deleteFile(fileId);
         return ResponseEntity.noContent().build();
     }
 
     @PutMapping("/{noteId}/files/{fileId}/rename")
     public ResponseEntity<EmbeddedFile> renameFile(@PathVariable UUID noteId, @PathVariable UUID fileId, @RequestParam String newFileName) {
-        Optional<EmbeddedFile> embeddedFileOpt = embeddedFileService.findById(fileId);
+        Optional<EmbeddedFile> embeddedFileOpt = findFileOfNote(noteId, fileId);
         if (embeddedFileOpt.isEmpty()) {
             return ResponseEntity.notFound().build();
         }
 
-        EmbeddedFile embeddedFile = embeddedFileOpt.get();
-
-        // rename the file by updating its name in the database
-        embeddedFile.setFileName(newFileName);
-        EmbeddedFile updatedFile = embeddedFileService.save(embeddedFile);
+        EmbeddedFile updatedFile = embeddedFileService.rename(embeddedFileOpt.get(), newFileName);
 
         return ResponseEntity.ok(updatedFile);
     }
+
+    /**
+     * Finds a file by its id, but only if it is attached to the note in the path,
+     * so a file id cannot be used to reach the files of another note
+     */
+    private Optional<EmbeddedFile> findFileOfNote(UUID noteId, UUID fileId) {
+        return embeddedFileService.findById(fileId).filter(file -> belongsTo(file, noteId));
+    }
+
+    private static boolean belongsTo(EmbeddedFile file, UUID noteId) {
+        return file.getNote() != null && file.getNote().id.equals(noteId);
+    }
+
+    /**
+     * A file stored before content hashes were kept has no content to send until
+     * {@link server.storage.LegacyFileContentMigration} moved it to the blob store
+     */
+    private static ResponseEntity<Resource> notMigrated() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "60")
+                .build();
+    }
+
+    /**
+     * @param size The rendition that is sent, or null for the original
+     * @return The strong ETag of the content
+     */
+    private static String eTagOf(EmbeddedFile file, String size) {
+        return size == null
+                ? "\"" + file.getContentHash() + "\""
+                : "\"" + file.getContentHash() + "-" + size + "\"";
+    }
+
+    /**
+     * Compares an ETag with an If-None-Match header the way RFC 9110 asks for:
+     * the header is a list of tags or {@code *}, and weak tags match their strong counterpart.
+     */
+    private static boolean matchesAny(String eTag, String ifNoneMatch) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        String tag = ETag.parse(eTag).get(0).tag();
+        return ETag.parse(ifNoneMatch).stream()
+                .anyMatch(candidate -> candidate.isWildcard() || candidate.tag().equals(tag));
+    }
 }
@@ -0,0 +1,42 @@
+package server.api;
+
+import commons.Note;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import server.render.NoteRenderer;
+import server.service.NoteService;
+
+import java.util.Optional;
+import java.util.UUID;
+
+@RestController
+@RequestMapping("/api/notes")
+public class NoteHtmlController {
+
+    private final NoteService noteService;
+    private final NoteRenderer noteRenderer;
+
+    public NoteHtmlController(NoteService noteService, NoteRenderer noteRenderer) {
+        this.noteService = noteService;
+        this.noteRenderer = noteRenderer;
+    }
+
+    /**
+     * Returns the body of a note rendered to HTML, for clients that show notes without rendering them.
+     * Opened directly in a browser the page runs in a sandbox, so scripts in a note can not act for the server.
+     */
+    @GetMapping(path = "/{id}/html", produces = MediaType.TEXT_HTML_VALUE)
+    public ResponseEntity<String> getNoteHtml(@PathVariable UUID id) {
+        Optional<Note> note = noteService.findById(id);
+        if (note.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok()
+                .header("Content-Security-Policy", "sandbox")
+                .body(noteRenderer.render(note.get()));
+    }
+}
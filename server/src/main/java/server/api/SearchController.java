@@ -0,0 +1,41 @@
+package server.api;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import server.search.SearchIndex;
+import server.search.SearchResults;
+
+import java.util.UUID;
+
+@RestController
+@RequestMapping("/api/search")
+public class SearchController {
+
+    private final SearchIndex searchIndex;
+
+    public SearchController(SearchIndex searchIndex) {
+        this.searchIndex = searchIndex;
+    }
+
+    /**
+     * Searches the titles and bodies of all notes on the server
+     * @param q The words to search for
+     * @param collectionId Only search this collection, if given
+     * @param page The index of the page of results, starting at 0
+     * @param size The number of results per page
+     * @return The matching notes, best match first, with a snippet of their body
+     */
+    @GetMapping(path = {"", "/"})
+    public ResponseEntity<SearchResults> search(@RequestParam String q,
+                                                @RequestParam(required = false) UUID collectionId,
+                                                @RequestParam(defaultValue = "0") int page,
+                                                @RequestParam(defaultValue = "20") int size) {
+        if (q.isBlank()) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(searchIndex.search(q, collectionId, page, size));
+    }
+}
@@ -0,0 +1,22 @@
+package server.cache;
+
+/**
+ * The names of the caches in front of the repositories, see {@link server.CacheConfig}
+ */
+public final class Caches {
+    /** Collections by id */
+    public static final String COLLECTIONS = "collections";
+    /** Collections by title, including titles no collection has */
+    public static final String COLLECTIONS_BY_TITLE = "collectionsByTitle";
+    /** The notes of a collection with their file metadata, by collection title */
+    public static final String NOTES_BY_COLLECTION = "notesByCollection";
+    /** Embedded file metadata by id */
+    public static final String FILES = "files";
+    /** Note bodies rendered to HTML, by note id and version */
+    public static final String NOTE_HTML = "noteHtml";
+
+    public static final String[] ALL = {COLLECTIONS, COLLECTIONS_BY_TITLE, NOTES_BY_COLLECTION, FILES, NOTE_HTML};
+
+    private Caches() {
+    }
+}
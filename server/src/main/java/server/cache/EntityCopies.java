@@ -0,0 +1,67 @@
+package server.cache;
+
+import commons.Collection;
+import commons.EmbeddedFile;
+import commons.Note;
+import org.hibernate.Hibernate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Copies the values that go into and come out of the caches. Every caller gets objects of its own,
+ * which are not attached to a persistence context and which other callers can not change.
+ * Files that were not loaded with a note are left out of its copy.
+ */
+final class EntityCopies {
+
+    private EntityCopies() {
+    }
+
+    /**
+     * @param value A cached value: a note, file or collection, a list of them, or an immutable value
+     * @return A copy of entities and lists, or the value itself
+     */
+    static Object copy(Object value) {
+        if (value instanceof List<?> values) {
+            List<Object> copy = new ArrayList<>(values.size());
+            for (Object v : values) {
+                copy.add(copy(v));
+            }
+            return copy;
+        }
+        if (value instanceof Note note) {
+            return copy(note);
+        }
+        if (value instanceof EmbeddedFile file) {
+            return new EmbeddedFile(file, file.getNote() == null ? null : withoutFiles(file.getNote()));
+        }
+        if (value instanceof Collection collection) {
+            return copy(collection);
+        }
+        return value;
+    }
+
+    private static Note copy(Note note) {
+        Note copy = withoutFiles(note);
+        if (note.embeddedFiles != null && Hibernate.isInitialized(note.embeddedFiles)) {
+            for (EmbeddedFile file : note.embeddedFiles) {
+                copy.embeddedFiles.add(new EmbeddedFile(file, copy));
+            }
+        }
+        return copy;
+    }
+
+    private static Note withoutFiles(Note note) {
+        Note copy = new Note(note.title, note.body, note.collection == null ? null : copy(note.collection));
+        copy.id = note.id;
+        copy.version = note.version;
+        return copy;
+    }
+
+    private static Collection copy(Collection collection) {
+        Collection copy = new Collection(collection.title, collection.serverURL);
+        copy.id = collection.id;
+        return copy;
+    }
+}
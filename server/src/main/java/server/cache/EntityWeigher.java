@@ -0,0 +1,73 @@
+package server.cache;
+
+import com.github.benmanes.caffeine.cache.Weigher;
+import commons.Collection;
+import commons.EmbeddedFile;
+import commons.Note;
+import org.hibernate.Hibernate;
+
+/**
+ * Estimates how many bytes of heap a cached value keeps alive, so the caches are bounded by memory
+ * rather than by entry count. Note bodies dominate; the estimate counts two bytes per character
+ * plus a rough fixed cost per object.
+ */
+public class EntityWeigher implements Weigher<Object, Object> {
+
+    private static final int OBJECT = 64;
+    private static final int REFERENCE = 16;
+
+    @Override
+    public int weigh(Object key, Object value) {
+        return (int) Math.min(Integer.MAX_VALUE, OBJECT + weigh(value));
+    }
+
+    static long weigh(Object value) {
+        if (value instanceof Iterable<?> values) {
+            long weight = OBJECT;
+            for (Object v : values) {
+                weight += REFERENCE + weigh(v);
+            }
+            return weight;
+        }
+        if (value instanceof Note note) {
+            return weigh(note);
+        }
+        if (value instanceof EmbeddedFile file) {
+            // the note of a file is loaded with it and stays in memory as long as the file does
+            return weigh(file) + (file.getNote() == null ? 0 : weighWithoutFiles(file.getNote()));
+        }
+        if (value instanceof Collection collection) {
+            return weigh(collection);
+        }
+        if (value instanceof String string) {
+            return chars(string);
+        }
+        return OBJECT;
+    }
+
+    private static long weigh(Note note) {
+        long weight = weighWithoutFiles(note);
+        if (note.embeddedFiles != null && Hibernate.isInitialized(note.embeddedFiles)) {
+            for (EmbeddedFile file : note.embeddedFiles) {
+                weight += REFERENCE + weigh(file);
+            }
+        }
+        return weight;
+    }
+
+    private static long weighWithoutFiles(Note note) {
+        return OBJECT + chars(note.title) + chars(note.body) + (note.collection == null ? 0 : weigh(note.collection));
+    }
+
+    private static long weigh(EmbeddedFile file) {
+        return OBJECT + chars(file.getFileName()) + chars(file.getFileType()) + chars(file.getContentHash());
+    }
+
+    private static long weigh(Collection collection) {
+        return OBJECT + chars(collection.title) + chars(collection.serverURL);
+    }
+
+    private static long chars(String string) {
+        return string == null ? 0 : OBJECT + 2L * string.length();
+    }
+}
@@ -0,0 +1,70 @@
+package server.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import org.springframework.cache.caffeine.CaffeineCache;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A Caffeine cache that keeps copies of the entities put into it and hands out copies,
+ * see {@link EntityCopies}, and that does not keep values which may be older than an eviction.
+ * A reader can load a value just before a transaction commits and store it just after the commit
+ * evicted the old one. Values are only loaded through {@link #get(Object, Callable)}, i.e. with
+ * {@code @Cacheable(sync = true)}: an eviction of the same key waits for the load and removes its value,
+ * and the value is dropped again if anything else was evicted while it was loaded, such as the old title
+ * of a renamed collection while its new title is looked up.
+ */
+public class GuardedCaffeineCache extends CaffeineCache {
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    public GuardedCaffeineCache(String name, Cache<Object, Object> cache, boolean allowNullValues) {
+        super(name, cache, allowNullValues);
+    }
+
+    @Override
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        long before = evictions.get();
+        T value = super.get(key, valueLoader);
+        if (evictions.get() != before) {
+            // the value may have been read before the eviction, the next lookup loads it again
+            getNativeCache().invalidate(key);
+        }
+        return value;
+    }
+
+    @Override
+    public void evict(Object key) {
+        evictions.incrementAndGet();
+        super.evict(key);
+    }
+
+    @Override
+    public boolean evictIfPresent(Object key) {
+        evictions.incrementAndGet();
+        return super.evictIfPresent(key);
+    }
+
+    @Override
+    public void clear() {
+        evictions.incrementAndGet();
+        super.clear();
+    }
+
+    @Override
+    public boolean invalidate() {
+        evictions.incrementAndGet();
+        return super.invalidate();
+    }
+
+    @Override
+    protected Object toStoreValue(Object userValue) {
+        return super.toStoreValue(EntityCopies.copy(userValue));
+    }
+
+    @Override
+    protected Object fromStoreValue(Object storeValue) {
+        return EntityCopies.copy(super.fromStoreValue(storeValue));
+    }
+}
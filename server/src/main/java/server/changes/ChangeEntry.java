@@ -0,0 +1,74 @@
+package server.changes;
+
+import commons.Change;
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * The latest change to one note, collection or file.
+ * Older entries for the same entity are dropped when a new one is written,
+ * so the table holds one row per entity that was ever touched.
+ */
+@Entity
+@Table(name = "change_log", indexes = @Index(name = "idx_change_log_entity", columnList = "kind, entity_id"))
+public class ChangeEntry {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long seq;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Change.Kind kind;
+
+    @Column(name = "entity_id", nullable = false)
+    private UUID entityId;
+
+    @Column(name = "parent_id")
+    private UUID parentId;
+
+    private boolean deleted;
+
+    @Column(nullable = false)
+    private LocalDateTime changedAt;
+
+    public ChangeEntry() {}
+
+    public ChangeEntry(Change.Kind kind, UUID entityId, UUID parentId, boolean deleted) {
+        this.kind = kind;
+        this.entityId = entityId;
+        this.parentId = parentId;
+        this.deleted = deleted;
+        this.changedAt = LocalDateTime.now();
+    }
+
+    public Long getSeq() {
+        return seq;
+    }
+
+    public void setSeq(Long seq) {
+        this.seq = seq;
+    }
+
+    public Change.Kind getKind() {
+        return kind;
+    }
+
+    public UUID getEntityId() {
+        return entityId;
+    }
+
+    public UUID getParentId() {
+        return parentId;
+    }
+
+    public boolean isDeleted() {
+        return deleted;
+    }
+
+    public LocalDateTime getChangedAt() {
+        return changedAt;
+    }
+}
@@ -0,0 +1,238 @@
+package server.changes;
+
+import commons.Change;
+import commons.ChangeFeed;
+import commons.Collection;
+import commons.EmbeddedFile;
+import commons.Note;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import server.database.ChangeEntryRepository;
+import server.database.CollectionRepository;
+import server.database.EmbeddedFileRepository;
+import server.database.NoteRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the sequence of changes to notes, collections and files,
+ * so clients can catch up with only what changed since they last synced.
+ */
+@Service
+public class ChangeLog {
+    public static final int MAX_PAGE_SIZE = 500;
+
+    private final ChangeEntryRepository changeEntryRepository;
+    private final NoteRepository noteRepository;
+    private final CollectionRepository collectionRepository;
+    private final EmbeddedFileRepository embeddedFileRepository;
+
+    /*
+     * Sequence numbers are handed out on insert, but a client reading the feed only sees committed rows,
+     * and a transaction may commit after one that got a higher number. Before its first insert, every
+     * writing transaction registers the highest number handed out so far; all numbers it gets are higher.
+     * Readers stop at the lowest number registered by an open transaction. Everything up to it is committed
+     * or rolled back, so a client following the feed never skips a change that commits late,
+     * and writers never wait for each other.
+     */
+    private final AtomicLong allocated = new AtomicLong(-1);
+    private final Map<Object, Long> openTransactions = new ConcurrentHashMap<>();
+
+    public ChangeLog(ChangeEntryRepository changeEntryRepository,
+                     NoteRepository noteRepository,
+                     CollectionRepository collectionRepository,
+                     EmbeddedFileRepository embeddedFileRepository) {
+        this.changeEntryRepository = changeEntryRepository;
+        this.noteRepository = noteRepository;
+        this.collectionRepository = collectionRepository;
+        this.embeddedFileRepository = embeddedFileRepository;
+    }
+
+    @Transactional
+    public void noteSaved(Note note) {
+        record(Change.Kind.NOTE, note.id, note.collection == null ? null : note.collection.id, false);
+    }
+
+    @Transactional
+    public void noteDeleted(UUID noteId) {
+        record(Change.Kind.NOTE, noteId, null, true);
+    }
+
+    @Transactional
+    public void collectionSaved(Collection collection) {
+        record(Change.Kind.COLLECTION, collection.id, null, false);
+    }
+
+    @Transactional
+    public void collectionDeleted(UUID collectionId) {
+        record(Change.Kind.COLLECTION, collectionId, null, true);
+    }
+
+    @Transactional
+    public void fileSaved(EmbeddedFile file) {
+        record(Change.Kind.FILE, file.getId(), file.getNote() == null ? null : file.getNote().id, false);
+    }
+
+    @Transactional
+    public void fileDeleted(UUID fileId, UUID noteId) {
+        record(Change.Kind.FILE, fileId, noteId, true);
+    }
+
+    /**
+     * Records several saved notes at once, with one statement to drop their older changes
+     */
+    @Transactional
+    public void notesSaved(List<Note> notes) {
+        recordAll(Change.Kind.NOTE, notes.stream()
+                .map(n -> new ChangeEntry(Change.Kind.NOTE, n.id, n.collection == null ? null : n.collection.id, false))
+                .toList());
+    }
+
+    @Transactional
+    public void notesDeleted(List<UUID> noteIds) {
+        recordAll(Change.Kind.NOTE, noteIds.stream()
+                .map(id -> new ChangeEntry(Change.Kind.NOTE, id, null, true))
+                .toList());
+    }
+
+    @Transactional
+    public void filesDeleted(List<EmbeddedFile> files) {
+        recordAll(Change.Kind.FILE, files.stream()
+                .map(f -> new ChangeEntry(Change.Kind.FILE, f.getId(), f.getNote() == null ? null : f.getNote().id, true))
+                .toList());
+    }
+
+    /**
+     * @return The sequence number of the latest change, or 0 if nothing changed yet.
+     * Changes after one that is not committed yet are not counted.
+     */
+    public long latestSeq() {
+        return Math.min(changeEntryRepository.findLatestSeq(), safeSeq());
+    }
+
+    /**
+     * Gets the changes made after the given point, with the current state of every entity that changed.
+     * An entity that changed several times is only listed once, at its latest change.
+     * @param since The latestSeq of the previous page, or 0 to get everything
+     * @param limit The maximum number of changes, capped at {@link #MAX_PAGE_SIZE}
+     * @return The page of changes
+     */
+    @Transactional(readOnly = true)
+    public ChangeFeed changesSince(long since, int limit) {
+        int size = Math.clamp(limit, 1, MAX_PAGE_SIZE);
+        List<ChangeEntry> entries = changeEntryRepository
+                .findBySeqGreaterThanAndSeqLessThanEqualOrderBySeqAsc(since, safeSeq(), PageRequest.ofSize(size + 1));
+        boolean hasMore = entries.size() > size;
+        if (hasMore) {
+            entries = entries.subList(0, size);
+        }
+
+        Map<UUID, Note> notes = byId(noteRepository.findAllById(idsOf(entries, Change.Kind.NOTE)), n -> n.id);
+        Map<UUID, Collection> collections = byId(
+                collectionRepository.findAllById(idsOf(entries, Change.Kind.COLLECTION)), c -> c.id);
+        Map<UUID, EmbeddedFile> files = byId(
+                embeddedFileRepository.findAllById(idsOf(entries, Change.Kind.FILE)), EmbeddedFile::getId);
+
+        List<Change> changes = new ArrayList<>(entries.size());
+        for (ChangeEntry entry : entries) {
+            Note note = entry.getKind() == Change.Kind.NOTE ? notes.get(entry.getEntityId()) : null;
+            Collection collection = entry.getKind() == Change.Kind.COLLECTION
+                    ? collections.get(entry.getEntityId()) : null;
+            EmbeddedFile file = entry.getKind() == Change.Kind.FILE ? files.get(entry.getEntityId()) : null;
+            boolean deleted = entry.isDeleted() || (note == null && collection == null && file == null);
+            changes.add(new Change(entry.getSeq(), entry.getKind(), entry.getEntityId(), entry.getParentId(),
+                    deleted, note, collection, file));
+        }
+
+        long latest = entries.isEmpty() ? Math.max(since, 0) : entries.getLast().getSeq();
+        return new ChangeFeed(changes, latest, hasMore);
+    }
+
+    private void record(Change.Kind kind, UUID id, UUID parentId, boolean deleted) {
+        registerOpenTransaction();
+        changeEntryRepository.deleteByKindAndEntityId(kind, id);
+        allocated(changeEntryRepository.save(new ChangeEntry(kind, id, parentId, deleted)).getSeq());
+    }
+
+    private void recordAll(Change.Kind kind, List<ChangeEntry> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        registerOpenTransaction();
+        changeEntryRepository.deleteByKindAndEntityIdIn(kind, entries.stream().map(ChangeEntry::getEntityId).toList());
+        changeEntryRepository.saveAll(entries).forEach(entry -> allocated(entry.getSeq()));
+    }
+
+    /**
+     * Registers the current transaction until it completes, with a number below every change it records
+     */
+    private void registerOpenTransaction() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()
+                || TransactionSynchronizationManager.hasResource(this)) {
+            return;
+        }
+        Object transaction = new Object();
+        openTransactions.put(transaction, allocatedSeq());
+        TransactionSynchronizationManager.bindResource(this, transaction);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResource(ChangeLog.this);
+                openTransactions.remove(transaction);
+            }
+        });
+    }
+
+    /**
+     * @return The highest sequence number up to which every change is committed or rolled back.
+     * Changes of the calling transaction itself do not hold it back.
+     */
+    private long safeSeq() {
+        long safe = allocatedSeq();
+        Object own = TransactionSynchronizationManager.getResource(this);
+        for (Map.Entry<Object, Long> open : openTransactions.entrySet()) {
+            if (open.getKey() != own) {
+                safe = Math.min(safe, open.getValue());
+            }
+        }
+        return safe;
+    }
+
+    /**
+     * @return The highest sequence number handed out so far, starting from the latest stored one
+     */
+    private long allocatedSeq() {
+        long seq = allocated.get();
+        if (seq < 0) {
+            allocated.compareAndSet(-1, changeEntryRepository.findLatestSeq());
+            seq = allocated.get();
+        }
+        return seq;
+    }
+
+    private void allocated(long seq) {
+        allocatedSeq();
+        allocated.accumulateAndGet(seq, Math::max);
+    }
+
+    private static List<UUID> idsOf(List<ChangeEntry> entries, Change.Kind kind) {
+        return entries.stream()
+                .filter(e -> e.getKind() == kind && !e.isDeleted())
+                .map(ChangeEntry::getEntityId)
+                .toList();
+    }
+
+    private static <T> Map<UUID, T> byId(List<T> entities, Function<T, UUID> id) {
+        return entities.stream().collect(Collectors.toMap(id, Function.identity()));
+    }
+}
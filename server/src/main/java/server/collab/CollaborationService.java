@@ -0,0 +1,232 @@
+package server.collab;
+
+import commons.Note;
+import commons.ot.DocumentSnapshot;
+import commons.ot.OperationMessage;
+import commons.ot.OtDocument;
+import commons.ot.TextOperation;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import server.service.NoteService;
+
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Orders the edits of clients that edit the body of a note together.
+ * Every note that is being edited has a live document in memory. Operations sent to it are transformed
+ * against whatever was applied since the revision the client saw, applied, and broadcast with
+ * their new revision on /topic/notes/{id}/ops. The text is written back to the database in the background.
+ * If that fails because the note was changed in the database directly, the stored note is broadcast
+ * on /topic/notes/{id}/body, so clients do not keep showing edits that are lost.
+ */
+@Service
+public class CollaborationService {
+    private static final Logger logger = LoggerFactory.getLogger(CollaborationService.class);
+
+    public static final int MAX_HISTORY = 1000;
+    public static final long IDLE_MILLIS = 5 * 60 * 1000;
+
+    private final NoteService noteService;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final ConcurrentMap<UUID, LiveDocument> documents = new ConcurrentHashMap<>();
+
+    public CollaborationService(NoteService noteService, SimpMessagingTemplate messagingTemplate) {
+        this.noteService = noteService;
+        this.messagingTemplate = messagingTemplate;
+    }
+
+    /**
+     * Applies an operation from a client and broadcasts it.
+     * If the operation can not be applied, the current text is broadcast on /topic/notes/{id}/body
+     * so every client starts over from it.
+     * @param noteId The note being edited
+     * @param message The operation, with the revision it was made against
+     * @return The operation as applied, or empty if it was dropped
+     */
+    public Optional<OperationMessage> receive(UUID noteId, OperationMessage message) {
+        if (message == null || message.operation() == null) {
+            return Optional.empty();
+        }
+        while (true) {
+            Optional<LiveDocument> opened = open(noteId);
+            if (opened.isEmpty()) {
+                return Optional.empty();
+            }
+            LiveDocument live = opened.get();
+            live.lock.lock();
+            try {
+                if (live.closed) {
+                    continue; // evicted while we waited, load it again
+                }
+                live.lastActivity = System.currentTimeMillis();
+                try {
+                    TextOperation applied = live.document.receive(message.revision(), message.operation());
+                    OperationMessage broadcast = new OperationMessage(noteId, message.origin(),
+                            live.document.getRevision(), applied);
+                    messagingTemplate.convertAndSend("/topic/notes/" + noteId + "/ops", broadcast);
+                    return Optional.of(broadcast);
+                } catch (IllegalArgumentException e) {
+                    Note reset = new Note(live.note.title, live.document.getText(), live.note.collection);
+                    reset.id = noteId;
+                    reset.version = live.document.getRevision();
+                    broadcastReset(reset);
+                    return Optional.empty();
+                }
+            } finally {
+                live.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * @return The current text of a note with its revision, including edits that are not stored yet
+     */
+    public Optional<DocumentSnapshot> snapshot(UUID noteId) {
+        LiveDocument live = documents.get(noteId);
+        if (live != null) {
+            live.lock.lock();
+            try {
+                if (!live.closed) {
+                    return Optional.of(new DocumentSnapshot(noteId, live.document.getRevision(),
+                            live.document.getText()));
+                }
+            } finally {
+                live.lock.unlock();
+            }
+        }
+        return noteService.findById(noteId)
+                .map(note -> new DocumentSnapshot(noteId, note.version, bodyOf(note)));
+    }
+
+    /**
+     * Stores the text of a live document and drops it from memory, so the note can be changed
+     * in the database directly. The next operation loads the document again.
+     */
+    public void close(UUID noteId) {
+        LiveDocument live = documents.remove(noteId);
+        if (live != null) {
+            live.lock.lock();
+            try {
+                live.closed = true;
+                if (!store(noteId, live)) {
+                    resync(noteId, live);
+                }
+            } finally {
+                live.lock.unlock();
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${netnote.collab.flush-interval-ms:1000}")
+    public void flushAll() {
+        long now = System.currentTimeMillis();
+        for (UUID noteId : documents.keySet()) {
+            LiveDocument live = documents.get(noteId);
+            if (live == null) {
+                continue;
+            }
+            live.lock.lock();
+            try {
+                if (live.closed) {
+                    continue;
+                }
+                boolean stored = store(noteId, live);
+                if (!stored || now - live.lastActivity > IDLE_MILLIS) {
+                    live.closed = true;
+                    documents.remove(noteId, live);
+                }
+                if (!stored) {
+                    resync(noteId, live);
+                }
+            } finally {
+                live.lock.unlock();
+            }
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        documents.keySet().forEach(this::close);
+    }
+
+    private Optional<LiveDocument> open(UUID noteId) {
+        LiveDocument live = documents.get(noteId);
+        if (live != null) {
+            return Optional.of(live);
+        }
+        Optional<Note> note = noteService.findById(noteId);
+        if (note.isEmpty()) {
+            return Optional.empty();
+        }
+        LiveDocument loaded = new LiveDocument(note.get());
+        LiveDocument existing = documents.putIfAbsent(noteId, loaded);
+        return Optional.of(existing == null ? loaded : existing);
+    }
+
+    /**
+     * Writes the text if it changed since it was last stored. Must be called while holding the lock of the document.
+     * @return false if the note was deleted or changed by somebody else, so the document is out of date
+     */
+    private boolean store(UUID noteId, LiveDocument live) {
+        long revision = live.document.getRevision();
+        if (revision == live.storedRevision) {
+            return true;
+        }
+        if (!noteService.saveBody(noteId, live.document.getText(), live.storedRevision, revision)) {
+            return false;
+        }
+        live.storedRevision = revision;
+        return true;
+    }
+
+    /**
+     * Tells the clients of a document that could not be stored to start over from the note in the database.
+     * Their edits since the last store are lost; if the note was deleted, its deletion event tells them so.
+     */
+    private void resync(UUID noteId, LiveDocument live) {
+        logger.warn("Edits of note {} up to revision {} could not be stored, the note was changed or deleted",
+                noteId, live.document.getRevision());
+        noteService.findById(noteId).ifPresent(stored -> {
+            // without the lazily loaded files, which the clients fetch separately
+            Note reset = new Note(stored.title, bodyOf(stored), stored.collection);
+            reset.id = noteId;
+            reset.version = stored.version;
+            broadcastReset(reset);
+        });
+    }
+
+    private void broadcastReset(Note note) {
+        messagingTemplate.convertAndSend("/topic/notes/" + note.id + "/body", note);
+    }
+
+    private static String bodyOf(Note note) {
+        return note.body == null ? "" : note.body;
+    }
+
+    /**
+     * The lock is held while the text is written to the database. It is not a monitor, so a virtual thread
+     * waiting for the database releases its carrier thread.
+     */
+    private static class LiveDocument {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Note note;
+        private final OtDocument document;
+        private long storedRevision;
+        private long lastActivity = System.currentTimeMillis();
+        private boolean closed;
+
+        private LiveDocument(Note note) {
+            this.note = note;
+            this.document = new OtDocument(bodyOf(note), note.version, MAX_HISTORY);
+            this.storedRevision = note.version;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package server.database;
+
+import commons.Change;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import server.changes.ChangeEntry;
+
+import java.util.List;
+import java.util.UUID;
+
+public interface ChangeEntryRepository extends JpaRepository<ChangeEntry, Long> {
+
+    List<ChangeEntry> findBySeqGreaterThanAndSeqLessThanEqualOrderBySeqAsc(long since, long until, Pageable pageable);
+
+    @Query("select coalesce(max(c.seq), 0) from ChangeEntry c")
+    long findLatestSeq();
+
+    @Modifying
+    @Query("delete from ChangeEntry c where c.kind = :kind and c.entityId = :entityId")
+    void deleteByKindAndEntityId(@Param("kind") Change.Kind kind, @Param("entityId") UUID entityId);
+
+    @Modifying
+    @Query("delete from ChangeEntry c where c.kind = :kind and c.entityId in :entityIds")
+    void deleteByKindAndEntityIdIn(@Param("kind") Change.Kind kind, @Param("entityIds") List<UUID> entityIds);
+}
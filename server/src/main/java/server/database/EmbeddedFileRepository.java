@@ -2,11 +2,45 @@ package server.database;
 
 import commons.EmbeddedFile;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import server.dto.EmbeddedFileSummary;
 
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 public interface EmbeddedFileRepository extends JpaRepository<EmbeddedFile, UUID> {
     List<EmbeddedFile> findByNoteId(UUID noteId);
+
+    @Query("select new server.dto.EmbeddedFileSummary(f.id, f.fileName, f.fileType, f.fileSize, f.contentHash, f.uploadedAt) "
+            + "from EmbeddedFile f where f.note.id = :noteId")
+    List<EmbeddedFileSummary> findSummariesByNoteId(@Param("noteId") UUID noteId);
+
+    Optional<EmbeddedFile> findFirstByNoteIdAndFileName(UUID noteId, String fileName);
     void deleteByNoteId(UUID noteId);
+
+    List<EmbeddedFile> findByNoteIdIn(List<UUID> noteIds);
+
+    /**
+     * Deletes the files of several notes in one statement
+     * @return The number of deleted files
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from EmbeddedFile f where f.note.id in :noteIds")
+    int deleteByNoteIdIn(@Param("noteIds") List<UUID> noteIds);
+
+    @Query("select f from EmbeddedFile f where f.note.collection.id = :collectionId")
+    List<EmbeddedFile> findByCollectionId(@Param("collectionId") UUID collectionId);
+
+    /**
+     * Deletes the files of all notes of a collection in one statement
+     * @return The number of deleted files
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from EmbeddedFile f where f.note.id in "
+            + "(select n.id from Note n where n.collection.id = :collectionId)")
+    int deleteByCollectionId(@Param("collectionId") UUID collectionId);
+    boolean existsByContentHash(String contentHash);
 }
@@ -1,10 +1,101 @@
 package server.database;
 
+import commons.Collection;
 import commons.Note;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import server.dto.NoteSummary;
+
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
+/**
+ * Notes load their embedded files lazily. The queries returned to clients fetch them
+ * together with the notes in one statement, instead of one extra select per note.
+ */
 public interface NoteRepository extends JpaRepository<Note, UUID> {
+    @EntityGraph(attributePaths = {"collection", "embeddedFiles"})
     List<Note> findByCollectionTitle(String collectionTitle);
+
+    boolean existsByCollectionIdAndTitle(UUID collectionId, String title);
+
+    List<Note> findByCollectionIdAndTitleIn(UUID collectionId, List<String> titles);
+
+    @Override
+    @EntityGraph(attributePaths = {"collection", "embeddedFiles"})
+    List<Note> findAll();
+
+    @Override
+    @EntityGraph(attributePaths = {"collection", "embeddedFiles"})
+    Optional<Note> findById(UUID id);
+
+    // Pages are ordered by id and start after the last id of the previous page.
+    // Files are not fetch-joined here, since that would make Hibernate apply the limit in memory;
+    // they are batch-loaded per page instead (hibernate.default_batch_fetch_size).
+
+    @EntityGraph(attributePaths = {"collection"})
+    List<Note> findByIdGreaterThanOrderByIdAsc(UUID after, Pageable pageable);
+
+    @EntityGraph(attributePaths = {"collection"})
+    List<Note> findByCollectionTitleAndIdGreaterThanOrderByIdAsc(String collectionTitle, UUID after, Pageable pageable);
+
+    @Query("select new server.dto.NoteSummary(n.id, n.title, n.collection.id) from Note n "
+            + "where n.id > :after order by n.id")
+    List<NoteSummary> findSummariesAfter(@Param("after") UUID after, Pageable pageable);
+
+    @Query("select new server.dto.NoteSummary(n.id, n.title, n.collection.id) from Note n "
+            + "where n.collection.title = :collectionTitle and n.id > :after order by n.id")
+    List<NoteSummary> findSummariesByCollectionTitleAfter(@Param("collectionTitle") String collectionTitle,
+                                                          @Param("after") UUID after, Pageable pageable);
+
+    /**
+     * Overwrites a note only if it is still at the expected version, and moves it to the next version
+     * @return 1 if the note was updated, 0 if it does not exist or has another version
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Note n set n.title = :title, n.body = :body, n.collection = :collection, "
+            + "n.version = n.version + 1 where n.id = :id and n.version = :version")
+    int updateIfVersion(@Param("id") UUID id, @Param("version") long version, @Param("title") String title,
+                        @Param("body") String body, @Param("collection") Collection collection);
+
+    /**
+     * Stores the body of a note kept by the collaborative editor, if nothing else changed the note in the meantime
+     * @return 1 if the note was updated, 0 if it does not exist or has another version
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Note n set n.body = :body, n.version = :newVersion where n.id = :id and n.version = :version")
+    int updateBody(@Param("id") UUID id, @Param("version") long version, @Param("body") String body,
+                   @Param("newVersion") long newVersion);
+
+    /**
+     * Moves notes to another collection in one statement
+     * @return The number of moved notes
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Note n set n.collection = :collection, n.version = n.version + 1 where n.id in :ids")
+    int moveToCollection(@Param("ids") List<UUID> ids, @Param("collection") Collection collection);
+
+    /**
+     * Deletes notes in one statement. Their files have to be deleted first.
+     * @return The number of deleted notes
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from Note n where n.id in :ids")
+    int deleteAllByIdIn(@Param("ids") List<UUID> ids);
+
+    @Query("select n.id from Note n where n.collection.id = :collectionId")
+    List<UUID> findIdsByCollectionId(@Param("collectionId") UUID collectionId);
+
+    /**
+     * Deletes all notes of a collection in one statement. Their files have to be deleted first.
+     * @return The number of deleted notes
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from Note n where n.collection.id = :collectionId")
+    int deleteByCollectionId(@Param("collectionId") UUID collectionId);
 }
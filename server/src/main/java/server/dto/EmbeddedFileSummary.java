@@ -0,0 +1,19 @@
+package server.dto;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * The metadata of an embedded file, as shown in file listings.
+ * The content itself is fetched separately through the file endpoints.
+ *
+ * @param id The id of the file
+ * @param fileName Name of the file
+ * @param fileType Content type of the file
+ * @param fileSize Size of the content in bytes
+ * @param contentHash SHA-256 hex digest of the content
+ * @param uploadedAt Time the file was uploaded
+ */
+public record EmbeddedFileSummary(UUID id, String fileName, String fileType, long fileSize,
+                                  String contentHash, LocalDateTime uploadedAt) {
+}
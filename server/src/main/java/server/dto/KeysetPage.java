@@ -0,0 +1,14 @@
+package server.dto;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * One page of a listing ordered by id.
+ *
+ * @param items The items on this page
+ * @param nextCursor The id to pass as {@code after} to get the next page, or null if this is the last page
+ * @param <T> The type of the items
+ */
+public record KeysetPage<T>(List<T> items, UUID nextCursor) {
+}
@@ -0,0 +1,13 @@
+package server.dto;
+
+import java.util.UUID;
+
+/**
+ * A note without its body and files, for listings that only show titles.
+ *
+ * @param id The id of the note
+ * @param title The title of the note
+ * @param collectionId The id of the collection the note is in
+ */
+public record NoteSummary(UUID id, String title, UUID collectionId) {
+}
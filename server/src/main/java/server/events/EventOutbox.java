@@ -0,0 +1,146 @@
+package server.events;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import commons.Collection;
+import commons.EmbeddedFile;
+import commons.Note;
+import commons.NotePatch;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import server.database.OutboxEventRepository;
+
+import java.util.UUID;
+
+/**
+ * Announces changes to the websocket clients. The services call it in the transaction of the change;
+ * the messages are stored with the change and sent by the {@link OutboxRelay} after the commit.
+ */
+@Service
+public class EventOutbox {
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final OutboxRelay relay;
+    private final ObjectMapper objectMapper;
+
+    public EventOutbox(OutboxEventRepository outboxEventRepository, OutboxRelay relay, ObjectMapper objectMapper) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.relay = relay;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * @return The topic on which the notes created in a collection are announced;
+     * renames and deletions go to its /title and /delete subtopics
+     */
+    public static String collectionTopic(UUID collectionId) {
+        return "/topic/collections/" + collectionId + "/notes";
+    }
+
+    public void noteCreated(Note note) {
+        publish(collectionTopic(note.collection.id), withoutFiles(note));
+    }
+
+    /**
+     * Sends the new state of a note to the clients that have it open.
+     * Only the latest state is sent if the note changes several times before the relay runs.
+     */
+    public void noteChanged(Note note) {
+        publish("/topic/notes/" + note.id + "/body", withoutFiles(note), true);
+    }
+
+    /**
+     * Announces a note that moved to another collection as deleted from the old one and created in the new one,
+     * so clients listing either collection update their list
+     * @param note The note, in its new collection
+     * @param fromCollectionId The id of the collection it was in
+     */
+    public void noteMoved(Note note, UUID fromCollectionId) {
+        publish(collectionTopic(fromCollectionId) + "/delete", withoutFiles(note));
+        noteCreated(note);
+    }
+
+    public void noteRenamed(Note note) {
+        publish(collectionTopic(note.collection.id) + "/title", withoutFiles(note));
+    }
+
+    public void noteDeleted(Note note) {
+        publish(collectionTopic(note.collection.id) + "/delete", withoutFiles(note));
+    }
+
+    public void notePatched(NotePatch patch) {
+        publish("/topic/notes/" + patch.noteId() + "/patch", patch);
+    }
+
+    public void fileAdded(EmbeddedFile file) {
+        publish("/topic/notes/" + file.getNote().id + "/files", file.getId());
+    }
+
+    public void fileDeleted(UUID noteId, UUID fileId) {
+        publish("/topic/notes/" + noteId + "/files/deleteFile", fileId);
+    }
+
+    public void fileRenamed(EmbeddedFile file) {
+        publish("/topic/notes/" + file.getNote().id + "/files/renameFile",
+                new Object[] {file.getId(), file.getFileName()});
+    }
+
+    public void collectionDeleted(Collection collection) {
+        publish("/topic/collections/delete", collection);
+    }
+
+    public void publish(String destination, Object payload) {
+        publish(destination, payload, false);
+    }
+
+    /**
+     * Stores a message for the given destination. It is sent once the current transaction commits,
+     * or right away if there is none.
+     * @param destination The topic to send the message to
+     * @param payload The message, converted to JSON now so later changes to the object are not sent
+     * @param replaceable Whether the message holds a full state that a newer message for the destination replaces
+     */
+    @Transactional
+    public void publish(String destination, Object payload, boolean replaceable) {
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Event can not be converted to JSON", e);
+        }
+        outboxEventRepository.save(new OutboxEvent(destination, json, replaceable));
+        relayAfterCommit();
+    }
+
+    private void relayAfterCommit() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            relay.wakeUp();
+            return;
+        }
+        if (TransactionSynchronizationManager.hasResource(this)) {
+            return; // already registered for this transaction
+        }
+        TransactionSynchronizationManager.bindResource(this, Boolean.TRUE);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResource(EventOutbox.this);
+                if (status == STATUS_COMMITTED) {
+                    relay.wakeUp();
+                }
+            }
+        });
+    }
+
+    /**
+     * @return A copy of the note without its lazily loaded files, which the clients fetch separately
+     */
+    private static Note withoutFiles(Note note) {
+        Note copy = new Note(note.title, note.body, note.collection);
+        copy.id = note.id;
+        copy.version = note.version;
+        return copy;
+    }
+}
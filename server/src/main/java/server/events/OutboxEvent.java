@@ -0,0 +1,69 @@
+package server.events;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * A message for the websocket clients, written in the same transaction as the change it announces.
+ * The {@link OutboxRelay} sends it once that transaction has committed and then deletes it,
+ * so a message is only sent for changes that were stored, and is not lost if sending fails.
+ */
+@Entity
+@Table(name = "outbox")
+public class OutboxEvent {
+
+    // ids come from a sequence in blocks, so the events of a transaction are inserted in JDBC batches
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "outbox_seq")
+    @SequenceGenerator(name = "outbox_seq", sequenceName = "outbox_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(nullable = false)
+    private String destination;
+
+    // the payload as JSON, the way it is sent to the clients
+    @Lob
+    @Column(nullable = false)
+    private String payload;
+
+    // the payload is a full state, so a newer event for the same destination makes this one obsolete
+    @Column(nullable = false, columnDefinition = "boolean default false")
+    private boolean replaceable;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    public OutboxEvent() {}
+
+    public OutboxEvent(String destination, String payload) {
+        this(destination, payload, false);
+    }
+
+    public OutboxEvent(String destination, String payload, boolean replaceable) {
+        this.destination = destination;
+        this.payload = payload;
+        this.replaceable = replaceable;
+        this.createdAt = LocalDateTime.now();
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getDestination() {
+        return destination;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public boolean isReplaceable() {
+        return replaceable;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+}
@@ -0,0 +1,168 @@
+package server.events;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import server.Config;
+import server.database.OutboxEventRepository;
+import server.websocket.WireFormat;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Sends the stored {@link OutboxEvent}s to the websocket clients in the order they were written and deletes them.
+ * It is woken up after every commit that wrote events and also polls the table, so events that could not be
+ * sent (or were written before a restart) are sent later. An event may be sent twice if the server stops
+ * between sending and deleting it.
+ * <p>
+ * After a wake-up the relay waits a short window before it reads the table, so the events of a burst of commits
+ * are sent together. Of the replaceable events for a destination, e.g. the states of a note being typed in,
+ * only the latest one is sent; the older ones are deleted unsent.
+ */
+@Component
+public class OutboxRelay {
+    private static final Logger logger = LoggerFactory.getLogger(OutboxRelay.class);
+
+    static final int BATCH_SIZE = 100;
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final long coalesceWindow;
+    private final ObjectMapper objectMapper;
+    private final WireFormat broadcastFormat;
+    private final ObjectWriter cborWriter = Config.cborMapper().writer();
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "outbox-relay");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // set when new events were committed, so a run that is busy takes another look before it stops
+    private final AtomicBoolean requested = new AtomicBoolean();
+    private final ReentrantLock running = new ReentrantLock();
+
+    public OutboxRelay(OutboxEventRepository outboxEventRepository, SimpMessagingTemplate messagingTemplate,
+                       ObjectMapper objectMapper,
+                       @Value("${netnote.outbox.coalesce-window-ms:50}") long coalesceWindow,
+                       @Value("${netnote.websocket.broadcast-format:JSON}") WireFormat broadcastFormat) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.messagingTemplate = messagingTemplate;
+        this.objectMapper = objectMapper;
+        this.coalesceWindow = coalesceWindow;
+        this.broadcastFormat = broadcastFormat;
+    }
+
+    /**
+     * Asks for the events to be sent on the relay thread once the coalescing window has passed.
+     * Requests made while a run is pending are merged.
+     */
+    public void wakeUp() {
+        if (requested.compareAndSet(false, true)) {
+            executor.schedule(this::relay, coalesceWindow, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Sends all stored events. Does nothing if another thread is already sending them.
+     */
+    @Scheduled(fixedDelayString = "${netnote.outbox.poll-interval-ms:500}",
+            initialDelayString = "${netnote.outbox.poll-interval-ms:500}")
+    public void relay() {
+        if (!running.tryLock()) {
+            return; // the running relay sees the request flag
+        }
+        try {
+            do {
+                requested.set(false);
+                drain();
+            } while (requested.get());
+        } catch (RuntimeException e) {
+            logger.warn("Sending outbox events failed, retrying on the next poll", e);
+        } finally {
+            running.unlock();
+        }
+    }
+
+    private void drain() {
+        List<OutboxEvent> events;
+        do {
+            events = outboxEventRepository.findAllByOrderByIdAsc(PageRequest.of(0, BATCH_SIZE));
+            Map<String, Long> latest = latestReplaceable(events);
+            List<Long> sent = new ArrayList<>(events.size());
+            try {
+                for (OutboxEvent event : events) {
+                    if (!event.isReplaceable() || event.getId().equals(latest.get(event.getDestination()))) {
+                        messagingTemplate.send(event.getDestination(), toMessage(event));
+                    }
+                    sent.add(event.getId());
+                }
+            } finally {
+                if (!sent.isEmpty()) {
+                    outboxEventRepository.deleteAllByIdInBatch(sent);
+                }
+            }
+        } while (events.size() == BATCH_SIZE);
+    }
+
+    /**
+     * @return The id of the newest replaceable event for every destination that has one
+     */
+    private static Map<String, Long> latestReplaceable(List<OutboxEvent> events) {
+        Map<String, Long> latest = new HashMap<>();
+        for (OutboxEvent event : events) {
+            if (event.isReplaceable()) {
+                latest.put(event.getDestination(), event.getId());
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * @return A message with the JSON that was stored, so it is not converted again,
+     * or its CBOR form if the server broadcasts CBOR
+     */
+    private Message<byte[]> toMessage(OutboxEvent event) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setContentType(broadcastFormat.getMimeType());
+        accessor.setLeaveMutable(true);
+        return MessageBuilder.createMessage(encode(event.getPayload()), accessor.getMessageHeaders());
+    }
+
+    private byte[] encode(String json) {
+        if (broadcastFormat == WireFormat.JSON) {
+            return json.getBytes(StandardCharsets.UTF_8);
+        }
+        try {
+            return cborWriter.writeValueAsBytes(objectMapper.readTree(json));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,140 @@
+package server.render;
+
+import commons.Note;
+import org.commonmark.Extension;
+import org.commonmark.ext.gfm.strikethrough.StrikethroughExtension;
+import org.commonmark.ext.gfm.tables.TablesExtension;
+import org.commonmark.parser.Parser;
+import org.commonmark.renderer.html.HtmlRenderer;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.stereotype.Component;
+import org.springframework.web.util.HtmlUtils;
+import server.cache.Caches;
+import server.database.NoteRepository;
+import server.storage.Rendition;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Renders note bodies to HTML the way the client's preview does: tags become buttons, [[references]]
+ * to notes of the same collection become links with a preview (or are marked when no such note exists),
+ * and images point to the files embedded in the note. The result is the body of the page only,
+ * without the client's stylesheet and scripts.
+ */
+@Component
+public class NoteRenderer {
+
+    private static final Pattern TAG = Pattern.compile("#([a-zA-Z0-9_+-]+)");
+    private static final Pattern REFERENCE = Pattern.compile("\\[\\[(.*?)]]");
+    private static final Pattern IMAGE = Pattern.compile("!\\[([^)]+)]\\(([^)]+)\\)");
+    private static final int PREVIEW_LENGTH = 20;
+
+    private final NoteRepository noteRepository;
+    private final Parser parser;
+    private final HtmlRenderer renderer;
+
+    public NoteRenderer(NoteRepository noteRepository) {
+        this.noteRepository = noteRepository;
+        List<Extension> extensions = List.of(TablesExtension.create(), StrikethroughExtension.create());
+        this.parser = Parser.builder().extensions(extensions).build();
+        this.renderer = HtmlRenderer.builder().extensions(extensions).build();
+    }
+
+    /**
+     * Renders a note, or returns the rendering of the same version made earlier.
+     * The cache is cleared whenever a note or collection changes, since references depend on other notes.
+     * @param note The note to render
+     * @return The HTML of the body
+     */
+    @Cacheable(cacheNames = Caches.NOTE_HTML, key = "#note.id + ':' + #note.version", sync = true)
+    public String render(Note note) {
+        if (note.body == null || note.body.isEmpty()) {
+            return "";
+        }
+        String markdown = replaceTags(note.body);
+        markdown = replaceReferences(markdown, note);
+        markdown = linkImages(markdown, note);
+        return renderer.render(parser.parse(markdown));
+    }
+
+    private static String replaceTags(String markdown) {
+        Matcher matcher = TAG.matcher(markdown);
+        StringBuilder result = new StringBuilder();
+        while (matcher.find()) {
+            String tag = matcher.group(1);
+            String tagHtml = "<button class='custom-tag-button' data-tag='" + tag
+                    + "' onclick='handleTagClick(\"" + tag + "\")'>" + tag + "</button>";
+            matcher.appendReplacement(result, Matcher.quoteReplacement(tagHtml));
+        }
+        matcher.appendTail(result);
+        return result.toString();
+    }
+
+    /**
+     * Looks up all referenced notes of the collection with one query
+     */
+    private String replaceReferences(String markdown, Note note) {
+        List<String> references = REFERENCE.matcher(markdown).results().map(m -> m.group(1)).distinct().toList();
+        if (references.isEmpty()) {
+            return markdown;
+        }
+        Map<String, Note> referred = noteRepository.findByCollectionIdAndTitleIn(note.collection.id, references)
+                .stream()
+                .collect(Collectors.toMap(n -> n.title, Function.identity(), (a, b) -> a));
+        for (String reference : references) {
+            Note referredNote = referred.get(reference);
+            String replacement = referredNote == null
+                    ? "<span class='red-squiggly'>[[" + reference + "]]</span>"
+                    : String.format("<a href='%s' class='note-link' data-note-title='%s' "
+                                    + "data-note-collection='%s' data-note-preview='%s'>%s</a>",
+                            "note://" + reference, reference, note.collection.title,
+                            previewText(referredNote, note), reference);
+            markdown = markdown.replace("[[" + reference + "]]", replacement);
+        }
+        return markdown;
+    }
+
+    private static String previewText(Note referredNote, Note note) {
+        if (referredNote.body == null || referredNote.body.isBlank()) {
+            return "The note is blank.";
+        }
+        if (referredNote.title.equals(note.title)) {
+            return "This note references itself.";
+        }
+        String previewText = referredNote.body.length() > PREVIEW_LENGTH
+                ? referredNote.body.substring(0, PREVIEW_LENGTH) + "..."
+                : referredNote.body;
+        return HtmlUtils.htmlEscape(previewText.replace("\n", " ⏎ "))
+                .replace("[[", "&#91;&#91;")
+                .replace("]]", "&#93;&#93;");
+    }
+
+    /**
+     * Points images given by file name to the preview rendition of the file of the note
+     */
+    private static String linkImages(String markdown, Note note) {
+        Matcher matcher = IMAGE.matcher(markdown);
+        StringBuilder result = new StringBuilder();
+        while (matcher.find()) {
+            String fileUrl;
+            try {
+                String encodedFileName = new URI(null, null, matcher.group(2), null).toASCIIString();
+                fileUrl = note.collection.serverURL + "api/notes/" + note.id + "/files/" + encodedFileName
+                        + "?size=" + Rendition.PREVIEW.getParam();
+            } catch (URISyntaxException e) {
+                fileUrl = matcher.group(2); // left as written, the image just does not load
+            }
+            matcher.appendReplacement(result,
+                    Matcher.quoteReplacement(String.format("![%s](%s)", matcher.group(1), fileUrl)));
+        }
+        matcher.appendTail(result);
+        return result.toString();
+    }
+}
@@ -0,0 +1,15 @@
+package server.search;
+
+import java.util.UUID;
+
+/**
+ * A note matching a search query.
+ *
+ * @param noteId The id of the note
+ * @param title The title of the note
+ * @param collectionId The id of the collection the note is in
+ * @param score How well the note matches, higher is better
+ * @param snippet A piece of the body around the first match
+ */
+public record SearchHit(UUID noteId, String title, UUID collectionId, double score, String snippet) {
+}
@@ -0,0 +1,265 @@
+package server.search;
+
+import commons.Note;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory inverted index over note titles and bodies.
+ * Every word maps to the notes containing it, with how often it occurs in the title and the body.
+ * Queries match notes containing all words of the query, where the last word may be incomplete,
+ * and rank them by tf-idf with title matches weighing more.
+ * Notes indexed or removed within a transaction only change the index once it commits.
+ */
+@Component
+public class SearchIndex {
+
+    public static final int MAX_PAGE_SIZE = 100;
+
+    private static final double TITLE_WEIGHT = 3.0;
+    private static final int SNIPPET_RADIUS = 60;
+
+    /**
+     * Occurrences of one word in one note
+     */
+    public record Posting(int inTitle, int inBody) {
+        double weight() {
+            return TITLE_WEIGHT * inTitle + inBody;
+        }
+    }
+
+    /**
+     * A tokenized note, ready to be added to the index
+     */
+    public record IndexedNote(UUID id, String title, String body, UUID collectionId, Map<String, Posting> terms) {
+    }
+
+    private final NavigableMap<String, Map<UUID, Posting>> postings = new TreeMap<>();
+    private final Map<UUID, IndexedNote> notes = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Tokenizes a note. This does not touch the index, so many notes can be analyzed in parallel.
+     * @param note The note to analyze
+     * @return The words of the note, with their counts
+     */
+    public static IndexedNote analyze(Note note) {
+        Map<String, int[]> counts = new HashMap<>();
+        for (String token : Tokenizer.tokenize(note.title)) {
+            counts.computeIfAbsent(token, t -> new int[2])[0]++;
+        }
+        for (String token : Tokenizer.tokenize(note.body)) {
+            counts.computeIfAbsent(token, t -> new int[2])[1]++;
+        }
+        Map<String, Posting> terms = new HashMap<>();
+        counts.forEach((token, count) -> terms.put(token, new Posting(count[0], count[1])));
+        UUID collectionId = note.collection == null ? null : note.collection.id;
+        return new IndexedNote(note.id, note.title, note.body, collectionId, terms);
+    }
+
+    /**
+     * Adds a note to the index, replacing the previous version of it.
+     * The note is analyzed right away, but only added once the current transaction commits.
+     * @param note The note to index
+     */
+    public void index(Note note) {
+        if (note == null || note.id == null) {
+            return;
+        }
+        IndexedNote analyzed = analyze(note);
+        afterCommit(() -> addAll(List.of(analyzed)));
+    }
+
+    /**
+     * Adds analyzed notes to the index, replacing previous versions of them
+     * @param analyzed The notes to add
+     */
+    public void addAll(Collection<IndexedNote> analyzed) {
+        lock.writeLock().lock();
+        try {
+            for (IndexedNote note : analyzed) {
+                removeLocked(note.id());
+                notes.put(note.id(), note);
+                note.terms().forEach((term, posting) ->
+                        postings.computeIfAbsent(term, t -> new HashMap<>()).put(note.id(), posting));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a note from the index once the current transaction commits
+     * @param noteId The id of the note
+     */
+    public void remove(UUID noteId) {
+        afterCommit(() -> {
+            lock.writeLock().lock();
+            try {
+                removeLocked(noteId);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    /**
+     * Collects the changes of a transaction and applies them in order when it commits, or right away
+     * without a transaction. Changes of a rolled back transaction are dropped, so searches never
+     * find notes as they were before a rollback.
+     */
+    @SuppressWarnings("unchecked")
+    private void afterCommit(Runnable change) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            change.run();
+            return;
+        }
+        List<Runnable> pending = (List<Runnable>) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            List<Runnable> changes = new ArrayList<>();
+            TransactionSynchronizationManager.bindResource(this, changes);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResource(SearchIndex.this);
+                    if (status == STATUS_COMMITTED) {
+                        changes.forEach(Runnable::run);
+                    }
+                }
+            });
+            pending = changes;
+        }
+        pending.add(change);
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            notes.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return notes.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the notes containing every word of the query
+     * @param query The text to search for. Unless it ends with a space, its last word is matched as a prefix
+     * @param collectionId Only search the notes of this collection, or null to search all notes
+     * @param page The index of the page to return, starting at 0
+     * @param size The number of hits per page, capped at {@link #MAX_PAGE_SIZE}
+     * @return The requested page of hits, best match first
+     */
+    public SearchResults search(String query, UUID collectionId, int page, int size) {
+        int pageSize = Math.clamp(size, 1, MAX_PAGE_SIZE);
+        int pageIndex = Math.max(page, 0);
+        List<String> terms = Tokenizer.tokenize(query).stream().distinct().toList();
+        if (terms.isEmpty()) {
+            return new SearchResults(List.of(), 0, pageIndex, pageSize);
+        }
+        boolean lastIsPrefix = !Character.isWhitespace(query.charAt(query.length() - 1));
+
+        lock.readLock().lock();
+        try {
+            Map<UUID, Double> scores = null;
+            for (int i = 0; i < terms.size(); i++) {
+                boolean prefix = lastIsPrefix && i == terms.size() - 1;
+                Map<UUID, Double> termScores = score(terms.get(i), prefix);
+                if (scores == null) {
+                    scores = termScores;
+                } else {
+                    scores.keySet().retainAll(termScores.keySet());
+                    scores.replaceAll((id, score) -> score + termScores.get(id));
+                }
+                if (scores.isEmpty()) {
+                    break;
+                }
+            }
+
+            List<Map.Entry<UUID, Double>> ranked = scores.entrySet().stream()
+                    .filter(e -> collectionId == null || collectionId.equals(notes.get(e.getKey()).collectionId()))
+                    .sorted(Map.Entry.<UUID, Double>comparingByValue().reversed()
+                            .thenComparing(e -> notes.get(e.getKey()).title(), Comparator.nullsLast(String::compareTo)))
+                    .toList();
+
+            List<SearchHit> hits = ranked.stream()
+                    .skip((long) pageIndex * pageSize)
+                    .limit(pageSize)
+                    .map(e -> toHit(notes.get(e.getKey()), e.getValue(), terms))
+                    .toList();
+            return new SearchResults(hits, ranked.size(), pageIndex, pageSize);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Scores every note containing the term, or a word starting with it
+     */
+    private Map<UUID, Double> score(String term, boolean prefix) {
+        Map<String, Map<UUID, Posting>> matching = prefix
+                ? postings.subMap(term, true, term + Character.MAX_VALUE, false)
+                : postings.containsKey(term) ? Map.of(term, postings.get(term)) : Map.of();
+
+        Map<UUID, Double> scores = new HashMap<>();
+        matching.values().forEach(docs -> {
+            double idf = Math.log(1 + (double) notes.size() / docs.size());
+            docs.forEach((id, posting) ->
+                    scores.merge(id, (1 + Math.log(posting.weight())) * idf, Math::max));
+        });
+        return scores;
+    }
+
+    private void removeLocked(UUID noteId) {
+        IndexedNote previous = notes.remove(noteId);
+        if (previous == null) {
+            return;
+        }
+        for (String term : previous.terms().keySet()) {
+            Map<UUID, Posting> docs = postings.get(term);
+            if (docs != null) {
+                docs.remove(noteId);
+                if (docs.isEmpty()) {
+                    postings.remove(term);
+                }
+            }
+        }
+    }
+
+    private static SearchHit toHit(IndexedNote note, double score, List<String> terms) {
+        return new SearchHit(note.id(), note.title(), note.collectionId(), score, snippet(note.body(), terms));
+    }
+
+    /**
+     * Cuts out the part of the body around the first occurrence of one of the terms
+     */
+    static String snippet(String body, List<String> terms) {
+        if (body == null || body.isEmpty()) {
+            return "";
+        }
+        String lower = body.toLowerCase(Locale.ROOT);
+        int match = terms.stream()
+                .mapToInt(lower::indexOf)
+                .filter(i -> i >= 0)
+                .min()
+                .orElse(0);
+        int start = Math.max(0, match - SNIPPET_RADIUS);
+        int end = Math.min(body.length(), match + SNIPPET_RADIUS);
+        String snippet = body.substring(start, end).replaceAll("\\s+", " ").trim();
+        return (start > 0 ? "…" : "") + snippet + (end < body.length() ? "…" : "");
+    }
+}
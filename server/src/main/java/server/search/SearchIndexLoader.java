@@ -0,0 +1,45 @@
+package server.search;
+
+import commons.Note;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+import server.database.NoteRepository;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Builds the search index from the database when the server starts.
+ * Notes are read page by page and tokenized in parallel.
+ */
+@Component
+public class SearchIndexLoader {
+
+    private static final int PAGE_SIZE = 500;
+
+    private final NoteRepository noteRepository;
+    private final SearchIndex searchIndex;
+
+    public SearchIndexLoader(NoteRepository noteRepository, SearchIndex searchIndex) {
+        this.noteRepository = noteRepository;
+        this.searchIndex = searchIndex;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        searchIndex.clear();
+        Pageable page = PageRequest.ofSize(PAGE_SIZE);
+        UUID after = new UUID(0, 0);
+        List<Note> notes;
+        do {
+            notes = noteRepository.findByIdGreaterThanOrderByIdAsc(after, page);
+            searchIndex.addAll(notes.parallelStream().map(SearchIndex::analyze).toList());
+            if (!notes.isEmpty()) {
+                after = notes.getLast().id;
+            }
+        } while (notes.size() == PAGE_SIZE);
+    }
+}
@@ -0,0 +1,14 @@
+package server.search;
+
+import java.util.List;
+
+/**
+ * One page of ranked search results.
+ *
+ * @param hits The matching notes on this page, best match first
+ * @param total The number of matching notes over all pages
+ * @param page The index of this page, starting at 0
+ * @param size The maximum number of hits per page
+ */
+public record SearchResults(List<SearchHit> hits, int total, int page, int size) {
+}
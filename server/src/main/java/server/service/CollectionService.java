@@ -1,8 +1,17 @@
 package server.service;
 
 import commons.Collection;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import server.cache.Caches;
+import server.changes.ChangeLog;
 import server.database.CollectionRepository;
+import server.database.NoteRepository;
+import server.events.EventOutbox;
+import server.search.SearchIndex;
 
 import java.util.List;
 import java.util.Optional;
@@ -12,31 +21,82 @@ import java.util.UUID;
 public class CollectionService {
 
     private final CollectionRepository collectionRepository;
+    private final NoteRepository noteRepository;
+    private final EmbeddedFileService embeddedFileService;
+    private final SearchIndex searchIndex;
+    private final ChangeLog changeLog;
+    private final EventOutbox eventOutbox;
 
-    public CollectionService(CollectionRepository collectionRepository) {
+    public CollectionService(CollectionRepository collectionRepository, NoteRepository noteRepository,
+                             EmbeddedFileService embeddedFileService, SearchIndex searchIndex, ChangeLog changeLog,
+                             EventOutbox eventOutbox) {
         this.collectionRepository = collectionRepository;
+        this.noteRepository = noteRepository;
+        this.embeddedFileService = embeddedFileService;
+        this.searchIndex = searchIndex;
+        this.changeLog = changeLog;
+        this.eventOutbox = eventOutbox;
     }
 
+    // a renamed collection moves to another title, and the notes listed under it carry the old one
+    @Caching(evict = {
+            @CacheEvict(cacheNames = Caches.COLLECTIONS, allEntries = true),
+            @CacheEvict(cacheNames = Caches.COLLECTIONS_BY_TITLE, allEntries = true),
+            @CacheEvict(cacheNames = {Caches.NOTES_BY_COLLECTION, Caches.NOTE_HTML}, allEntries = true)
+    })
+    @Transactional
     public Collection save(Collection collection) {
-        return collectionRepository.save(collection);
+        Collection saved = collectionRepository.save(collection);
+        changeLog.collectionSaved(saved);
+        return saved;
     }
 
-    public void deleteById(UUID id) {
+    /**
+     * Deletes a collection together with its notes and their files.
+     * Everything is removed in one transaction, with one statement per table instead of one per note or file.
+     * The clients are told about the collection only, they drop its notes themselves.
+     * @param id The collection to delete
+     * @return The ids of the deleted notes
+     */
+    @Caching(evict = {
+            @CacheEvict(cacheNames = Caches.COLLECTIONS, key = "#id"),
+            @CacheEvict(cacheNames = Caches.COLLECTIONS_BY_TITLE, allEntries = true),
+            @CacheEvict(cacheNames = {Caches.NOTES_BY_COLLECTION, Caches.NOTE_HTML}, allEntries = true),
+            @CacheEvict(cacheNames = Caches.FILES, allEntries = true)
+    })
+    @Transactional
+    public List<UUID> deleteById(UUID id) {
+        Optional<Collection> collection = collectionRepository.findById(id);
+        List<UUID> noteIds = noteRepository.findIdsByCollectionId(id);
+        embeddedFileService.deleteFilesByCollectionId(id);
+        noteRepository.deleteByCollectionId(id);
         collectionRepository.deleteById(id);
+        changeLog.notesDeleted(noteIds);
+        changeLog.collectionDeleted(id);
+        noteIds.forEach(searchIndex::remove);
+        collection.ifPresent(eventOutbox::collectionDeleted);
+        return noteIds;
     }
 
+    @Cacheable(cacheNames = Caches.COLLECTIONS, sync = true)
     public Optional<Collection> findById(UUID id) {
         return collectionRepository.findById(id);
     }
 
+    public boolean existsById(UUID id) {
+        return id != null && collectionRepository.existsById(id);
+    }
+
     public List<Collection> getAllCollections() {
         return collectionRepository.findAll();
     }
 
+    @Cacheable(cacheNames = Caches.COLLECTIONS_BY_TITLE, sync = true)
     public Collection getCollectionByTitle(String title) {
         return collectionRepository.findByTitle(title);
     }
 
+    @Cacheable(cacheNames = Caches.COLLECTIONS, sync = true)
     public Optional<Collection> getCollectionById(UUID id) {
         return collectionRepository.findById(id);
     }
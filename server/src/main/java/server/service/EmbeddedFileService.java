@@ -2,41 +2,150 @@ package server.service;
 
 import commons.EmbeddedFile;
 import commons.Note;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
+import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import server.cache.Caches;
+import server.changes.ChangeLog;
 import server.database.EmbeddedFileRepository;
+import server.dto.EmbeddedFileSummary;
+import server.events.EventOutbox;
+import server.storage.BlobStore;
+import server.storage.ImageRenditions;
+import server.storage.Rendition;
+import server.storage.StoredBlob;
 
-import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
 
 @Service
 public class EmbeddedFileService {
+    private static final Logger logger = LoggerFactory.getLogger(EmbeddedFileService.class);
+
     private final EmbeddedFileRepository embeddedFileRepository;
+    private final BlobStore blobStore;
+    private final ChangeLog changeLog;
+    private final EventOutbox eventOutbox;
+    private final ImageRenditions imageRenditions;
+    private final Counter uploadedBytes;
+    private final Counter downloadedBytes;
+    private final Map<Rendition, Counter> downloadedRenditionBytes = new EnumMap<>(Rendition.class);
+    /**
+     * Taken around deleting an unused blob and around checking that the blob of a new file is still there,
+     * so a blob is never deleted between an upload finding it and the upload being committed unnoticed
+     */
+    private final ReentrantLock blobLock = new ReentrantLock();
 
     @Autowired
-    public EmbeddedFileService(EmbeddedFileRepository embeddedFileRepository) {
+    public EmbeddedFileService(EmbeddedFileRepository embeddedFileRepository, BlobStore blobStore,
+                               ChangeLog changeLog, EventOutbox eventOutbox, ImageRenditions imageRenditions,
+                               MeterRegistry meterRegistry) {
         this.embeddedFileRepository = embeddedFileRepository;
+        this.blobStore = blobStore;
+        this.changeLog = changeLog;
+        this.eventOutbox = eventOutbox;
+        this.imageRenditions = imageRenditions;
+        this.uploadedBytes = Counter.builder("netnote.files.uploaded")
+                .description("Content of uploaded files")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.downloadedBytes = downloadCounter(meterRegistry, "original");
+        for (Rendition rendition : Rendition.values()) {
+            downloadedRenditionBytes.put(rendition, downloadCounter(meterRegistry, rendition.getParam()));
+        }
+    }
+
+    private static Counter downloadCounter(MeterRegistry meterRegistry, String size) {
+        return Counter.builder("netnote.files.downloaded")
+                .description("Content of files sent to clients, counted in full when the sending starts")
+                .baseUnit("bytes")
+                .tag("size", size)
+                .register(meterRegistry);
     }
 
+    /**
+     * Stores an uploaded file. The content is streamed into the blob store,
+     * so memory use does not depend on the size of the file. The renditions of images are made in the background.
+     * @param note The note the file is embedded in
+     * @param file The uploaded file
+     * @return The metadata of the stored file
+     */
+    @CacheEvict(cacheNames = Caches.NOTES_BY_COLLECTION, allEntries = true)
+    @Transactional
     public EmbeddedFile saveFile(Note note, MultipartFile file) throws IOException {
-        byte[] fileContent = file.getBytes();
+        StoredBlob blob;
+        try (InputStream content = file.getInputStream()) {
+            blob = blobStore.put(content);
+        }
+        uploadedBytes.increment(blob.size());
+        imageRenditions.request(blob.hash(), file.getContentType());
 
-        EmbeddedFile embeddedFile = new EmbeddedFile(note, file.getOriginalFilename(), file.getContentType(), fileContent,
-                convertMultipartFileToFile(file));
+        EmbeddedFile embeddedFile = new EmbeddedFile(note, file.getOriginalFilename(), file.getContentType(),
+                blob.size(), blob.hash());
 
-        return embeddedFileRepository.save(embeddedFile);
+        EmbeddedFile saved = save(embeddedFile);
+        eventOutbox.fileAdded(saved);
+        afterCommit(() -> keepBlob(blob.hash(), file));
+        return saved;
     }
-    private File convertMultipartFileToFile(MultipartFile multipartFile) throws IOException {
-        File file = File.createTempFile("upload-", multipartFile.getOriginalFilename());
-        multipartFile.transferTo(file);
-        return file;
+
+    /**
+     * Stores the content of an uploaded file again if the blob it was deduplicated into
+     * was deleted by a transaction that could not see the new file yet
+     */
+    private void keepBlob(String hash, MultipartFile file) {
+        blobLock.lock();
+        try {
+            if (blobStore.exists(hash)) {
+                return;
+            }
+            try (InputStream content = file.getInputStream()) {
+                blobStore.put(content);
+            }
+        } catch (IOException e) {
+            logger.error("The content of file {} could not be stored again", file.getOriginalFilename(), e);
+        } finally {
+            blobLock.unlock();
+        }
     }
 
+    /**
+     * Renames a file and tells the clients that have its note open
+     * @param embeddedFile The file, which may be the cached copy and is left as it is
+     * @param fileName The new name
+     * @return The renamed file
+     */
+    @Caching(evict = {
+            @CacheEvict(cacheNames = Caches.FILES, key = "#embeddedFile.id"),
+            @CacheEvict(cacheNames = Caches.NOTES_BY_COLLECTION, allEntries = true)
+    })
+    @Transactional
+    public EmbeddedFile rename(EmbeddedFile embeddedFile, String fileName) {
+        EmbeddedFile file = embeddedFileRepository.findById(embeddedFile.getId()).orElse(embeddedFile);
+        file.setFileName(fileName);
+        EmbeddedFile saved = save(file);
+        eventOutbox.fileRenamed(saved);
+        return saved;
+    }
+
+    @Cacheable(cacheNames = Caches.FILES, sync = true)
     public Optional<EmbeddedFile> findById(UUID fileId) {
         return embeddedFileRepository.findById(fileId);
     }
@@ -45,16 +154,191 @@ public class EmbeddedFileService {
         return embeddedFileRepository.findByNoteId(noteId);
     }
 
+    /**
+     * Lists the files of a note without their content
+     * @param noteId The id of the note
+     * @return The metadata of every file embedded in the note
+     */
+    public List<EmbeddedFileSummary> getFileSummariesByNoteId(UUID noteId) {
+        return embeddedFileRepository.findSummariesByNoteId(noteId);
+    }
+
+    /**
+     * Looks up the metadata of a single file, without loading its content
+     * @param noteId The id of the note the file is embedded in
+     * @param fileName The name of the file
+     * @return The file, if the note has a file with that name
+     */
+    public Optional<EmbeddedFile> findByNoteIdAndFileName(UUID noteId, String fileName) {
+        return embeddedFileRepository.findFirstByNoteIdAndFileName(noteId, fileName);
+    }
+
+    /**
+     * @param embeddedFile The file metadata, of a file that has a content hash
+     * @return The content of the file as a streamable resource
+     */
+    public Resource getContent(EmbeddedFile embeddedFile) {
+        downloadedBytes.increment(embeddedFile.getFileSize());
+        return blobStore.getResource(embeddedFile.getContentHash());
+    }
+
+    /**
+     * @param rendered A rendition found with {@link #getRendition}
+     * @param rendition The size it was asked for with
+     * @return The content of the rendition as a streamable resource
+     */
+    public Resource getContent(ImageRenditions.Rendered rendered, Rendition rendition) {
+        try {
+            downloadedRenditionBytes.get(rendition).increment(rendered.resource().contentLength());
+        } catch (IOException e) {
+            // deleted in the meantime, sending it fails anyway
+        }
+        return rendered.resource();
+    }
+
+    /**
+     * @param embeddedFile The file metadata
+     * @param rendition The size that is asked for
+     * @return The rendition if the file is an image and it has been made; if not, it is queued
+     */
+    public Optional<ImageRenditions.Rendered> getRendition(EmbeddedFile embeddedFile, Rendition rendition) {
+        if (embeddedFile.getContentHash() == null) {
+            return Optional.empty();
+        }
+        return imageRenditions.find(embeddedFile.getContentHash(), embeddedFile.getFileType(), rendition);
+    }
+
+    @Caching(evict = {
+            @CacheEvict(cacheNames = Caches.FILES, key = "#id"),
+            @CacheEvict(cacheNames = Caches.NOTES_BY_COLLECTION, allEntries = true)
+    })
+    @Transactional
     public void deleteFile(UUID id) {
+        Optional<EmbeddedFile> file = embeddedFileRepository.findById(id);
         embeddedFileRepository.deleteById(id);
+        file.ifPresent(f -> {
+            UUID noteId = f.getNote() == null ? null : f.getNote().id;
+            changeLog.fileDeleted(id, noteId);
+            releaseBlob(f.getContentHash());
+            if (noteId != null) {
+                eventOutbox.fileDeleted(noteId, id);
+            }
+        });
     }
 
+    @Caching(evict = {
+            @CacheEvict(cacheNames = Caches.FILES, allEntries = true),
+            @CacheEvict(cacheNames = Caches.NOTES_BY_COLLECTION, allEntries = true)
+    })
     @Transactional
     public void deleteFilesByNoteId(UUID noteId) {
+        List<EmbeddedFile> files = embeddedFileRepository.findByNoteId(noteId);
         embeddedFileRepository.deleteByNoteId(noteId);
+        files.forEach(f -> changeLog.fileDeleted(f.getId(), noteId));
+        files.stream()
+                .map(EmbeddedFile::getContentHash)
+                .distinct()
+                .forEach(this::releaseBlob);
+    }
+
+    /**
+     * Deletes the files of several notes with one statement, and the blobs nothing refers to anymore
+     * @param noteIds The notes
+     */
+    @Caching(evict = {
+            @CacheEvict(cacheNames = Caches.FILES, allEntries = true),
+            @CacheEvict(cacheNames = Caches.NOTES_BY_COLLECTION, allEntries = true)
+    })
+    @Transactional
+    public void deleteFilesByNoteIds(List<UUID> noteIds) {
+        if (noteIds.isEmpty()) {
+            return;
+        }
+        List<EmbeddedFile> files = embeddedFileRepository.findByNoteIdIn(noteIds);
+        if (files.isEmpty()) {
+            return;
+        }
+        embeddedFileRepository.deleteByNoteIdIn(noteIds);
+        filesDeleted(files);
     }
 
+    /**
+     * Deletes the files of all notes of a collection with one statement, and the blobs nothing refers to anymore
+     * @param collectionId The collection
+     */
+    @Caching(evict = {
+            @CacheEvict(cacheNames = Caches.FILES, allEntries = true),
+            @CacheEvict(cacheNames = Caches.NOTES_BY_COLLECTION, allEntries = true)
+    })
+    @Transactional
+    public void deleteFilesByCollectionId(UUID collectionId) {
+        List<EmbeddedFile> files = embeddedFileRepository.findByCollectionId(collectionId);
+        if (files.isEmpty()) {
+            return;
+        }
+        embeddedFileRepository.deleteByCollectionId(collectionId);
+        filesDeleted(files);
+    }
+
+    private void filesDeleted(List<EmbeddedFile> files) {
+        changeLog.filesDeleted(files);
+        files.stream()
+                .map(EmbeddedFile::getContentHash)
+                .distinct()
+                .forEach(this::releaseBlob);
+    }
+
+    @Caching(evict = {
+            @CacheEvict(cacheNames = Caches.FILES, key = "#result.id"),
+            @CacheEvict(cacheNames = Caches.NOTES_BY_COLLECTION, allEntries = true)
+    })
+    @Transactional
     public EmbeddedFile save(EmbeddedFile embeddedFile) {
-        return embeddedFileRepository.save(embeddedFile);
+        EmbeddedFile saved = embeddedFileRepository.save(embeddedFile);
+        changeLog.fileSaved(saved);
+        return saved;
+    }
+
+    /**
+     * Deletes a blob once no embedded file refers to it anymore. This is only checked after the commit:
+     * if the transaction rolls back the files keep their content, and files other transactions added
+     * in the meantime are seen.
+     * @param hash The hash of the blob
+     */
+    private void releaseBlob(String hash) {
+        if (hash == null) {
+            return;
+        }
+        afterCommit(() -> deleteUnusedBlob(hash));
+    }
+
+    private void deleteUnusedBlob(String hash) {
+        blobLock.lock();
+        try {
+            if (embeddedFileRepository.existsByContentHash(hash)) {
+                return;
+            }
+            blobStore.delete(hash);
+        } catch (IOException e) {
+            // an orphaned blob only costs disk space, the metadata is already gone
+        } finally {
+            blobLock.unlock();
+        }
+    }
+
+    /**
+     * Runs an action once the current transaction has committed, or right away without a transaction
+     */
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,135 @@
+package server.service;
+
+import commons.BatchUpdateResult;
+import commons.Collection;
+import commons.Note;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import server.cache.Caches;
+import server.changes.ChangeLog;
+import server.database.NoteRepository;
+import server.events.EventOutbox;
+import server.search.SearchIndex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Changes many notes at once. Every method runs in one transaction, so a batch is stored completely or not at all,
+ * and the statements of a batch are sent to the database in JDBC batches.
+ */
+@Service
+public class NoteBatchService {
+    public static final int MAX_BATCH_SIZE = 1000;
+
+    private final NoteRepository noteRepository;
+    private final EmbeddedFileService embeddedFileService;
+    private final SearchIndex searchIndex;
+    private final ChangeLog changeLog;
+    private final EventOutbox eventOutbox;
+
+    public NoteBatchService(NoteRepository noteRepository, EmbeddedFileService embeddedFileService,
+                            SearchIndex searchIndex, ChangeLog changeLog, EventOutbox eventOutbox) {
+        this.noteRepository = noteRepository;
+        this.embeddedFileService = embeddedFileService;
+        this.searchIndex = searchIndex;
+        this.changeLog = changeLog;
+        this.eventOutbox = eventOutbox;
+    }
+
+    /**
+     * Saves the title, body and collection of several notes. A note is only saved if it is still
+     * at the version given with it; the others are returned as conflicts with their current state.
+     * Saved notes are announced on their /body topic, and renamed ones to their collection.
+     * @param notes The notes to save
+     * @return The saved notes, the conflicts and the ids of the notes that do not exist
+     */
+    @CacheEvict(cacheNames = {Caches.NOTES_BY_COLLECTION, Caches.NOTE_HTML}, allEntries = true)
+    @Transactional
+    public BatchUpdateResult updateAll(List<Note> notes) {
+        Map<UUID, Note> stored = noteRepository.findAllById(notes.stream().map(n -> n.id).toList()).stream()
+                .collect(Collectors.toMap(n -> n.id, Function.identity()));
+        List<Note> updated = new ArrayList<>();
+        List<Note> conflicts = new ArrayList<>();
+        List<UUID> missing = new ArrayList<>();
+        List<Note> renamed = new ArrayList<>();
+        for (Note note : notes) {
+            Note current = stored.get(note.id);
+            if (current == null) {
+                missing.add(note.id);
+            } else if (current.version != note.version) {
+                conflicts.add(current);
+            } else {
+                if (!current.title.equals(note.title)) {
+                    renamed.add(current);
+                }
+                current.title = note.title;
+                current.body = note.body;
+                current.collection = note.collection;
+                updated.add(current);
+            }
+        }
+        // one batched update, also bumps the versions and fails here on a duplicate title
+        noteRepository.flush();
+        changeLog.notesSaved(updated);
+        updated.forEach(searchIndex::index);
+        updated.forEach(eventOutbox::noteChanged);
+        renamed.forEach(eventOutbox::noteRenamed);
+        return new BatchUpdateResult(updated, conflicts, missing);
+    }
+
+    /**
+     * Moves notes to another collection of the same server. Their ids and files stay the same.
+     * Clients listing either collection are told, see {@link EventOutbox#noteMoved}.
+     * @param noteIds The notes to move
+     * @param collection The collection to move them to
+     * @return The moved notes
+     */
+    @CacheEvict(cacheNames = {Caches.NOTES_BY_COLLECTION, Caches.NOTE_HTML}, allEntries = true)
+    @Transactional
+    public List<Note> moveAll(List<UUID> noteIds, Collection collection) {
+        if (noteIds.isEmpty()) {
+            return List.of();
+        }
+        Map<UUID, UUID> movedFrom = noteRepository.findAllById(noteIds).stream()
+                .collect(Collectors.toMap(n -> n.id, n -> n.collection.id));
+        noteRepository.moveToCollection(noteIds, collection);
+        List<Note> moved = noteRepository.findAllById(noteIds);
+        changeLog.notesSaved(moved);
+        moved.forEach(searchIndex::index);
+        for (Note note : moved) {
+            UUID from = movedFrom.get(note.id);
+            if (from != null && !from.equals(note.collection.id)) {
+                eventOutbox.noteMoved(note, from);
+            }
+            eventOutbox.noteChanged(note);
+        }
+        return moved;
+    }
+
+    /**
+     * Deletes notes with their files. Ids of notes that do not exist are ignored.
+     * @param noteIds The notes to delete
+     * @return The notes that were deleted
+     */
+    @CacheEvict(cacheNames = {Caches.NOTES_BY_COLLECTION, Caches.NOTE_HTML}, allEntries = true)
+    @Transactional
+    public List<Note> deleteAll(List<UUID> noteIds) {
+        List<Note> notes = noteRepository.findAllById(noteIds);
+        if (notes.isEmpty()) {
+            return notes;
+        }
+        List<UUID> ids = notes.stream().map(n -> n.id).toList();
+        embeddedFileService.deleteFilesByNoteIds(ids);
+        noteRepository.deleteAllByIdIn(ids);
+        changeLog.notesDeleted(ids);
+        ids.forEach(searchIndex::remove);
+        notes.forEach(eventOutbox::noteDeleted);
+        return notes;
+    }
+}
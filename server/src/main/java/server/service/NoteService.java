@@ -1,40 +1,241 @@
 package server.service;
 
 import commons.Note;
+import commons.NotePatch;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.stereotype.Service;
+import server.cache.Caches;
+import server.changes.ChangeLog;
 import server.database.NoteRepository;
+import server.dto.KeysetPage;
+import server.dto.NoteSummary;
+import server.events.EventOutbox;
+import server.search.SearchIndex;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 public class NoteService {
+    public static final int MAX_PAGE_SIZE = 500;
+
+    // H2 compares UUIDs as unsigned numbers, so no id sorts before this one
+    private static final UUID BEFORE_FIRST = new UUID(0, 0);
+    private static final Set<String> SUMMARY_FIELDS = Set.of("id", "title", "collectionId");
+
     private final NoteRepository noteRepository;
+    private final SearchIndex searchIndex;
+    private final ChangeLog changeLog;
+    private final EventOutbox eventOutbox;
 
-    public NoteService(NoteRepository noteRepository) {
+    public NoteService(NoteRepository noteRepository, SearchIndex searchIndex, ChangeLog changeLog,
+                       EventOutbox eventOutbox) {
         this.noteRepository = noteRepository;
+        this.searchIndex = searchIndex;
+        this.changeLog = changeLog;
+        this.eventOutbox = eventOutbox;
     }
 
+    /**
+     * Saves a note. The note is flushed right away, so a duplicate title fails here
+     * and not when the transaction commits.
+     * @param note The note to save
+     * @return The saved note
+     */
+    @CacheEvict(cacheNames = {Caches.NOTES_BY_COLLECTION, Caches.NOTE_HTML}, allEntries = true)
+    @Transactional
     public Note save(Note note) {
-        return noteRepository.save(note);
+        Note saved = noteRepository.saveAndFlush(note);
+        changeLog.noteSaved(saved);
+        searchIndex.index(saved);
+        eventOutbox.noteCreated(saved);
+        return saved;
+    }
+
+    /**
+     * Overwrites a note, but only if nobody else changed it since the client read it.
+     * The new state is announced to the clients, and the rename to the collection if the title changed.
+     * @param id The id of the note
+     * @param note The new content of the note
+     * @param expectedVersion The version the client's copy is based on
+     * @return The updated note, or empty if the stored note is not at the expected version
+     */
+    @CacheEvict(cacheNames = {Caches.NOTES_BY_COLLECTION, Caches.NOTE_HTML}, allEntries = true)
+    @Transactional
+    public Optional<Note> update(UUID id, Note note, long expectedVersion) {
+        Optional<String> oldTitle = noteRepository.findById(id).map(n -> n.title);
+        Optional<Note> saved = store(id, note, expectedVersion);
+        saved.ifPresent(n -> {
+            eventOutbox.noteChanged(n);
+            if (!n.title.equals(oldTitle.orElse(null))) {
+                eventOutbox.noteRenamed(n);
+            }
+        });
+        return saved;
+    }
+
+    private Optional<Note> store(UUID id, Note note, long expectedVersion) {
+        int updated = noteRepository.updateIfVersion(id, expectedVersion, note.title, note.body, note.collection);
+        if (updated == 0) {
+            return Optional.empty();
+        }
+        Optional<Note> saved = noteRepository.findById(id);
+        saved.ifPresent(n -> {
+            changeLog.noteSaved(n);
+            searchIndex.index(n);
+        });
+        return saved;
+    }
+
+    /**
+     * Applies a patch to the body of a note, if the note is still at the version the patch was made against
+     * @param patch The patch
+     * @return The applied patch with the new version of the note filled in,
+     *         or empty if the note does not exist or is at another version
+     * @throws IllegalArgumentException if an edit of the patch does not fit the body
+     */
+    @CacheEvict(cacheNames = {Caches.NOTES_BY_COLLECTION, Caches.NOTE_HTML}, allEntries = true)
+    @Transactional
+    public Optional<NotePatch> applyPatch(NotePatch patch) {
+        Optional<Note> stored = noteRepository.findById(patch.noteId());
+        if (stored.isEmpty() || stored.get().version != patch.baseVersion()) {
+            return Optional.empty();
+        }
+        Note note = stored.get();
+        Note patched = new Note(note.title, patch.applyTo(note.body), note.collection);
+        Optional<NotePatch> applied = store(note.id, patched, patch.baseVersion())
+                .map(updated -> patch.withVersion(updated.version));
+        applied.ifPresent(eventOutbox::notePatched);
+        return applied;
+    }
+
+    /**
+     * Stores the body of a note as edited collaboratively, if nothing else changed the note since it was loaded
+     * @param id The id of the note
+     * @param body The new body
+     * @param expectedVersion The version the note had when it was last loaded or stored
+     * @param newVersion The revision of the collaborative document, which becomes the version of the note
+     * @return true if the body was stored
+     */
+    @CacheEvict(cacheNames = {Caches.NOTES_BY_COLLECTION, Caches.NOTE_HTML}, allEntries = true)
+    @Transactional
+    public boolean saveBody(UUID id, String body, long expectedVersion, long newVersion) {
+        if (noteRepository.updateBody(id, expectedVersion, body, newVersion) == 0) {
+            return false;
+        }
+        noteRepository.findById(id).ifPresent(n -> {
+            changeLog.noteSaved(n);
+            searchIndex.index(n);
+        });
+        return true;
     }
 
     public Optional<Note> findById(UUID id) {
         return noteRepository.findById(id);
     }
 
+    // the files of the note are deleted with it
+    @Caching(evict = {
+            @CacheEvict(cacheNames = {Caches.NOTES_BY_COLLECTION, Caches.NOTE_HTML}, allEntries = true),
+            @CacheEvict(cacheNames = Caches.FILES, allEntries = true)
+    })
     @Transactional
     public void deleteById(UUID id) {
+        Optional<Note> note = noteRepository.findById(id);
         noteRepository.deleteById(id);
+        changeLog.noteDeleted(id);
+        searchIndex.remove(id);
+        note.ifPresent(eventOutbox::noteDeleted);
+    }
+
+    /**
+     * Checks whether a collection already has a note with the given title, using the unique index
+     * @param collectionId The id of the collection
+     * @param title The title to look for
+     * @return true if the title is taken in that collection
+     */
+    public boolean existsByCollectionIdAndTitle(UUID collectionId, String title) {
+        return noteRepository.existsByCollectionIdAndTitle(collectionId, title);
     }
 
     public List<Note> getAllNotes() {
         return noteRepository.findAll();
     }
 
+    /**
+     * Served from memory while no note, file or collection changes, since clients poll this often
+     * @param collectionTitle The title of the collection
+     * @return The notes of the collection with their file metadata
+     */
+    @Cacheable(cacheNames = Caches.NOTES_BY_COLLECTION, sync = true)
     public List<Note> getNotesByCollection(String collectionTitle) {
         return noteRepository.findByCollectionTitle(collectionTitle);
     }
+
+    /**
+     * Gets one page of notes, ordered by id
+     * @param collectionTitle The collection to list, or null for the notes of all collections
+     * @param after The id of the last note of the previous page, or null for the first page
+     * @param limit The maximum number of notes on the page, capped at {@link #MAX_PAGE_SIZE}
+     * @return The page of notes
+     */
+    public KeysetPage<Note> getNotesPage(String collectionTitle, UUID after, int limit) {
+        UUID start = after == null ? BEFORE_FIRST : after;
+        Pageable page = pageOf(limit);
+        List<Note> notes = collectionTitle == null
+                ? noteRepository.findByIdGreaterThanOrderByIdAsc(start, page)
+                : noteRepository.findByCollectionTitleAndIdGreaterThanOrderByIdAsc(collectionTitle, start, page);
+        return toPage(notes, page, n -> n.id);
+    }
+
+    /**
+     * Gets one page of note titles, ordered by id, without loading bodies or files
+     * @param collectionTitle The collection to list, or null for the notes of all collections
+     * @param after The id of the last note of the previous page, or null for the first page
+     * @param limit The maximum number of notes on the page, capped at {@link #MAX_PAGE_SIZE}
+     * @return The page of note summaries
+     */
+    public KeysetPage<NoteSummary> getNoteSummariesPage(String collectionTitle, UUID after, int limit) {
+        UUID start = after == null ? BEFORE_FIRST : after;
+        Pageable page = pageOf(limit);
+        List<NoteSummary> notes = collectionTitle == null
+                ? noteRepository.findSummariesAfter(start, page)
+                : noteRepository.findSummariesByCollectionTitleAfter(collectionTitle, start, page);
+        return toPage(notes, page, NoteSummary::id);
+    }
+
+    /**
+     * Checks whether the requested fields can be served from {@link NoteSummary}
+     * @param fields Comma separated field names, as passed in the {@code fields} parameter
+     * @return true if only summary fields were requested
+     */
+    public static boolean isSummaryProjection(String fields) {
+        if (fields == null || fields.isBlank()) {
+            return false;
+        }
+        Set<String> requested = Arrays.stream(fields.split(","))
+                .map(String::trim)
+                .filter(f -> !f.isEmpty())
+                .collect(Collectors.toSet());
+        return SUMMARY_FIELDS.containsAll(requested);
+    }
+
+    private static Pageable pageOf(int limit) {
+        return PageRequest.ofSize(Math.clamp(limit, 1, MAX_PAGE_SIZE));
+    }
+
+    private static <T> KeysetPage<T> toPage(List<T> items, Pageable page, Function<T, UUID> id) {
+        UUID next = items.size() < page.getPageSize() ? null : id.apply(items.getLast());
+        return new KeysetPage<>(items, next);
+    }
 }
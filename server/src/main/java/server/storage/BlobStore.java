@@ -0,0 +1,79 @@
+package server.storage;
+
+import org.springframework.core.io.Resource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Storage for the content of embedded files.
+ * Blobs are addressed by the SHA-256 of their content, so identical content is only stored once.
+ */
+public interface BlobStore {
+
+    /**
+     * Stores everything read from the given stream, unless a blob with the same content already exists.
+     * The content is hashed and measured while it is copied, so it never has to be held in memory.
+     * @param content The stream to read the content from, not closed by this method
+     * @return The hash and size of the stored blob
+     */
+    StoredBlob put(InputStream content) throws IOException;
+
+    /**
+     * Stores the given content, unless a blob with the same content already exists
+     * @param content The bytes to store
+     * @return The hash and size of the stored blob
+     */
+    default StoredBlob put(byte[] content) throws IOException {
+        return put(new ByteArrayInputStream(content));
+    }
+
+    /**
+     * Opens the blob with the given hash for reading
+     * @param hash SHA-256 hex digest of the content
+     * @return A stream over the content, to be closed by the caller
+     */
+    InputStream open(String hash) throws IOException;
+
+    /**
+     * Reads the whole blob with the given hash into memory
+     * @param hash SHA-256 hex digest of the content
+     * @return The content of the blob
+     */
+    default byte[] read(String hash) throws IOException {
+        try (InputStream in = open(hash)) {
+            return in.readAllBytes();
+        }
+    }
+
+    /**
+     * Exposes the blob with the given hash as a resource that can be streamed to a client.
+     * @param hash SHA-256 hex digest of the content
+     * @return The resource, which reports its content length
+     */
+    Resource getResource(String hash);
+
+    boolean exists(String hash);
+
+    /**
+     * Stores a derivative of a blob next to it, e.g. a thumbnail of an image, replacing an older one
+     * @param hash SHA-256 hex digest of the original content
+     * @param variant The name of the derivative, letters, digits and dots only
+     * @param content The bytes of the derivative
+     */
+    void putDerivative(String hash, String variant, byte[] content) throws IOException;
+
+    /**
+     * @param hash SHA-256 hex digest of the original content
+     * @param variant The name of the derivative
+     * @return The derivative, which does not exist if it was not made (yet)
+     */
+    Resource getDerivative(String hash, String variant);
+
+    /**
+     * Removes the blob with the given hash and its derivatives, if they exist
+     * @param hash SHA-256 hex digest of the content
+     */
+    void delete(String hash) throws IOException;
+}
@@ -0,0 +1,107 @@
+package server.storage;
+
+import org.w3c.dom.Node;
+
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the EXIF orientation of JPEG photos and turns images upright. Cameras store photos as the sensor
+ * saw them and only record how the phone was held; ImageIO ignores that, but browsers showing the original do not.
+ */
+final class ExifOrientation {
+
+    static final int NORMAL = 1;
+
+    private static final String JPEG_METADATA = "javax_imageio_jpeg_image_1.0";
+    private static final int APP1 = 0xE1;
+    private static final int ORIENTATION_TAG = 0x0112;
+
+    private ExifOrientation() {
+    }
+
+    /**
+     * @param reader A reader that has read the first image
+     * @return The EXIF orientation (1 to 8), or {@link #NORMAL} if the image has none
+     */
+    static int read(ImageReader reader) throws IOException {
+        IIOMetadata metadata = reader.getImageMetadata(0);
+        if (metadata == null || !JPEG_METADATA.equals(metadata.getNativeMetadataFormatName())) {
+            return NORMAL;
+        }
+        Node markers = ((IIOMetadataNode) metadata.getAsTree(JPEG_METADATA))
+                .getElementsByTagName("markerSequence").item(0);
+        for (Node marker = markers == null ? null : markers.getFirstChild(); marker != null;
+             marker = marker.getNextSibling()) {
+            if ("unknown".equals(marker.getNodeName())
+                    && String.valueOf(APP1).equals(((IIOMetadataNode) marker).getAttribute("MarkerTag"))
+                    && ((IIOMetadataNode) marker).getUserObject() instanceof byte[] data) {
+                int orientation = fromApp1(data);
+                if (orientation != NORMAL) {
+                    return orientation;
+                }
+            }
+        }
+        return NORMAL;
+    }
+
+    /**
+     * Finds the orientation tag in the first directory of the TIFF structure inside an EXIF segment
+     */
+    static int fromApp1(byte[] data) {
+        try {
+            if (data.length < 14 || !"Exif".equals(new String(data, 0, 4, StandardCharsets.US_ASCII))) {
+                return NORMAL;
+            }
+            ByteBuffer tiff = ByteBuffer.wrap(data, 6, data.length - 6).slice();
+            tiff.order(tiff.get(0) == 'I' ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+            int directory = tiff.getInt(4);
+            int entries = tiff.getShort(directory) & 0xFFFF;
+            for (int i = 0; i < entries; i++) {
+                int entry = directory + 2 + i * 12;
+                if ((tiff.getShort(entry) & 0xFFFF) == ORIENTATION_TAG) {
+                    int orientation = tiff.getShort(entry + 8) & 0xFFFF;
+                    return orientation >= 1 && orientation <= 8 ? orientation : NORMAL;
+                }
+            }
+        } catch (IndexOutOfBoundsException e) {
+            // a broken segment, the image is shown as it is stored
+        }
+        return NORMAL;
+    }
+
+    /**
+     * @return The image turned and mirrored so it looks like the photographer saw it
+     */
+    static BufferedImage apply(BufferedImage image, int orientation) {
+        if (orientation <= NORMAL || orientation > 8) {
+            return image;
+        }
+        int w = image.getWidth();
+        int h = image.getHeight();
+        boolean swap = orientation >= 5;
+        BufferedImage result = new BufferedImage(swap ? h : w, swap ? w : h,
+                image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                int rgb = image.getRGB(x, y);
+                switch (orientation) {
+                    case 2 -> result.setRGB(w - 1 - x, y, rgb);
+                    case 3 -> result.setRGB(w - 1 - x, h - 1 - y, rgb);
+                    case 4 -> result.setRGB(x, h - 1 - y, rgb);
+                    case 5 -> result.setRGB(y, x, rgb);
+                    case 6 -> result.setRGB(h - 1 - y, x, rgb);
+                    case 7 -> result.setRGB(h - 1 - y, w - 1 - x, rgb);
+                    default -> result.setRGB(y, w - 1 - x, rgb);
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,239 @@
+package server.storage;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Makes the {@link Rendition}s of uploaded images in the background and stores them as derivatives
+ * next to the original blob. Since blobs are addressed by their content, a rendition never changes.
+ * <p>
+ * The work is done by a fixed number of threads with a bounded queue. When the queue is full, the
+ * request is dropped; the renditions are asked for again the first time a client wants one, and the
+ * original is served until then. Images are decoded subsampled to about the largest rendition,
+ * so a large photo does not have to fit in memory at full resolution.
+ */
+@Component
+public class ImageRenditions {
+    private static final Logger logger = LoggerFactory.getLogger(ImageRenditions.class);
+
+    private final BlobStore blobStore;
+    private final ThreadPoolExecutor executor;
+    // blobs with a job in the queue, so asking again does not queue them twice
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    // blobs that could not be decoded, so they are not tried on every request
+    private final Set<String> failed = ConcurrentHashMap.newKeySet();
+
+    public ImageRenditions(BlobStore blobStore,
+                           @Value("${netnote.renditions.threads:2}") int threads,
+                           @Value("${netnote.renditions.queue-capacity:100}") int queueCapacity) {
+        this.blobStore = blobStore;
+        AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+                    Thread thread = new Thread(r, "image-renditions-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @param fileType The content type of a file
+     * @return Whether renditions can be made of files of that type
+     */
+    public static boolean isSupported(String fileType) {
+        return fileType != null && fileType.startsWith("image/")
+                && ImageIO.getImageReadersByMIMEType(fileType).hasNext();
+    }
+
+    /**
+     * Queues the making of all renditions of an image, unless they exist or are already queued
+     * @param hash The hash of the image blob
+     * @param fileType The content type of the image
+     */
+    public void request(String hash, String fileType) {
+        if (!isSupported(fileType) || failed.contains(hash) || !pending.add(hash)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    render(hash);
+                } finally {
+                    pending.remove(hash);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.remove(hash);
+            logger.debug("Rendition queue is full, {} is rendered when it is asked for", hash);
+        }
+    }
+
+    /**
+     * Looks up a rendition of an image, and queues it if it does not exist yet
+     * @param hash The hash of the image blob
+     * @param fileType The content type of the image
+     * @param rendition The rendition
+     * @return The stored rendition, or empty if it is not there (yet) or can not be made of this file
+     */
+    public Optional<Rendered> find(String hash, String fileType, Rendition rendition) {
+        if (!isSupported(fileType)) {
+            return Optional.empty();
+        }
+        for (Format format : Format.values()) {
+            Resource resource = blobStore.getDerivative(hash, variant(rendition, format));
+            if (resource.exists()) {
+                return Optional.of(new Rendered(resource, format.mediaType));
+            }
+        }
+        request(hash, fileType);
+        return Optional.empty();
+    }
+
+    /**
+     * @return The number of images whose renditions are queued or being made
+     */
+    public int getPending() {
+        return pending.size();
+    }
+
+    /**
+     * Decodes the image once, at the size of the largest rendition, and scales that down for the others
+     */
+    void render(String hash) {
+        try {
+            BufferedImage source = decode(hash, Rendition.PREVIEW.getMaxDimension());
+            if (source == null) {
+                failed.add(hash);
+                return;
+            }
+            Format format = source.getColorModel().hasAlpha() ? Format.PNG : Format.JPEG;
+            for (Rendition rendition : Rendition.values()) {
+                BufferedImage scaled = scale(source, rendition.getMaxDimension(), format);
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                ImageIO.write(scaled, format.imageIoName, out);
+                blobStore.putDerivative(hash, variant(rendition, format), out.toByteArray());
+            }
+        } catch (IOException | RuntimeException e) {
+            failed.add(hash);
+            logger.warn("Could not make the renditions of {}", hash, e);
+        }
+    }
+
+    /**
+     * @return The image upright, read with every n-th pixel so it is at least maxDimension on its longer side,
+     * or null if no reader understands the content
+     */
+    private BufferedImage decode(String hash, int maxDimension) throws IOException {
+        try (InputStream in = blobStore.open(hash);
+             ImageInputStream stream = ImageIO.createImageInputStream(in)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(stream, true, true);
+                int longer = Math.max(reader.getWidth(0), reader.getHeight(0));
+                int subsampling = Math.max(1, longer / maxDimension);
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                BufferedImage image = reader.read(0, param);
+                return ExifOrientation.apply(image, ExifOrientation.read(reader));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Scales an image down so its longer side is at most maxDimension, in steps of at most half
+     * so the result is not aliased. JPEG renditions get a white background instead of transparency.
+     */
+    static BufferedImage scale(BufferedImage image, int maxDimension, Format format) {
+        int type = format == Format.PNG ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        double factor = Math.min(1.0, (double) maxDimension / Math.max(image.getWidth(), image.getHeight()));
+        int targetWidth = Math.max(1, (int) Math.round(image.getWidth() * factor));
+        int targetHeight = Math.max(1, (int) Math.round(image.getHeight() * factor));
+
+        BufferedImage current = image;
+        int width = image.getWidth();
+        int height = image.getHeight();
+        do {
+            width = Math.max(targetWidth, width / 2);
+            height = Math.max(targetHeight, height / 2);
+            BufferedImage next = new BufferedImage(width, height, type);
+            Graphics2D graphics = next.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                if (format == Format.JPEG) {
+                    graphics.setColor(Color.WHITE);
+                    graphics.fillRect(0, 0, width, height);
+                }
+                graphics.drawImage(current, 0, 0, width, height, null);
+            } finally {
+                graphics.dispose();
+            }
+            current = next;
+        } while (width != targetWidth || height != targetHeight);
+        return current;
+    }
+
+    private static String variant(Rendition rendition, Format format) {
+        return rendition.getParam() + "." + format.extension;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * A stored rendition and its content type
+     */
+    public record Rendered(Resource resource, MediaType mediaType) {
+    }
+
+    enum Format {
+        JPEG("jpg", "jpeg", MediaType.IMAGE_JPEG),
+        PNG("png", "png", MediaType.IMAGE_PNG);
+
+        private final String extension;
+        private final String imageIoName;
+        private final MediaType mediaType;
+
+        Format(String extension, String imageIoName, MediaType mediaType) {
+            this.extension = extension;
+            this.imageIoName = imageIoName;
+            this.mediaType = mediaType;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package server.storage;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.orm.jpa.EntityManagerFactoryDependsOnPostProcessor;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Moves the content of files stored before the blob store existed out of the database when the server starts.
+ * Such files kept their bytes in the {@code file_content} column and have no content hash. Each one is streamed
+ * into the blob store and gets its hash and size; once all are moved, the column is dropped,
+ * since new files leave it empty and it does not allow that.
+ * This runs before Hibernate updates the schema and before the web server takes requests,
+ * so nothing sees a file without its content.
+ */
+@Component
+public class LegacyFileContentMigration {
+
+    /**
+     * Makes the entity manager factory, and with it every repository, wait for the migration
+     */
+    @Component
+    static class JpaWaitsForMigration extends EntityManagerFactoryDependsOnPostProcessor {
+        JpaWaitsForMigration() {
+            super(LegacyFileContentMigration.class);
+        }
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(LegacyFileContentMigration.class);
+
+    private static final String TABLE = "EMBEDDED_FILE";
+    private static final String COLUMN = "FILE_CONTENT";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final BlobStore blobStore;
+
+    public LegacyFileContentMigration(JdbcTemplate jdbcTemplate, BlobStore blobStore) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.blobStore = blobStore;
+    }
+
+    @PostConstruct
+    public void migrate() {
+        if (!hasLegacyColumn()) {
+            return;
+        }
+        // Hibernate adds the columns of the entity only after this has run
+        jdbcTemplate.execute("alter table embedded_file add column if not exists content_hash varchar(64)");
+        jdbcTemplate.execute("alter table embedded_file add column if not exists file_size bigint default 0 not null");
+        List<UUID> ids = jdbcTemplate.queryForList(
+                "select id from embedded_file where content_hash is null", UUID.class);
+        for (UUID id : ids) {
+            StoredBlob blob = jdbcTemplate.query("select file_content from embedded_file where id = ?",
+                    (ResultSet rs) -> rs.next() ? store(rs) : null, id);
+            if (blob != null) {
+                jdbcTemplate.update("update embedded_file set content_hash = ?, file_size = ? where id = ?",
+                        blob.hash(), blob.size(), id);
+            }
+        }
+        jdbcTemplate.execute("alter table embedded_file drop column file_content");
+        logger.info("Moved the content of {} files from the database to the blob store", ids.size());
+    }
+
+    private StoredBlob store(ResultSet rs) throws SQLException {
+        try (InputStream content = rs.getBinaryStream(1)) {
+            return blobStore.put(content == null ? InputStream.nullInputStream() : content);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Moving file content to the blob store failed", e);
+        }
+    }
+
+    private boolean hasLegacyColumn() {
+        return Boolean.TRUE.equals(jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+            DatabaseMetaData metaData = connection.getMetaData();
+            try (ResultSet columns = metaData.getColumns(null, null, TABLE, COLUMN)) {
+                return columns.next();
+            }
+        }));
+    }
+}
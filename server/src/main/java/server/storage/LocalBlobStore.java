@@ -0,0 +1,180 @@
+package server.storage;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.*;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * A {@link BlobStore} keeping every blob as a file on the local disk.
+ * Files are spread over sub-directories named after the first characters of their hash,
+ * e.g. {@code ab/cd/abcd...}, to keep directories small.
+ */
+@Component
+public class LocalBlobStore implements BlobStore {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path root;
+
+    @Autowired
+    public LocalBlobStore(@Value("${netnote.storage.path:./attachments}") String root) {
+        this(Path.of(root));
+    }
+
+    public LocalBlobStore(Path root) {
+        this.root = root.toAbsolutePath().normalize();
+    }
+
+    @Override
+    public StoredBlob put(InputStream content) throws IOException {
+        Files.createDirectories(root);
+        Path tmp = Files.createTempFile(root, "upload-", ".tmp");
+        try {
+            MessageDigest digest = newDigest();
+            long size;
+            try (OutputStream out = new DigestOutputStream(Files.newOutputStream(tmp), digest)) {
+                size = copy(content, out);
+            }
+            String hash = HexFormat.of().formatHex(digest.digest());
+            Path target = pathOf(hash);
+            if (!Files.exists(target)) {
+                Files.createDirectories(target.getParent());
+                moveIntoPlace(tmp, target);
+            }
+            return new StoredBlob(hash, size);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    @Override
+    public InputStream open(String hash) throws IOException {
+        return Files.newInputStream(pathOf(hash));
+    }
+
+    /**
+     * Files are served straight from disk, which lets Spring answer range requests from the file channel.
+     */
+    @Override
+    public Resource getResource(String hash) {
+        return new FileSystemResource(pathOf(hash));
+    }
+
+    @Override
+    public boolean exists(String hash) {
+        return Files.exists(pathOf(hash));
+    }
+
+    /**
+     * Derivatives are written to a temporary file first, so readers never see half of one.
+     */
+    @Override
+    public void putDerivative(String hash, String variant, byte[] content) throws IOException {
+        Path target = derivativePathOf(hash, variant);
+        Files.createDirectories(target.getParent());
+        Path tmp = Files.createTempFile(target.getParent(), "derivative-", ".tmp");
+        try {
+            Files.write(tmp, content);
+            try {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    @Override
+    public Resource getDerivative(String hash, String variant) {
+        return new FileSystemResource(derivativePathOf(hash, variant));
+    }
+
+    @Override
+    public void delete(String hash) throws IOException {
+        Path blob = pathOf(hash);
+        Files.deleteIfExists(blob);
+        if (Files.isDirectory(blob.getParent())) {
+            try (DirectoryStream<Path> derivatives = Files.newDirectoryStream(blob.getParent(), hash + ".*")) {
+                for (Path derivative : derivatives) {
+                    Files.deleteIfExists(derivative);
+                }
+            }
+        }
+    }
+
+    /**
+     * Resolves the location of the blob with the given hash
+     * @param hash SHA-256 hex digest of the content
+     * @return The path of the blob, which might not exist
+     */
+    public Path pathOf(String hash) {
+        if (hash == null || !hash.matches("[0-9a-f]{64}")) {
+            throw new IllegalArgumentException("Not a SHA-256 hash: " + hash);
+        }
+        return root.resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4)).resolve(hash);
+    }
+
+    /**
+     * Resolves the location of a derivative, which is kept in the directory of its blob
+     * @param hash SHA-256 hex digest of the original content
+     * @param variant The name of the derivative
+     * @return The path of the derivative, which might not exist
+     */
+    public Path derivativePathOf(String hash, String variant) {
+        if (variant == null || !variant.matches("[a-z0-9]+(\\.[a-z0-9]+)*")) {
+            throw new IllegalArgumentException("Not a derivative name: " + variant);
+        }
+        return pathOf(hash).resolveSibling(hash + "." + variant);
+    }
+
+    /**
+     * Moves a fully written temporary file to its final location.
+     * If another upload of the same content got there first, the existing blob is kept.
+     */
+    private void moveIntoPlace(Path tmp, Path target) throws IOException {
+        try {
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException e) {
+            // same content was stored concurrently
+        } catch (AtomicMoveNotSupportedException e) {
+            if (!Files.exists(target)) {
+                Files.move(tmp, target);
+            }
+        }
+    }
+
+    /**
+     * Copies the stream through a fixed size buffer
+     * @return The number of bytes copied
+     */
+    private static long copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long total = 0;
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+            total += read;
+        }
+        return total;
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package server.storage;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * The smaller versions made of every uploaded image, see {@link ImageRenditions}
+ */
+public enum Rendition {
+    /** For lists of files */
+    THUMB("thumb", 256),
+    /** For images shown in the rendered note */
+    PREVIEW("preview", 1024);
+
+    private final String param;
+    private final int maxDimension;
+
+    Rendition(String param, int maxDimension) {
+        this.param = param;
+        this.maxDimension = maxDimension;
+    }
+
+    /**
+     * @return The value of the size parameter that asks for this rendition
+     */
+    public String getParam() {
+        return param;
+    }
+
+    /**
+     * @return The length of the longer side of the rendition in pixels
+     */
+    public int getMaxDimension() {
+        return maxDimension;
+    }
+
+    public static Optional<Rendition> fromParam(String param) {
+        return Arrays.stream(values()).filter(r -> r.param.equals(param)).findFirst();
+    }
+}
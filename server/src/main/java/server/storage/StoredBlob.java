@@ -0,0 +1,10 @@
+package server.storage;
+
+/**
+ * The result of writing a blob to a {@link BlobStore}.
+ *
+ * @param hash SHA-256 hex digest of the content
+ * @param size Size of the content in bytes
+ */
+public record StoredBlob(String hash, long size) {
+}
@@ -0,0 +1,175 @@
+package server.web;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+
+/**
+ * Holds back the first bytes of a response until it is larger than {@code server.compression.min-response-size}.
+ * Tomcat only leaves responses below that size uncompressed if it knows their Content-Length, which
+ * Spring does not set for JSON. A response that ends within the limit is sent with its length;
+ * a larger one is passed on as it is written, so file downloads are not held in memory.
+ */
+@Component
+public class SmallResponseBufferFilter extends OncePerRequestFilter {
+
+    private final int limit;
+
+    public SmallResponseBufferFilter(@Value("${server.compression.enabled:false}") boolean compression,
+                                     @Value("${server.compression.min-response-size:2KB}") DataSize minResponseSize) {
+        this.limit = compression ? (int) minResponseSize.toBytes() : 0;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        // the websocket handshake hands the connection over and has no body
+        return limit <= 0 || "websocket".equalsIgnoreCase(request.getHeader(HttpHeaders.UPGRADE));
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        BufferingResponse buffering = new BufferingResponse(response, limit);
+        chain.doFilter(request, buffering);
+        buffering.finish();
+    }
+
+    private static final class BufferingResponse extends HttpServletResponseWrapper {
+        private final int limit;
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private boolean buffering = true;
+        private ServletOutputStream outputStream;
+        private PrintWriter writer;
+
+        private BufferingResponse(HttpServletResponse response, int limit) {
+            super(response);
+            this.limit = limit;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (writer != null) {
+                throw new IllegalStateException("getWriter() has already been called");
+            }
+            if (outputStream == null) {
+                outputStream = new BufferingOutputStream(super.getOutputStream());
+            }
+            return outputStream;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                if (outputStream != null) {
+                    throw new IllegalStateException("getOutputStream() has already been called");
+                }
+                outputStream = new BufferingOutputStream(super.getOutputStream());
+                writer = new PrintWriter(new OutputStreamWriter(outputStream, getCharacterEncoding()));
+            }
+            return writer;
+        }
+
+        /**
+         * Flushing commits the response, which is only done once it is known not to fit the limit
+         */
+        @Override
+        public void flushBuffer() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            if (!buffering) {
+                super.flushBuffer();
+            }
+        }
+
+        @Override
+        public void resetBuffer() {
+            super.resetBuffer();
+            buffer.reset();
+        }
+
+        @Override
+        public void reset() {
+            super.reset();
+            buffer.reset();
+        }
+
+        /**
+         * Sends a response that stayed within the limit, with its length
+         */
+        private void finish() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            if (!buffering) {
+                return;
+            }
+            buffering = false;
+            if (buffer.size() == 0) {
+                return;
+            }
+            if (!isCommitted()) {
+                setContentLength(buffer.size());
+            }
+            buffer.writeTo(super.getOutputStream());
+        }
+
+        private final class BufferingOutputStream extends ServletOutputStream {
+            private final ServletOutputStream target;
+
+            private BufferingOutputStream(ServletOutputStream target) {
+                this.target = target;
+            }
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                if (buffering && buffer.size() + length <= limit) {
+                    buffer.write(bytes, offset, length);
+                    return;
+                }
+                if (buffering) {
+                    buffering = false;
+                    buffer.writeTo(target);
+                    buffer.reset();
+                }
+                target.write(bytes, offset, length);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                if (!buffering) {
+                    target.flush();
+                }
+            }
+
+            @Override
+            public boolean isReady() {
+                return target.isReady();
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+                target.setWriteListener(writeListener);
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package server.websocket;
+
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Hands every new websocket session to the STOMP handler as a {@link BoundedSendSession}.
+ * Spring wraps the session again to guard concurrent sends, but since sending to a
+ * {@link BoundedSendSession} only queues the frame, that outer buffer stays empty.
+ */
+public class BoundedSendHandlerDecorator extends WebSocketHandlerDecorator {
+
+    private final Executor sendExecutor;
+    private final int maxQueuedMessages;
+    private final int maxQueuedBytes;
+    private final long sendTimeLimit;
+    private final OverflowPolicy overflowPolicy;
+    private final OutboundQueueStats stats;
+
+    public BoundedSendHandlerDecorator(WebSocketHandler delegate, Executor sendExecutor, int maxQueuedMessages,
+                                       int maxQueuedBytes, long sendTimeLimit, OverflowPolicy overflowPolicy,
+                                       OutboundQueueStats stats) {
+        super(delegate);
+        this.sendExecutor = sendExecutor;
+        this.maxQueuedMessages = maxQueuedMessages;
+        this.maxQueuedBytes = maxQueuedBytes;
+        this.sendTimeLimit = sendTimeLimit;
+        this.overflowPolicy = overflowPolicy;
+        this.stats = stats;
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+        BoundedSendSession bounded = new BoundedSendSession(session, sendExecutor, maxQueuedMessages,
+                maxQueuedBytes, sendTimeLimit, overflowPolicy, stats);
+        stats.register(bounded);
+        super.afterConnectionEstablished(bounded);
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+        BoundedSendSession bounded = stats.unregister(session.getId());
+        if (bounded != null) {
+            bounded.discard();
+        }
+        super.afterConnectionClosed(session, closeStatus);
+    }
+}
@@ -0,0 +1,204 @@
+package server.websocket;
+
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A websocket session with its own bounded outbound queue.
+ * Sending only queues the frame; the frames are written to the socket in order by a task on the send executor,
+ * so a client that reads slowly does not hold up the threads of the outbound channel.
+ * When the queue is full, the {@link OverflowPolicy} decides whether old frames are dropped or the session is closed.
+ * A client that missed frames can not tell, so a session that dropped frames is closed once the frames it still
+ * holds are written; the client then reconnects and catches up. A single frame larger than the byte limit
+ * is let through when nothing else is waiting, since no amount of dropping would make room for it.
+ * A session whose write takes longer than the send time limit is always closed, so it does not keep a send thread.
+ */
+public class BoundedSendSession extends WebSocketSessionDecorator {
+
+    private final Executor sendExecutor;
+    private final int maxQueuedMessages;
+    private final int maxQueuedBytes;
+    private final long sendTimeLimit;
+    private final OverflowPolicy overflowPolicy;
+    private final OutboundQueueStats stats;
+
+    // guarded by itself, together with queuedBytes, flushing and framesDropped
+    private final Deque<WebSocketMessage<?>> queue = new ArrayDeque<>();
+    private int queuedBytes;
+    private boolean flushing;
+    private boolean framesDropped;
+
+    // when the write in progress started, 0 if none is
+    private volatile long sendStartTime;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    /**
+     * @param delegate The session of the websocket container
+     * @param sendExecutor The executor that writes the queued frames
+     * @param maxQueuedMessages The maximum number of frames waiting to be written
+     * @param maxQueuedBytes The maximum size of the frames waiting to be written
+     * @param sendTimeLimit The time in milliseconds a single write may take
+     * @param overflowPolicy What to do when one of the limits is exceeded
+     * @param stats Where the queue depths and dropped frames are counted
+     */
+    public BoundedSendSession(WebSocketSession delegate, Executor sendExecutor, int maxQueuedMessages,
+                              int maxQueuedBytes, long sendTimeLimit, OverflowPolicy overflowPolicy,
+                              OutboundQueueStats stats) {
+        super(delegate);
+        this.sendExecutor = sendExecutor;
+        this.maxQueuedMessages = maxQueuedMessages;
+        this.maxQueuedBytes = maxQueuedBytes;
+        this.sendTimeLimit = sendTimeLimit;
+        this.overflowPolicy = overflowPolicy;
+        this.stats = stats;
+    }
+
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) throws IOException {
+        if (closed.get()) {
+            return;
+        }
+        if (sendTimeExceeded()) {
+            closeSlowSession("Send time limit exceeded");
+            return;
+        }
+        int size = message.getPayloadLength();
+        boolean full;
+        boolean startFlush = false;
+        synchronized (queue) {
+            full = isFull(size);
+            if (full && overflowPolicy == OverflowPolicy.DROP_OLDEST) {
+                dropOldest(size);
+            }
+            if (!full || overflowPolicy == OverflowPolicy.DROP_OLDEST) {
+                startFlush = enqueue(message);
+            }
+        }
+        if (full && overflowPolicy == OverflowPolicy.CLOSE) {
+            closeSlowSession("Outbound queue full");
+        } else if (startFlush) {
+            sendExecutor.execute(this::flush);
+        }
+    }
+
+    /**
+     * @return The number of frames waiting to be written
+     */
+    public int getQueueSize() {
+        synchronized (queue) {
+            return queue.size();
+        }
+    }
+
+    /**
+     * Forgets the waiting frames once the session is closed
+     */
+    void discard() {
+        closed.set(true);
+        clearQueue();
+    }
+
+    private boolean sendTimeExceeded() {
+        long start = sendStartTime;
+        return start != 0 && System.currentTimeMillis() - start > sendTimeLimit;
+    }
+
+    /**
+     * Must hold the lock of the queue.
+     * @return true if a frame of the given size does not fit; it always does into an empty queue
+     */
+    private boolean isFull(int size) {
+        return queue.size() >= maxQueuedMessages || (!queue.isEmpty() && queuedBytes + size > maxQueuedBytes);
+    }
+
+    /**
+     * Adds a frame to the queue. Must hold the lock of the queue.
+     * @return true if no task is writing the queue yet and one has to be started
+     */
+    private boolean enqueue(WebSocketMessage<?> message) {
+        queue.addLast(message);
+        queuedBytes += message.getPayloadLength();
+        stats.queued(1);
+        if (flushing) {
+            return false;
+        }
+        flushing = true;
+        return true;
+    }
+
+    /**
+     * Drops the oldest frames until one of the given size fits. Must hold the lock of the queue.
+     */
+    private void dropOldest(int needed) {
+        int dropped = 0;
+        while (isFull(needed)) {
+            queuedBytes -= queue.pollFirst().getPayloadLength();
+            dropped++;
+        }
+        framesDropped |= dropped > 0;
+        stats.dequeued(dropped);
+        stats.framesDropped(dropped);
+    }
+
+    private void flush() {
+        while (true) {
+            WebSocketMessage<?> message;
+            boolean resync = false;
+            synchronized (queue) {
+                message = closed.get() ? null : queue.pollFirst();
+                if (message == null) {
+                    flushing = false;
+                    resync = framesDropped;
+                } else {
+                    queuedBytes -= message.getPayloadLength();
+                }
+            }
+            if (message == null) {
+                if (resync) {
+                    closeSlowSession("Frames were dropped, reconnect to catch up");
+                }
+                return;
+            }
+            stats.dequeued(1);
+            sendStartTime = System.currentTimeMillis();
+            try {
+                getDelegate().sendMessage(message);
+            } catch (IOException | RuntimeException e) {
+                closeSlowSession("Sending failed");
+            } finally {
+                sendStartTime = 0;
+            }
+        }
+    }
+
+    private void closeSlowSession(String reason) {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        clearQueue();
+        stats.sessionClosed();
+        try {
+            getDelegate().close(CloseStatus.SESSION_NOT_RELIABLE.withReason(reason));
+        } catch (IOException e) {
+            // the container cleans up the session when the socket goes away
+        }
+    }
+
+    private void clearQueue() {
+        int cleared;
+        synchronized (queue) {
+            cleared = queue.size();
+            queue.clear();
+            queuedBytes = 0;
+        }
+        stats.dequeued(cleared);
+    }
+}
@@ -0,0 +1,35 @@
+package server.websocket;
+
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.server.support.DefaultHandshakeHandler;
+
+import java.util.List;
+
+/**
+ * Accepts the permessage-deflate extension that the servlet container offers, so the frames of a
+ * session are compressed when its client asks for it, unless compression is switched off.
+ */
+public class DeflateHandshakeHandler extends DefaultHandshakeHandler {
+
+    public static final String PERMESSAGE_DEFLATE = "permessage-deflate";
+
+    private final boolean perMessageDeflate;
+
+    public DeflateHandshakeHandler(boolean perMessageDeflate) {
+        this.perMessageDeflate = perMessageDeflate;
+    }
+
+    @Override
+    protected List<WebSocketExtension> filterRequestedExtensions(ServerHttpRequest request,
+            List<WebSocketExtension> requestedExtensions, List<WebSocketExtension> supportedExtensions) {
+        List<WebSocketExtension> accepted =
+                super.filterRequestedExtensions(request, requestedExtensions, supportedExtensions);
+        if (perMessageDeflate) {
+            return accepted;
+        }
+        return accepted.stream()
+                .filter(extension -> !PERMESSAGE_DEFLATE.equals(extension.getName()))
+                .toList();
+    }
+}
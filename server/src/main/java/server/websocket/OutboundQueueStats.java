@@ -0,0 +1,64 @@
+package server.websocket;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts what the outbound queues of the websocket sessions hold and what they had to give up
+ */
+@Component
+public class OutboundQueueStats {
+
+    private final Map<String, BoundedSendSession> sessions = new ConcurrentHashMap<>();
+    private final LongAdder queuedFrames = new LongAdder();
+    private final LongAdder droppedFrames = new LongAdder();
+    private final LongAdder closedSessions = new LongAdder();
+
+    /**
+     * The state of the queues at one moment
+     * @param sessions The number of open sessions
+     * @param queuedFrames The number of frames waiting in all queues together
+     * @param maxQueueDepth The number of frames waiting in the fullest queue
+     * @param droppedFrames The number of frames dropped because a queue was full, since the start
+     * @param closedSessions The number of sessions closed for being too slow, since the start
+     */
+    public record Snapshot(int sessions, long queuedFrames, int maxQueueDepth, long droppedFrames,
+                           long closedSessions) {
+    }
+
+    void register(BoundedSendSession session) {
+        sessions.put(session.getId(), session);
+    }
+
+    BoundedSendSession unregister(String sessionId) {
+        return sessions.remove(sessionId);
+    }
+
+    void queued(int frames) {
+        queuedFrames.add(frames);
+    }
+
+    void dequeued(int frames) {
+        queuedFrames.add(-frames);
+    }
+
+    void framesDropped(int frames) {
+        droppedFrames.add(frames);
+    }
+
+    void sessionClosed() {
+        closedSessions.increment();
+    }
+
+    public Snapshot snapshot() {
+        int maxQueueDepth = sessions.values().stream()
+                .mapToInt(BoundedSendSession::getQueueSize)
+                .max()
+                .orElse(0);
+        return new Snapshot(sessions.size(), queuedFrames.sum(), maxQueueDepth, droppedFrames.sum(),
+                closedSessions.sum());
+    }
+}
@@ -0,0 +1,17 @@
+package server.websocket;
+
+/**
+ * What happens when a client does not read its frames fast enough
+ * and its outbound queue of a {@link BoundedSendSession} is full
+ */
+public enum OverflowPolicy {
+    /**
+     * Drop the oldest waiting frames to make room, and close the session once the newer frames are written.
+     * The client reconnects and catches up from the REST API.
+     */
+    DROP_OLDEST,
+    /**
+     * Close the session, like Spring does with sessions that exceed their send limits
+     */
+    CLOSE
+}
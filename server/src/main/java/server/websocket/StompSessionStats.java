@@ -0,0 +1,68 @@
+package server.websocket;
+
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Counts the connected STOMP sessions and their subscriptions, from the events Spring publishes for them.
+ * The subscriptions of a session are forgotten when it disconnects, since clients do not unsubscribe first.
+ */
+@Component
+public class StompSessionStats {
+
+    private final Map<String, Set<String>> subscriptions = new ConcurrentHashMap<>();
+
+    @EventListener
+    public void onConnected(SessionConnectedEvent event) {
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(event.getMessage().getHeaders());
+        if (sessionId != null) {
+            subscriptions.putIfAbsent(sessionId, ConcurrentHashMap.newKeySet());
+        }
+    }
+
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        if (accessor.getSessionId() != null && accessor.getSubscriptionId() != null) {
+            subscriptions.computeIfAbsent(accessor.getSessionId(), id -> ConcurrentHashMap.newKeySet())
+                    .add(accessor.getSubscriptionId());
+        }
+    }
+
+    @EventListener
+    public void onUnsubscribe(SessionUnsubscribeEvent event) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        Set<String> ids = accessor.getSessionId() == null ? null : subscriptions.get(accessor.getSessionId());
+        if (ids != null && accessor.getSubscriptionId() != null) {
+            ids.remove(accessor.getSubscriptionId());
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        subscriptions.remove(event.getSessionId());
+    }
+
+    /**
+     * @return The number of connected sessions
+     */
+    public int getSessions() {
+        return subscriptions.size();
+    }
+
+    /**
+     * @return The number of subscriptions of all connected sessions together
+     */
+    public int getSubscriptions() {
+        return subscriptions.values().stream().mapToInt(Set::size).sum();
+    }
+}
@@ -0,0 +1,24 @@
+package server.websocket;
+
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import server.Config;
+
+/**
+ * The encoding of the frames the server broadcasts. A topic is shared by all its subscribers,
+ * so the server picks one for everybody; frames sent by clients are read in whatever their content-type says.
+ */
+public enum WireFormat {
+    JSON(MimeTypeUtils.APPLICATION_JSON),
+    CBOR(Config.APPLICATION_CBOR);
+
+    private final MimeType mimeType;
+
+    WireFormat(MimeType mimeType) {
+        this.mimeType = mimeType;
+    }
+
+    public MimeType getMimeType() {
+        return mimeType;
+    }
+}
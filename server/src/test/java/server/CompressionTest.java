@@ -0,0 +1,99 @@
+package server;
+
+import commons.Collection;
+import commons.Note;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
+import server.database.CollectionRepository;
+import server.database.NoteRepository;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks over a real connection that large REST responses are gzipped, small ones are not,
+ * and that websocket clients asking for permessage-deflate get it.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=jdbc:h2:mem:compression;DB_CLOSE_DELAY=-1",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "netnote.storage.path=target/compression-test-attachments"
+})
+class CompressionTest {
+
+    @LocalServerPort
+    private int port;
+    @Autowired
+    private CollectionRepository collectionRepository;
+    @Autowired
+    private NoteRepository noteRepository;
+
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+
+    @Test
+    void largeResponsesAreGzipped() throws Exception {
+        Collection collection = collectionRepository.save(new Collection("compression", "http://localhost:" + port + "/"));
+        for (int i = 0; i < 100; i++) {
+            noteRepository.save(new Note("note " + i, "# Note " + i + "\n\nSome *markdown* text. ".repeat(20), collection));
+        }
+
+        HttpResponse<byte[]> response = get("/api/notes");
+
+        assertEquals(200, response.statusCode());
+        assertEquals("gzip", response.headers().firstValue("Content-Encoding").orElse(null));
+        byte[] json = new GZIPInputStream(new ByteArrayInputStream(response.body())).readAllBytes();
+        assertTrue(json.length > response.body().length * 4,
+                json.length + " bytes of JSON were sent as " + response.body().length);
+    }
+
+    @Test
+    void smallResponsesAreNotCompressed() throws Exception {
+        Collection collection = collectionRepository.save(new Collection("small", "http://localhost:" + port + "/"));
+        Note note = noteRepository.save(new Note("small", "tiny", collection));
+
+        HttpResponse<byte[]> response = get("/api/notes/" + note.id);
+
+        assertEquals(200, response.statusCode());
+        assertTrue(response.headers().firstValue("Content-Encoding").isEmpty());
+    }
+
+    @Test
+    void websocketFramesAreDeflated() throws Exception {
+        WebSocketHttpHeaders headers = new WebSocketHttpHeaders();
+        headers.setSecWebSocketExtensions(List.of(new WebSocketExtension("permessage-deflate")));
+
+        WebSocketSession session = new StandardWebSocketClient()
+                .execute(new AbstractWebSocketHandler() {}, headers, URI.create("ws://localhost:" + port + "/websocket"))
+                .get(10, TimeUnit.SECONDS);
+        try {
+            assertEquals(List.of("permessage-deflate"),
+                    session.getExtensions().stream().map(WebSocketExtension::getName).toList());
+        } finally {
+            session.close();
+        }
+    }
+
+    private HttpResponse<byte[]> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                .header("Accept", "application/json")
+                .header("Accept-Encoding", "gzip")
+                .build();
+        return httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+    }
+}
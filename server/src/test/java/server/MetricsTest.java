@@ -0,0 +1,83 @@
+package server;
+
+import commons.Collection;
+import commons.Note;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalManagementPort;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.mock.web.MockMultipartFile;
+import server.database.CollectionRepository;
+import server.database.NoteRepository;
+import server.service.EmbeddedFileService;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that the metrics of requests, queries, caches, files and websocket sessions
+ * can be scraped in Prometheus format from the management port, and not from the API port.
+ * Tests leave metrics exporters off unless asked, hence {@link AutoConfigureObservability}.
+ */
+@AutoConfigureObservability
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=jdbc:h2:mem:metrics;DB_CLOSE_DELAY=-1",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "netnote.storage.path=target/metrics-test-attachments"
+})
+class MetricsTest {
+
+    @LocalServerPort
+    private int port;
+    @LocalManagementPort
+    private int managementPort;
+    @Autowired
+    private CollectionRepository collectionRepository;
+    @Autowired
+    private NoteRepository noteRepository;
+    @Autowired
+    private EmbeddedFileService embeddedFileService;
+
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+
+    @Test
+    void prometheusEndpointShowsServerMetrics() throws Exception {
+        Collection collection = collectionRepository.save(new Collection("metrics", "http://localhost:" + port + "/"));
+        Note note = noteRepository.save(new Note("metrics", "body", collection));
+        embeddedFileService.saveFile(note, new MockMultipartFile("file", "test.txt", "text/plain", "Hello World".getBytes()));
+        assertEquals(200, get(port, "/api/notes/" + note.id).statusCode());
+        assertEquals(200, get(port, "/api/notes/" + note.id + "/files/test.txt").statusCode());
+
+        HttpResponse<String> response = get(managementPort, "/actuator/prometheus");
+
+        assertEquals(200, response.statusCode());
+        String metrics = response.body();
+        assertTrue(metrics.contains("http_server_requests_seconds_bucket{"));
+        assertTrue(metrics.contains("uri=\"/api/notes/{id}\""));
+        assertTrue(metrics.contains("spring_data_repository_invocations_seconds_count{"));
+        assertTrue(metrics.contains("hikaricp_connections"));
+        assertTrue(metrics.contains("cache_gets_total{"));
+        assertTrue(metrics.contains("netnote_files_uploaded_bytes_total 11.0"));
+        assertTrue(metrics.contains("netnote_files_downloaded_bytes_total{size=\"original\"} 11.0"));
+        assertTrue(metrics.contains("netnote_stomp_sessions "));
+        assertTrue(metrics.contains("netnote_websocket_outbound_queued_frames "));
+    }
+
+    @Test
+    void metricsAreNotOnTheApiPort() throws Exception {
+        assertNotEquals(port, managementPort);
+        assertEquals(404, get(port, "/actuator/prometheus").statusCode());
+    }
+
+    private HttpResponse<String> get(int port, String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path)).build();
+        return httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
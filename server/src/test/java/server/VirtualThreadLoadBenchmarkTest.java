@@ -0,0 +1,191 @@
+package server;
+
+import commons.Collection;
+import commons.Note;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.mock.web.MockMultipartFile;
+import server.database.CollectionRepository;
+import server.database.NoteRepository;
+import server.service.EmbeddedFileService;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Starts the server once on Tomcat's platform thread pool and once on virtual threads, and lets the same number
+ * of simulated clients read notes, pages of a collection, the change feed and an attachment for a while.
+ * Prints the throughput and the 99th percentile latency of both modes. The cache is off, so every request
+ * waits for the database. Run with {@code mvn test -Dbenchmark=true -Dtest=VirtualThreadLoadBenchmarkTest},
+ * optionally with {@code -Dbenchmark.clients=1000 -Dbenchmark.seconds=20}.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class VirtualThreadLoadBenchmarkTest {
+
+    private static final int NOTES = 200;
+    private static final int ATTACHMENT_SIZE = 256 * 1024;
+
+    private final int clients = Integer.getInteger("benchmark.clients", 1000);
+    private final Duration duration = Duration.ofSeconds(Integer.getInteger("benchmark.seconds", 20));
+    private final Duration warmup = Duration.ofSeconds(5);
+
+    @Test
+    public void compareThreadModes() throws Exception {
+        Result platform = run(false);
+        Result virtual = run(true);
+
+        System.out.printf("%d clients, %d s%n", clients, duration.toSeconds());
+        System.out.printf("%-10s %12s %10s %10s %8s%n", "threads", "requests/s", "p50 ms", "p99 ms", "errors");
+        for (Result result : List.of(platform, virtual)) {
+            System.out.printf("%-10s %12.0f %10.1f %10.1f %8d%n", result.mode, result.throughput(duration),
+                    result.percentile(50), result.percentile(99), result.errors);
+        }
+
+        assertEquals(0, platform.errors, "requests failed on platform threads");
+        assertEquals(0, virtual.errors, "requests failed on virtual threads");
+    }
+
+    private Result run(boolean virtualThreads) throws Exception {
+        String mode = virtualThreads ? "virtual" : "platform";
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(Main.class)
+                .properties(
+                        "server.port=0",
+                        "management.server.port=0",
+                        "spring.datasource.url=jdbc:h2:mem:load-" + mode + ";DB_CLOSE_DELAY=-1",
+                        "spring.jpa.hibernate.ddl-auto=create-drop",
+                        "spring.h2.console.enabled=false",
+                        "netnote.storage.path=target/load-" + mode + "-test-attachments",
+                        "netnote.cache.enabled=false",
+                        "spring.threads.virtual.enabled=" + virtualThreads)
+                .run()) {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            List<String> paths = seed(context, "http://localhost:" + port + "/");
+
+            HttpClient httpClient = HttpClient.newBuilder()
+                    .executor(Executors.newVirtualThreadPerTaskExecutor())
+                    .connectTimeout(Duration.ofSeconds(30))
+                    .build();
+            Result result = new Result(mode);
+            long warmupEnd = System.nanoTime() + warmup.toNanos();
+            long end = warmupEnd + duration.toNanos();
+            List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+            try (ExecutorService simulated = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int i = 0; i < clients; i++) {
+                    Random random = new Random(i);
+                    simulated.submit(() -> client(httpClient, port, paths, random, warmupEnd, end, latencies, result));
+                }
+                simulated.shutdown();
+                assertTrue(simulated.awaitTermination(duration.toSeconds() + 120, TimeUnit.SECONDS));
+            }
+            result.collect(latencies);
+            return result;
+        }
+    }
+
+    /**
+     * Sends requests one after the other until the end, recording the latency of those sent after the warmup
+     */
+    private static void client(HttpClient httpClient, int port, List<String> paths, Random random,
+                               long warmupEnd, long end, List<Long> latencies, Result result) {
+        List<Long> measured = new ArrayList<>();
+        while (System.nanoTime() < end) {
+            String path = paths.get(random.nextInt(paths.size()));
+            HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/" + path))
+                    .timeout(Duration.ofSeconds(60))
+                    .build();
+            long start = System.nanoTime();
+            try {
+                HttpResponse<byte[]> response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+                if (response.statusCode() != 200) {
+                    result.errors.incrementAndGet();
+                }
+            } catch (IOException e) {
+                result.errors.incrementAndGet();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            long stop = System.nanoTime();
+            if (start >= warmupEnd && stop <= end) {
+                measured.add(stop - start);
+            }
+        }
+        latencies.addAll(measured);
+    }
+
+    /**
+     * Stores a collection of notes and an attachment
+     * @return The paths the clients pick their requests from
+     */
+    private static List<String> seed(ConfigurableApplicationContext context, String serverUrl) throws IOException {
+        Collection collection = context.getBean(CollectionRepository.class).save(new Collection("load", serverUrl));
+        NoteRepository noteRepository = context.getBean(NoteRepository.class);
+        List<String> paths = new ArrayList<>();
+        Note first = null;
+        for (int i = 0; i < NOTES; i++) {
+            Note note = noteRepository.save(new Note("note " + i, "# Note " + i + "\n\nSome text. ".repeat(50), collection));
+            if (first == null) {
+                first = note;
+            }
+            paths.add("api/notes/" + note.id);
+        }
+        byte[] attachment = new byte[ATTACHMENT_SIZE];
+        new Random(0).nextBytes(attachment);
+        context.getBean(EmbeddedFileService.class)
+                .saveFile(first, new MockMultipartFile("file", "attachment.bin", "application/octet-stream", attachment));
+
+        // about half the requests read single notes, the rest is spread over the other kinds
+        List<String> mix = new ArrayList<>(paths.subList(0, 20));
+        for (int i = 0; i < 6; i++) {
+            mix.add("api/collection/load?limit=20");
+            mix.add("api/changes?since=0&limit=50");
+        }
+        for (int i = 0; i < 8; i++) {
+            mix.add("api/notes/" + first.id + "/files/attachment.bin");
+        }
+        return mix;
+    }
+
+    private static final class Result {
+        private final String mode;
+        private final AtomicLong errors = new AtomicLong();
+        private long[] sorted = new long[0];
+
+        private Result(String mode) {
+            this.mode = mode;
+        }
+
+        private void collect(List<Long> latencies) {
+            sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+        }
+
+        private double throughput(Duration duration) {
+            return sorted.length / (double) duration.toSeconds();
+        }
+
+        private double percentile(int percentile) {
+            if (sorted.length == 0) {
+                return Double.NaN;
+            }
+            int index = Math.min(sorted.length - 1, (int) Math.ceil(sorted.length * percentile / 100.0) - 1);
+            return sorted[Math.max(0, index)] / 1_000_000.0;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package server;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import commons.Collection;
+import commons.EmbeddedFile;
+import commons.Note;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compares the size of the payloads the server sends and the time to write and read them in JSON,
+ * Smile and CBOR. Run with {@code mvn test -Dbenchmark=true -Dtest=WireFormatBenchmarkTest}.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class WireFormatBenchmarkTest {
+
+    private static final int WARMUP_ROUNDS = 2_000;
+    private static final int MEASURED_ROUNDS = 5_000;
+
+    private final Map<String, ObjectMapper> mappers = new LinkedHashMap<>();
+
+    @Test
+    public void binaryFormatsAreSmaller() throws IOException {
+        mappers.put("json", new ObjectMapper().registerModule(new JavaTimeModule()));
+        mappers.put("smile", SmileMapper.builder().addModule(new JavaTimeModule()).build());
+        mappers.put("cbor", Config.cborMapper());
+
+        Collection collection = new Collection("benchmark", "http://localhost:8080/");
+        collection.id = UUID.randomUUID();
+        List<Note> notes = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Note note = new Note("note " + i, "# Note " + i + "\n\nSome *markdown* with a [[link]] and #tag.", collection);
+            note.id = UUID.randomUUID();
+            notes.add(note);
+        }
+        byte[] content = new byte[64 * 1024];
+        new Random(42).nextBytes(content);
+        EmbeddedFile file = new EmbeddedFile(null, "image.png", "image/png", content);
+
+        Map<String, Integer> noteSizes = measure("note", notes.getFirst(), Note.class);
+        measure("100 notes", notes, List.class);
+        measure("collection", collection, Collection.class);
+        Map<String, Integer> fileSizes = measure("64 KB file", file, EmbeddedFile.class);
+
+        // JSON writes the bytes as base64, a third larger than the raw bytes CBOR writes
+        assertTrue(fileSizes.get("cbor") < fileSizes.get("json") * 0.8,
+                "CBOR file was " + fileSizes.get("cbor") + " bytes, JSON " + fileSizes.get("json"));
+        assertTrue(noteSizes.get("cbor") <= noteSizes.get("json"));
+    }
+
+    /**
+     * Prints the size and the average write and read time of the value in every format
+     * @return The size in bytes per format
+     */
+    private Map<String, Integer> measure(String name, Object value, Class<?> type) throws IOException {
+        Map<String, Integer> sizes = new LinkedHashMap<>();
+        for (Map.Entry<String, ObjectMapper> entry : mappers.entrySet()) {
+            ObjectMapper mapper = entry.getValue();
+            JavaType javaType = mapper.constructType(type);
+            byte[] bytes = mapper.writeValueAsBytes(value);
+            for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                mapper.readValue(mapper.writeValueAsBytes(value), javaType);
+            }
+
+            long start = System.nanoTime();
+            for (int i = 0; i < MEASURED_ROUNDS; i++) {
+                bytes = mapper.writeValueAsBytes(value);
+            }
+            long written = System.nanoTime();
+            for (int i = 0; i < MEASURED_ROUNDS; i++) {
+                mapper.readValue(bytes, javaType);
+            }
+            long read = System.nanoTime();
+
+            sizes.put(entry.getKey(), bytes.length);
+            System.out.printf("%-10s %-5s %,9d bytes %,10d ns write %,10d ns read%n", name, entry.getKey(),
+                    bytes.length, (written - start) / MEASURED_ROUNDS, (read - written) / MEASURED_ROUNDS);
+        }
+        return sizes;
+    }
+}
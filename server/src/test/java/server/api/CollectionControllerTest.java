@@ -2,21 +2,38 @@ package server.api;
 
 import commons.Collection;
 import commons.Note;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.mock.web.MockMultipartFile;
+import server.changes.ChangeLog;
+import server.collab.CollaborationService;
+import server.events.EventOutbox;
 import server.service.CollectionService;
 import server.service.EmbeddedFileService;
+import server.search.SearchIndex;
 import server.service.NoteService;
+import server.storage.ImageRenditions;
+import server.storage.LocalBlobStore;
 
+import java.nio.file.Path;
+import java.util.List;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 
 class CollectionControllerTest {
     private NoteController noteController;
     private CollectionController collectionController;
+    private EventOutbox eventOutbox;
 
     private NoteService noteService;
     private CollectionService collectionService;
@@ -26,6 +43,9 @@ class CollectionControllerTest {
     private TestCollectionRepository collectionRepo;
     private TestEmbeddedFileRepository embeddedFileRepository;
 
+    @TempDir
+    Path blobDir;
+
     Collection collection1, collection2, collection3, collection4;
     Note note1, note2, note3, note4, note5, note6, note7, note8;
 
@@ -33,13 +53,22 @@ class CollectionControllerTest {
     void setUp() {
         noteRepo = new TestNoteRepository();
         collectionRepo = new TestCollectionRepository();
+        embeddedFileRepository = new TestEmbeddedFileRepository();
 
-        noteService = new NoteService(noteRepo);
-        collectionService = new CollectionService(collectionRepo);
-        embeddedFileService = new EmbeddedFileService(embeddedFileRepository);
+        ChangeLog changeLog = mock(ChangeLog.class);
+        eventOutbox = mock(EventOutbox.class);
+        SearchIndex searchIndex = new SearchIndex();
+        noteService = new NoteService(noteRepo, searchIndex, changeLog, eventOutbox);
+        embeddedFileService = new EmbeddedFileService(embeddedFileRepository, new LocalBlobStore(blobDir), changeLog,
+                eventOutbox, mock(ImageRenditions.class), new SimpleMeterRegistry());
+        collectionService = new CollectionService(collectionRepo, noteRepo, embeddedFileService, searchIndex, changeLog,
+                eventOutbox);
 
-        noteController = new NoteController(noteService, collectionService, embeddedFileService, noteRepo);
-        collectionController = new CollectionController(noteService, collectionService);
+        CollaborationService collaborationService =
+                new CollaborationService(noteService, mock(SimpMessagingTemplate.class));
+        noteController = new NoteController(noteService, collectionService, embeddedFileService, noteRepo,
+                collaborationService);
+        collectionController = new CollectionController(noteService, collectionService, collaborationService);
 
 
         collection1 = new Collection("collection1", "http://localhost:8080/");
@@ -169,6 +198,23 @@ class CollectionControllerTest {
         assertEquals("note8", response4.getBody().get(1).title);
     }
 
+    @Test
+    public void getNotesInCollectionPageTest() {
+        collectionController.createCollection(collection1);
+        collectionController.createCollection(collection2);
+
+        noteController.createNote(note1);
+        noteController.createNote(note2);
+        noteController.createNote(note3);
+
+        var page = collectionController.getNotesInCollectionPage(collection1.title, null, 10, null).getBody();
+
+        assertNotNull(page);
+        assertEquals(2, page.items().size());
+        assertNull(page.nextCursor());
+        assertTrue(page.items().containsAll(List.of(note1, note2)));
+    }
+
     @Test
     public void getAllCollectionsTest() {
         collectionController.createCollection(collection1);
@@ -281,6 +327,24 @@ class CollectionControllerTest {
         assertEquals(ResponseEntity.notFound().build(), actual);
     }
 
+    @Test
+    public void deleteCollectionWithNotesTest() {
+        Collection created = (Collection) collectionController.createCollection(collection1).getBody();
+        collectionController.createCollection(collection2);
+        Note deleted = noteController.createNote(note1).getBody();
+        noteController.createNote(note2);
+        Note kept = noteController.createNote(note3).getBody();
+        noteController.uploadFile(deleted.id, new MockMultipartFile("file", "a.txt", "text/plain", "a".getBytes()));
+
+        var response = collectionController.deleteCollection(created.id);
+
+        assertEquals(ResponseEntity.noContent().build(), response);
+        assertEquals(List.of(kept), noteController.getAllNotes().getBody());
+        assertTrue(embeddedFileRepository.findByNoteId(deleted.id).isEmpty());
+        verify(eventOutbox).collectionDeleted(created);
+        verify(eventOutbox, never()).noteDeleted(any());
+    }
+
     @Test
     public void deleteCollectionNotFoundTest() {
         collectionController.createCollection(collection1);
@@ -0,0 +1,185 @@
+package server.api;
+
+import commons.BatchMove;
+import commons.BatchUpdateResult;
+import commons.Collection;
+import commons.Note;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpStatus;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.mock.web.MockMultipartFile;
+import server.changes.ChangeLog;
+import server.collab.CollaborationService;
+import server.events.EventOutbox;
+import server.search.SearchIndex;
+import server.service.CollectionService;
+import server.service.EmbeddedFileService;
+import server.service.NoteBatchService;
+import server.service.NoteService;
+import server.storage.ImageRenditions;
+import server.storage.LocalBlobStore;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class NoteBatchControllerTest {
+
+    private NoteBatchController batchController;
+    private NoteController noteController;
+    private CollectionController collectionController;
+    private EventOutbox eventOutbox;
+
+    private TestNoteRepository noteRepo;
+    private TestEmbeddedFileRepository embeddedFileRepository;
+
+    @TempDir
+    Path blobDir;
+
+    Collection collection1, collection2;
+    Note note1, note2, note3;
+
+    @BeforeEach
+    void setUp() {
+        noteRepo = new TestNoteRepository();
+        embeddedFileRepository = new TestEmbeddedFileRepository();
+
+        ChangeLog changeLog = mock(ChangeLog.class);
+        SearchIndex searchIndex = new SearchIndex();
+        eventOutbox = mock(EventOutbox.class);
+        NoteService noteService = new NoteService(noteRepo, searchIndex, changeLog, eventOutbox);
+        EmbeddedFileService embeddedFileService =
+                new EmbeddedFileService(embeddedFileRepository, new LocalBlobStore(blobDir), changeLog, eventOutbox,
+                        mock(ImageRenditions.class), new SimpleMeterRegistry());
+        CollectionService collectionService = new CollectionService(new TestCollectionRepository(), noteRepo,
+                embeddedFileService, searchIndex, changeLog, eventOutbox);
+        CollaborationService collaborationService =
+                new CollaborationService(noteService, mock(SimpMessagingTemplate.class));
+
+        batchController = new NoteBatchController(
+                new NoteBatchService(noteRepo, embeddedFileService, searchIndex, changeLog, eventOutbox),
+                collectionService, collaborationService);
+        noteController = new NoteController(noteService, collectionService, embeddedFileService, noteRepo,
+                collaborationService);
+        collectionController = new CollectionController(noteService, collectionService, collaborationService);
+
+        collection1 = new Collection("collection1", "http://localhost:8080/");
+        collection2 = new Collection("collection2", "http://localhost:8080/");
+        collectionController.createCollection(collection1);
+        collectionController.createCollection(collection2);
+
+        note1 = noteController.createNote(new Note("note1", "bla", collection1)).getBody();
+        note2 = noteController.createNote(new Note("note2", "bla", collection1)).getBody();
+        note3 = noteController.createNote(new Note("note3", "bla", collection2)).getBody();
+    }
+
+    private static Note edited(Note note, String body) {
+        Note copy = new Note(note.title, body, note.collection);
+        copy.id = note.id;
+        copy.version = note.version;
+        return copy;
+    }
+
+    @Test
+    public void batchUpdateTest() {
+        var response = batchController.batchUpdate(List.of(edited(note1, "one"), edited(note2, "two")));
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        BatchUpdateResult result = (BatchUpdateResult) response.getBody();
+        assertEquals(2, result.updated().size());
+        assertTrue(result.conflicts().isEmpty());
+        assertEquals("one", noteController.getNoteById(note1.id).getBody().body);
+        assertEquals("two", noteController.getNoteById(note2.id).getBody().body);
+        verify(eventOutbox).noteChanged(note1);
+        verify(eventOutbox).noteChanged(note2);
+        verify(eventOutbox, never()).noteRenamed(any());
+    }
+
+    @Test
+    public void batchUpdateConflictAndMissingTest() {
+        Note stale = edited(note1, "stale");
+        stale.version = 7;
+        Note missing = edited(note2, "gone");
+        missing.id = UUID.randomUUID();
+
+        var response = batchController.batchUpdate(List.of(stale, missing, edited(note3, "three")));
+
+        BatchUpdateResult result = (BatchUpdateResult) response.getBody();
+        assertEquals(List.of(note3.id), result.updated().stream().map(n -> n.id).toList());
+        assertEquals(List.of(note1.id), result.conflicts().stream().map(n -> n.id).toList());
+        assertEquals(List.of(missing.id), result.missing());
+        assertEquals("bla", noteController.getNoteById(note1.id).getBody().body);
+    }
+
+    @Test
+    public void batchUpdateInvalidTest() {
+        Note blank = edited(note1, "body");
+        blank.title = " ";
+
+        var response = batchController.batchUpdate(List.of(edited(note2, "two"), blank));
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        assertEquals("bla", noteController.getNoteById(note2.id).getBody().body);
+    }
+
+    @Test
+    public void batchDeleteTest() {
+        noteController.uploadFile(note1.id, new MockMultipartFile("file", "a.txt", "text/plain", "a".getBytes()));
+        noteController.uploadFile(note2.id, new MockMultipartFile("file", "b.txt", "text/plain", "b".getBytes()));
+
+        var response = batchController.batchDelete(List.of(note1.id, note2.id, UUID.randomUUID()));
+
+        assertEquals(HttpStatus.NO_CONTENT, response.getStatusCode());
+        assertEquals(List.of(note3), noteController.getAllNotes().getBody());
+        assertTrue(embeddedFileRepository.findByNoteIdIn(List.of(note1.id, note2.id)).isEmpty());
+        verify(eventOutbox, times(2)).noteDeleted(any());
+    }
+
+    @Test
+    public void batchDeleteInvalidTest() {
+        var response = batchController.batchDelete(Arrays.asList(note1.id, null));
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        assertEquals(3, noteController.getAllNotes().getBody().size());
+    }
+
+    @Test
+    public void batchMoveWithoutNotesTest() {
+        var response = batchController.batchMove(new BatchMove(null, collection2.id));
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+    }
+
+    @Test
+    public void batchMoveTest() {
+        var response = batchController.batchMove(new BatchMove(List.of(note1.id, note2.id, note3.id), collection2.id));
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(collection2, noteController.getNoteById(note1.id).getBody().collection);
+        assertEquals(collection2, noteController.getNoteById(note2.id).getBody().collection);
+        verify(eventOutbox).noteChanged(note1);
+        verify(eventOutbox).noteMoved(note1, collection1.id);
+        verify(eventOutbox).noteMoved(note2, collection1.id);
+        verify(eventOutbox, never()).noteMoved(eq(note3), any());
+    }
+
+    @Test
+    public void batchMoveUnknownCollectionTest() {
+        var response = batchController.batchMove(new BatchMove(List.of(note1.id), UUID.randomUUID()));
+
+        assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+        assertEquals(collection1, noteController.getNoteById(note1.id).getBody().collection);
+    }
+}
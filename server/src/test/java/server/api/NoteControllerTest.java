@@ -3,25 +3,54 @@ package server.api;
 import commons.Collection;
 import commons.EmbeddedFile;
 import commons.Note;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import commons.NotePatch;
+import commons.TextEdit;
+import commons.ot.OperationMessage;
+import commons.ot.TextOperation;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.web.multipart.MultipartFile;
+import server.dto.EmbeddedFileSummary;
+import server.dto.NoteSummary;
+import server.changes.ChangeLog;
+import server.collab.CollaborationService;
+import server.events.EventOutbox;
 import server.service.CollectionService;
 import server.service.EmbeddedFileService;
+import server.search.SearchIndex;
 import server.service.NoteService;
-
+import server.storage.ImageRenditions;
+import server.storage.LocalBlobStore;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.springframework.http.HttpStatus.BAD_REQUEST;
 
 class NoteControllerTest {
 
     private NoteController noteController;
     private CollectionController collectionController;
+    private SimpMessagingTemplate messagingTemplate;
+    private EventOutbox eventOutbox;
+    private CollaborationService collaborationService;
 
     private NoteService noteService;
     private CollectionService collectionService;
@@ -31,6 +60,9 @@ class NoteControllerTest {
     private TestCollectionRepository collectionRepo;
     private TestEmbeddedFileRepository embeddedFileRepository;
 
+    @TempDir
+    Path blobDir;
+
     Collection collection1, collection2, collection3, collection4;
     Note note1, note2, note3, note4, note5, note6, note7, note8;
     EmbeddedFile embeddedFile;
@@ -41,12 +73,20 @@ class NoteControllerTest {
         collectionRepo = new TestCollectionRepository();
         embeddedFileRepository = new TestEmbeddedFileRepository();
 
-        noteService = new NoteService(noteRepo);
-        collectionService = new CollectionService(collectionRepo);
-        embeddedFileService = new EmbeddedFileService(embeddedFileRepository);
+        ChangeLog changeLog = mock(ChangeLog.class);
+        messagingTemplate = mock(SimpMessagingTemplate.class);
+        eventOutbox = mock(EventOutbox.class);
+        SearchIndex searchIndex = new SearchIndex();
+        noteService = new NoteService(noteRepo, searchIndex, changeLog, eventOutbox);
+        embeddedFileService = new EmbeddedFileService(embeddedFileRepository, new LocalBlobStore(blobDir), changeLog,
+                eventOutbox, mock(ImageRenditions.class), new SimpleMeterRegistry());
+        collectionService = new CollectionService(collectionRepo, noteRepo, embeddedFileService, searchIndex, changeLog,
+                eventOutbox);
 
-        noteController = new NoteController(noteService, collectionService, embeddedFileService, noteRepo);
-        collectionController = new CollectionController(noteService, collectionService);
+        collaborationService = new CollaborationService(noteService, messagingTemplate);
+        noteController = new NoteController(noteService, collectionService, embeddedFileService, noteRepo,
+                collaborationService);
+        collectionController = new CollectionController(noteService, collectionService, collaborationService);
 
 
         collection1 = new Collection("collection1", "http://localhost:8080/");
@@ -143,12 +183,178 @@ class NoteControllerTest {
         UUID id1 = noteController.createNote(note1).getBody().id;
 
         var response = noteController.updateNote(id1, note2);
-        assertEquals(ResponseEntity.ok(note2), response);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(note2, response.getBody());
 
         var actual = noteController.getNoteById(id1);
         assertEquals(ResponseEntity.ok(note2), actual);
     }
 
+    @Test
+    public void updateNoteWithMatchingVersionTest() {
+        collectionController.createCollection(collection1);
+        UUID id1 = noteController.createNote(note1).getBody().id;
+
+        var response = noteController.updateNote(id1, note2, "\"0\"");
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("\"1\"", response.getHeaders().getETag());
+        assertEquals(1, ((Note) response.getBody()).version);
+    }
+
+    @Test
+    public void updateNoteWithStaleVersionTest() {
+        collectionController.createCollection(collection1);
+        UUID id1 = noteController.createNote(note1).getBody().id;
+        noteController.updateNote(id1, new Note("first edit", "body", collection1), "\"0\"");
+
+        var response = noteController.updateNote(id1, note2, "\"0\"");
+
+        assertEquals(HttpStatus.CONFLICT, response.getStatusCode());
+        assertEquals("\"1\"", response.getHeaders().getETag());
+        Note current = (Note) response.getBody();
+        assertEquals("first edit", current.title);
+        assertEquals("first edit", noteController.getNoteById(id1).getBody().title);
+    }
+
+    @Test
+    public void patchBodyTest() {
+        collectionController.createCollection(collection1);
+        UUID id1 = noteController.createNote(note1).getBody().id;
+        NotePatch patch = new NotePatch(id1, null, 0, 0, List.of(new TextEdit(3, 3, "h")));
+
+        var response = noteController.patchBody(id1, patch);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        NotePatch applied = (NotePatch) response.getBody();
+        assertEquals(1, applied.version());
+        assertEquals("blah", noteController.getNoteById(id1).getBody().body);
+        verify(eventOutbox).notePatched(applied);
+    }
+
+    @Test
+    public void patchBodyStaleVersionTest() {
+        collectionController.createCollection(collection1);
+        UUID id1 = noteController.createNote(note1).getBody().id;
+        noteController.patchBody(id1, new NotePatch(id1, null, 0, 0, List.of(new TextEdit(0, 0, "a"))));
+
+        var response = noteController.patchBody(id1, new NotePatch(id1, null, 0, 0, List.of(new TextEdit(0, 0, "b"))));
+
+        assertEquals(HttpStatus.CONFLICT, response.getStatusCode());
+        assertEquals("abla", ((Note) response.getBody()).body);
+        assertEquals("abla", noteController.getNoteById(id1).getBody().body);
+    }
+
+    @Test
+    public void patchBodyOutOfRangeTest() {
+        collectionController.createCollection(collection1);
+        UUID id1 = noteController.createNote(note1).getBody().id;
+
+        var response = noteController.patchBody(id1, new NotePatch(id1, null, 0, 0, List.of(new TextEdit(5, 9, "x"))));
+
+        assertEquals(BAD_REQUEST, response.getStatusCode());
+        assertEquals("bla", noteController.getNoteById(id1).getBody().body);
+        verify(eventOutbox, never()).notePatched(any());
+    }
+
+    @Test
+    public void patchBodyNotFoundTest() {
+        UUID id = UUID.randomUUID();
+        var response = noteController.patchBody(id, new NotePatch(id, null, 0, 0, List.of()));
+        assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+    }
+
+    @Test
+    public void receiveOperationTest() {
+        collectionController.createCollection(collection1);
+        UUID id1 = noteController.createNote(note1).getBody().id;
+        UUID origin = UUID.randomUUID();
+
+        noteController.receiveOperation(id1, new OperationMessage(id1, origin, 0,
+                new TextOperation().retain(3).insert("h")));
+
+        OperationMessage applied = new OperationMessage(id1, origin, 1, new TextOperation().retain(3).insert("h"));
+        verify(messagingTemplate).convertAndSend("/topic/notes/" + id1 + "/ops", applied);
+        assertEquals("blah", noteController.getDocument(id1).getBody().text());
+        assertEquals(1, noteController.getDocument(id1).getBody().revision());
+        assertEquals("bla", noteController.getNoteById(id1).getBody().body);
+
+        collaborationService.flushAll();
+
+        assertEquals("blah", noteController.getNoteById(id1).getBody().body);
+        assertEquals(1, noteController.getNoteById(id1).getBody().version);
+    }
+
+    @Test
+    public void receiveConcurrentOperationTest() {
+        collectionController.createCollection(collection1);
+        UUID id1 = noteController.createNote(note1).getBody().id;
+        UUID origin = UUID.randomUUID();
+
+        noteController.receiveOperation(id1, new OperationMessage(id1, origin, 0,
+                new TextOperation().insert("a").retain(3)));
+        noteController.receiveOperation(id1, new OperationMessage(id1, origin, 0,
+                new TextOperation().retain(3).insert("h")));
+
+        OperationMessage transformed = new OperationMessage(id1, origin, 2, new TextOperation().retain(4).insert("h"));
+        verify(messagingTemplate).convertAndSend("/topic/notes/" + id1 + "/ops", transformed);
+        assertEquals("ablah", noteController.getDocument(id1).getBody().text());
+    }
+
+    @Test
+    public void receiveOperationWithUnknownRevisionTest() {
+        collectionController.createCollection(collection1);
+        UUID id1 = noteController.createNote(note1).getBody().id;
+
+        noteController.receiveOperation(id1, new OperationMessage(id1, null, 7, new TextOperation().retain(3)));
+
+        verify(messagingTemplate, never()).convertAndSend(eq("/topic/notes/" + id1 + "/ops"), any(Object.class));
+        verify(messagingTemplate).convertAndSend(eq("/topic/notes/" + id1 + "/body"), any(Object.class));
+    }
+
+    @Test
+    public void updateNoteStoresLiveDocumentFirstTest() {
+        collectionController.createCollection(collection1);
+        UUID id1 = noteController.createNote(note1).getBody().id;
+        noteController.receiveOperation(id1, new OperationMessage(id1, null, 0, new TextOperation().retain(3).insert("h")));
+
+        var stale = noteController.updateNote(id1, note2, "\"0\"");
+        assertEquals(HttpStatus.CONFLICT, stale.getStatusCode());
+        assertEquals("blah", ((Note) stale.getBody()).body);
+
+        var response = noteController.updateNote(id1, note2, "\"1\"");
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(note2.body, noteController.getDocument(id1).getBody().text());
+        assertEquals(2, noteController.getDocument(id1).getBody().revision());
+    }
+
+    @Test
+    public void getDocumentNotFoundTest() {
+        assertEquals(HttpStatus.NOT_FOUND, noteController.getDocument(UUID.randomUUID()).getStatusCode());
+    }
+
+    @Test
+    public void updateNoteWithoutIfMatchAfterLiveEditsTest() {
+        collectionController.createCollection(collection1);
+        UUID id1 = noteController.createNote(note1).getBody().id;
+        noteController.receiveOperation(id1, new OperationMessage(id1, null, 0, new TextOperation().retain(3).insert("h")));
+
+        var response = noteController.updateNote(id1, note2, null);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(note2.body, ((Note) response.getBody()).body);
+    }
+
+    @Test
+    public void updateNoteWithInvalidIfMatchTest() {
+        collectionController.createCollection(collection1);
+        UUID id1 = noteController.createNote(note1).getBody().id;
+
+        var response = noteController.updateNote(id1, note2, "\"abc\"");
+
+        assertEquals(BAD_REQUEST, response.getStatusCode());
+    }
+
     @Test
     public void updateNoteNotFoundTest() {
         collectionController.createCollection(collection1);
@@ -204,91 +410,103 @@ class NoteControllerTest {
     }
 
     @Test
-    public void addMessage() {
+    public void getNotesPageTest() {
         collectionController.createCollection(collection1);
+        collectionController.createCollection(collection2);
+        noteController.createNote(note1);
+        noteController.createNote(note2);
+        noteController.createNote(note3);
 
-        Note result = noteController.addMessage(note1);
+        var first = noteController.getNotesPage(null, 2, null).getBody();
+        assertNotNull(first);
+        assertEquals(2, first.items().size());
+        assertNotNull(first.nextCursor());
 
-        assertNotNull(result);
-        assertEquals(note1, result);
+        var second = noteController.getNotesPage(first.nextCursor(), 2, null).getBody();
+        assertNotNull(second);
+        assertEquals(1, second.items().size());
+        assertNull(second.nextCursor());
+
+        Set<Object> seen = new HashSet<>(first.items());
+        seen.addAll(second.items());
+        assertEquals(Set.of(note1, note2, note3), seen);
     }
 
     @Test
-    public void updateBody() {
+    public void getNotesPageSummaryTest() {
         collectionController.createCollection(collection1);
+        noteController.createNote(note1);
 
-        Note result = noteController.updateBody(note1);
+        var page = noteController.getNotesPage(null, 10, "id,title").getBody();
 
-        assertNotNull(result);
-        assertEquals(note1, result);
+        assertNotNull(page);
+        assertEquals(List.of(new NoteSummary(note1.id, "note1", collection1.id)), page.items());
     }
 
     @Test
-    public void updateTitle() {
+    public void getNotesPageSizeIsCappedTest() {
         collectionController.createCollection(collection1);
+        noteController.createNote(note1);
+        noteController.createNote(note2);
 
-        Note result = noteController.updateTitle(note1);
+        var page = noteController.getNotesPage(null, 0, null).getBody();
 
-        assertNotNull(result);
-        assertEquals(note1, result);
+        assertNotNull(page);
+        assertEquals(1, page.items().size());
     }
 
     @Test
-    public void deleteNoteHandler() {
+    public void addMessage() {
         collectionController.createCollection(collection1);
-        noteController.createNote(note1);
 
-        Note result = noteController.deleteNoteHandler(note1);
+        noteController.addMessage(note1);
 
-        assertNotNull(result);
-        assertEquals(note1, result);
+        verify(eventOutbox).noteCreated(note1);
     }
 
     @Test
-    public void sendEmbeddedFileUpdate() {
+    public void updateNoteAnnouncesChange() {
         collectionController.createCollection(collection1);
         UUID id1 = noteController.createNote(note1).getBody().id;
 
-        MultipartFile mockFile = new MockMultipartFile("file", "test.txt", "text/plain", "Hello World".getBytes());
-        EmbeddedFile file = (EmbeddedFile) noteController.uploadFile(id1, mockFile).getBody();
-        file.setId(UUID.randomUUID());
-
-        UUID result = noteController.sendEmbeddedFileUpdate(note1.id, file.getId());
+        Note edited = new Note(note1.title, "new body", collection1);
+        Note updated = (Note) noteController.updateNote(id1, edited).getBody();
 
-        assertEquals(file.getId(), result);
+        verify(eventOutbox).noteChanged(updated);
+        verify(eventOutbox, never()).noteRenamed(any());
     }
 
     @Test
-    public void sendMessageAfterDelete() {
+    public void updateNoteAnnouncesRename() {
         collectionController.createCollection(collection1);
         UUID id1 = noteController.createNote(note1).getBody().id;
 
-        MultipartFile mockFile = new MockMultipartFile("file", "test.txt", "text/plain", "Hello World".getBytes());
-        EmbeddedFile file = (EmbeddedFile) noteController.uploadFile(id1, mockFile).getBody();
-        file.setId(UUID.randomUUID());
+        Note renamed = new Note("renamed", note1.body, collection1);
+        Note updated = (Note) noteController.updateNote(id1, renamed).getBody();
 
-        UUID result = noteController.sendMessageAfterDelete(note1.id, file.getId());
+        verify(eventOutbox).noteChanged(updated);
+        verify(eventOutbox).noteRenamed(updated);
+    }
 
-        assertEquals(file.getId(), result);
+    @Test
+    public void deleteNoteHandler() {
+        collectionController.createCollection(collection1);
+        noteController.createNote(note1);
+
+        noteController.deleteNoteHandler(note1);
+
+        verify(eventOutbox).noteDeleted(note1);
     }
 
     @Test
-    public void sendMessageAfterRename() {
+    public void uploadFileAnnouncesFile() {
         collectionController.createCollection(collection1);
         UUID id1 = noteController.createNote(note1).getBody().id;
 
         MultipartFile mockFile = new MockMultipartFile("file", "test.txt", "text/plain", "Hello World".getBytes());
         EmbeddedFile file = (EmbeddedFile) noteController.uploadFile(id1, mockFile).getBody();
-        file.setId(UUID.randomUUID());
 
-        String newFileName = "newName.txt";
-
-        Object[] result = noteController.sendMessageAfterRename(note1.id, new Object[]{file.getId(), newFileName});
-        UUID returnedId = (UUID) result[0];
-        String returnedFileName = (String) result[1];
-
-        assertEquals(file.getId(), returnedId);
-        assertEquals(newFileName, returnedFileName);
+        verify(eventOutbox).fileAdded(file);
     }
 
     @Test
@@ -305,9 +523,10 @@ class NoteControllerTest {
         assertNotNull(response.getBody());
         assertEquals(1, response.getBody().size());
 
-        EmbeddedFile retrievedFile = response.getBody().get(0);
-        assertEquals("test.txt", retrievedFile.getFileName());
-        assertEquals("text/plain", retrievedFile.getFileType());
+        EmbeddedFileSummary retrievedFile = response.getBody().get(0);
+        assertEquals("test.txt", retrievedFile.fileName());
+        assertEquals("text/plain", retrievedFile.fileType());
+        assertEquals(11, retrievedFile.fileSize());
     }
 
     @Test
@@ -338,6 +557,37 @@ class NoteControllerTest {
         assertEquals(expected.getFileContent(), actual.getFileContent());
     }
 
+    @Test
+    public void getFileContentTest() throws IOException {
+        collectionController.createCollection(collection1);
+        UUID id1 = noteController.createNote(note1).getBody().id;
+
+        MultipartFile mockFile = new MockMultipartFile("file", "test.txt", "text/plain", "Hello World".getBytes());
+        EmbeddedFile uploaded = (EmbeddedFile) noteController.uploadFile(id1, mockFile).getBody();
+
+        var response = noteController.getFileContent(id1, uploaded.getId(), null);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertArrayEquals("Hello World".getBytes(), response.getBody().getContentAsByteArray());
+    }
+
+    @Test
+    public void fileOfAnotherNoteTest() {
+        collectionController.createCollection(collection1);
+        UUID id1 = noteController.createNote(note1).getBody().id;
+        UUID id2 = noteController.createNote(note2).getBody().id;
+
+        MultipartFile mockFile = new MockMultipartFile("file", "test.txt", "text/plain", "Hello World".getBytes());
+        EmbeddedFile uploaded = (EmbeddedFile) noteController.uploadFile(id1, mockFile).getBody();
+
+        assertEquals(HttpStatus.NOT_FOUND, noteController.getFileById(id2, uploaded.getId()).getStatusCode());
+        assertEquals(HttpStatus.NOT_FOUND, noteController.getFileContent(id2, uploaded.getId(), null).getStatusCode());
+        assertEquals(HttpStatus.NOT_FOUND, noteController.renameFile(id2, uploaded.getId(), "other.txt").getStatusCode());
+        assertEquals(HttpStatus.NOT_FOUND, noteController.deleteFile(id2, uploaded.getId()).getStatusCode());
+        assertTrue(embeddedFileRepository.findById(uploaded.getId()).isPresent());
+        assertEquals("test.txt", embeddedFileRepository.findById(uploaded.getId()).get().getFileName());
+    }
+
     @Test
     public void uploadFileTest() {
         collectionController.createCollection(collection1);
@@ -353,6 +603,109 @@ class NoteControllerTest {
         assertEquals("text/plain", uploadedFile.getFileType());
     }
 
+    @Test
+    public void getFileByNameTest() throws IOException {
+        collectionController.createCollection(collection1);
+        UUID id1 = noteController.createNote(note1).getBody().id;
+
+        MultipartFile mockFile = new MockMultipartFile("file", "test.txt", "text/plain", "Hello World".getBytes());
+        EmbeddedFile uploaded = (EmbeddedFile) noteController.uploadFile(id1, mockFile).getBody();
+
+        var response = noteController.getFileByName(id1, "test.txt", null, null);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("\"" + uploaded.getContentHash() + "\"", response.getHeaders().getETag());
+        assertEquals(MediaType.TEXT_PLAIN, response.getHeaders().getContentType());
+        assertArrayEquals("Hello World".getBytes(), response.getBody().getContentAsByteArray());
+    }
+
+    @Test
+    public void getFileByNameNotModifiedTest() {
+        collectionController.createCollection(collection1);
+        UUID id1 = noteController.createNote(note1).getBody().id;
+
+        MultipartFile mockFile = new MockMultipartFile("file", "test.txt", "text/plain", "Hello World".getBytes());
+        EmbeddedFile uploaded = (EmbeddedFile) noteController.uploadFile(id1, mockFile).getBody();
+
+        var response = noteController.getFileByName(id1, "test.txt", null, "\"" + uploaded.getContentHash() + "\"");
+
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        assertNull(response.getBody());
+    }
+
+    @Test
+    public void getFileByNameMatchingETagListTest() {
+        collectionController.createCollection(collection1);
+        UUID id1 = noteController.createNote(note1).getBody().id;
+
+        MultipartFile mockFile = new MockMultipartFile("file", "test.txt", "text/plain", "Hello World".getBytes());
+        EmbeddedFile uploaded = (EmbeddedFile) noteController.uploadFile(id1, mockFile).getBody();
+        String eTag = "\"" + uploaded.getContentHash() + "\"";
+
+        assertEquals(HttpStatus.NOT_MODIFIED,
+                noteController.getFileByName(id1, "test.txt", null, "\"other\", " + eTag).getStatusCode());
+        assertEquals(HttpStatus.NOT_MODIFIED,
+                noteController.getFileByName(id1, "test.txt", null, "W/" + eTag).getStatusCode());
+        assertEquals(HttpStatus.NOT_MODIFIED,
+                noteController.getFileByName(id1, "test.txt", null, "*").getStatusCode());
+        assertEquals(HttpStatus.OK,
+                noteController.getFileByName(id1, "test.txt", null, "\"other\", W/\"another\"").getStatusCode());
+    }
+
+    @Test
+    public void getFileWithoutHashTest() {
+        collectionController.createCollection(collection1);
+        UUID id1 = noteController.createNote(note1).getBody().id;
+        EmbeddedFile old = embeddedFileRepository.save(
+                new EmbeddedFile(note1, "old.txt", "text/plain", "Hello World".getBytes()));
+
+        var byName = noteController.getFileByName(id1, "old.txt", null, "\"null\"");
+        var byId = noteController.getFileContent(id1, old.getId(), null);
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, byName.getStatusCode());
+        assertNull(byName.getHeaders().getETag());
+        assertNull(byName.getBody());
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, byId.getStatusCode());
+    }
+
+    @Test
+    public void getFileWithUnknownSizeTest() {
+        collectionController.createCollection(collection1);
+        UUID id1 = noteController.createNote(note1).getBody().id;
+
+        MultipartFile mockFile = new MockMultipartFile("file", "test.txt", "text/plain", "Hello World".getBytes());
+        EmbeddedFile uploaded = (EmbeddedFile) noteController.uploadFile(id1, mockFile).getBody();
+
+        assertEquals(HttpStatus.BAD_REQUEST, noteController.getFileByName(id1, "test.txt", "huge", null).getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, noteController.getFileContent(id1, uploaded.getId(), "huge").getStatusCode());
+    }
+
+    @Test
+    public void getFileWithoutRenditionSendsOriginalTest() throws IOException {
+        collectionController.createCollection(collection1);
+        UUID id1 = noteController.createNote(note1).getBody().id;
+
+        MultipartFile mockFile = new MockMultipartFile("file", "test.txt", "text/plain", "Hello World".getBytes());
+        EmbeddedFile uploaded = (EmbeddedFile) noteController.uploadFile(id1, mockFile).getBody();
+
+        var response = noteController.getFileContent(id1, uploaded.getId(), "thumb");
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertArrayEquals("Hello World".getBytes(), response.getBody().getContentAsByteArray());
+        assertFalse(response.getHeaders().getCacheControl() != null
+                && response.getHeaders().getCacheControl().contains("immutable"));
+    }
+
+    @Test
+    public void getFileByNameNotFoundTest() {
+        collectionController.createCollection(collection1);
+        UUID id1 = noteController.createNote(note1).getBody().id;
+
+        var response = noteController.getFileByName(id1, "missing.txt", null, null);
+
+        assertEquals(HttpStatus.NO_CONTENT, response.getStatusCode());
+    }
+
     @Test
     public void uploadFileNoteNotFoundTest() {
         MultipartFile mockFile = new MockMultipartFile("file", "test.txt", "text/plain", "Hello World".getBytes());
@@ -371,6 +724,7 @@ class NoteControllerTest {
 
         assertEquals(HttpStatus.NO_CONTENT, response.getStatusCode());
         assertTrue(embeddedFileRepository.findById(fileId).isEmpty());
+        verify(eventOutbox).fileDeleted(id1, fileId);
     }
 
     @Test
@@ -385,6 +739,7 @@ class NoteControllerTest {
         EmbeddedFile renamedFile = response.getBody();
         assertNotNull(renamedFile);
         assertEquals("new_name.txt", renamedFile.getFileName());
+        verify(eventOutbox).fileRenamed(renamedFile);
     }
 
     @Test
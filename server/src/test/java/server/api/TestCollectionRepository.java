@@ -130,7 +130,7 @@ public class TestCollectionRepository implements CollectionRepository {
 
     @Override
     public boolean existsById(UUID  aUUID ) {
-        return false;
+        return collections.stream().anyMatch(e -> e.id.equals(aUUID));
     }
 
     @Override
@@ -7,6 +7,7 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.repository.query.FluentQuery;
 import server.database.EmbeddedFileRepository;
+import server.dto.EmbeddedFileSummary;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -25,11 +26,60 @@ public class TestEmbeddedFileRepository implements EmbeddedFileRepository {
                 .toList();
     }
 
+    @Override
+    public List<EmbeddedFileSummary> findSummariesByNoteId(UUID noteId) {
+        return findByNoteId(noteId).stream()
+                .map(file -> new EmbeddedFileSummary(file.getId(), file.getFileName(), file.getFileType(),
+                        file.getFileSize(), file.getContentHash(), file.getUploadedAt()))
+                .toList();
+    }
+
+    @Override
+    public Optional<EmbeddedFile> findFirstByNoteIdAndFileName(UUID noteId, String fileName) {
+        return findByNoteId(noteId).stream()
+                .filter(file -> file.getFileName().equals(fileName))
+                .findFirst();
+    }
+
     @Override
     public void deleteByNoteId(UUID noteId) {
 
     }
 
+    @Override
+    public List<EmbeddedFile> findByNoteIdIn(List<UUID> noteIds) {
+        return embeddedFiles.stream()
+                .filter(file -> noteIds.contains(file.getNote().getId()))
+                .toList();
+    }
+
+    @Override
+    public int deleteByNoteIdIn(List<UUID> noteIds) {
+        int before = embeddedFiles.size();
+        embeddedFiles.removeIf(file -> noteIds.contains(file.getNote().getId()));
+        return before - embeddedFiles.size();
+    }
+
+    @Override
+    public List<EmbeddedFile> findByCollectionId(UUID collectionId) {
+        return embeddedFiles.stream()
+                .filter(file -> file.getNote().collection.id.equals(collectionId))
+                .toList();
+    }
+
+    @Override
+    public int deleteByCollectionId(UUID collectionId) {
+        int before = embeddedFiles.size();
+        embeddedFiles.removeIf(file -> file.getNote().collection.id.equals(collectionId));
+        return before - embeddedFiles.size();
+    }
+
+    @Override
+    public boolean existsByContentHash(String contentHash) {
+        return embeddedFiles.stream()
+                .anyMatch(file -> contentHash.equals(file.getContentHash()));
+    }
+
     @Override
     public void flush() {
 
@@ -112,6 +162,11 @@ public class TestEmbeddedFileRepository implements EmbeddedFileRepository {
 
     @Override
     public EmbeddedFile save(EmbeddedFile embeddedFile) {
+        if (embeddedFile.getId() == null) {
+            embeddedFile.setId(UUID.randomUUID());
+        } else {
+            embeddedFiles.removeIf(file -> file.getId().equals(embeddedFile.getId()));
+        }
         embeddedFiles.add(embeddedFile);
         return embeddedFile;
     }
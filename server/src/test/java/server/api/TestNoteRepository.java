@@ -1,5 +1,6 @@
 package server.api;
 
+import commons.Collection;
 import commons.Note;
 import org.springframework.data.domain.Example;
 import org.springframework.data.domain.Page;
@@ -7,13 +8,16 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.repository.query.FluentQuery;
 import server.database.NoteRepository;
+import server.dto.NoteSummary;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class TestNoteRepository implements NoteRepository {
 
@@ -26,6 +30,116 @@ public class TestNoteRepository implements NoteRepository {
                 .collect(Collectors.toList());
     }
 
+    @Override
+    public boolean existsByCollectionIdAndTitle(UUID collectionId, String title) {
+        return notes.stream()
+                .anyMatch(note -> note.collection.id.equals(collectionId) && note.title.equals(title));
+    }
+
+    @Override
+    public List<Note> findByCollectionIdAndTitleIn(UUID collectionId, List<String> titles) {
+        return notes.stream()
+                .filter(note -> note.collection.id.equals(collectionId) && titles.contains(note.title))
+                .toList();
+    }
+
+    @Override
+    public List<Note> findByIdGreaterThanOrderByIdAsc(UUID after, Pageable pageable) {
+        return page(notes.stream(), after, pageable);
+    }
+
+    @Override
+    public List<Note> findByCollectionTitleAndIdGreaterThanOrderByIdAsc(String collectionTitle, UUID after, Pageable pageable) {
+        return page(notes.stream().filter(note -> note.collection.title.equals(collectionTitle)), after, pageable);
+    }
+
+    @Override
+    public List<NoteSummary> findSummariesAfter(UUID after, Pageable pageable) {
+        return findByIdGreaterThanOrderByIdAsc(after, pageable).stream()
+                .map(note -> new NoteSummary(note.id, note.title, note.collection.id))
+                .toList();
+    }
+
+    @Override
+    public List<NoteSummary> findSummariesByCollectionTitleAfter(String collectionTitle, UUID after, Pageable pageable) {
+        return findByCollectionTitleAndIdGreaterThanOrderByIdAsc(collectionTitle, after, pageable).stream()
+                .map(note -> new NoteSummary(note.id, note.title, note.collection.id))
+                .toList();
+    }
+
+    @Override
+    public int updateIfVersion(UUID id, long version, String title, String body, Collection collection) {
+        for (Note note : notes) {
+            if (note.id.equals(id) && note.version == version) {
+                note.title = title;
+                note.body = body;
+                note.collection = collection;
+                note.version++;
+                return 1;
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public int moveToCollection(List<UUID> ids, Collection collection) {
+        List<Note> moved = findAllById(ids);
+        for (Note note : moved) {
+            note.collection = collection;
+            note.version++;
+        }
+        return moved.size();
+    }
+
+    @Override
+    public int deleteAllByIdIn(List<UUID> ids) {
+        int before = notes.size();
+        notes.removeIf(note -> ids.contains(note.id));
+        return before - notes.size();
+    }
+
+    @Override
+    public List<UUID> findIdsByCollectionId(UUID collectionId) {
+        return notes.stream()
+                .filter(note -> note.collection.id.equals(collectionId))
+                .map(note -> note.id)
+                .toList();
+    }
+
+    @Override
+    public int deleteByCollectionId(UUID collectionId) {
+        int before = notes.size();
+        notes.removeIf(note -> note.collection.id.equals(collectionId));
+        return before - notes.size();
+    }
+
+    @Override
+    public int updateBody(UUID id, long version, String body, long newVersion) {
+        for (Note note : notes) {
+            if (note.id.equals(id) && note.version == version) {
+                note.body = body;
+                note.version = newVersion;
+                return 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Orders ids the way H2 does, as unsigned numbers
+     */
+    private static final Comparator<UUID> UNSIGNED = Comparator
+            .comparing(UUID::getMostSignificantBits, Long::compareUnsigned)
+            .thenComparing(UUID::getLeastSignificantBits, Long::compareUnsigned);
+
+    private List<Note> page(Stream<Note> notes, UUID after, Pageable pageable) {
+        return notes
+                .filter(note -> UNSIGNED.compare(note.id, after) > 0)
+                .sorted(Comparator.comparing(note -> note.id, UNSIGNED))
+                .limit(pageable.getPageSize())
+                .toList();
+    }
+
     @Override
     public void flush() {
 
@@ -33,7 +147,7 @@ public class TestNoteRepository implements NoteRepository {
 
     @Override
     public <S extends Note> S saveAndFlush(S entity) {
-        return null;
+        return save(entity);
     }
 
     @Override
@@ -143,7 +257,9 @@ public class TestNoteRepository implements NoteRepository {
 
     @Override
     public List<Note> findAllById(Iterable<UUID> longs) {
-        return List.of();
+        List<UUID> ids = new ArrayList<>();
+        longs.forEach(ids::add);
+        return notes.stream().filter(note -> ids.contains(note.id)).toList();
     }
 
     @Override
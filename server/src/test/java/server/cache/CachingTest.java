@@ -0,0 +1,97 @@
+package server.cache;
+
+import commons.Collection;
+import commons.EmbeddedFile;
+import commons.Note;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.cache.transaction.TransactionAwareCacheDecorator;
+import server.service.CollectionService;
+import server.service.EmbeddedFileService;
+import server.service.NoteService;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that repeated lookups are served from the caches and that the save and delete paths evict them,
+ * through the Spring proxies and with real transactions.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:caching;DB_CLOSE_DELAY=-1",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "netnote.storage.path=target/caching-test-attachments"
+})
+class CachingTest {
+
+    @Autowired
+    private NoteService noteService;
+    @Autowired
+    private CollectionService collectionService;
+    @Autowired
+    private EmbeddedFileService embeddedFileService;
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Test
+    void notesOfACollectionAreCachedUntilANoteChanges() {
+        Collection collection = collectionService.save(new Collection("cached notes", "http://localhost:8080/"));
+        Note note = noteService.save(new Note("title", "first", collection));
+
+        List<Note> first = noteService.getNotesByCollection("cached notes");
+        List<Note> second = noteService.getNotesByCollection("cached notes");
+
+        assertNotSame(first, second, "every caller gets a copy");
+        assertEquals(first, second);
+        assertEquals(1, hitsOf(Caches.NOTES_BY_COLLECTION), "hits");
+
+        noteService.update(note.id, new Note("title", "second", collection), note.version);
+
+        List<Note> third = noteService.getNotesByCollection("cached notes");
+        assertNotSame(first, third);
+        assertEquals("second", third.getFirst().body);
+    }
+
+    @Test
+    void renamedCollectionsAreNotFoundUnderTheirOldTitle() {
+        Collection collection = collectionService.save(new Collection("old title", "http://localhost:8080/"));
+        assertNotNull(collectionService.getCollectionByTitle("old title"));
+        assertNull(collectionService.getCollectionByTitle("new title"));
+
+        collection.title = "new title";
+        collectionService.save(collection);
+
+        assertNull(collectionService.getCollectionByTitle("old title"));
+        assertEquals(collection.id, collectionService.getCollectionByTitle("new title").id);
+        assertEquals("new title", collectionService.findById(collection.id).orElseThrow().title);
+    }
+
+    @Test
+    void renamingAFileEvictsItsCachedCopy() {
+        Collection collection = collectionService.save(new Collection("files", "http://localhost:8080/"));
+        Note note = noteService.save(new Note("with file", "body", collection));
+        EmbeddedFile file = embeddedFileService.save(new EmbeddedFile(note, "a.txt", "text/plain", 1, "hash"));
+
+        EmbeddedFile cached = embeddedFileService.findById(file.getId()).orElseThrow();
+        assertEquals(cached.getFileName(), embeddedFileService.findById(file.getId()).orElseThrow().getFileName());
+        assertEquals(1, hitsOf(Caches.FILES), "hits");
+
+        embeddedFileService.rename(cached, "b.txt");
+
+        assertEquals("a.txt", cached.getFileName(), "the cached copy is not changed in place");
+        assertEquals("b.txt", embeddedFileService.findById(file.getId()).orElseThrow().getFileName());
+    }
+
+    private long hitsOf(String name) {
+        Cache cache = cacheManager.getCache(name);
+        if (cache instanceof TransactionAwareCacheDecorator decorator) {
+            cache = decorator.getTargetCache();
+        }
+        return ((CaffeineCache) cache).getNativeCache().stats().hitCount();
+    }
+}
@@ -0,0 +1,47 @@
+package server.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import commons.Collection;
+import commons.Note;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GuardedCaffeineCacheTest {
+
+    private final GuardedCaffeineCache cache = new GuardedCaffeineCache("test", Caffeine.newBuilder().build(), true);
+
+    @Test
+    void valueLoadedAcrossAnEvictionIsNotKept() {
+        // a collection is renamed: its old title is evicted while its new title is looked up and not found yet
+        String loaded = cache.get("new title", () -> {
+            Thread commit = Thread.ofVirtual().start(() -> cache.evict("old title"));
+            commit.join(Duration.ofSeconds(10));
+            assertFalse(commit.isAlive());
+            return "not found";
+        });
+
+        assertEquals("not found", loaded);
+        assertNull(cache.get("new title"));
+        assertEquals("found", cache.get("new title", () -> "found"));
+        assertEquals("found", cache.get("new title", () -> "loaded again"));
+    }
+
+    @Test
+    void callersGetCopiesOfCachedNotes() {
+        Note note = new Note("title", "body", new Collection("collection", "http://localhost:8080/"));
+        List<Note> loaded = cache.get("notes", () -> List.of(note));
+        loaded.getFirst().body = "changed";
+        note.title = "changed";
+
+        @SuppressWarnings("unchecked")
+        List<Note> cached = cache.get("notes", List.class);
+        assertNotSame(loaded.getFirst(), cached.getFirst());
+        assertEquals("title", cached.getFirst().title);
+        assertEquals("body", cached.getFirst().body);
+        assertEquals("collection", cached.getFirst().collection.title);
+    }
+}
@@ -0,0 +1,169 @@
+package server.changes;
+
+import commons.Change;
+import commons.ChangeFeed;
+import commons.Collection;
+import commons.Note;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import server.database.ChangeEntryRepository;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@Import(ChangeLog.class)
+class ChangeLogTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+    @Autowired
+    private ChangeLog changeLog;
+    @Autowired
+    private ChangeEntryRepository changeEntryRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private Collection collection;
+
+    @BeforeEach
+    void setUp() {
+        collection = entityManager.persist(new Collection("collection", "http://localhost:8080/"));
+        changeLog.collectionSaved(collection);
+    }
+
+    @Test
+    void changesSinceReturnsOnlyNewerChanges() {
+        long start = changeLog.latestSeq();
+        Note note = entityManager.persist(new Note("title", "body", collection));
+        changeLog.noteSaved(note);
+
+        ChangeFeed feed = changeLog.changesSince(start, 100);
+
+        assertEquals(1, feed.changes().size());
+        Change change = feed.changes().getFirst();
+        assertEquals(Change.Kind.NOTE, change.kind());
+        assertEquals(note.id, change.id());
+        assertEquals(collection.id, change.parentId());
+        assertFalse(change.deleted());
+        assertEquals("title", change.note().title);
+        assertEquals(change.seq(), feed.latestSeq());
+        assertFalse(feed.hasMore());
+    }
+
+    @Test
+    void repeatedChangesAreListedOnceAtTheLatest() {
+        long start = changeLog.latestSeq();
+        Note note = entityManager.persist(new Note("title", "body", collection));
+        changeLog.noteSaved(note);
+        note.body = "new body";
+        changeLog.noteSaved(note);
+
+        List<Change> changes = changeLog.changesSince(start, 100).changes();
+
+        assertEquals(1, changes.size());
+        assertEquals(changeLog.latestSeq(), changes.getFirst().seq());
+    }
+
+    @Test
+    void deletionLeavesTombstone() {
+        Note note = entityManager.persist(new Note("title", "body", collection));
+        changeLog.noteSaved(note);
+        long afterCreate = changeLog.latestSeq();
+        UUID id = note.id;
+        entityManager.remove(note);
+        changeLog.noteDeleted(id);
+
+        List<Change> changes = changeLog.changesSince(afterCreate, 100).changes();
+
+        assertEquals(1, changes.size());
+        assertTrue(changes.getFirst().deleted());
+        assertEquals(id, changes.getFirst().id());
+        assertNull(changes.getFirst().note());
+    }
+
+    @Test
+    void pagesThroughTheFeed() {
+        for (int i = 0; i < 5; i++) {
+            changeLog.noteSaved(entityManager.persist(new Note("note" + i, "body", collection)));
+        }
+
+        ChangeFeed first = changeLog.changesSince(0, 4);
+        ChangeFeed second = changeLog.changesSince(first.latestSeq(), 4);
+
+        assertTrue(first.hasMore());
+        assertEquals(4, first.changes().size());
+        assertFalse(second.hasMore());
+        assertEquals(2, second.changes().size());
+        assertEquals(changeLog.latestSeq(), second.latestSeq());
+    }
+
+    @Test
+    void emptyFeedKeepsCursor() {
+        long latest = changeLog.latestSeq();
+
+        ChangeFeed feed = changeLog.changesSince(latest, 100);
+
+        assertTrue(feed.changes().isEmpty());
+        assertEquals(latest, feed.latestSeq());
+    }
+
+    @Test
+    void changesAfterAnOpenTransactionWaitForIt() throws Exception {
+        long start = changeLog.latestSeq();
+        Note late = note("committed late");
+        Note early = note("recorded early");
+        TransactionTemplate other = new TransactionTemplate(transactionManager);
+        other.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        CountDownLatch recorded = new CountDownLatch(1);
+        CountDownLatch commit = new CountDownLatch(1);
+        CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> other.executeWithoutResult(status -> {
+            changeLog.noteSaved(late);
+            recorded.countDown();
+            await(commit);
+        }));
+        try {
+            assertTrue(recorded.await(10, TimeUnit.SECONDS));
+            changeLog.noteSaved(early);
+
+            assertTrue(changeLog.changesSince(start, 100).changes().isEmpty());
+            assertEquals(start, changeLog.latestSeq());
+
+            commit.countDown();
+            writer.get(10, TimeUnit.SECONDS);
+
+            List<UUID> ids = changeLog.changesSince(start, 100).changes().stream().map(Change::id).toList();
+            assertEquals(List.of(late.id, early.id), ids);
+        } finally {
+            commit.countDown();
+            writer.get(10, TimeUnit.SECONDS);
+            other.executeWithoutResult(status -> changeEntryRepository.deleteByKindAndEntityId(Change.Kind.NOTE, late.id));
+        }
+    }
+
+    private Note note(String title) {
+        Note note = new Note(title, "body", collection);
+        note.id = UUID.randomUUID();
+        return note;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
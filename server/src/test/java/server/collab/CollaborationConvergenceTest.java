@@ -0,0 +1,199 @@
+package server.collab;
+
+import commons.Collection;
+import commons.Note;
+import commons.ot.DocumentSnapshot;
+import commons.ot.OperationMessage;
+import commons.ot.OtClient;
+import commons.ot.TextOperation;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import server.database.CollectionRepository;
+import server.database.NoteRepository;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Lets several clients type into the same note at once over real websocket connections
+ * and checks that all of them, the server and the database end up with the same text.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=jdbc:h2:mem:collab;DB_CLOSE_DELAY=-1",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "netnote.storage.path=target/collab-test-attachments",
+        "netnote.collab.flush-interval-ms=100"
+})
+class CollaborationConvergenceTest {
+
+    private static final int CLIENTS = 4;
+    private static final int EDITS_PER_CLIENT = 200;
+    private static final long TIMEOUT_MILLIS = 30_000;
+
+    @LocalServerPort
+    private int port;
+    @Autowired
+    private CollectionRepository collectionRepository;
+    @Autowired
+    private NoteRepository noteRepository;
+    @Autowired
+    private CollaborationService collaborationService;
+
+    private final List<TestClient> clients = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        clients.forEach(client -> client.session.disconnect());
+    }
+
+    @Test
+    void clientsConvergeOnLocalServer() throws Exception {
+        Collection collection = collectionRepository.save(new Collection("collab", "http://localhost:" + port + "/"));
+        Note note = noteRepository.save(new Note("shared", "hello world", collection));
+        DocumentSnapshot start = collaborationService.snapshot(note.id).orElseThrow();
+
+        for (int i = 0; i < CLIENTS; i++) {
+            clients.add(connect(note.id, start));
+        }
+        // one edit that everybody has to see proves that all subscriptions are active
+        TestClient first = clients.getFirst();
+        first.edit(new TextOperation().insert("> ").retain(start.text().length()));
+        awaitUntil(() -> clients.stream().allMatch(c -> c.getRevision() == start.revision() + 1));
+
+        ExecutorService typists = Executors.newFixedThreadPool(CLIENTS);
+        List<Future<?>> typing = new ArrayList<>();
+        for (int i = 0; i < CLIENTS; i++) {
+            TestClient client = clients.get(i);
+            Random random = new Random(i);
+            typing.add(typists.submit(() -> {
+                for (int edit = 0; edit < EDITS_PER_CLIENT; edit++) {
+                    client.editRandomly(random);
+                }
+            }));
+        }
+        for (Future<?> future : typing) {
+            future.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        typists.shutdown();
+        awaitUntil(() -> {
+            long revision = collaborationService.snapshot(note.id).orElseThrow().revision();
+            return clients.stream().allMatch(c -> c.isSynchronized() && c.getRevision() == revision);
+        });
+
+        DocumentSnapshot end = collaborationService.snapshot(note.id).orElseThrow();
+        for (TestClient client : clients) {
+            assertEquals(end.text(), client.getText());
+        }
+        collaborationService.flushAll();
+        Note stored = noteRepository.findById(note.id).orElseThrow();
+        assertEquals(end.text(), stored.body);
+        assertEquals(end.revision(), stored.version);
+    }
+
+    private TestClient connect(UUID noteId, DocumentSnapshot snapshot) throws Exception {
+        WebSocketStompClient stompClient = new WebSocketStompClient(new StandardWebSocketClient());
+        stompClient.setMessageConverter(new MappingJackson2MessageConverter());
+        StompSession session = stompClient.connectAsync("ws://localhost:" + port + "/websocket",
+                new StompSessionHandlerAdapter() {}).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        TestClient client = new TestClient(noteId, snapshot, session);
+        session.subscribe("/topic/notes/" + noteId + "/ops", new StompFrameHandler() {
+            @Override
+            public Type getPayloadType(StompHeaders headers) {
+                return OperationMessage.class;
+            }
+
+            @Override
+            public void handleFrame(StompHeaders headers, Object payload) {
+                client.received((OperationMessage) payload);
+            }
+        });
+        return client;
+    }
+
+    private static void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Clients did not converge in time");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private static class TestClient extends OtClient {
+        private final UUID origin = UUID.randomUUID();
+        private final UUID noteId;
+        private final StompSession session;
+        private String text;
+
+        TestClient(UUID noteId, DocumentSnapshot snapshot, StompSession session) {
+            super(snapshot.revision());
+            this.noteId = noteId;
+            this.session = session;
+            this.text = snapshot.text();
+        }
+
+        @Override
+        protected void sendOperation(long revision, TextOperation operation) {
+            session.send("/app/notes/" + noteId + "/ops", new OperationMessage(noteId, origin, revision, operation));
+        }
+
+        @Override
+        protected void applyOperation(TextOperation operation) {
+            text = operation.apply(text);
+        }
+
+        synchronized void received(OperationMessage message) {
+            if (message.revision() <= getRevision()) {
+                return;
+            }
+            if (origin.equals(message.origin())) {
+                serverAck();
+            } else {
+                applyServer(message.operation());
+            }
+        }
+
+        synchronized void edit(TextOperation operation) {
+            text = operation.apply(text);
+            applyClient(operation);
+        }
+
+        synchronized void editRandomly(Random random) {
+            int position = random.nextInt(text.length() + 1);
+            TextOperation operation = new TextOperation().retain(position);
+            if (position < text.length() && random.nextInt(3) == 0) {
+                int length = 1 + random.nextInt(Math.min(3, text.length() - position));
+                operation.delete(length).retain(text.length() - position - length);
+            } else {
+                operation.insert(String.valueOf((char) ('a' + random.nextInt(26))))
+                        .retain(text.length() - position);
+            }
+            edit(operation);
+        }
+
+        synchronized String getText() {
+            return text;
+        }
+    }
+}
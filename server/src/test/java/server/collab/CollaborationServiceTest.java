@@ -0,0 +1,92 @@
+package server.collab;
+
+import commons.Collection;
+import commons.Note;
+import commons.ot.OperationMessage;
+import commons.ot.TextOperation;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import server.service.NoteService;
+
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class CollaborationServiceTest {
+
+    private NoteService noteService;
+    private SimpMessagingTemplate messagingTemplate;
+    private CollaborationService collaborationService;
+    private Note note;
+
+    @BeforeEach
+    void setUp() {
+        noteService = mock(NoteService.class);
+        messagingTemplate = mock(SimpMessagingTemplate.class);
+        collaborationService = new CollaborationService(noteService, messagingTemplate);
+
+        note = new Note("title", "abc", new Collection("collection", "http://localhost:8080/"));
+        note.id = UUID.randomUUID();
+        when(noteService.findById(note.id)).thenReturn(Optional.of(note));
+    }
+
+    @Test
+    public void storedEditsAreNotResetTest() {
+        when(noteService.saveBody(note.id, "abcd", 0, 1)).thenReturn(true);
+        edit();
+
+        collaborationService.flushAll();
+
+        verify(messagingTemplate, never()).convertAndSend(eq("/topic/notes/" + note.id + "/body"), any(Object.class));
+    }
+
+    @Test
+    public void failedFlushBroadcastsStoredNoteTest() {
+        when(noteService.saveBody(any(), anyString(), anyLong(), anyLong())).thenReturn(false);
+        edit();
+        Note changed = changedInDatabase();
+
+        collaborationService.flushAll();
+
+        assertReset(changed);
+        assertEquals("changed elsewhere", collaborationService.snapshot(note.id).orElseThrow().text());
+    }
+
+    @Test
+    public void failedCloseBroadcastsStoredNoteTest() {
+        when(noteService.saveBody(any(), anyString(), anyLong(), anyLong())).thenReturn(false);
+        edit();
+        Note changed = changedInDatabase();
+
+        collaborationService.close(note.id);
+
+        assertReset(changed);
+    }
+
+    private void edit() {
+        TextOperation insert = new TextOperation().retain(3).insert("d");
+        assertTrue(collaborationService.receive(note.id, new OperationMessage(note.id, UUID.randomUUID(), 0, insert))
+                .isPresent());
+    }
+
+    private Note changedInDatabase() {
+        Note changed = new Note(note.title, "changed elsewhere", note.collection);
+        changed.id = note.id;
+        changed.version = 1;
+        when(noteService.findById(note.id)).thenReturn(Optional.of(changed));
+        return changed;
+    }
+
+    private void assertReset(Note expected) {
+        ArgumentCaptor<Object> reset = ArgumentCaptor.forClass(Object.class);
+        verify(messagingTemplate).convertAndSend(eq("/topic/notes/" + note.id + "/body"), reset.capture());
+        Note sent = (Note) reset.getValue();
+        assertEquals(expected.body, sent.body);
+        assertEquals(expected.version, sent.version);
+    }
+}
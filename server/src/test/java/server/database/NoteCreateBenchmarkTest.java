@@ -0,0 +1,94 @@
+package server.database;
+
+import commons.Collection;
+import commons.Note;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Measures the database work of creating a note (duplicate title check + insert)
+ * while the number of stored notes grows. Run with
+ * {@code mvn test -Dbenchmark=true -Dtest=NoteCreateBenchmarkTest},
+ * optionally with {@code -Dbenchmark.sizes=1000,10000,100000,1000000}.
+ */
+@DataJpaTest
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class NoteCreateBenchmarkTest {
+
+    private static final int BATCH_SIZE = 10_000;
+    private static final int MEASURED_CREATES = 500;
+
+    @Autowired
+    private TestEntityManager entityManager;
+    @Autowired
+    private DataSource dataSource;
+    @Autowired
+    private NoteRepository noteRepository;
+
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void createLatencyStaysFlat() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        Collection collection = entityManager.persist(new Collection("benchmark", "http://localhost:8080/"));
+        entityManager.flush();
+
+        List<Integer> sizes = Arrays.stream(System.getProperty("benchmark.sizes", "1000,10000,100000,1000000").split(","))
+                .map(String::trim)
+                .map(Integer::parseInt)
+                .toList();
+
+        int stored = 0;
+        List<Double> averages = new ArrayList<>();
+        for (int size : sizes) {
+            stored = fill(collection, stored, size);
+            double average = measureCreates(collection, size);
+            averages.add(average);
+            System.out.printf("%,10d notes: %8.1f us per create%n", size, average);
+        }
+
+        // with the (collection_id, title) index the check does not scan, so the cost should barely move
+        assertTrue(averages.getLast() < averages.getFirst() * 5,
+                "create latency grew from " + averages.getFirst() + " to " + averages.getLast() + " us");
+    }
+
+    /**
+     * Inserts notes directly over JDBC until the collection holds the given number of them
+     */
+    private int fill(Collection collection, int stored, int size) {
+        while (stored < size) {
+            List<Object[]> batch = new ArrayList<>();
+            for (int i = 0; i < BATCH_SIZE && stored < size; i++, stored++) {
+                batch.add(new Object[]{UUID.randomUUID(), "filler " + stored, "body", collection.id});
+            }
+            jdbcTemplate.batchUpdate("insert into note (id, title, body, collection_id) values (?, ?, ?, ?)", batch);
+        }
+        return stored;
+    }
+
+    /**
+     * Does what NoteController.createNote does for a number of new titles, and returns the average time
+     */
+    private double measureCreates(Collection collection, int size) {
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_CREATES; i++) {
+            String title = "created " + size + " " + i;
+            assertFalse(noteRepository.existsByCollectionIdAndTitle(collection.id, title));
+            noteRepository.save(new Note(title, "body", collection));
+        }
+        entityManager.flush();
+        return (System.nanoTime() - start) / 1000.0 / MEASURED_CREATES;
+    }
+}
@@ -0,0 +1,143 @@
+package server.database;
+
+import commons.Collection;
+import commons.EmbeddedFile;
+import commons.Note;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Counts the SQL statements issued by the queries behind each endpoint,
+ * to make sure none of them loads notes or files one by one.
+ */
+@DataJpaTest(properties = {
+    "spring.jpa.properties.hibernate.generate_statistics=true",
+    "spring.jpa.properties.hibernate.default_batch_fetch_size=100"
+})
+class QueryCountTest {
+
+    private static final int COLLECTIONS = 3;
+    private static final int NOTES_PER_COLLECTION = 5;
+    private static final int FILES_PER_NOTE = 2;
+
+    @Autowired
+    private TestEntityManager entityManager;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private NoteRepository noteRepository;
+    @Autowired
+    private CollectionRepository collectionRepository;
+    @Autowired
+    private EmbeddedFileRepository embeddedFileRepository;
+
+    private Statistics statistics;
+    private Collection firstCollection;
+    private Note firstNote;
+
+    @BeforeEach
+    void setUp() {
+        for (int c = 0; c < COLLECTIONS; c++) {
+            Collection collection = entityManager.persist(new Collection("collection" + c, "http://localhost:8080/"));
+            if (firstCollection == null) firstCollection = collection;
+            for (int n = 0; n < NOTES_PER_COLLECTION; n++) {
+                Note note = entityManager.persist(new Note("note" + n, "body", collection));
+                if (firstNote == null) firstNote = note;
+                for (int f = 0; f < FILES_PER_NOTE; f++) {
+                    entityManager.persist(new EmbeddedFile(note, "file" + f + ".png", "image/png", 4, "a".repeat(64)));
+                }
+            }
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    public void getAllNotesTest() {
+        List<Note> notes = noteRepository.findAll();
+        touch(notes);
+
+        assertEquals(COLLECTIONS * NOTES_PER_COLLECTION, notes.size());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    public void getNotesInCollectionTest() {
+        List<Note> notes = noteRepository.findByCollectionTitle(firstCollection.title);
+        touch(notes);
+
+        assertEquals(NOTES_PER_COLLECTION, notes.size());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    public void getNoteByIdTest() {
+        Note note = noteRepository.findById(firstNote.id).orElseThrow();
+        touch(List.of(note));
+
+        assertEquals(FILES_PER_NOTE, note.getEmbeddedFiles().size());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    public void getNotesPageTest() {
+        List<Note> notes = noteRepository.findByIdGreaterThanOrderByIdAsc(new UUID(0, 0), PageRequest.ofSize(4));
+        touch(notes);
+
+        assertEquals(4, notes.size());
+        // one statement for the page, one batch for the files of all notes on it
+        assertEquals(2, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    public void getNoteSummariesPageTest() {
+        assertEquals(4, noteRepository.findSummariesAfter(new UUID(0, 0), PageRequest.ofSize(4)).size());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    public void getFilesTest() {
+        assertEquals(FILES_PER_NOTE, embeddedFileRepository.findSummariesByNoteId(firstNote.id).size());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    public void getAllCollectionsTest() {
+        assertEquals(COLLECTIONS, collectionRepository.findAll().size());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    public void createNoteCollectionCheckTest() {
+        assertTrue(collectionRepository.existsById(firstCollection.id));
+        assertFalse(collectionRepository.existsById(UUID.randomUUID()));
+        assertEquals(2, statistics.getPrepareStatementCount());
+    }
+
+    /**
+     * Walks everything the JSON serialization of the notes would walk
+     */
+    private void touch(List<Note> notes) {
+        for (Note note : notes) {
+            assertNotNull(note.collection.title);
+            for (EmbeddedFile file : note.getEmbeddedFiles()) {
+                assertNotNull(file.getFileName());
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package server.events;
+
+import commons.Collection;
+import commons.Note;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import server.database.OutboxEventRepository;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+// the tests relay themselves; a poll holding the relay at the same time would make their relay() return early
+@DataJpaTest(properties = "netnote.outbox.poll-interval-ms=3600000")
+@Import({EventOutbox.class, OutboxRelay.class, JacksonAutoConfiguration.class})
+class EventOutboxTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+    @Autowired
+    private EventOutbox eventOutbox;
+    @Autowired
+    private OutboxRelay relay;
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+    @MockBean
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Test
+    void eventsAreStoredUntilRelayed() {
+        Collection collection = entityManager.persist(new Collection("collection", "http://localhost:8080/"));
+        Note note = entityManager.persist(new Note("title", "body", collection));
+
+        eventOutbox.noteCreated(note);
+        eventOutbox.fileDeleted(note.id, UUID.randomUUID());
+
+        assertEquals(2, outboxEventRepository.count());
+        verifyNoInteractions(messagingTemplate);
+
+        relay.relay();
+
+        InOrder inOrder = inOrder(messagingTemplate);
+        inOrder.verify(messagingTemplate).send(eq("/topic/collections/" + collection.id + "/notes"), any());
+        inOrder.verify(messagingTemplate).send(eq("/topic/notes/" + note.id + "/files/deleteFile"), any());
+        assertEquals(0, outboxEventRepository.count());
+    }
+
+    @Test
+    void movedNoteLeavesTheOldCollectionBeforeItArrivesInTheNewOne() {
+        Collection from = entityManager.persist(new Collection("from", "http://localhost:8080/"));
+        Collection to = entityManager.persist(new Collection("to", "http://localhost:8080/"));
+        Note note = entityManager.persist(new Note("title", "body", to));
+
+        eventOutbox.noteMoved(note, from.id);
+        relay.relay();
+
+        InOrder inOrder = inOrder(messagingTemplate);
+        inOrder.verify(messagingTemplate).send(eq("/topic/collections/" + from.id + "/notes/delete"), any());
+        inOrder.verify(messagingTemplate).send(eq("/topic/collections/" + to.id + "/notes"), any());
+    }
+
+    @Test
+    void payloadIsSentAsStoredJson() {
+        Collection collection = entityManager.persist(new Collection("collection", "http://localhost:8080/"));
+        Note note = entityManager.persist(new Note("title", "body", collection));
+
+        eventOutbox.noteChanged(note);
+        note.body = "changed after the event";
+        relay.relay();
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Message<byte[]>> message = ArgumentCaptor.forClass(Message.class);
+        verify(messagingTemplate).send(eq("/topic/notes/" + note.id + "/body"), message.capture());
+        String json = new String(message.getValue().getPayload(), StandardCharsets.UTF_8);
+        assertTrue(json.contains("\"body\":\"body\""));
+        assertFalse(json.contains("changed after the event"));
+    }
+
+    @Test
+    void onlyTheLatestBodyIsSent() {
+        Collection collection = entityManager.persist(new Collection("collection", "http://localhost:8080/"));
+        Note note = entityManager.persist(new Note("title", "first", collection));
+        Note other = entityManager.persist(new Note("other", "other", collection));
+
+        eventOutbox.noteChanged(note);
+        eventOutbox.noteChanged(other);
+        note.body = "second";
+        eventOutbox.noteChanged(note);
+        eventOutbox.noteRenamed(note);
+        relay.relay();
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Message<byte[]>> message = ArgumentCaptor.forClass(Message.class);
+        verify(messagingTemplate).send(eq("/topic/notes/" + note.id + "/body"), message.capture());
+        String json = new String(message.getValue().getPayload(), StandardCharsets.UTF_8);
+        assertTrue(json.contains("\"body\":\"second\""));
+        verify(messagingTemplate).send(eq("/topic/notes/" + other.id + "/body"), any());
+        verify(messagingTemplate).send(eq("/topic/collections/" + collection.id + "/notes/title"), any());
+        assertEquals(0, outboxEventRepository.count());
+    }
+
+    @Test
+    void failedSendsAreRetried() {
+        eventOutbox.publish("/topic/test", "first");
+        doThrow(new IllegalStateException("broker down")).when(messagingTemplate).send(anyString(), any());
+
+        relay.relay();
+
+        assertEquals(1, outboxEventRepository.count());
+
+        reset(messagingTemplate);
+        relay.relay();
+
+        verify(messagingTemplate).send(eq("/topic/test"), any());
+        assertEquals(0, outboxEventRepository.count());
+    }
+}
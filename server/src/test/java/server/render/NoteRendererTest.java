@@ -0,0 +1,74 @@
+package server.render;
+
+import commons.Collection;
+import commons.Note;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import server.api.TestNoteRepository;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NoteRendererTest {
+
+    private TestNoteRepository noteRepository;
+    private NoteRenderer renderer;
+    private Collection collection;
+
+    @BeforeEach
+    void setUp() {
+        noteRepository = new TestNoteRepository();
+        renderer = new NoteRenderer(noteRepository);
+        collection = new Collection("collection", "http://localhost:8080/");
+        collection.id = UUID.randomUUID();
+    }
+
+    @Test
+    void rendersMarkdownWithTablesAndStrikethrough() {
+        String html = renderer.render(note("title", "# Heading\n\n~~old~~\n\n| a | b |\n|---|---|\n| 1 | 2 |"));
+
+        assertTrue(html.contains("<h1>Heading</h1>"));
+        assertTrue(html.contains("<del>old</del>"));
+        assertTrue(html.contains("<table>"));
+    }
+
+    @Test
+    void tagsBecomeButtons() {
+        String html = renderer.render(note("title", "text #work"));
+
+        assertTrue(html.contains("<button class='custom-tag-button' data-tag='work'"));
+    }
+
+    @Test
+    void referencesLinkToNotesOfTheCollection() {
+        Note other = note("other", "the other note\nsecond line");
+        noteRepository.save(other);
+
+        String html = renderer.render(note("title", "see [[other]] and [[missing]]"));
+
+        assertTrue(html.contains("<a href='note://other' class='note-link' data-note-title='other' "
+                + "data-note-collection='collection' data-note-preview='the other note ⏎ secon...'>other</a>"));
+        assertTrue(html.contains("<span class='red-squiggly'>[[missing]]</span>"));
+    }
+
+    @Test
+    void imagesPointToTheFilesOfTheNote() {
+        Note note = note("title", "![picture](my image.png)");
+
+        String html = renderer.render(note);
+
+        assertTrue(html.contains("src=\"http://localhost:8080/api/notes/" + note.id + "/files/my%20image.png?size=preview\""));
+    }
+
+    @Test
+    void emptyBodyRendersNothing() {
+        assertEquals("", renderer.render(note("title", "")));
+    }
+
+    private Note note(String title, String body) {
+        Note note = new Note(title, body, collection);
+        note.id = UUID.randomUUID();
+        return note;
+    }
+}
@@ -0,0 +1,163 @@
+package server.search;
+
+import commons.Collection;
+import commons.Note;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SearchIndexTest {
+
+    private SearchIndex searchIndex;
+    private Collection collection1, collection2;
+    private Note recipes, shopping, meeting;
+
+    @BeforeEach
+    void setUp() {
+        searchIndex = new SearchIndex();
+
+        collection1 = new Collection("collection1", "http://localhost:8080/");
+        collection1.id = UUID.randomUUID();
+        collection2 = new Collection("collection2", "http://localhost:8080/");
+        collection2.id = UUID.randomUUID();
+
+        recipes = note("Pasta recipes", "Boil the pasta, then add tomato sauce.", collection1);
+        shopping = note("Shopping list", "Tomato, pasta and cheese.", collection1);
+        meeting = note("Meeting notes", "Discussed the roadmap for the next release.", collection2);
+
+        searchIndex.index(recipes);
+        searchIndex.index(shopping);
+        searchIndex.index(meeting);
+    }
+
+    private static Note note(String title, String body, Collection collection) {
+        Note note = new Note(title, body, collection);
+        note.id = UUID.randomUUID();
+        return note;
+    }
+
+    private static List<UUID> ids(SearchResults results) {
+        return results.hits().stream().map(SearchHit::noteId).toList();
+    }
+
+    @Test
+    public void findsWordsInTitleAndBodyTest() {
+        SearchResults results = searchIndex.search("pasta ", null, 0, 20);
+
+        assertEquals(2, results.total());
+        // the title match ranks first
+        assertEquals(List.of(recipes.id, shopping.id), ids(results));
+    }
+
+    @Test
+    public void allWordsMustMatchTest() {
+        SearchResults results = searchIndex.search("tomato cheese ", null, 0, 20);
+
+        assertEquals(List.of(shopping.id), ids(results));
+    }
+
+    @Test
+    public void lastWordIsPrefixTest() {
+        assertEquals(List.of(meeting.id), ids(searchIndex.search("road", null, 0, 20)));
+        assertTrue(searchIndex.search("road ", null, 0, 20).hits().isEmpty());
+    }
+
+    @Test
+    public void searchIsCaseInsensitiveTest() {
+        assertEquals(List.of(meeting.id), ids(searchIndex.search("MEETING", null, 0, 20)));
+    }
+
+    @Test
+    public void collectionFilterTest() {
+        assertTrue(searchIndex.search("pasta", collection2.id, 0, 20).hits().isEmpty());
+        assertEquals(2, searchIndex.search("pasta", collection1.id, 0, 20).total());
+    }
+
+    @Test
+    public void pagingTest() {
+        SearchResults first = searchIndex.search("pasta", null, 0, 1);
+        SearchResults second = searchIndex.search("pasta", null, 1, 1);
+
+        assertEquals(2, first.total());
+        assertEquals(List.of(recipes.id), ids(first));
+        assertEquals(List.of(shopping.id), ids(second));
+    }
+
+    @Test
+    public void updateReplacesOldContentTest() {
+        recipes.body = "Rice with vegetables.";
+        searchIndex.index(recipes);
+
+        assertTrue(searchIndex.search("sauce", null, 0, 20).hits().isEmpty());
+        assertEquals(List.of(recipes.id), ids(searchIndex.search("rice", null, 0, 20)));
+        assertEquals(3, searchIndex.size());
+    }
+
+    @Test
+    public void removeTest() {
+        searchIndex.remove(shopping.id);
+
+        assertTrue(searchIndex.search("cheese", null, 0, 20).hits().isEmpty());
+        assertEquals(2, searchIndex.size());
+    }
+
+    @Test
+    public void changesWaitForCommitTest() {
+        Note groceries = note("Groceries", "Apples and pears.", collection1);
+
+        inTransaction(TransactionSynchronization.STATUS_COMMITTED, () -> {
+            searchIndex.index(groceries);
+            searchIndex.remove(meeting.id);
+            assertTrue(searchIndex.search("apples", null, 0, 20).hits().isEmpty());
+            assertEquals(List.of(meeting.id), ids(searchIndex.search("roadmap", null, 0, 20)));
+        });
+
+        assertEquals(List.of(groceries.id), ids(searchIndex.search("apples", null, 0, 20)));
+        assertTrue(searchIndex.search("roadmap", null, 0, 20).hits().isEmpty());
+    }
+
+    @Test
+    public void rolledBackChangesAreDroppedTest() {
+        inTransaction(TransactionSynchronization.STATUS_ROLLED_BACK, () -> {
+            recipes.body = "Rice with vegetables.";
+            searchIndex.index(recipes);
+            searchIndex.remove(shopping.id);
+        });
+
+        assertTrue(searchIndex.search("rice", null, 0, 20).hits().isEmpty());
+        assertEquals(List.of(shopping.id), ids(searchIndex.search("cheese", null, 0, 20)));
+        assertEquals(3, searchIndex.size());
+    }
+
+    /**
+     * Runs the work with transaction synchronization active and then completes it with the given status
+     */
+    private static void inTransaction(int status, Runnable work) {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            work.run();
+            List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+            synchronizations.forEach(s -> s.afterCompletion(status));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    public void snippetTest() {
+        SearchHit hit = searchIndex.search("roadmap", null, 0, 20).hits().getFirst();
+
+        assertTrue(hit.snippet().contains("roadmap"));
+    }
+
+    @Test
+    public void emptyQueryTest() {
+        assertEquals(0, searchIndex.search("  ", null, 0, 20).total());
+    }
+}
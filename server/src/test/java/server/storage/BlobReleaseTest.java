@@ -0,0 +1,82 @@
+package server.storage;
+
+import commons.Collection;
+import commons.EmbeddedFile;
+import commons.Note;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import server.service.CollectionService;
+import server.service.EmbeddedFileService;
+import server.service.NoteService;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that the blob of a deleted file is only removed once the deletion is committed,
+ * with real transactions.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:blob-release;DB_CLOSE_DELAY=-1",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "netnote.storage.path=target/blob-release-test-attachments"
+})
+class BlobReleaseTest {
+
+    @Autowired
+    private NoteService noteService;
+    @Autowired
+    private CollectionService collectionService;
+    @Autowired
+    private EmbeddedFileService embeddedFileService;
+    @Autowired
+    private BlobStore blobStore;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void rolledBackDeleteKeepsTheBlob() throws IOException {
+        EmbeddedFile file = upload("rolled back", "content of a file that stays");
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+        transaction.executeWithoutResult(status -> {
+            embeddedFileService.deleteFile(file.getId());
+            status.setRollbackOnly();
+        });
+
+        assertTrue(embeddedFileService.findById(file.getId()).isPresent());
+        assertTrue(blobStore.exists(file.getContentHash()));
+    }
+
+    @Test
+    void committedDeleteRemovesTheBlob() throws IOException {
+        EmbeddedFile file = upload("committed", "content of a file that goes");
+
+        embeddedFileService.deleteFile(file.getId());
+
+        assertFalse(blobStore.exists(file.getContentHash()));
+    }
+
+    @Test
+    void blobOfAnotherFileIsKept() throws IOException {
+        EmbeddedFile first = upload("first copy", "shared content");
+        EmbeddedFile second = upload("second copy", "shared content");
+
+        embeddedFileService.deleteFile(first.getId());
+
+        assertEquals(first.getContentHash(), second.getContentHash());
+        assertTrue(blobStore.exists(second.getContentHash()));
+    }
+
+    private EmbeddedFile upload(String title, String content) throws IOException {
+        Collection collection = collectionService.save(new Collection("blobs " + title, "http://localhost:8080/"));
+        Note note = noteService.save(new Note(title, "body", collection));
+        return embeddedFileService.saveFile(note,
+                new MockMultipartFile("file", title + ".txt", "text/plain", content.getBytes()));
+    }
+}
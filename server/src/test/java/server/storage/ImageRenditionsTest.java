@@ -0,0 +1,132 @@
+package server.storage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.MediaType;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImageRenditionsTest {
+
+    @TempDir
+    Path root;
+
+    private LocalBlobStore blobStore;
+    private ImageRenditions imageRenditions;
+
+    @BeforeEach
+    void setUp() {
+        blobStore = new LocalBlobStore(root);
+        imageRenditions = new ImageRenditions(blobStore, 1, 10);
+    }
+
+    @AfterEach
+    void tearDown() {
+        imageRenditions.shutdown();
+    }
+
+    @Test
+    public void photoIsScaledToEveryRenditionTest() throws IOException {
+        StoredBlob blob = blobStore.put(encode(image(2000, 1500, BufferedImage.TYPE_INT_RGB), "jpeg"));
+
+        imageRenditions.render(blob.hash());
+
+        for (Rendition rendition : Rendition.values()) {
+            Optional<ImageRenditions.Rendered> rendered = imageRenditions.find(blob.hash(), "image/jpeg", rendition);
+            assertTrue(rendered.isPresent());
+            assertEquals(MediaType.IMAGE_JPEG, rendered.get().mediaType());
+            BufferedImage scaled = decode(rendered.get());
+            assertEquals(rendition.getMaxDimension(), scaled.getWidth());
+            assertEquals(rendition.getMaxDimension() * 3 / 4, scaled.getHeight());
+        }
+    }
+
+    @Test
+    public void transparentImageStaysPngTest() throws IOException {
+        StoredBlob blob = blobStore.put(encode(image(600, 300, BufferedImage.TYPE_INT_ARGB), "png"));
+
+        imageRenditions.render(blob.hash());
+
+        ImageRenditions.Rendered thumb = imageRenditions.find(blob.hash(), "image/png", Rendition.THUMB).orElseThrow();
+        assertEquals(MediaType.IMAGE_PNG, thumb.mediaType());
+        assertEquals(256, decode(thumb).getWidth());
+        // smaller than the preview, so it keeps its size
+        ImageRenditions.Rendered preview = imageRenditions.find(blob.hash(), "image/png", Rendition.PREVIEW).orElseThrow();
+        assertEquals(600, decode(preview).getWidth());
+    }
+
+    @Test
+    public void otherFilesHaveNoRenditionsTest() throws IOException {
+        StoredBlob blob = blobStore.put("not an image".getBytes());
+
+        assertFalse(ImageRenditions.isSupported("text/plain"));
+        assertTrue(imageRenditions.find(blob.hash(), "text/plain", Rendition.THUMB).isEmpty());
+
+        imageRenditions.render(blob.hash());
+
+        assertFalse(blobStore.getDerivative(blob.hash(), "thumb.jpg").exists());
+    }
+
+    @Test
+    public void exifOrientationTurnsImageTest() {
+        BufferedImage image = image(40, 20, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(0, 0, Color.RED.getRGB());
+
+        BufferedImage turned = ExifOrientation.apply(image, 6);
+
+        assertEquals(20, turned.getWidth());
+        assertEquals(40, turned.getHeight());
+        // the top left corner ends up top right after turning clockwise
+        assertEquals(Color.RED.getRGB(), turned.getRGB(19, 0));
+    }
+
+    @Test
+    public void exifOrientationIsReadFromSegmentTest() {
+        byte[] segment = {
+            'E', 'x', 'i', 'f', 0, 0,
+            'M', 'M', 0, 42, 0, 0, 0, 8,
+            0, 1,
+            0x01, 0x12, 0, 3, 0, 0, 0, 1, 0, 6, 0, 0,
+            0, 0, 0, 0
+        };
+
+        assertEquals(6, ExifOrientation.fromApp1(segment));
+        assertEquals(ExifOrientation.NORMAL, ExifOrientation.fromApp1(new byte[] {'E', 'x', 'i', 'f'}));
+    }
+
+    private static BufferedImage image(int width, int height, int type) {
+        BufferedImage image = new BufferedImage(width, height, type);
+        Graphics2D graphics = image.createGraphics();
+        try {
+            graphics.setColor(Color.BLUE);
+            graphics.fillRect(0, 0, width / 2, height);
+        } finally {
+            graphics.dispose();
+        }
+        return image;
+    }
+
+    private static byte[] encode(BufferedImage image, String format) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, format, out);
+        return out.toByteArray();
+    }
+
+    private static BufferedImage decode(ImageRenditions.Rendered rendered) throws IOException {
+        try (InputStream in = rendered.resource().getInputStream()) {
+            return ImageIO.read(in);
+        }
+    }
+}
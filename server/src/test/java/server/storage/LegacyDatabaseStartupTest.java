@@ -0,0 +1,87 @@
+package server.storage;
+
+import commons.Collection;
+import commons.EmbeddedFile;
+import commons.Note;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.mock.web.MockMultipartFile;
+import server.service.CollectionService;
+import server.service.EmbeddedFileService;
+import server.service.NoteService;
+
+import java.io.IOException;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Starts the server on a database written before the blob store existed, with Hibernate updating the schema
+ * as it does in production, and checks that the stored file can be read and new files can be uploaded.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=" + LegacyDatabaseStartupTest.URL,
+        "spring.jpa.hibernate.ddl-auto=update",
+        "netnote.storage.path=target/legacy-database-test-attachments"
+})
+class LegacyDatabaseStartupTest {
+
+    static final String URL = "jdbc:h2:mem:legacy-database;DB_CLOSE_DELAY=-1";
+
+    private static final UUID COLLECTION_ID = UUID.randomUUID();
+    private static final UUID NOTE_ID = UUID.randomUUID();
+    private static final UUID FILE_ID = UUID.randomUUID();
+
+    @Autowired
+    private CollectionService collectionService;
+    @Autowired
+    private NoteService noteService;
+    @Autowired
+    private EmbeddedFileService embeddedFileService;
+
+    /**
+     * Runs before the server starts, which happens when the first test asks for its beans
+     */
+    @BeforeAll
+    static void createBaselineDatabase() {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(URL, "sa", ""));
+        jdbcTemplate.execute("create table collection (id uuid not null, serverurl varchar(255) not null, "
+                + "title varchar(255) not null unique, primary key (id))");
+        jdbcTemplate.execute("create table note (id uuid not null, body clob, title varchar(255) not null, "
+                + "collection_id uuid not null, primary key (id))");
+        jdbcTemplate.execute(LegacyFileContentMigrationTest.BASELINE_TABLE);
+        jdbcTemplate.update("insert into collection (id, serverurl, title) values (?, 'http://localhost:8080/', 'old')",
+                COLLECTION_ID);
+        jdbcTemplate.update("insert into note (id, body, title, collection_id) values (?, 'body', 'old note', ?)",
+                NOTE_ID, COLLECTION_ID);
+        jdbcTemplate.update("insert into embedded_file (id, file_content, file_name, file_type, uploaded_at, note_id) "
+                + "values (?, ?, 'old.txt', 'text/plain', current_timestamp, ?)", FILE_ID, "Hello World".getBytes(), NOTE_ID);
+    }
+
+    @Test
+    void filesStoredInTheDatabaseAreServedFromTheBlobStore() throws IOException {
+        EmbeddedFile file = embeddedFileService.findById(FILE_ID).orElseThrow();
+
+        assertEquals(11, file.getFileSize());
+        assertNotNull(file.getContentHash());
+        assertArrayEquals("Hello World".getBytes(), embeddedFileService.getContent(file).getContentAsByteArray());
+    }
+
+    @Test
+    void filesCanBeUploadedToTheMigratedTable() throws IOException {
+        Note note = noteService.findById(NOTE_ID).orElseThrow();
+        Collection collection = collectionService.findById(COLLECTION_ID).orElseThrow();
+        assertEquals(collection.id, note.collection.id);
+
+        EmbeddedFile uploaded = embeddedFileService.saveFile(note,
+                new MockMultipartFile("file", "new.txt", "text/plain", "new content".getBytes()));
+
+        assertEquals(11, uploaded.getFileSize());
+        assertArrayEquals("new content".getBytes(),
+                embeddedFileService.getContent(uploaded).getContentAsByteArray());
+    }
+}
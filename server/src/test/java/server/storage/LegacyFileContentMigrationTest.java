@@ -0,0 +1,77 @@
+package server.storage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LegacyFileContentMigrationTest {
+
+    @TempDir
+    Path root;
+
+    private JdbcTemplate jdbcTemplate;
+    private LocalBlobStore blobStore;
+    private LegacyFileContentMigration migration;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", ""));
+        blobStore = new LocalBlobStore(root);
+        migration = new LegacyFileContentMigration(jdbcTemplate, blobStore);
+    }
+
+    /**
+     * The table as the server created it before the blob store: no content hash and no size
+     */
+    static final String BASELINE_TABLE = "create table embedded_file (id uuid not null, file blob, "
+            + "file_content blob not null, file_name varchar(255) not null, file_type varchar(255) not null, "
+            + "uploaded_at timestamp(6) not null, note_id uuid not null, primary key (id))";
+
+    @Test
+    public void contentIsMovedToTheBlobStoreTest() throws IOException {
+        jdbcTemplate.execute(BASELINE_TABLE);
+        UUID id = UUID.randomUUID();
+        jdbcTemplate.update("insert into embedded_file (id, file_content, file_name, file_type, uploaded_at, note_id) "
+                + "values (?, ?, 'a.txt', 'text/plain', current_timestamp, ?)", id, "Hello World".getBytes(), UUID.randomUUID());
+
+        migration.migrate();
+
+        Map<String, Object> row = jdbcTemplate.queryForMap("select * from embedded_file where id = ?", id);
+        assertEquals("a591a6d40bf420404a011733cfb7b190d62c65bf0bcda32b57b277d9ad9f146e", row.get("CONTENT_HASH"));
+        assertEquals(11L, row.get("FILE_SIZE"));
+        assertFalse(row.containsKey("FILE_CONTENT"));
+        assertArrayEquals("Hello World".getBytes(), blobStore.read((String) row.get("CONTENT_HASH")));
+    }
+
+    @Test
+    public void emptyBaselineTableGetsTheNewColumnsTest() {
+        jdbcTemplate.execute(BASELINE_TABLE);
+
+        migration.migrate();
+
+        jdbcTemplate.update("insert into embedded_file (id, file_name, file_type, uploaded_at, note_id, content_hash) "
+                + "values (?, 'a.txt', 'text/plain', current_timestamp, ?, 'hash')", UUID.randomUUID(), UUID.randomUUID());
+        assertEquals(0L, jdbcTemplate.queryForObject("select file_size from embedded_file", Long.class));
+    }
+
+    @Test
+    public void migratedDatabaseIsLeftAloneTest() {
+        jdbcTemplate.execute("create table embedded_file (id uuid primary key, file_size bigint not null, "
+                + "content_hash varchar(64))");
+        jdbcTemplate.update("insert into embedded_file (id, file_size) values (?, 0)", UUID.randomUUID());
+
+        migration.migrate();
+
+        assertEquals(1, jdbcTemplate.queryForObject("select count(*) from embedded_file where content_hash is null",
+                Integer.class));
+    }
+}
@@ -0,0 +1,97 @@
+package server.storage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocalBlobStoreTest {
+
+    @TempDir
+    Path root;
+
+    private LocalBlobStore blobStore;
+
+    @BeforeEach
+    void setUp() {
+        blobStore = new LocalBlobStore(root);
+    }
+
+    @Test
+    public void putAndReadTest() throws IOException {
+        StoredBlob blob = blobStore.put("Hello World".getBytes());
+
+        assertEquals(11, blob.size());
+        assertEquals("a591a6d40bf420404a011733cfb7b190d62c65bf0bcda32b57b277d9ad9f146e", blob.hash());
+        assertTrue(blobStore.exists(blob.hash()));
+        assertArrayEquals("Hello World".getBytes(), blobStore.read(blob.hash()));
+    }
+
+    @Test
+    public void sameContentIsStoredOnceTest() throws IOException {
+        StoredBlob first = blobStore.put("Hello World".getBytes());
+        StoredBlob second = blobStore.put("Hello World".getBytes());
+
+        assertEquals(first, second);
+        try (var files = Files.walk(root)) {
+            assertEquals(1, files.filter(Files::isRegularFile).count());
+        }
+    }
+
+    @Test
+    public void putStreamTest() throws IOException {
+        byte[] content = new byte[1_000_000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+
+        StoredBlob blob = blobStore.put(new ByteArrayInputStream(content));
+
+        assertEquals(content.length, blob.size());
+        assertArrayEquals(content, blobStore.read(blob.hash()));
+        try (var files = Files.list(root)) {
+            assertTrue(files.noneMatch(f -> f.getFileName().toString().endsWith(".tmp")));
+        }
+    }
+
+    @Test
+    public void deleteTest() throws IOException {
+        StoredBlob blob = blobStore.put("Hello World".getBytes());
+
+        blobStore.delete(blob.hash());
+
+        assertFalse(blobStore.exists(blob.hash()));
+    }
+
+    @Test
+    public void derivativesAreDeletedWithTheirBlobTest() throws IOException {
+        StoredBlob blob = blobStore.put("Hello World".getBytes());
+        StoredBlob other = blobStore.put("Hello Other World".getBytes());
+        blobStore.putDerivative(blob.hash(), "thumb.jpg", new byte[] {1, 2, 3});
+        blobStore.putDerivative(other.hash(), "thumb.jpg", new byte[] {4});
+
+        assertArrayEquals(new byte[] {1, 2, 3}, blobStore.getDerivative(blob.hash(), "thumb.jpg").getContentAsByteArray());
+
+        blobStore.delete(blob.hash());
+
+        assertFalse(blobStore.getDerivative(blob.hash(), "thumb.jpg").exists());
+        assertTrue(blobStore.getDerivative(other.hash(), "thumb.jpg").exists());
+    }
+
+    @Test
+    public void invalidDerivativeNameTest() {
+        String hash = "a591a6d40bf420404a011733cfb7b190d62c65bf0bcda32b57b277d9ad9f146e";
+        assertThrows(IllegalArgumentException.class, () -> blobStore.derivativePathOf(hash, "../thumb.jpg"));
+    }
+
+    @Test
+    public void invalidHashTest() {
+        assertThrows(IllegalArgumentException.class, () -> blobStore.pathOf("../../etc/passwd"));
+    }
+}
@@ -0,0 +1,162 @@
+package server.websocket;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class BoundedSendSessionTest {
+
+    private WebSocketSession delegate;
+    private OutboundQueueStats stats;
+    private List<Runnable> tasks;
+
+    @BeforeEach
+    void setUp() {
+        delegate = mock(WebSocketSession.class);
+        when(delegate.getId()).thenReturn("session");
+        stats = new OutboundQueueStats();
+        tasks = new ArrayList<>();
+    }
+
+    private BoundedSendSession session(int maxMessages, int maxBytes, OverflowPolicy policy) {
+        BoundedSendSession session = new BoundedSendSession(delegate, tasks::add, maxMessages, maxBytes,
+                10_000, policy, stats);
+        stats.register(session);
+        return session;
+    }
+
+    private void runTasks() {
+        List<Runnable> pending = List.copyOf(tasks);
+        tasks.clear();
+        pending.forEach(Runnable::run);
+    }
+
+    @Test
+    void framesAreWrittenInOrderByOneTask() throws IOException {
+        BoundedSendSession session = session(10, 1024, OverflowPolicy.DROP_OLDEST);
+
+        session.sendMessage(new TextMessage("a"));
+        session.sendMessage(new TextMessage("b"));
+
+        assertEquals(1, tasks.size());
+        assertEquals(2, stats.snapshot().queuedFrames());
+        assertEquals(2, stats.snapshot().maxQueueDepth());
+        verify(delegate, never()).sendMessage(any());
+
+        runTasks();
+
+        InOrder inOrder = inOrder(delegate);
+        inOrder.verify(delegate).sendMessage(new TextMessage("a"));
+        inOrder.verify(delegate).sendMessage(new TextMessage("b"));
+        assertEquals(0, stats.snapshot().queuedFrames());
+    }
+
+    @Test
+    void fullQueueDropsOldestFramesAndClosesAfterTheRest() throws IOException {
+        BoundedSendSession session = session(2, 1024, OverflowPolicy.DROP_OLDEST);
+
+        session.sendMessage(new TextMessage("a"));
+        session.sendMessage(new TextMessage("b"));
+        session.sendMessage(new TextMessage("c"));
+        verify(delegate, never()).close(any());
+        runTasks();
+
+        verify(delegate, never()).sendMessage(new TextMessage("a"));
+        InOrder inOrder = inOrder(delegate);
+        inOrder.verify(delegate).sendMessage(new TextMessage("b"));
+        inOrder.verify(delegate).sendMessage(new TextMessage("c"));
+        inOrder.verify(delegate).close(any(CloseStatus.class));
+        assertEquals(1, stats.snapshot().droppedFrames());
+        assertEquals(1, stats.snapshot().closedSessions());
+    }
+
+    @Test
+    void sessionWithoutDroppedFramesStaysOpen() throws IOException {
+        BoundedSendSession session = session(2, 1024, OverflowPolicy.DROP_OLDEST);
+
+        session.sendMessage(new TextMessage("a"));
+        session.sendMessage(new TextMessage("b"));
+        runTasks();
+
+        verify(delegate, never()).close(any());
+    }
+
+    @Test
+    void oversizedFrameIsSentWhenNothingElseWaits() throws IOException {
+        BoundedSendSession session = session(10, 5, OverflowPolicy.CLOSE);
+
+        session.sendMessage(new TextMessage("larger than the limit"));
+        runTasks();
+
+        verify(delegate).sendMessage(new TextMessage("larger than the limit"));
+        verify(delegate, never()).close(any());
+    }
+
+    @Test
+    void oversizedFrameReplacesWaitingFrames() throws IOException {
+        BoundedSendSession session = session(10, 5, OverflowPolicy.DROP_OLDEST);
+
+        session.sendMessage(new TextMessage("abc"));
+        session.sendMessage(new TextMessage("larger than the limit"));
+        runTasks();
+
+        verify(delegate, never()).sendMessage(new TextMessage("abc"));
+        verify(delegate).sendMessage(new TextMessage("larger than the limit"));
+        assertEquals(1, stats.snapshot().droppedFrames());
+    }
+
+    @Test
+    void queueIsAlsoLimitedInBytes() throws IOException {
+        BoundedSendSession session = session(10, 5, OverflowPolicy.DROP_OLDEST);
+
+        session.sendMessage(new TextMessage("abc"));
+        session.sendMessage(new TextMessage("def"));
+        runTasks();
+
+        verify(delegate, never()).sendMessage(new TextMessage("abc"));
+        verify(delegate).sendMessage(new TextMessage("def"));
+        assertEquals(1, stats.snapshot().droppedFrames());
+    }
+
+    @Test
+    void fullQueueClosesSession() throws IOException {
+        BoundedSendSession session = session(1, 1024, OverflowPolicy.CLOSE);
+
+        session.sendMessage(new TextMessage("a"));
+        session.sendMessage(new TextMessage("b"));
+        runTasks();
+
+        verify(delegate).close(any(CloseStatus.class));
+        verify(delegate, never()).sendMessage(any());
+        assertEquals(1, stats.snapshot().closedSessions());
+        assertEquals(0, stats.snapshot().queuedFrames());
+    }
+
+    @Test
+    void failedWriteClosesSession() throws IOException {
+        BoundedSendSession session = session(10, 1024, OverflowPolicy.DROP_OLDEST);
+        doThrow(new IOException("broken pipe")).when(delegate).sendMessage(new TextMessage("a"));
+
+        session.sendMessage(new TextMessage("a"));
+        session.sendMessage(new TextMessage("b"));
+        runTasks();
+
+        verify(delegate).close(any(CloseStatus.class));
+        verify(delegate, never()).sendMessage(new TextMessage("b"));
+        assertEquals(0, stats.snapshot().queuedFrames());
+
+        session.sendMessage(new TextMessage("c"));
+        assertTrue(tasks.isEmpty());
+    }
+}
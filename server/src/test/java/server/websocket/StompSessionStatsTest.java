@@ -0,0 +1,54 @@
+package server.websocket;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StompSessionStatsTest {
+
+    private final StompSessionStats stats = new StompSessionStats();
+
+    @Test
+    void countsSessionsAndSubscriptions() {
+        stats.onConnected(new SessionConnectedEvent(this, message(SimpMessageType.CONNECT_ACK, "a", null)));
+        stats.onConnected(new SessionConnectedEvent(this, message(SimpMessageType.CONNECT_ACK, "b", null)));
+        stats.onSubscribe(new SessionSubscribeEvent(this, message(SimpMessageType.SUBSCRIBE, "a", "sub-0")));
+        stats.onSubscribe(new SessionSubscribeEvent(this, message(SimpMessageType.SUBSCRIBE, "a", "sub-1")));
+        stats.onSubscribe(new SessionSubscribeEvent(this, message(SimpMessageType.SUBSCRIBE, "b", "sub-0")));
+
+        assertEquals(2, stats.getSessions());
+        assertEquals(3, stats.getSubscriptions());
+
+        stats.onUnsubscribe(new SessionUnsubscribeEvent(this, message(SimpMessageType.UNSUBSCRIBE, "a", "sub-0")));
+
+        assertEquals(2, stats.getSubscriptions());
+    }
+
+    @Test
+    void disconnectForgetsSubscriptions() {
+        stats.onConnected(new SessionConnectedEvent(this, message(SimpMessageType.CONNECT_ACK, "a", null)));
+        stats.onSubscribe(new SessionSubscribeEvent(this, message(SimpMessageType.SUBSCRIBE, "a", "sub-0")));
+
+        stats.onDisconnect(new SessionDisconnectEvent(this, message(SimpMessageType.DISCONNECT, "a", null),
+                "a", CloseStatus.NORMAL));
+
+        assertEquals(0, stats.getSessions());
+        assertEquals(0, stats.getSubscriptions());
+    }
+
+    private static Message<byte[]> message(SimpMessageType type, String sessionId, String subscriptionId) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(type);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId(subscriptionId);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+}